@@ -0,0 +1,170 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.snapshot.CarParkSnapshot;
+import com.netthreads.transportation.snapshot.CarParkSnapshotBuilder;
+
+/**
+ * Scan a car park feed held as a list of objects against the same feed held
+ * as a column snapshot.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarParkSnapshotBenchmark
+{
+	private static final String[] STATUS = { "enoughSpacesAvailable", "spacesAvailable", "almostFull", "carParkFull", "carParkClosed" };
+	
+	private static final int MIN_FREE_SPACES = 100;
+	
+	@Param({ "100", "10000", "1000000" })
+	public int carParks;
+	
+	private List<CarParkData> list;
+	private CarParkSnapshot snapshot;
+	private int[] rows;
+	
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(carParks);
+		
+		list = new ArrayList<CarParkData>(carParks);
+		
+		CarParkSnapshotBuilder builder = new CarParkSnapshotBuilder(carParks);
+		
+		for (int i = 0; i < carParks; i++)
+		{
+			CarParkData data = new CarParkData();
+			
+			int capacity = 50 + random.nextInt(2000);
+			int occupied = random.nextInt(capacity + 1);
+			
+			data.setId("CP" + i + "_1");
+			data.setCarParkIdentity("Car Park " + i + ":CP" + i);
+			data.setTotalCapacityInt(capacity);
+			data.setOccupiedSpacesInt(occupied);
+			data.setCarParkOccupancyInt(occupied * 100 / capacity);
+			data.setCarParkStatus(STATUS[random.nextInt(STATUS.length)]);
+			data.setLatitudeDouble(55.8 + random.nextDouble() / 10);
+			data.setLongitudeDouble(-4.3 + random.nextDouble() / 10);
+			
+			list.add(data);
+			builder.add(data);
+		}
+		
+		snapshot = builder.build();
+		
+		rows = new int[carParks];
+	}
+	
+	@Benchmark
+	public long listTotalFreeSpaces()
+	{
+		long total = 0;
+		
+		for (CarParkData data : list)
+		{
+			int free = data.getFreeSpaces();
+			
+			if (free != CarParkData.NO_VALUE)
+			{
+				total += free;
+			}
+		}
+		
+		return total;
+	}
+	
+	@Benchmark
+	public long snapshotTotalFreeSpaces()
+	{
+		return snapshot.totalFreeSpaces();
+	}
+	
+	@Benchmark
+	public int listCountByStatus()
+	{
+		int count = 0;
+		
+		for (CarParkData data : list)
+		{
+			if ("carParkFull".equals(data.getCarParkStatus()))
+			{
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	@Benchmark
+	public int snapshotCountByStatus()
+	{
+		return snapshot.countByStatus("carParkFull");
+	}
+	
+	@Benchmark
+	public int listFilterByMinFreeSpaces()
+	{
+		int count = 0;
+		
+		for (int i = 0; i < list.size(); i++)
+		{
+			int free = list.get(i).getFreeSpaces();
+			
+			if (free != CarParkData.NO_VALUE && free >= MIN_FREE_SPACES)
+			{
+				rows[count++] = i;
+			}
+		}
+		
+		return count;
+	}
+	
+	@Benchmark
+	public int snapshotFilterByMinFreeSpaces()
+	{
+		return snapshot.filterByMinFreeSpaces(MIN_FREE_SPACES, rows);
+	}
+	
+}
@@ -0,0 +1,220 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.InflaterPool;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * StreamParserImpl over plain and gzipped generated feeds.
+ * 
+ * plain parses the document as it is, gzipPooled decompresses it through
+ * the parser's pooled inflater and gzipStream through a new GZIPInputStream
+ * per fetch. The wireBytes counter is the bytes read from the source, the
+ * cost of inflating is the difference in documents/s and in allocation:
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar CompressedStreamParserBenchmark -prof gc
+ * </pre>
+ * 
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class CompressedStreamParserBenchmark
+{
+	@Param({ DatexFeedGenerator.FEED_TRAFFIC, DatexFeedGenerator.FEED_CAR_PARK })
+	public String feed;
+	
+	@Param({ "1000", "10000" })
+	public int situations;
+	
+	private byte[] document;
+	private byte[] gzipped;
+	
+	private StreamParserImpl<Object> streamParser;
+	private StreamParserImpl<Object> inflatingParser;
+	private DataFactory<Object> dataFactory;
+	private JSONParser<Object> pullParser;
+	
+	/**
+	 * Per iteration record and byte counts.
+	 * 
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters
+	{
+		public long records;
+		public long wireBytes;
+		
+		@Setup(Level.Iteration)
+		public void clear()
+		{
+			records = 0;
+			wireBytes = 0;
+		}
+	}
+	
+	/**
+	 * Counts records without holding on to them.
+	 * 
+	 */
+	private static class CountingSink implements RecordSink<Object>
+	{
+		private long count;
+		
+		@Override
+		public boolean accept(Object record)
+		{
+			count++;
+			
+			return true;
+		}
+		
+		@Override
+		public void end(int state)
+		{
+			// Nothing to do.
+		}
+		
+		@Override
+		public void error(Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Setup
+	public void setup() throws IOException
+	{
+		document = new DatexFeedGenerator(situations).generate(feed, situations);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(document);
+		gzip.close();
+		
+		gzipped = out.toByteArray();
+		
+		streamParser = new StreamParserImpl<Object>();
+		
+		inflatingParser = new StreamParserImpl<Object>();
+		inflatingParser.setInflaterPool(new InflaterPool());
+		
+		if (DatexFeedGenerator.FEED_TRAFFIC.equals(feed))
+		{
+			dataFactory = (DataFactory) new TrafficDataFactory();
+			pullParser = (JSONParser) new TrafficDataParser();
+		}
+		else
+		{
+			dataFactory = (DataFactory) new CarParkDataFactory();
+			pullParser = (JSONParser) new CarParkDataParser();
+		}
+	}
+	
+	/**
+	 * Uncompressed document.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long plain(Counters counters)
+	{
+		return fetch(streamParser, new ByteArrayInputStream(document), document.length, counters);
+	}
+	
+	/**
+	 * Gzipped document through the pooled inflater.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long gzipPooled(Counters counters)
+	{
+		return fetch(inflatingParser, new ByteArrayInputStream(gzipped), gzipped.length, counters);
+	}
+	
+	/**
+	 * Gzipped document through a new GZIPInputStream.
+	 * 
+	 * @throws IOException
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long gzipStream(Counters counters) throws IOException
+	{
+		return fetch(streamParser, new GZIPInputStream(new ByteArrayInputStream(gzipped)), gzipped.length, counters);
+	}
+	
+	private long fetch(StreamParser<Object> parser, InputStream stream, int length, Counters counters)
+	{
+		CountingSink sink = new CountingSink();
+		
+		int state = parser.fetch(stream, sink, dataFactory, pullParser);
+		
+		if (state != StreamParser.DONE)
+		{
+			throw new IllegalStateException("Parse failed: " + state);
+		}
+		
+		counters.records += sink.count;
+		counters.wireBytes += length;
+		
+		return sink.count;
+	}
+	
+}
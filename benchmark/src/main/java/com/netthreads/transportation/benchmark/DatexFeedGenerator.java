@@ -0,0 +1,243 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Builds DATEX shaped traffic and car park feeds of any size.
+ * 
+ * The documents follow the layout of the Glasgow feeds in the test resources,
+ * including the header, exchange and validity blocks the parsers skip, so
+ * byte rates are comparable with the live feeds.
+ * 
+ * Run as a program to write a feed to disk:
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar com.netthreads.transportation.benchmark.DatexFeedGenerator traffic 100000 traffic.json
+ * </pre>
+ * 
+ */
+public class DatexFeedGenerator
+{
+	public static final String FEED_TRAFFIC = "traffic";
+	public static final String FEED_CAR_PARK = "carPark";
+	
+	private static final String[] STATUS = { "enoughSpacesAvailable", "enoughSpacesAvailable", "enoughSpacesAvailable", "spacesAvailable", "almostFull", "carParkFull", "carParkClosed" };
+	private static final String[] ROADS = { "MARYHILL ROAD", "DUKE STREET", "CATHCART ROAD", "GALLOWGATE", "GOVAN ROAD", "KENNISHEAD ROAD", "GREAT WESTERN ROAD", "ARGYLE STREET" };
+	private static final String[] LINKS = { "A81", "A8", "A77", "A82", "M8", "M74", "M77" };
+	private static final String[] MANAGEMENT = { "roadClosed", "laneClosures", "contraflow", "singleAlternateLineTraffic", "narrowLanes" };
+	private static final String[] WORDS = { "ROADWORKS:", "In", "order", "to", "accommodate", "works", "associated", "with", "the", "repair", "of", "apparatus", "lane", "restrictions", "will", "apply", "daily", "between", "hours", "delays", "may", "be", "experienced" };
+	
+	private Random random;
+	
+	/**
+	 * Construct generator.
+	 * 
+	 * @param seed
+	 *            Same seed gives the same document.
+	 */
+	public DatexFeedGenerator(long seed)
+	{
+		random = new Random(seed);
+	}
+	
+	/**
+	 * Generate feed in memory.
+	 * 
+	 * @param feed
+	 *            FEED_TRAFFIC or FEED_CAR_PARK.
+	 * @param situations
+	 * 
+	 * @return The document.
+	 * 
+	 * @throws IOException
+	 */
+	public byte[] generate(String feed, int situations) throws IOException
+	{
+		ByteArrayOutputStream stream = new ByteArrayOutputStream(situations * 1024);
+		
+		write(feed, situations, stream);
+		
+		return stream.toByteArray();
+	}
+	
+	/**
+	 * Write feed.
+	 * 
+	 * @param feed
+	 *            FEED_TRAFFIC or FEED_CAR_PARK.
+	 * @param situations
+	 * @param stream
+	 * 
+	 * @throws IOException
+	 */
+	public void write(String feed, int situations, OutputStream stream) throws IOException
+	{
+		boolean traffic = FEED_TRAFFIC.equals(feed);
+		
+		if (!traffic && !FEED_CAR_PARK.equals(feed))
+		{
+			throw new IllegalArgumentException("Unknown feed: " + feed);
+		}
+		
+		Writer writer = new OutputStreamWriter(stream, "UTF-8");
+		
+		writer.write("{\"@attributes\":{\"modelBaseVersion\":\"1.0\"},\"exchange\":{\"supplierIdentification\":{\"country\":\"gb\",\"nationalIdentifier\":\"TIH Toolkit\"}},");
+		writer.write("\"payloadPublication\":{\"@attributes\":{\"lang\":\"en\"},\"publicationTime\":\"2015-03-10T14:40:52\",\"publicationCreator\":{\"country\":\"gb\",\"nationalIdentifier\":\"TIH Toolkit\"},\"situation\":[");
+		
+		for (int i = 0; i < situations; i++)
+		{
+			if (i > 0)
+			{
+				writer.write(',');
+			}
+			
+			if (traffic)
+			{
+				writeTraffic(writer, i);
+			}
+			else
+			{
+				writeCarPark(writer, i);
+			}
+		}
+		
+		writer.write("]}}");
+		writer.flush();
+	}
+	
+	/**
+	 * Traffic situation.
+	 * 
+	 */
+	private void writeTraffic(Writer writer, int index) throws IOException
+	{
+		String id = "biasdb" + (1000000000 + index);
+		
+		writer.write("{\"@attributes\":{\"id\":\"" + id + "\"},\"headerInformation\":{\"confidentiality\":\"noRestriction\",\"informationStatus\":\"real\"},");
+		writer.write("\"situationRecord\":{\"@attributes\":{\"id\":\"" + id + "_1\"},");
+		writer.write("\"situationRecordCreationTime\":\"2015-03-06T09:26:00\",\"situationRecordVersion\":\"" + (1 + random.nextInt(3)) + "\",\"situationRecordVersionTime\":\"2015-03-06T09:26:00\",\"situationRecordFirstSupplierVersionTime\":\"2015-03-06T09:26:00\",\"probabilityOfOccurrence\":\"certain\",");
+		writer.write("\"validity\":{\"validityStatus\":\"active\",\"validityTimeSpecification\":{\"overallStartTime\":\"2015-03-06T10:15:00\",\"overallEndTime\":\"2015-03-20T17:00:00\"}},");
+		
+		String comment = comment();
+		writer.write("\"generalPublicComment\":{\"comment\":{\"value\":\"" + comment.substring(0, Math.min(40, comment.length())) + "\"}},");
+		writer.write("\"nonGeneralPublicComment\":{\"comment\":{\"value\":\"" + comment + "\"}},");
+		
+		writer.write("\"groupOfLocations\":{\"locationContainedInGroup\":{\"tpegpointLocation\":{\"tpegDirection\":\"westBound\",\"tpegLocationType\":\"nonLinkedPoint\",\"point\":{");
+		writer.write("\"pointCoordinates\":{\"latitude\":\"" + latitude() + "\",\"longitude\":\"" + longitude() + "\"},");
+		writer.write("\"name\":[{\"descriptor\":{\"value\":\"" + pick(ROADS) + "\"},\"tpegDescriptorType\":\"localLinkName\"},{\"descriptor\":{\"value\":\"Glasgow\"},\"tpegDescriptorType\":\"townName\"},{\"descriptor\":{\"value\":\"" + pick(LINKS) + "\"},\"tpegDescriptorType\":\"linkName\"}]");
+		writer.write("}}}},");
+		
+		writer.write("\"networkManagementType\":\"" + pick(MANAGEMENT) + "\",\"roadMaintenanceType\":\"roadworks\"}}");
+	}
+	
+	/**
+	 * Car park situation.
+	 * 
+	 */
+	private void writeCarPark(Writer writer, int index) throws IOException
+	{
+		String id = "CPG" + index + "C";
+		
+		int capacity = 50 + random.nextInt(2000);
+		int occupied = random.nextInt(capacity + 1);
+		
+		writer.write("{\"@attributes\":{\"id\":\"" + id + "\"},\"headerInformation\":{\"confidentiality\":\"noRestriction\",\"informationStatus\":\"real\"},");
+		writer.write("\"situationRecord\":{\"@attributes\":{\"id\":\"" + id + "_1\"},");
+		writer.write("\"situationRecordCreationTime\":\"2013-11-17T09:15:09\",\"situationRecordVersion\":\"1\",\"situationRecordVersionTime\":\"2013-11-17T09:15:09\",\"situationRecordFirstSupplierVersionTime\":\"2013-11-17T09:15:09\",\"probabilityOfOccurrence\":\"certain\",");
+		writer.write("\"validity\":{\"validityStatus\":\"active\",\"validityTimeSpecification\":{\"overallStartTime\":\"2013-11-17T09:15:09\"}},");
+		writer.write("\"groupOfLocations\":{\"locationContainedInGroup\":{\"pointByCoordinates\":{\"pointCoordinates\":{\"latitude\":\"" + latitude() + "\",\"longitude\":\"" + longitude() + "\"}}}},");
+		writer.write("\"carParkIdentity\":\"Car Park " + index + ":" + id + "\",\"carParkOccupancy\":\"" + (occupied * 100 / capacity) + "\",\"carParkStatus\":\"" + pick(STATUS) + "\",");
+		writer.write("\"occupiedSpaces\":\"" + occupied + "\",\"totalCapacity\":\"" + capacity + "\"}}");
+	}
+	
+	/**
+	 * Coordinates have ten decimal places, as in the live feeds.
+	 * 
+	 */
+	private String latitude()
+	{
+		return String.format(Locale.UK, "%.10f", 55.80 + random.nextDouble() * 0.1);
+	}
+	
+	private String longitude()
+	{
+		return String.format(Locale.UK, "%.10f", -4.35 + random.nextDouble() * 0.2);
+	}
+	
+	private String pick(String[] values)
+	{
+		return values[random.nextInt(values.length)];
+	}
+	
+	private String comment()
+	{
+		StringBuilder builder = new StringBuilder();
+		
+		int words = 8 + random.nextInt(40);
+		for (int i = 0; i < words; i++)
+		{
+			if (i > 0)
+			{
+				builder.append(' ');
+			}
+			
+			builder.append(pick(WORDS));
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Write a feed to a file.
+	 * 
+	 * @param args
+	 *            feed situations file
+	 * 
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: DatexFeedGenerator <" + FEED_TRAFFIC + "|" + FEED_CAR_PARK + "> <situations> <file>");
+			System.exit(1);
+		}
+		
+		OutputStream stream = new FileOutputStream(args[2]);
+		
+		try
+		{
+			new DatexFeedGenerator(1).write(args[0], Integer.parseInt(args[1]), stream);
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+	
+}
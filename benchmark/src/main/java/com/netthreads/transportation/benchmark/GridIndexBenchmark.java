@@ -0,0 +1,156 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.spatial.GridIndex;
+import com.netthreads.transportation.spatial.NearestResults;
+import com.netthreads.transportation.spatial.SpatialVisitor;
+
+/**
+ * Map tile box query, a scan parsing coordinate text against the grid
+ * index, plus radius and nearest neighbour queries.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridIndexBenchmark
+{
+	// Roughly a city centre map tile.
+	private static final double SOUTH = 55.85;
+	private static final double WEST = -4.28;
+	private static final double NORTH = 55.87;
+	private static final double EAST = -4.24;
+	
+	@Param({ "100", "10000", "1000000" })
+	public int incidents;
+	
+	private List<TrafficData> list;
+	private GridIndex<TrafficData> index;
+	
+	private Counter counter = new Counter();
+	
+	private NearestResults<TrafficData> results = new NearestResults<TrafficData>(3);
+	
+	/**
+	 * Counts records visited.
+	 * 
+	 */
+	private static class Counter implements SpatialVisitor<TrafficData>
+	{
+		private int count;
+		
+		@Override
+		public boolean visit(TrafficData record)
+		{
+			count++;
+			
+			return true;
+		}
+	}
+	
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(incidents);
+		
+		list = new ArrayList<TrafficData>(incidents);
+		
+		for (int i = 0; i < incidents; i++)
+		{
+			TrafficData data = new TrafficData();
+			
+			data.setId("GUID" + i);
+			data.setLatitudeDouble(55.6 + random.nextDouble() / 2);
+			data.setLongitudeDouble(-4.6 + random.nextDouble());
+			
+			list.add(data);
+		}
+		
+		index = new GridIndex<TrafficData>();
+		index.build(list);
+	}
+	
+	@Benchmark
+	public int listSearch()
+	{
+		int count = 0;
+		
+		for (TrafficData data : list)
+		{
+			double latitude = Double.parseDouble(data.getLatitude());
+			double longitude = Double.parseDouble(data.getLongitude());
+			
+			if (latitude >= SOUTH && latitude <= NORTH && longitude >= WEST && longitude <= EAST)
+			{
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	@Benchmark
+	public int indexSearch()
+	{
+		counter.count = 0;
+		
+		index.search(SOUTH, WEST, NORTH, EAST, counter);
+		
+		return counter.count;
+	}
+	
+	@Benchmark
+	public int indexRadius()
+	{
+		counter.count = 0;
+		
+		index.radius(55.86, -4.26, 1000, counter);
+		
+		return counter.count;
+	}
+	
+	@Benchmark
+	public int indexNearest()
+	{
+		return index.nearest(55.8613, -4.2587, 3, Double.POSITIVE_INFINITY, null, results);
+	}
+	
+}
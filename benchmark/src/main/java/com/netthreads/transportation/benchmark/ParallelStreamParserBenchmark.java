@@ -0,0 +1,129 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.JSONParserFactory;
+import com.netthreads.transportation.parser.ParallelStreamParser;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParserFactory;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParserFactory;
+
+/**
+ * ParallelStreamParser on a ForkJoinPool over generated feeds. Compare with
+ * StreamParserBenchmark.fetch for the single threaded figure.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar ParallelStreamParserBenchmark -p threads=1,2,4,8
+ * </pre>
+ * 
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class ParallelStreamParserBenchmark
+{
+	@Param({ DatexFeedGenerator.FEED_TRAFFIC, DatexFeedGenerator.FEED_CAR_PARK })
+	public String feed;
+	
+	@Param({ "100000" })
+	public int situations;
+	
+	@Param({ "4" })
+	public int threads;
+	
+	private byte[] document;
+	
+	private ForkJoinPool pool;
+	private ParallelStreamParser<Object> streamParser;
+	private DataFactory<Object> dataFactory;
+	private JSONParserFactory<Object> parserFactory;
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Setup
+	public void setup() throws IOException
+	{
+		document = new DatexFeedGenerator(situations).generate(feed, situations);
+		
+		pool = new ForkJoinPool(threads);
+		
+		streamParser = new ParallelStreamParser<Object>(pool, threads);
+		
+		if (DatexFeedGenerator.FEED_TRAFFIC.equals(feed))
+		{
+			dataFactory = (DataFactory) new TrafficDataFactory();
+			parserFactory = (JSONParserFactory) new TrafficDataParserFactory();
+		}
+		else
+		{
+			dataFactory = (DataFactory) new CarParkDataFactory();
+			parserFactory = (JSONParserFactory) new CarParkDataParserFactory();
+		}
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		pool.shutdown();
+	}
+	
+	/**
+	 * Whole document throughput.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int fetch()
+	{
+		List<Object> list = new ArrayList<Object>(situations);
+		
+		int state = streamParser.fetch(document, 0, document.length, list, dataFactory, parserFactory);
+		
+		if (state != StreamParser.DONE)
+		{
+			throw new IllegalStateException("Parse failed: " + state);
+		}
+		
+		return list.size();
+	}
+	
+}
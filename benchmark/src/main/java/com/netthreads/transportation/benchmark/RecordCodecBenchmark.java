@@ -0,0 +1,191 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netthreads.transportation.codec.CarParkDataCodec;
+import com.netthreads.transportation.codec.RecordCodec;
+import com.netthreads.transportation.codec.SnapshotCodec;
+import com.netthreads.transportation.codec.TrafficDataCodec;
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * SnapshotCodec against Java serialization over generated feeds.
+ * 
+ * Each operation encodes or decodes the whole snapshot. The bytes counter
+ * divided by the operation rate is the encoded size:
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar RecordCodecBenchmark -prof gc
+ * </pre>
+ * 
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class RecordCodecBenchmark
+{
+	@Param({ DatexFeedGenerator.FEED_TRAFFIC, DatexFeedGenerator.FEED_CAR_PARK })
+	public String feed;
+	
+	@Param({ "1000", "10000" })
+	public int situations;
+	
+	private List<Object> records = new ArrayList<Object>();
+	
+	private SnapshotCodec<Object> codec;
+	
+	private byte[] encoded;
+	private byte[] serialized;
+	
+	/**
+	 * Per iteration byte count.
+	 * 
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters
+	{
+		public long bytes;
+		
+		@Setup(Level.Iteration)
+		public void clear()
+		{
+			bytes = 0;
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Setup
+	public void setup() throws IOException, ClassNotFoundException
+	{
+		byte[] document = new DatexFeedGenerator(situations).generate(feed, situations);
+		
+		DataFactory<Object> dataFactory;
+		JSONParser<Object> pullParser;
+		RecordCodec<Object> recordCodec;
+		
+		if (DatexFeedGenerator.FEED_TRAFFIC.equals(feed))
+		{
+			dataFactory = (DataFactory) new TrafficDataFactory();
+			pullParser = (JSONParser) new TrafficDataParser();
+			recordCodec = (RecordCodec) new TrafficDataCodec();
+		}
+		else
+		{
+			dataFactory = (DataFactory) new CarParkDataFactory();
+			pullParser = (JSONParser) new CarParkDataParser();
+			recordCodec = (RecordCodec) new CarParkDataCodec();
+		}
+		
+		new StreamParserImpl<Object>().fetch(new ByteArrayInputStream(document), records, dataFactory, pullParser);
+		
+		codec = new SnapshotCodec<Object>(recordCodec, dataFactory);
+		
+		encoded = codec.encode(records);
+		serialized = serialize();
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public byte[] codecEncode(Counters counters)
+	{
+		byte[] data = codec.encode(records);
+		
+		counters.bytes += data.length;
+		
+		return data;
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public List<Object> codecDecode() throws IOException
+	{
+		return codec.decode(encoded);
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public byte[] javaEncode(Counters counters) throws IOException
+	{
+		byte[] data = serialize();
+		
+		counters.bytes += data.length;
+		
+		return data;
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Object javaDecode() throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(serialized));
+		
+		Object value = stream.readObject();
+		
+		stream.close();
+		
+		return value;
+	}
+	
+	private byte[] serialize() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		ObjectOutputStream stream = new ObjectOutputStream(bytes);
+		stream.writeObject(records);
+		stream.close();
+		
+		return bytes.toByteArray();
+	}
+	
+}
@@ -0,0 +1,283 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netthreads.transportation.metrics.ParseStatistics;
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.RecordFingerprints;
+import com.netthreads.transportation.parser.RecordIterator;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * StreamParserImpl over generated feeds.
+ * 
+ * Throughput is reported per document; the records and bytes counters give
+ * records/s and bytes/s. Allocation per record is gc.alloc.rate.norm from
+ * the GC profiler divided by the situation count:
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar StreamParserBenchmark -prof gc
+ * java -jar target/benchmarks.jar StreamParserBenchmark.fetchUnchanged -prof gc
+ * java -jar target/benchmarks.jar StreamParserBenchmark.fetchInPlace -prof gc
+ * java -jar target/benchmarks.jar "StreamParserBenchmark.fetch(Metered)?$"
+ * java -Xmx6g -jar target/benchmarks.jar StreamParserBenchmark -p situations=1000000 -jvmArgs -Xmx6g
+ * </pre>
+ * 
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class StreamParserBenchmark
+{
+	@Param({ DatexFeedGenerator.FEED_TRAFFIC, DatexFeedGenerator.FEED_CAR_PARK })
+	public String feed;
+	
+	@Param({ "1000", "10000", "100000" })
+	public int situations;
+	
+	private byte[] document;
+	
+	private StreamParser<Object> streamParser;
+	private StreamParserImpl<Object> fingerprintParser;
+	private StreamParserImpl<Object> meteredParser;
+	private StreamParser<Object> inPlaceParser;
+	private List<Object> inPlace;
+	private DataFactory<Object> dataFactory;
+	private JSONParser<Object> pullParser;
+	
+	/**
+	 * Per iteration record and byte counts.
+	 * 
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters
+	{
+		public long records;
+		public long bytes;
+		
+		@Setup(Level.Iteration)
+		public void clear()
+		{
+			records = 0;
+			bytes = 0;
+		}
+	}
+	
+	/**
+	 * Counts records without holding on to them.
+	 * 
+	 */
+	private static class CountingSink implements RecordSink<Object>
+	{
+		private long count;
+		
+		@Override
+		public boolean accept(Object record)
+		{
+			count++;
+			
+			return true;
+		}
+		
+		@Override
+		public void end(int state)
+		{
+			// Nothing to do.
+		}
+		
+		@Override
+		public void error(Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Setup
+	public void setup() throws IOException
+	{
+		document = new DatexFeedGenerator(situations).generate(feed, situations);
+		
+		streamParser = new StreamParserImpl<Object>();
+		
+		fingerprintParser = new StreamParserImpl<Object>();
+		fingerprintParser.setFingerprints(new RecordFingerprints(), null);
+		
+		meteredParser = new StreamParserImpl<Object>();
+		meteredParser.setMetrics(new ParseStatistics(feed));
+		
+		inPlaceParser = new StreamParserImpl<Object>();
+		inPlace = new ArrayList<Object>();
+		
+		if (DatexFeedGenerator.FEED_TRAFFIC.equals(feed))
+		{
+			dataFactory = (DataFactory) new TrafficDataFactory();
+			pullParser = (JSONParser) new TrafficDataParser();
+		}
+		else
+		{
+			dataFactory = (DataFactory) new CarParkDataFactory();
+			pullParser = (JSONParser) new CarParkDataParser();
+		}
+	}
+	
+	/**
+	 * Whole document throughput.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long fetch(Counters counters)
+	{
+		CountingSink sink = new CountingSink();
+		
+		int state = streamParser.fetch(new ByteArrayInputStream(document), sink, dataFactory, pullParser);
+		
+		if (state != StreamParser.DONE)
+		{
+			throw new IllegalStateException("Parse failed: " + state);
+		}
+		
+		counters.records += sink.count;
+		counters.bytes += document.length;
+		
+		return sink.count;
+	}
+	
+	/**
+	 * Whole document throughput with metrics on, compare with fetch.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long fetchMetered(Counters counters)
+	{
+		CountingSink sink = new CountingSink();
+		
+		int state = meteredParser.fetch(new ByteArrayInputStream(document), sink, dataFactory, pullParser);
+		
+		if (state != StreamParser.DONE)
+		{
+			throw new IllegalStateException("Parse failed: " + state);
+		}
+		
+		counters.records += sink.count;
+		counters.bytes += document.length;
+		
+		return sink.count;
+	}
+	
+	/**
+	 * Whole document throughput with fingerprints on. The document never
+	 * changes so after the first fetch no record is built.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long fetchUnchanged(Counters counters)
+	{
+		CountingSink sink = new CountingSink();
+		
+		int state = fingerprintParser.fetch(new ByteArrayInputStream(document), sink, dataFactory, pullParser);
+		
+		if (state != StreamParser.DONE)
+		{
+			throw new IllegalStateException("Parse failed: " + state);
+		}
+		
+		counters.bytes += document.length;
+		
+		return sink.count;
+	}
+	
+	/**
+	 * Whole document throughput refilling the last fetch's records. After the
+	 * first fetch no record is created and unchanged values are kept, compare
+	 * gc.alloc.rate.norm with fetch.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public long fetchInPlace(Counters counters)
+	{
+		int state = inPlaceParser.fetchInPlace(new ByteArrayInputStream(document), inPlace, dataFactory, pullParser);
+		
+		if (state != StreamParser.DONE)
+		{
+			throw new IllegalStateException("Parse failed: " + state);
+		}
+		
+		counters.records += inPlace.size();
+		counters.bytes += document.length;
+		
+		return inPlace.size();
+	}
+	
+	/**
+	 * Time from starting the parse to holding the first record.
+	 * 
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Object timeToFirstRecord() throws IOException
+	{
+		RecordIterator<Object> iterator = streamParser.iterator(new ByteArrayInputStream(document), dataFactory, pullParser);
+		
+		Object record = iterator.next();
+		
+		iterator.close();
+		
+		return record;
+	}
+	
+}
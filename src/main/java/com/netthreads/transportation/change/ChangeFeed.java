@@ -0,0 +1,316 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.change;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.netthreads.transportation.data.SituationRecord;
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.UnchangedListener;
+
+/**
+ * Turns successive polls of a feed into added, updated and removed events.
+ * 
+ * The feed keeps the id and version of every record from the previous poll.
+ * A record is updated when its situationRecordVersion or
+ * situationRecordVersionTime differs, records with neither are always
+ * treated as updated. Records are only reported removed when a poll
+ * completes, a cancelled or failed poll leaves the unseen records in place.
+ * 
+ * Unchanged records are not reported, the feed keeps the previous instance.
+ * Set the feed as the unchanged listener of a stream parser using
+ * fingerprints so that records skipped by the parser are kept, clear the
+ * fingerprints whenever the feed is cleared. Not thread safe, use one feed
+ * per polled source.
+ * 
+ */
+public class ChangeFeed<T extends SituationRecord> implements RecordSink<T>, UnchangedListener
+{
+	private ChangeListener<T> listener;
+	
+	private Map<String, Entry<T>> entries;
+	
+	/**
+	 * Poll count, entries not stamped with the current poll were not seen.
+	 */
+	private int generation;
+	
+	private boolean polling;
+	
+	private Exception error;
+	
+	/**
+	 * Construct feed.
+	 * 
+	 * @param listener
+	 */
+	public ChangeFeed(ChangeListener<T> listener)
+	{
+		this.listener = listener;
+		
+		entries = new HashMap<String, Entry<T>>();
+	}
+	
+	/**
+	 * Fetch the next poll and report its changes.
+	 * 
+	 * @param streamParser
+	 * @param stream
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The final parse state.
+	 */
+	public int poll(StreamParser<T> streamParser, InputStream stream, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		return streamParser.fetch(stream, this, dataFactory, pullParser);
+	}
+	
+	/**
+	 * Compare record with the last version seen.
+	 * 
+	 * @param record
+	 * 
+	 * @return True to continue.
+	 */
+	@Override
+	public boolean accept(T record)
+	{
+		if (!polling)
+		{
+			start();
+		}
+		
+		Entry<T> entry = entries.get(record.getId());
+		
+		if (entry == null)
+		{
+			entries.put(record.getId(), new Entry<T>(record, generation));
+			
+			listener.added(record);
+		}
+		else
+		{
+			T previous = entry.record;
+			
+			entry.generation = generation;
+			
+			if (isChanged(previous, record))
+			{
+				entry.record = record;
+				
+				listener.updated(previous, record);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Record skipped by the parser as unchanged, keep the previous version.
+	 * 
+	 * @param id
+	 */
+	@Override
+	public void unchanged(String id)
+	{
+		if (!polling)
+		{
+			start();
+		}
+		
+		Entry<T> entry = entries.get(id);
+		
+		if (entry != null)
+		{
+			entry.generation = generation;
+		}
+	}
+	
+	/**
+	 * Poll finished, report records not seen if it completed.
+	 * 
+	 * @param state
+	 */
+	@Override
+	public void end(int state)
+	{
+		if (!polling)
+		{
+			start();
+		}
+		
+		if (state == StreamParser.DONE)
+		{
+			Iterator<Entry<T>> iterator = entries.values().iterator();
+			
+			while (iterator.hasNext())
+			{
+				Entry<T> entry = iterator.next();
+				
+				if (entry.generation != generation)
+				{
+					iterator.remove();
+					
+					listener.removed(entry.record);
+				}
+			}
+		}
+		
+		// Next record starts a new poll.
+		polling = false;
+	}
+	
+	/**
+	 * Poll failed.
+	 * 
+	 * @param e
+	 */
+	@Override
+	public void error(Exception e)
+	{
+		if (!polling)
+		{
+			start();
+		}
+		
+		error = e;
+	}
+	
+	/**
+	 * Look up the current version of a record.
+	 * 
+	 * @param id
+	 * 
+	 * @return The record or null.
+	 */
+	public T get(String id)
+	{
+		Entry<T> entry = entries.get(id);
+		
+		return entry != null ? entry.record : null;
+	}
+	
+	/**
+	 * Current version of every record.
+	 * 
+	 * @return The records.
+	 */
+	public List<T> getRecords()
+	{
+		List<T> records = new ArrayList<T>(entries.size());
+		
+		for (Entry<T> entry : entries.values())
+		{
+			records.add(entry.record);
+		}
+		
+		return records;
+	}
+	
+	/**
+	 * Number of records held.
+	 * 
+	 * @return The count.
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+	
+	/**
+	 * Error from the last poll.
+	 * 
+	 * @return The error or null.
+	 */
+	public Exception getError()
+	{
+		return error;
+	}
+	
+	/**
+	 * Forget all records, the next poll reports everything as added.
+	 * 
+	 */
+	public void clear()
+	{
+		entries.clear();
+		
+		polling = false;
+		error = null;
+	}
+	
+	/**
+	 * Start a new poll.
+	 * 
+	 */
+	private void start()
+	{
+		generation++;
+		
+		polling = true;
+		error = null;
+	}
+	
+	/**
+	 * Compare versions.
+	 * 
+	 * @param previous
+	 * @param record
+	 * 
+	 * @return True if the record has changed.
+	 */
+	private static boolean isChanged(SituationRecord previous, SituationRecord record)
+	{
+		String previousTime = previous.getVersionTime();
+		String time = record.getVersionTime();
+		
+		if (record.getVersion() == SituationRecord.NO_VERSION && (time == null || time.length() == 0))
+		{
+			return true;
+		}
+		
+		return previous.getVersion() != record.getVersion() || (time == null ? previousTime != null : !time.equals(previousTime));
+	}
+	
+	/**
+	 * Record and the poll it was last seen in.
+	 * 
+	 */
+	private static class Entry<T>
+	{
+		private T record;
+		private int generation;
+		
+		public Entry(T record, int generation)
+		{
+			this.record = record;
+			this.generation = generation;
+		}
+	}
+	
+}
@@ -0,0 +1,51 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.change;
+
+/**
+ * Receives the differences between one poll of a feed and the next.
+ * 
+ */
+public interface ChangeListener<T>
+{
+	/**
+	 * Record seen for the first time.
+	 * 
+	 * @param record
+	 */
+	public void added(T record);
+	
+	/**
+	 * Record has a new version.
+	 * 
+	 * @param previous
+	 *            The version from the last poll.
+	 * @param record
+	 *            The new version.
+	 */
+	public void updated(T previous, T record);
+	
+	/**
+	 * Record no longer in the feed.
+	 * 
+	 * @param previous
+	 *            The last version seen.
+	 */
+	public void removed(T previous);
+}
@@ -0,0 +1,80 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.codec;
+
+import java.io.IOException;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.SituationRecord;
+
+/**
+ * Car park record codec.
+ * 
+ * Counts are varints with one byte for a missing value. Each number is
+ * followed by the feed text it was read from when formatting it would not
+ * give that text back, one byte when there is none. The status text is
+ * stored rather than its code so values the enum does not know survive.
+ * 
+ */
+public class CarParkDataCodec implements RecordCodec<CarParkData>
+{
+	public static final int KIND = 2;
+	
+	@Override
+	public int getKind()
+	{
+		return KIND;
+	}
+	
+	@Override
+	public void write(CarParkData record, CodecOutput output)
+	{
+		output.writeString(record.getId());
+		output.writeOptionalInt(record.getVersion(), SituationRecord.NO_VERSION);
+		output.writeShared(record.getVersionTime());
+		output.writeString(record.getCarParkIdentity());
+		output.writeOptionalInt(record.getCarParkOccupancyInt(), CarParkData.NO_VALUE);
+		output.writeShared(record.getCarParkOccupancyText());
+		output.writeShared(record.getCarParkStatus());
+		output.writeOptionalInt(record.getOccupiedSpacesInt(), CarParkData.NO_VALUE);
+		output.writeShared(record.getOccupiedSpacesText());
+		output.writeOptionalInt(record.getTotalCapacityInt(), CarParkData.NO_VALUE);
+		output.writeShared(record.getTotalCapacityText());
+		output.writeCoordinate(record.getLatitudeDouble());
+		output.writeCoordinateText(record.getLatitudeText(), record.getLatitudeDouble());
+		output.writeCoordinate(record.getLongitudeDouble());
+		output.writeCoordinateText(record.getLongitudeText(), record.getLongitudeDouble());
+	}
+	
+	@Override
+	public void read(CodecInput input, CarParkData record) throws IOException
+	{
+		record.setId(input.readString());
+		record.setVersion(input.readOptionalInt(SituationRecord.NO_VERSION));
+		record.setVersionTime(input.readShared());
+		record.setCarParkIdentity(input.readString());
+		record.setCarParkOccupancy(input.readOptionalInt(CarParkData.NO_VALUE), input.readShared());
+		record.setCarParkStatus(input.readShared());
+		record.setOccupiedSpaces(input.readOptionalInt(CarParkData.NO_VALUE), input.readShared());
+		record.setTotalCapacity(input.readOptionalInt(CarParkData.NO_VALUE), input.readShared());
+		record.setLatitude(input.readCoordinate(), input.readShared());
+		record.setLongitude(input.readCoordinate(), input.readShared());
+	}
+	
+}
@@ -0,0 +1,311 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what CodecOutput writes.
+ * 
+ * Truncated input throws EOFException, anything else malformed an
+ * IOException. reset() starts on new input and clears the dictionary.
+ * 
+ * Not thread safe.
+ * 
+ */
+public class CodecInput
+{
+	private static final int MAX_VARINT_SHIFT = 63;
+	
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	
+	private List<String> dictionary = new ArrayList<String>();
+	
+	private char[] chars = new char[256];
+	
+	/**
+	 * Start on new input.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public void reset(byte[] data, int offset, int length)
+	{
+		buffer = data;
+		position = offset;
+		limit = offset + length;
+		
+		dictionary.clear();
+	}
+	
+	public int readByte() throws IOException
+	{
+		if (position >= limit)
+		{
+			throw new EOFException();
+		}
+		
+		return buffer[position++] & 0xFF;
+	}
+	
+	/**
+	 * Read an unsigned varint.
+	 * 
+	 * @return The value.
+	 * 
+	 * @throws IOException
+	 */
+	public long readVarLong() throws IOException
+	{
+		long value = 0;
+		
+		for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += 7)
+		{
+			int b = readByte();
+			
+			value |= (long) (b & 0x7F) << shift;
+			
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		
+		throw new IOException("Malformed varint");
+	}
+	
+	public long readSignedVarLong() throws IOException
+	{
+		long value = readVarLong();
+		
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**
+	 * Read an int which may be missing.
+	 * 
+	 * @param missing
+	 *            Value standing for none.
+	 * 
+	 * @return The value.
+	 * 
+	 * @throws IOException
+	 */
+	public int readOptionalInt(int missing) throws IOException
+	{
+		long value = readVarLong();
+		
+		if (value == 0)
+		{
+			return missing;
+		}
+		
+		value--;
+		
+		return (int) ((value >>> 1) ^ -(value & 1));
+	}
+	
+	public long readLong() throws IOException
+	{
+		if (limit - position < 8)
+		{
+			throw new EOFException();
+		}
+		
+		long value = 0;
+		
+		for (int i = 0; i < 8; i++)
+		{
+			value |= (long) (buffer[position++] & 0xFF) << (i * 8);
+		}
+		
+		return value;
+	}
+	
+	public double readCoordinate() throws IOException
+	{
+		long value = readVarLong();
+		
+		if ((value & 1) != 0)
+		{
+			return Double.longBitsToDouble(readLong());
+		}
+		
+		value >>>= 1;
+		
+		return ((value >>> 1) ^ -(value & 1)) / CodecOutput.COORDINATE_SCALE;
+	}
+	
+	/**
+	 * Read a UTF-8 string.
+	 * 
+	 * @return The string or null.
+	 * 
+	 * @throws IOException
+	 */
+	public String readString() throws IOException
+	{
+		long prefix = readVarLong();
+		
+		if (prefix == 0)
+		{
+			return null;
+		}
+		
+		long bytes = prefix - 1;
+		
+		// Unsigned prefixes past Long.MAX_VALUE wrap negative.
+		if (bytes < 0)
+		{
+			throw new IOException("Bad string length " + Long.toHexString(prefix));
+		}
+		
+		if (bytes > limit - position)
+		{
+			throw new EOFException();
+		}
+		
+		int end = position + (int) bytes;
+		
+		if (chars.length < bytes)
+		{
+			chars = new char[(int) bytes];
+		}
+		
+		int count = 0;
+		
+		while (position < end)
+		{
+			int b = buffer[position++] & 0xFF;
+			
+			if (b < 0x80)
+			{
+				chars[count++] = (char) b;
+			}
+			else if (b < 0xE0)
+			{
+				chars[count++] = (char) (((b & 0x1F) << 6) | continuation(end));
+			}
+			else if (b < 0xF0)
+			{
+				chars[count++] = (char) (((b & 0x0F) << 12) | (continuation(end) << 6) | continuation(end));
+			}
+			else
+			{
+				int code = ((b & 0x07) << 18) | (continuation(end) << 12) | (continuation(end) << 6) | continuation(end);
+				
+				if (code < Character.MIN_SUPPLEMENTARY_CODE_POINT || code > Character.MAX_CODE_POINT)
+				{
+					throw new IOException("Malformed UTF-8");
+				}
+				
+				// Four bytes never make more chars than bytes.
+				count += Character.toChars(code, chars, count);
+			}
+		}
+		
+		return new String(chars, 0, count);
+	}
+	
+	/**
+	 * Read a string written through the dictionary.
+	 * 
+	 * @return The string or null.
+	 * 
+	 * @throws IOException
+	 */
+	public String readShared() throws IOException
+	{
+		long marker = readVarLong();
+		
+		String text;
+		
+		if (marker == CodecOutput.SHARED_NULL)
+		{
+			text = null;
+		}
+		else if (marker == CodecOutput.SHARED_NEW)
+		{
+			text = readString();
+			
+			if (text == null)
+			{
+				throw new IOException("Null dictionary entry");
+			}
+			
+			dictionary.add(text);
+		}
+		else
+		{
+			long index = marker - CodecOutput.SHARED_FIRST;
+			
+			if (index < 0 || index >= dictionary.size())
+			{
+				throw new IOException("Bad dictionary index " + index);
+			}
+			
+			text = dictionary.get((int) index);
+		}
+		
+		return text;
+	}
+	
+	/**
+	 * Bytes left.
+	 * 
+	 * @return The count.
+	 */
+	public int remaining()
+	{
+		return limit - position;
+	}
+	
+	/**
+	 * Next byte of a multi-byte sequence.
+	 * 
+	 * @param end
+	 * 
+	 * @return Its low six bits.
+	 * 
+	 * @throws IOException
+	 */
+	private int continuation(int end) throws IOException
+	{
+		if (position >= end)
+		{
+			throw new IOException("Truncated UTF-8");
+		}
+		
+		int b = buffer[position++] & 0xFF;
+		
+		if ((b & 0xC0) != 0x80)
+		{
+			throw new IOException("Malformed UTF-8");
+		}
+		
+		return b & 0x3F;
+	}
+	
+}
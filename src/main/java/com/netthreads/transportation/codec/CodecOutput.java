@@ -0,0 +1,370 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable byte buffer with the primitive encodings used by the codecs.
+ * 
+ * Integers are varints, seven bits a byte least significant first, signed
+ * values zigzag encoded so small negatives stay short. Strings are UTF-8
+ * prefixed by their byte length. Shared strings go through a dictionary:
+ * the first occurrence is written in full and later ones as its index.
+ * reset() clears the buffer and the dictionary and keeps the memory.
+ * 
+ * Not thread safe.
+ * 
+ */
+public class CodecOutput
+{
+	public static final int DEFAULT_CAPACITY = 4096;
+	
+	/**
+	 * Coordinates with at most this many decimal places are stored scaled.
+	 */
+	static final double COORDINATE_SCALE = 1e7;
+	
+	private static final long MAX_SCALED = 1L << 52;
+	
+	// Shared string markers, dictionary indexes follow.
+	static final int SHARED_NULL = 0;
+	static final int SHARED_NEW = 1;
+	static final int SHARED_FIRST = 2;
+	
+	private byte[] buffer;
+	private int size;
+	
+	private Map<String, Integer> dictionary = new HashMap<String, Integer>();
+	
+	public CodecOutput()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Construct output.
+	 * 
+	 * @param capacity
+	 *            Initial buffer size.
+	 */
+	public CodecOutput(int capacity)
+	{
+		buffer = new byte[Math.max(capacity, 16)];
+	}
+	
+	/**
+	 * Clear for reuse.
+	 * 
+	 */
+	public void reset()
+	{
+		size = 0;
+		
+		dictionary.clear();
+	}
+	
+	public void writeByte(int value)
+	{
+		ensure(1);
+		
+		buffer[size++] = (byte) value;
+	}
+	
+	/**
+	 * Write an unsigned varint.
+	 * 
+	 * @param value
+	 *            Treated as unsigned.
+	 */
+	public void writeVarLong(long value)
+	{
+		ensure(10);
+		
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+			
+			value >>>= 7;
+		}
+		
+		buffer[size++] = (byte) value;
+	}
+	
+	/**
+	 * Write a signed varint.
+	 * 
+	 * @param value
+	 */
+	public void writeSignedVarLong(long value)
+	{
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+	
+	/**
+	 * Write an int which may be missing, missing costs one byte.
+	 * 
+	 * @param value
+	 * @param missing
+	 *            Value standing for none.
+	 */
+	public void writeOptionalInt(int value, int missing)
+	{
+		if (value == missing)
+		{
+			writeVarLong(0);
+		}
+		else
+		{
+			writeVarLong((((long) value << 1) ^ (value >> 31)) + 1);
+		}
+	}
+	
+	/**
+	 * Write eight bytes, little endian.
+	 * 
+	 * @param value
+	 */
+	public void writeLong(long value)
+	{
+		ensure(8);
+		
+		for (int i = 0; i < 8; i++)
+		{
+			buffer[size++] = (byte) value;
+			
+			value >>>= 8;
+		}
+	}
+	
+	/**
+	 * Write a coordinate. Values with seven or fewer decimal places, which
+	 * covers those parsed from the feeds, are stored as a scaled varint and
+	 * read back exactly. Anything else, including NaN, is stored in full.
+	 * 
+	 * @param value
+	 */
+	public void writeCoordinate(double value)
+	{
+		double scaled = Math.rint(value * COORDINATE_SCALE);
+		
+		long units = (long) scaled;
+		
+		// Bit equality keeps the sign of zero.
+		if (Math.abs(scaled) < MAX_SCALED && Double.doubleToRawLongBits(units / COORDINATE_SCALE) == Double.doubleToRawLongBits(value))
+		{
+			writeVarLong(((units << 1) ^ (units >> 63)) << 1);
+		}
+		else
+		{
+			writeVarLong(1);
+			writeLong(Double.doubleToRawLongBits(value));
+		}
+	}
+	
+	/**
+	 * Write the text a coordinate was read from, through the dictionary.
+	 * Long decimals are held as text by the parsers though formatting the
+	 * value gives them back, they are written as none.
+	 * 
+	 * @param text
+	 *            May be null.
+	 * @param value
+	 */
+	public void writeCoordinateText(String text, double value)
+	{
+		if (text != null && !Double.isNaN(value) && text.equals(Double.toString(value)))
+		{
+			text = null;
+		}
+		
+		writeShared(text);
+	}
+	
+	/**
+	 * Write a string as its UTF-8 length and bytes.
+	 * 
+	 * @param text
+	 *            May be null.
+	 */
+	public void writeString(String text)
+	{
+		if (text == null)
+		{
+			writeVarLong(0);
+		}
+		else
+		{
+			int length = text.length();
+			int bytes = utf8Length(text);
+			
+			writeVarLong(bytes + 1L);
+			
+			ensure(bytes);
+			
+			for (int i = 0; i < length; i++)
+			{
+				char c = text.charAt(i);
+				
+				if (c < 0x80)
+				{
+					buffer[size++] = (byte) c;
+				}
+				else if (c < 0x800)
+				{
+					buffer[size++] = (byte) (0xC0 | (c >> 6));
+					buffer[size++] = (byte) (0x80 | (c & 0x3F));
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1)))
+				{
+					int code = Character.toCodePoint(c, text.charAt(++i));
+					
+					buffer[size++] = (byte) (0xF0 | (code >> 18));
+					buffer[size++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+					buffer[size++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+					buffer[size++] = (byte) (0x80 | (code & 0x3F));
+				}
+				else
+				{
+					// Unpaired surrogates are kept, as three bytes.
+					buffer[size++] = (byte) (0xE0 | (c >> 12));
+					buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[size++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write a string likely to repeat, through the dictionary.
+	 * 
+	 * @param text
+	 *            May be null.
+	 */
+	public void writeShared(String text)
+	{
+		if (text == null)
+		{
+			writeVarLong(SHARED_NULL);
+		}
+		else
+		{
+			Integer index = dictionary.get(text);
+			
+			if (index != null)
+			{
+				writeVarLong(SHARED_FIRST + index.longValue());
+			}
+			else
+			{
+				dictionary.put(text, dictionary.size());
+				
+				writeVarLong(SHARED_NEW);
+				writeString(text);
+			}
+		}
+	}
+	
+	/**
+	 * Bytes written.
+	 * 
+	 * @return The count.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Current buffer, valid up to size().
+	 * 
+	 * @return The buffer.
+	 */
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+	
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(buffer, size);
+	}
+	
+	public void writeTo(OutputStream stream) throws IOException
+	{
+		stream.write(buffer, 0, size);
+	}
+	
+	/**
+	 * Make room for more bytes.
+	 * 
+	 * @param count
+	 */
+	private void ensure(int count)
+	{
+		if (size + count > buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + count));
+		}
+	}
+	
+	/**
+	 * Bytes needed to encode a string.
+	 * 
+	 * @param text
+	 * 
+	 * @return The count.
+	 */
+	private static int utf8Length(String text)
+	{
+		int length = text.length();
+		int bytes = length;
+		
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			
+			if (c >= 0x800)
+			{
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1)))
+				{
+					// Four bytes for two chars.
+					bytes += 2;
+					
+					i++;
+				}
+				else
+				{
+					bytes += 2;
+				}
+			}
+			else if (c >= 0x80)
+			{
+				bytes++;
+			}
+		}
+		
+		return bytes;
+	}
+	
+}
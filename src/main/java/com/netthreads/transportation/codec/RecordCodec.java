@@ -0,0 +1,55 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.codec;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads one record type. Fields are in a fixed order for each
+ * format version.
+ * 
+ */
+public interface RecordCodec<T>
+{
+	/**
+	 * Record type written in the snapshot header.
+	 * 
+	 * @return The kind.
+	 */
+	public int getKind();
+	
+	/**
+	 * Write a record.
+	 * 
+	 * @param record
+	 * @param output
+	 */
+	public void write(T record, CodecOutput output);
+	
+	/**
+	 * Read a record.
+	 * 
+	 * @param input
+	 * @param record
+	 *            Populated, every field is set.
+	 * 
+	 * @throws IOException
+	 */
+	public void read(CodecInput input, T record) throws IOException;
+}
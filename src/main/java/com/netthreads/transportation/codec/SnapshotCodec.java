@@ -0,0 +1,238 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.netthreads.transportation.parser.DataFactory;
+
+/**
+ * Encodes whole sets of records, for shipping between nodes or caching to
+ * disk, in place of Java serialization.
+ * 
+ * A snapshot is a header of magic number, format version, record kind and
+ * count, then the records. The string dictionary starts empty for each
+ * snapshot so a snapshot decodes on its own. Readers reject versions newer
+ * than their own.
+ * 
+ * Buffers are reused between calls, not thread safe.
+ * 
+ */
+public class SnapshotCodec<T>
+{
+	public static final int MAGIC = 0x54445331;
+	public static final int FORMAT_VERSION = 1;
+	
+	private static final int READ_BUFFER_SIZE = 8192;
+	
+	private RecordCodec<T> codec;
+	private DataFactory<T> dataFactory;
+	
+	private CodecOutput output = new CodecOutput();
+	private CodecInput input = new CodecInput();
+	
+	/**
+	 * Construct codec.
+	 * 
+	 * @param codec
+	 * @param dataFactory
+	 *            Creates the decoded records.
+	 */
+	public SnapshotCodec(RecordCodec<T> codec, DataFactory<T> dataFactory)
+	{
+		this.codec = codec;
+		this.dataFactory = dataFactory;
+	}
+	
+	/**
+	 * Encode records.
+	 * 
+	 * @param records
+	 * 
+	 * @return A new array.
+	 */
+	public byte[] encode(Collection<T> records)
+	{
+		return write(records).toByteArray();
+	}
+	
+	/**
+	 * Encode records to a stream.
+	 * 
+	 * @param records
+	 * @param stream
+	 * 
+	 * @throws IOException
+	 */
+	public void encode(Collection<T> records, OutputStream stream) throws IOException
+	{
+		write(records).writeTo(stream);
+	}
+	
+	/**
+	 * Decode a snapshot.
+	 * 
+	 * @param data
+	 * 
+	 * @return The records.
+	 * 
+	 * @throws IOException
+	 *             If malformed or of another kind or newer version.
+	 */
+	public List<T> decode(byte[] data) throws IOException
+	{
+		List<T> records = new ArrayList<T>();
+		
+		decode(data, 0, data.length, records);
+		
+		return records;
+	}
+	
+	/**
+	 * Decode a snapshot read to the end of a stream.
+	 * 
+	 * @param stream
+	 * 
+	 * @return The records.
+	 * 
+	 * @throws IOException
+	 */
+	public List<T> decode(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		
+		int read;
+		
+		while ((read = stream.read(buffer)) != -1)
+		{
+			bytes.write(buffer, 0, read);
+		}
+		
+		return decode(bytes.toByteArray());
+	}
+	
+	/**
+	 * Decode a snapshot, adding its records to a list.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param records
+	 * 
+	 * @return The number of records added.
+	 * 
+	 * @throws IOException
+	 */
+	public int decode(byte[] data, int offset, int length, List<T> records) throws IOException
+	{
+		input.reset(data, offset, length);
+		
+		if (readInt() != MAGIC)
+		{
+			throw new IOException("Not a snapshot");
+		}
+		
+		long version = input.readVarLong();
+		
+		if (version < 1 || version > FORMAT_VERSION)
+		{
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+		
+		long kind = input.readVarLong();
+		
+		if (kind != codec.getKind())
+		{
+			throw new IOException("Snapshot holds kind " + kind + " not " + codec.getKind());
+		}
+		
+		long count = input.readVarLong();
+		
+		// Every record takes at least a byte, reject counts that cannot fit.
+		if (count > input.remaining())
+		{
+			throw new IOException("Bad record count " + count);
+		}
+		
+		if (records instanceof ArrayList)
+		{
+			((ArrayList<T>) records).ensureCapacity(records.size() + (int) count);
+		}
+		
+		for (long i = 0; i < count; i++)
+		{
+			T record = dataFactory.createRecord();
+			
+			codec.read(input, record);
+			
+			records.add(record);
+		}
+		
+		return (int) count;
+	}
+	
+	/**
+	 * Write the header and records to the reused output.
+	 * 
+	 * @param records
+	 * 
+	 * @return The output.
+	 */
+	private CodecOutput write(Collection<T> records)
+	{
+		output.reset();
+		
+		for (int shift = 24; shift >= 0; shift -= 8)
+		{
+			output.writeByte(MAGIC >>> shift);
+		}
+		
+		output.writeVarLong(FORMAT_VERSION);
+		output.writeVarLong(codec.getKind());
+		output.writeVarLong(records.size());
+		
+		for (T record : records)
+		{
+			codec.write(record, output);
+		}
+		
+		return output;
+	}
+	
+	private int readInt() throws IOException
+	{
+		int value = 0;
+		
+		for (int i = 0; i < 4; i++)
+		{
+			value = (value << 8) | input.readByte();
+		}
+		
+		return value;
+	}
+	
+}
@@ -0,0 +1,81 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.codec;
+
+import java.io.IOException;
+
+import com.netthreads.transportation.data.SituationRecord;
+import com.netthreads.transportation.data.TrafficData;
+
+/**
+ * Traffic record codec.
+ * 
+ * Names, times and the management type repeat across a feed and go through
+ * the dictionary. Coordinates are followed by the feed text they were read
+ * from when formatting them would not give that text back. The type text is
+ * stored rather than its code so values the enum does not know survive.
+ * 
+ */
+public class TrafficDataCodec implements RecordCodec<TrafficData>
+{
+	public static final int KIND = 1;
+	
+	@Override
+	public int getKind()
+	{
+		return KIND;
+	}
+	
+	@Override
+	public void write(TrafficData record, CodecOutput output)
+	{
+		output.writeString(record.getId());
+		output.writeOptionalInt(record.getVersion(), SituationRecord.NO_VERSION);
+		output.writeShared(record.getVersionTime());
+		output.writeString(record.getDescription());
+		output.writeShared(record.getLocalLinkName());
+		output.writeShared(record.getLinkName());
+		output.writeShared(record.getTownName());
+		output.writeShared(record.getType());
+		output.writeCoordinate(record.getLatitudeDouble());
+		output.writeCoordinateText(record.getLatitudeText(), record.getLatitudeDouble());
+		output.writeCoordinate(record.getLongitudeDouble());
+		output.writeCoordinateText(record.getLongitudeText(), record.getLongitudeDouble());
+		output.writeShared(record.getOverallStartTime());
+		output.writeShared(record.getOverallEndTime());
+	}
+	
+	@Override
+	public void read(CodecInput input, TrafficData record) throws IOException
+	{
+		record.setId(input.readString());
+		record.setVersion(input.readOptionalInt(SituationRecord.NO_VERSION));
+		record.setVersionTime(input.readShared());
+		record.setDescription(input.readString());
+		record.setLocalLinkName(input.readShared());
+		record.setLinkName(input.readShared());
+		record.setTownName(input.readShared());
+		record.setType(input.readShared());
+		record.setLatitude(input.readCoordinate(), input.readShared());
+		record.setLongitude(input.readCoordinate(), input.readShared());
+		record.setOverallStartTime(input.readShared());
+		record.setOverallEndTime(input.readShared());
+	}
+	
+}
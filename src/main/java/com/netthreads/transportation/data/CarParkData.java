@@ -24,12 +24,12 @@ import java.io.Serializable;
  * Car Park data class.
  * 
  */
-public class CarParkData implements Serializable
+public class CarParkData implements SituationRecord, Serializable
 {
 	/**
 	 * 
 	 */
-    private static final long serialVersionUID = -4305130932635634314L;
+    private static final long serialVersionUID = -2917254710364951107L;
     
 	// ------------------------------------------------------------------------
 	// Constants
@@ -49,15 +49,37 @@ public class CarParkData implements Serializable
 	public static final String TAG_OCCUPIED_SPACES = "occupiedSpaces";
 	public static final String TAG_TOTAL_CAPACITY = "totalCapacity";
 	
+	/**
+	 * Sentinel for missing numeric values.
+	 */
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+	
+	/**
+	 * Sentinel for missing coordinates.
+	 */
+	public static final double NO_COORDINATE = Double.NaN;
+	
 	private String id;
+	private int version = NO_VERSION;
+	private String versionTime = "";
 	private String carParkIdentity;
-	private String carParkOccupancy;
+	private int carParkOccupancy = NO_VALUE;
 	private String carParkStatus;
-	private String occupiedSpaces;
-	private String latitude;
-	private String longitude;
-	private String totalCapacity;
+	private CarParkStatus carParkStatusCode = CarParkStatus.UNKNOWN;
+	private int occupiedSpaces = NO_VALUE;
+	private double latitude = NO_COORDINATE;
+	private double longitude = NO_COORDINATE;
+	private int totalCapacity = NO_VALUE;
 	
+	// Original text of numeric values, only held when formatting the value
+	// would not give it back.
+	private String carParkOccupancyText;
+	private String occupiedSpacesText;
+	private String totalCapacityText;
+	private String latitudeText;
+	private String longitudeText;
+	
+	@Override
 	public String getId()
 	{
 		return id;
@@ -68,6 +90,28 @@ public class CarParkData implements Serializable
 		this.id = id;
 	}
 	
+	@Override
+	public int getVersion()
+	{
+		return version;
+	}
+	
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+	
+	@Override
+	public String getVersionTime()
+	{
+		return versionTime;
+	}
+	
+	public void setVersionTime(String versionTime)
+	{
+		this.versionTime = versionTime;
+	}
+	
 	public String getCarParkIdentity()
 	{
 		return carParkIdentity;
@@ -80,12 +124,46 @@ public class CarParkData implements Serializable
 	
 	public String getCarParkOccupancy()
 	{
-		return carParkOccupancy;
+		return carParkOccupancyText != null ? carParkOccupancyText : formatInt(carParkOccupancy);
 	}
 	
 	public void setCarParkOccupancy(String carParkOccupancy)
+	{
+		this.carParkOccupancy = parseInt(carParkOccupancy);
+		this.carParkOccupancyText = carParkOccupancy;
+	}
+	
+	public int getCarParkOccupancyInt()
+	{
+		return carParkOccupancy;
+	}
+	
+	public void setCarParkOccupancyInt(int carParkOccupancy)
+	{
+		this.carParkOccupancy = carParkOccupancy;
+		this.carParkOccupancyText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param carParkOccupancy
+	 * @param text
+	 */
+	public void setCarParkOccupancy(int carParkOccupancy, String text)
 	{
 		this.carParkOccupancy = carParkOccupancy;
+		this.carParkOccupancyText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getCarParkOccupancyText()
+	{
+		return carParkOccupancyText;
 	}
 	
 	public String getCarParkStatus()
@@ -96,52 +174,290 @@ public class CarParkData implements Serializable
 	public void setCarParkStatus(String carParkStatus)
 	{
 		this.carParkStatus = carParkStatus;
+		this.carParkStatusCode = CarParkStatus.fromText(carParkStatus);
+	}
+	
+	public CarParkStatus getCarParkStatusCode()
+	{
+		return carParkStatusCode;
+	}
+	
+	public void setCarParkStatusCode(CarParkStatus carParkStatusCode)
+	{
+		this.carParkStatusCode = carParkStatusCode;
+		this.carParkStatus = carParkStatusCode.getText();
 	}
 	
 	public String getOccupiedSpaces()
 	{
-		return occupiedSpaces;
+		return occupiedSpacesText != null ? occupiedSpacesText : formatInt(occupiedSpaces);
 	}
 	
 	public void setOccupiedSpaces(String occupiedSpaces)
+	{
+		this.occupiedSpaces = parseInt(occupiedSpaces);
+		this.occupiedSpacesText = occupiedSpaces;
+	}
+	
+	public int getOccupiedSpacesInt()
+	{
+		return occupiedSpaces;
+	}
+	
+	public void setOccupiedSpacesInt(int occupiedSpaces)
 	{
 		this.occupiedSpaces = occupiedSpaces;
+		this.occupiedSpacesText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param occupiedSpaces
+	 * @param text
+	 */
+	public void setOccupiedSpaces(int occupiedSpaces, String text)
+	{
+		this.occupiedSpaces = occupiedSpaces;
+		this.occupiedSpacesText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getOccupiedSpacesText()
+	{
+		return occupiedSpacesText;
 	}
 	
 	public String getTotalCapacity()
 	{
-		return totalCapacity;
+		return totalCapacityText != null ? totalCapacityText : formatInt(totalCapacity);
 	}
 	
 	public void setTotalCapacity(String totalCapacity)
+	{
+		this.totalCapacity = parseInt(totalCapacity);
+		this.totalCapacityText = totalCapacity;
+	}
+	
+	public int getTotalCapacityInt()
+	{
+		return totalCapacity;
+	}
+	
+	public void setTotalCapacityInt(int totalCapacity)
+	{
+		this.totalCapacity = totalCapacity;
+		this.totalCapacityText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param totalCapacity
+	 * @param text
+	 */
+	public void setTotalCapacity(int totalCapacity, String text)
 	{
 		this.totalCapacity = totalCapacity;
+		this.totalCapacityText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getTotalCapacityText()
+	{
+		return totalCapacityText;
+	}
+	
+	/**
+	 * Free spaces.
+	 * 
+	 * @return Capacity less occupied spaces or NO_VALUE if either is missing.
+	 */
+	public int getFreeSpaces()
+	{
+		if (totalCapacity == NO_VALUE || occupiedSpaces == NO_VALUE)
+		{
+			return NO_VALUE;
+		}
+		
+		return totalCapacity - occupiedSpaces;
 	}
 	
 	public String getLatitude()
 	{
-		return latitude;
+		return latitudeText != null ? latitudeText : formatDouble(latitude);
 	}
 	
 	public void setLatitude(String latitude)
+	{
+		this.latitude = parseDouble(latitude);
+		this.latitudeText = latitude;
+	}
+	
+	@Override
+	public double getLatitudeDouble()
+	{
+		return latitude;
+	}
+	
+	public void setLatitudeDouble(double latitude)
 	{
 		this.latitude = latitude;
+		this.latitudeText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param latitude
+	 * @param text
+	 */
+	public void setLatitude(double latitude, String text)
+	{
+		this.latitude = latitude;
+		this.latitudeText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getLatitudeText()
+	{
+		return latitudeText;
 	}
 	
 	public String getLongitude()
 	{
-		return longitude;
+		return longitudeText != null ? longitudeText : formatDouble(longitude);
 	}
 	
 	public void setLongitude(String longitude)
+	{
+		this.longitude = parseDouble(longitude);
+		this.longitudeText = longitude;
+	}
+	
+	@Override
+	public double getLongitudeDouble()
+	{
+		return longitude;
+	}
+	
+	public void setLongitudeDouble(double longitude)
+	{
+		this.longitude = longitude;
+		this.longitudeText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param longitude
+	 * @param text
+	 */
+	public void setLongitude(double longitude, String text)
 	{
 		this.longitude = longitude;
+		this.longitudeText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getLongitudeText()
+	{
+		return longitudeText;
+	}
+	
+	/**
+	 * Check coordinates are present.
+	 * 
+	 * @return True if both latitude and longitude are set.
+	 */
+	@Override
+	public boolean hasCoordinates()
+	{
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+	}
+	
+	/**
+	 * Parse text value, empty or invalid text is missing.
+	 * 
+	 * @param text
+	 * 
+	 * @return The value or NO_VALUE.
+	 */
+	private static int parseInt(String text)
+	{
+		int value = NO_VALUE;
+		
+		if (text != null && text.length() > 0)
+		{
+			try
+			{
+				value = Integer.parseInt(text);
+			}
+			catch (NumberFormatException e)
+			{
+				// Leave as missing.
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Parse text value, empty or invalid text is missing.
+	 * 
+	 * @param text
+	 * 
+	 * @return The value or NO_COORDINATE.
+	 */
+	private static double parseDouble(String text)
+	{
+		double value = NO_COORDINATE;
+		
+		if (text != null && text.length() > 0)
+		{
+			try
+			{
+				value = Double.parseDouble(text);
+			}
+			catch (NumberFormatException e)
+			{
+				// Leave as missing.
+			}
+		}
+		
+		return value;
+	}
+	
+	private static String formatInt(int value)
+	{
+		return value == NO_VALUE ? "" : Integer.toString(value);
+	}
+	
+	private static String formatDouble(double value)
+	{
+		return Double.isNaN(value) ? "" : Double.toString(value);
 	}
 	
 	@Override
 	public String toString()
 	{
-		String text = id + ", " + carParkIdentity + ", " + latitude + ", " + longitude + "," + carParkOccupancy + ", " + carParkStatus + ", " + occupiedSpaces + ", " + totalCapacity;
+		String text = id + ", " + carParkIdentity + ", " + getLatitude() + ", " + getLongitude() + "," + getCarParkOccupancy() + ", " + carParkStatus + ", " + getOccupiedSpaces() + ", " + getTotalCapacity();
 		
 		return text;
 	}
@@ -0,0 +1,114 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.data;
+
+/**
+ * Car park status values.
+ * 
+ */
+public enum CarParkStatus
+{
+	ENOUGH_SPACES_AVAILABLE("enoughSpacesAvailable"),
+	SPACES_AVAILABLE("spacesAvailable"),
+	ALMOST_FULL("almostFull"),
+	CAR_PARK_FULL("carParkFull"),
+	ALL_CAR_PARKS_FULL("allCarParksFull"),
+	MULTI_STORY_CAR_PARKS_FULL("multiStoryCarParksFull"),
+	NO_MORE_PARKING_SPACES_AVAILABLE("noMoreParkingSpacesAvailable"),
+	CAR_PARK_CLOSED("carParkClosed"),
+	CAR_PARK_FACILITY_FAULTY("carParkFacilityFaulty"),
+	CAR_PARK_STATUS_UNKNOWN("carParkStatusUnknown"),
+	NO_PARKING_ALLOWED("noParkingAllowed"),
+	NO_PARKING_INFORMATION_AVAILABLE("noParkingInformationAvailable"),
+	NO_PARK_AND_RIDE_INFORMATION("noParkAndRideInformation"),
+	
+	/**
+	 * Missing or not recognised.
+	 */
+	UNKNOWN("");
+	
+	private static final CarParkStatus[] VALUES = values();
+	
+	private String text;
+	
+	private CarParkStatus(String text)
+	{
+		this.text = text;
+	}
+	
+	/**
+	 * Status as it appears in the feed.
+	 * 
+	 * @return The text.
+	 */
+	public String getText()
+	{
+		return text;
+	}
+	
+	/**
+	 * All feed values, for seeding dictionaries.
+	 * 
+	 * @return The text of every status.
+	 */
+	public static String[] texts()
+	{
+		String[] texts = new String[VALUES.length];
+		
+		for (int i = 0; i < VALUES.length; i++)
+		{
+			texts[i] = VALUES[i].text;
+		}
+		
+		return texts;
+	}
+	
+	/**
+	 * Look up status.
+	 * 
+	 * @param text
+	 * 
+	 * @return The status or UNKNOWN.
+	 */
+	public static CarParkStatus fromText(String text)
+	{
+		if (text != null)
+		{
+			// Canonical instances match by reference.
+			for (CarParkStatus status : VALUES)
+			{
+				if (status.text == text)
+				{
+					return status;
+				}
+			}
+			
+			for (CarParkStatus status : VALUES)
+			{
+				if (status.text.equals(text))
+				{
+					return status;
+				}
+			}
+		}
+		
+		return UNKNOWN;
+	}
+	
+}
@@ -0,0 +1,109 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.data;
+
+/**
+ * Traffic incident network management values.
+ * 
+ */
+public enum NetworkManagementType
+{
+	ROAD_CLOSED("roadClosed"),
+	LANE_CLOSURES("laneClosures"),
+	CARRIAGEWAY_CLOSURES("carriagewayClosures"),
+	NARROW_LANES("narrowLanes"),
+	CONTRAFLOW("contraflow"),
+	SINGLE_ALTERNATE_LINE_TRAFFIC("singleAlternateLineTraffic"),
+	INTERMITTENT_SHORT_TERM_CLOSURES("intermittentShortTermClosures"),
+	TRAFFIC_HELD("trafficHeld"),
+	
+	/**
+	 * Missing or not recognised.
+	 */
+	UNKNOWN(TrafficData.TEXT_UNKNOWN);
+	
+	private static final NetworkManagementType[] VALUES = values();
+	
+	private String text;
+	
+	private NetworkManagementType(String text)
+	{
+		this.text = text;
+	}
+	
+	/**
+	 * Type as it appears in the feed.
+	 * 
+	 * @return The text.
+	 */
+	public String getText()
+	{
+		return text;
+	}
+	
+	/**
+	 * All feed values, for seeding dictionaries.
+	 * 
+	 * @return The text of every type.
+	 */
+	public static String[] texts()
+	{
+		String[] texts = new String[VALUES.length];
+		
+		for (int i = 0; i < VALUES.length; i++)
+		{
+			texts[i] = VALUES[i].text;
+		}
+		
+		return texts;
+	}
+	
+	/**
+	 * Look up type.
+	 * 
+	 * @param text
+	 * 
+	 * @return The type or UNKNOWN.
+	 */
+	public static NetworkManagementType fromText(String text)
+	{
+		if (text != null)
+		{
+			// Canonical instances match by reference.
+			for (NetworkManagementType type : VALUES)
+			{
+				if (type.text == text)
+				{
+					return type;
+				}
+			}
+			
+			for (NetworkManagementType type : VALUES)
+			{
+				if (type.text.equals(text))
+				{
+					return type;
+				}
+			}
+		}
+		
+		return UNKNOWN;
+	}
+	
+}
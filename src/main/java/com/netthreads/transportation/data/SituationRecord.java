@@ -0,0 +1,76 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.data;
+
+/**
+ * Common view of a DATEX situation record.
+ * 
+ */
+public interface SituationRecord
+{
+	public static final String TAG_SITUATION_RECORD_VERSION = "situationRecordVersion";
+	public static final String TAG_SITUATION_RECORD_VERSION_TIME = "situationRecordVersionTime";
+	
+	/**
+	 * Sentinel for a missing version.
+	 */
+	public static final int NO_VERSION = Integer.MIN_VALUE;
+	
+	/**
+	 * Record id, stable across versions.
+	 * 
+	 * @return The id.
+	 */
+	public String getId();
+	
+	/**
+	 * Record version, increases when the supplier changes the record.
+	 * 
+	 * @return The version or NO_VERSION.
+	 */
+	public int getVersion();
+	
+	/**
+	 * Time of the version.
+	 * 
+	 * @return The time text, empty if missing.
+	 */
+	public String getVersionTime();
+	
+	/**
+	 * Point latitude.
+	 * 
+	 * @return Degrees or NaN if missing.
+	 */
+	public double getLatitudeDouble();
+	
+	/**
+	 * Point longitude.
+	 * 
+	 * @return Degrees or NaN if missing.
+	 */
+	public double getLongitudeDouble();
+	
+	/**
+	 * Check coordinates are present.
+	 * 
+	 * @return True if both latitude and longitude are set.
+	 */
+	public boolean hasCoordinates();
+}
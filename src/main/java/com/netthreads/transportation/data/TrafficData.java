@@ -24,12 +24,12 @@ import java.io.Serializable;
  * Traffic data class.
  * 
  */
-public class TrafficData implements Serializable
+public class TrafficData implements SituationRecord, Serializable
 {
 	/**
 	 * 
 	 */
-    private static final long serialVersionUID = -5602799862517474085L;
+    private static final long serialVersionUID = 6384417623040194529L;
     
 	// ------------------------------------------------------------------------
 	// Constants
@@ -56,17 +56,31 @@ public class TrafficData implements Serializable
 	
 	public static final String TEXT_UNKNOWN = "n/a";
 	
+	/**
+	 * Sentinel for missing coordinates.
+	 */
+	public static final double NO_COORDINATE = Double.NaN;
+	
 	private String id;
+	private int version = NO_VERSION;
+	private String versionTime = "";
 	private String description;
 	private String localLinkName;
 	private String linkName;
 	private String townName;
 	private String type;
-	private String latitude;
-	private String longitude;
+	private NetworkManagementType typeCode = NetworkManagementType.UNKNOWN;
+	private double latitude = NO_COORDINATE;
+	private double longitude = NO_COORDINATE;
+	
+	// Original text of coordinates, only held when formatting the value would
+	// not give it back.
+	private String latitudeText;
+	private String longitudeText;
 	private String overallStartTime;
 	private String overallEndTime;
 	
+	@Override
 	public String getId()
 	{
 		return id;
@@ -77,24 +91,127 @@ public class TrafficData implements Serializable
 		this.id = id;
 	}
 	
+	@Override
+	public int getVersion()
+	{
+		return version;
+	}
+	
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+	
+	@Override
+	public String getVersionTime()
+	{
+		return versionTime;
+	}
+	
+	public void setVersionTime(String versionTime)
+	{
+		this.versionTime = versionTime;
+	}
+	
 	public String getLatitude()
 	{
-		return latitude;
+		return latitudeText != null ? latitudeText : formatDouble(latitude);
 	}
 	
 	public void setLatitude(String latitude)
+	{
+		this.latitude = parseDouble(latitude);
+		this.latitudeText = latitude;
+	}
+	
+	@Override
+	public double getLatitudeDouble()
+	{
+		return latitude;
+	}
+	
+	public void setLatitudeDouble(double latitude)
+	{
+		this.latitude = latitude;
+		this.latitudeText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param latitude
+	 * @param text
+	 */
+	public void setLatitude(double latitude, String text)
 	{
 		this.latitude = latitude;
+		this.latitudeText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getLatitudeText()
+	{
+		return latitudeText;
 	}
 	
 	public String getLongitude()
 	{
-		return longitude;
+		return longitudeText != null ? longitudeText : formatDouble(longitude);
 	}
 	
 	public void setLongitude(String longitude)
+	{
+		this.longitude = parseDouble(longitude);
+		this.longitudeText = longitude;
+	}
+	
+	@Override
+	public double getLongitudeDouble()
+	{
+		return longitude;
+	}
+	
+	public void setLongitudeDouble(double longitude)
+	{
+		this.longitude = longitude;
+		this.longitudeText = null;
+	}
+	
+	/**
+	 * Set value along with the text it was read from.
+	 * 
+	 * @param longitude
+	 * @param text
+	 */
+	public void setLongitude(double longitude, String text)
 	{
 		this.longitude = longitude;
+		this.longitudeText = text;
+	}
+	
+	/**
+	 * Text the value was read from.
+	 * 
+	 * @return The text or null if formatting the value gives it back.
+	 */
+	public String getLongitudeText()
+	{
+		return longitudeText;
+	}
+	
+	/**
+	 * Check coordinates are present.
+	 * 
+	 * @return True if both latitude and longitude are set.
+	 */
+	@Override
+	public boolean hasCoordinates()
+	{
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude);
 	}
 	
 	public String getDescription()
@@ -146,6 +263,18 @@ public class TrafficData implements Serializable
 	public void setType(String type)
 	{
 		this.type = type;
+		this.typeCode = NetworkManagementType.fromText(type);
+	}
+	
+	public NetworkManagementType getTypeCode()
+	{
+		return typeCode;
+	}
+	
+	public void setTypeCode(NetworkManagementType typeCode)
+	{
+		this.typeCode = typeCode;
+		this.type = typeCode.getText();
 	}
 	
 	public String getOverallStartTime()
@@ -168,10 +297,41 @@ public class TrafficData implements Serializable
 		this.overallEndTime = overallEndTime;
 	}
 	
+	/**
+	 * Parse text value, empty or invalid text is missing.
+	 * 
+	 * @param text
+	 * 
+	 * @return The value or NO_COORDINATE.
+	 */
+	private static double parseDouble(String text)
+	{
+		double value = NO_COORDINATE;
+		
+		if (text != null && text.length() > 0)
+		{
+			try
+			{
+				value = Double.parseDouble(text);
+			}
+			catch (NumberFormatException e)
+			{
+				// Leave as missing.
+			}
+		}
+		
+		return value;
+	}
+	
+	private static String formatDouble(double value)
+	{
+		return Double.isNaN(value) ? "" : Double.toString(value);
+	}
+	
 	@Override
 	public String toString()
 	{
-		String text = id + ", " + description + ", " + localLinkName  + ", " + linkName  + ", " + townName  + ", " + latitude + ", " + longitude + "," + type + ", " + overallStartTime + ", " + overallEndTime;
+		String text = id + ", " + description + ", " + localLinkName  + ", " + linkName  + ", " + townName  + ", " + getLatitude() + ", " + getLongitude() + "," + type + ", " + overallStartTime + ", " + overallEndTime;
 		
 		return text;
 	}
@@ -0,0 +1,176 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+
+/**
+ * Summary of the samples from one key frame to the next. Built by the
+ * writer as samples are appended and read only once the next block starts.
+ * 
+ * Times are seconds.
+ * 
+ */
+class BlockSummary
+{
+	private long time;
+	private long offset;
+	
+	private long endTime;
+	private long endOffset;
+	private int samples;
+	
+	// Occupied spaces, missing values excluded.
+	private int valued;
+	private int min = Integer.MAX_VALUE;
+	private int max = Integer.MIN_VALUE;
+	private long sum;
+	
+	private int statuses;
+	private CarParkStatus lastStatus;
+	
+	/**
+	 * Construct summary.
+	 * 
+	 * @param time
+	 *            Time of the key frame.
+	 * @param offset
+	 *            Offset of the key frame.
+	 */
+	public BlockSummary(long time, long offset)
+	{
+		this.time = time;
+		this.offset = offset;
+	}
+	
+	/**
+	 * Add sample.
+	 * 
+	 * @param time
+	 * @param occupied
+	 * @param status
+	 * @param endOffset
+	 *            Offset after the sample frame.
+	 */
+	public void add(long time, int occupied, CarParkStatus status, long endOffset)
+	{
+		this.endTime = time;
+		this.endOffset = endOffset;
+		
+		samples++;
+		
+		if (occupied != CarParkData.NO_VALUE)
+		{
+			valued++;
+			sum += occupied;
+			
+			if (occupied < min)
+			{
+				min = occupied;
+			}
+			
+			if (occupied > max)
+			{
+				max = occupied;
+			}
+		}
+		
+		statuses |= mask(status);
+		lastStatus = status;
+	}
+	
+	/**
+	 * Bit for a status in a status mask.
+	 * 
+	 * @param status
+	 * 
+	 * @return The bit.
+	 */
+	public static int mask(CarParkStatus status)
+	{
+		return 1 << status.ordinal();
+	}
+	
+	public long getTime()
+	{
+		return time;
+	}
+	
+	public long getOffset()
+	{
+		return offset;
+	}
+	
+	public long getEndTime()
+	{
+		return endTime;
+	}
+	
+	public long getEndOffset()
+	{
+		return endOffset;
+	}
+	
+	public int getSamples()
+	{
+		return samples;
+	}
+	
+	/**
+	 * Samples with an occupied value.
+	 * 
+	 * @return The count.
+	 */
+	public int getValued()
+	{
+		return valued;
+	}
+	
+	public int getMin()
+	{
+		return min;
+	}
+	
+	public int getMax()
+	{
+		return max;
+	}
+	
+	public long getSum()
+	{
+		return sum;
+	}
+	
+	/**
+	 * Statuses seen in the block.
+	 * 
+	 * @return Mask of status bits.
+	 */
+	public int getStatuses()
+	{
+		return statuses;
+	}
+	
+	public CarParkStatus getLastStatus()
+	{
+		return lastStatus;
+	}
+	
+}
@@ -0,0 +1,163 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import java.util.Arrays;
+
+import com.netthreads.transportation.data.CarParkData;
+
+/**
+ * Occupied spaces aggregated into fixed time buckets. Each statistic is
+ * held in its own array, index i of every array belongs to bucket i.
+ * 
+ * Samples without an occupied value are not counted.
+ * 
+ */
+public class OccupancyAggregate
+{
+	private long from;
+	private long bucket;
+	
+	private int[] min;
+	private int[] max;
+	private long[] sum;
+	private int[] samples;
+	
+	/**
+	 * Construct empty buckets.
+	 * 
+	 * @param from
+	 *            Start of the first bucket, milliseconds.
+	 * @param bucket
+	 *            Bucket width, milliseconds.
+	 * @param size
+	 *            Number of buckets.
+	 */
+	OccupancyAggregate(long from, long bucket, int size)
+	{
+		this.from = from;
+		this.bucket = bucket;
+		
+		min = new int[size];
+		max = new int[size];
+		sum = new long[size];
+		samples = new int[size];
+		
+		Arrays.fill(min, Integer.MAX_VALUE);
+		Arrays.fill(max, Integer.MIN_VALUE);
+	}
+	
+	void add(int index, int occupied)
+	{
+		if (occupied != CarParkData.NO_VALUE)
+		{
+			min[index] = Math.min(min[index], occupied);
+			max[index] = Math.max(max[index], occupied);
+			sum[index] += occupied;
+			samples[index]++;
+		}
+	}
+	
+	void add(int index, BlockSummary summary)
+	{
+		if (summary.getValued() > 0)
+		{
+			min[index] = Math.min(min[index], summary.getMin());
+			max[index] = Math.max(max[index], summary.getMax());
+			sum[index] += summary.getSum();
+			samples[index] += summary.getValued();
+		}
+	}
+	
+	/**
+	 * Number of buckets.
+	 * 
+	 * @return The count.
+	 */
+	public int size()
+	{
+		return samples.length;
+	}
+	
+	/**
+	 * Bucket start.
+	 * 
+	 * @param index
+	 * 
+	 * @return Milliseconds since the epoch.
+	 */
+	public long getStart(int index)
+	{
+		return from + index * bucket;
+	}
+	
+	public long getBucket()
+	{
+		return bucket;
+	}
+	
+	/**
+	 * Samples in bucket.
+	 * 
+	 * @param index
+	 * 
+	 * @return The count.
+	 */
+	public int getSamples(int index)
+	{
+		return samples[index];
+	}
+	
+	/**
+	 * Lowest occupied spaces.
+	 * 
+	 * @param index
+	 * 
+	 * @return The minimum or CarParkData.NO_VALUE for an empty bucket.
+	 */
+	public int getMin(int index)
+	{
+		return samples[index] > 0 ? min[index] : CarParkData.NO_VALUE;
+	}
+	
+	/**
+	 * Highest occupied spaces.
+	 * 
+	 * @param index
+	 * 
+	 * @return The maximum or CarParkData.NO_VALUE for an empty bucket.
+	 */
+	public int getMax(int index)
+	{
+		return samples[index] > 0 ? max[index] : CarParkData.NO_VALUE;
+	}
+	
+	/**
+	 * Mean occupied spaces.
+	 * 
+	 * @param index
+	 * 
+	 * @return The mean or NaN for an empty bucket.
+	 */
+	public double getAverage(int index)
+	{
+		return samples[index] > 0 ? (double) sum[index] / samples[index] : Double.NaN;
+	}
+	
+}
@@ -0,0 +1,490 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+
+/**
+ * Queries over occupancy history.
+ * 
+ * Queries walk the block summaries of each segment. A block that lies
+ * wholly inside the query, and for aggregates inside one bucket, is taken
+ * from its summary, only the blocks at the edges are decoded. Nothing is
+ * materialised as CarParkData.
+ * 
+ * Times are milliseconds since the epoch, ranges are from inclusive to
+ * exclusive.
+ * 
+ */
+public class OccupancyQuery
+{
+	/**
+	 * Statuses reporting the car park full.
+	 */
+	public static final Set<CarParkStatus> FULL = Collections.unmodifiableSet(EnumSet.of(CarParkStatus.CAR_PARK_FULL, CarParkStatus.ALL_CAR_PARKS_FULL, CarParkStatus.MULTI_STORY_CAR_PARKS_FULL, CarParkStatus.NO_MORE_PARKING_SPACES_AVAILABLE));
+	
+	private static final long SECOND = OccupancyStore.SECOND;
+	
+	private OccupancyStore store;
+	
+	public OccupancyQuery(OccupancyStore store)
+	{
+		this.store = store;
+	}
+	
+	/**
+	 * Occupied spaces at a time, the last sample at or before it.
+	 * 
+	 * @param carParkIdentity
+	 * @param time
+	 * 
+	 * @return The occupied spaces or CarParkData.NO_VALUE.
+	 * 
+	 * @throws IOException
+	 */
+	public int occupancyAt(String carParkIdentity, long time) throws IOException
+	{
+		LastSample last = new LastSample(time);
+		
+		sampleAt(carParkIdentity, time, last);
+		
+		return last.found ? last.occupied : CarParkData.NO_VALUE;
+	}
+	
+	/**
+	 * Visit the last sample at or before a time.
+	 * 
+	 * @param carParkIdentity
+	 * @param time
+	 * @param visitor
+	 * 
+	 * @return True if there was a sample.
+	 * 
+	 * @throws IOException
+	 */
+	public boolean sampleAt(String carParkIdentity, long time, SampleVisitor visitor) throws IOException
+	{
+		OccupancySeries series = store.findSeries(carParkIdentity);
+		
+		if (series == null)
+		{
+			return false;
+		}
+		
+		long seconds = floor(time);
+		
+		Segment[] segments = series.getSegments();
+		
+		if (segments.length == 0)
+		{
+			return false;
+		}
+		
+		Segment segment = segments[OccupancySeries.findSegment(segments, seconds)];
+		
+		int block = segment.findBlock(seconds);
+		
+		if (block < 0)
+		{
+			return false;
+		}
+		
+		LastSample last = new LastSample(time);
+		
+		segment.readBlock(block, last);
+		
+		if (last.found)
+		{
+			visitor.sample(last.time, last.occupied, last.capacity, last.status);
+		}
+		
+		return last.found;
+	}
+	
+	/**
+	 * Minimum, maximum and mean occupied spaces in buckets.
+	 * 
+	 * @param carParkIdentity
+	 * @param from
+	 * @param to
+	 * @param bucket
+	 *            Bucket width, the last bucket may be cut short by to.
+	 * 
+	 * @return The buckets.
+	 * 
+	 * @throws IOException
+	 */
+	public OccupancyAggregate aggregate(String carParkIdentity, long from, long to, long bucket) throws IOException
+	{
+		if (bucket <= 0)
+		{
+			throw new IllegalArgumentException("Bucket must be positive");
+		}
+		
+		long size = to > from ? (to - from + bucket - 1) / bucket : 0;
+		
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Too many buckets");
+		}
+		
+		final OccupancyAggregate aggregate = new OccupancyAggregate(from, bucket, (int) size);
+		
+		OccupancySeries series = store.findSeries(carParkIdentity);
+		
+		if (series == null || size == 0)
+		{
+			return aggregate;
+		}
+		
+		Bucketer bucketer = new Bucketer(aggregate, from, to, bucket);
+		
+		Segment[] segments = series.getSegments();
+		
+		for (int index = OccupancySeries.findSegment(segments, floor(from)); index < segments.length; index++)
+		{
+			Segment segment = segments[index];
+			
+			if (segment.getBase() * SECOND >= to)
+			{
+				break;
+			}
+			
+			int count = segment.getBlockCount();
+			
+			for (int block = Math.max(0, segment.findBlock(floor(from))); block < count; block++)
+			{
+				BlockSummary summary = segment.getSummary(block);
+				
+				if (summary != null)
+				{
+					long start = summary.getTime() * SECOND;
+					long end = summary.getEndTime() * SECOND;
+					
+					if (start >= to)
+					{
+						return aggregate;
+					}
+					
+					if (end < from)
+					{
+						continue;
+					}
+					
+					if (start >= from && end < to && bucketer.index(start) == bucketer.index(end))
+					{
+						aggregate.add(bucketer.index(start), summary);
+						
+						continue;
+					}
+				}
+				
+				if (!segment.readBlock(block, bucketer))
+				{
+					return aggregate;
+				}
+			}
+		}
+		
+		return aggregate;
+	}
+	
+	/**
+	 * Time spent in any of a set of statuses. Each sample holds its status
+	 * until the next sample, the last until to.
+	 * 
+	 * @param carParkIdentity
+	 * @param statuses
+	 *            For example FULL.
+	 * @param from
+	 * @param to
+	 * 
+	 * @return Milliseconds.
+	 * 
+	 * @throws IOException
+	 */
+	public long timeInStatus(String carParkIdentity, Set<CarParkStatus> statuses, long from, long to) throws IOException
+	{
+		OccupancySeries series = store.findSeries(carParkIdentity);
+		
+		if (series == null || to <= from)
+		{
+			return 0;
+		}
+		
+		int mask = 0;
+		
+		for (CarParkStatus status : statuses)
+		{
+			mask |= BlockSummary.mask(status);
+		}
+		
+		StatusTimer timer = new StatusTimer(mask, from, to);
+		
+		Segment[] segments = series.getSegments();
+		
+		walk: for (int index = OccupancySeries.findSegment(segments, floor(from)); index < segments.length; index++)
+		{
+			Segment segment = segments[index];
+			
+			if (segment.getBase() * SECOND >= to)
+			{
+				break;
+			}
+			
+			int count = segment.getBlockCount();
+			
+			for (int block = Math.max(0, segment.findBlock(floor(from))); block < count; block++)
+			{
+				BlockSummary summary = segment.getSummary(block);
+				
+				if (summary != null)
+				{
+					long start = summary.getTime() * SECOND;
+					long end = summary.getEndTime() * SECOND;
+					
+					if (start >= to)
+					{
+						break walk;
+					}
+					
+					int seen = summary.getStatuses();
+					
+					// Before the range only the final status matters.
+					if (end < from)
+					{
+						timer.hold(from, summary.getLastStatus());
+						
+						continue;
+					}
+					
+					if (start >= from && end < to && ((seen & mask) == 0 || (seen & ~mask) == 0))
+					{
+						timer.close(start);
+						
+						if ((seen & mask) != 0)
+						{
+							timer.add(end - start);
+						}
+						
+						timer.hold(end, summary.getLastStatus());
+						
+						continue;
+					}
+				}
+				
+				if (!segment.readBlock(block, timer))
+				{
+					break walk;
+				}
+			}
+		}
+		
+		return timer.finish();
+	}
+	
+	private static long floor(long time)
+	{
+		return time >= 0 ? time / SECOND : (time - SECOND + 1) / SECOND;
+	}
+	
+	/**
+	 * Keeps the last sample at or before a time.
+	 * 
+	 */
+	private static class LastSample implements SampleVisitor
+	{
+		private long limit;
+		
+		private boolean found;
+		private long time;
+		private int occupied;
+		private int capacity;
+		private CarParkStatus status;
+		
+		public LastSample(long limit)
+		{
+			this.limit = limit;
+		}
+		
+		@Override
+		public boolean sample(long time, int occupied, int capacity, CarParkStatus status)
+		{
+			if (time > limit)
+			{
+				return false;
+			}
+			
+			this.found = true;
+			this.time = time;
+			this.occupied = occupied;
+			this.capacity = capacity;
+			this.status = status;
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Adds decoded samples to their bucket.
+	 * 
+	 */
+	private static class Bucketer implements SampleVisitor
+	{
+		private OccupancyAggregate aggregate;
+		private long from;
+		private long to;
+		private long bucket;
+		
+		public Bucketer(OccupancyAggregate aggregate, long from, long to, long bucket)
+		{
+			this.aggregate = aggregate;
+			this.from = from;
+			this.to = to;
+			this.bucket = bucket;
+		}
+		
+		public int index(long time)
+		{
+			return (int) ((time - from) / bucket);
+		}
+		
+		@Override
+		public boolean sample(long time, int occupied, int capacity, CarParkStatus status)
+		{
+			if (time >= to)
+			{
+				return false;
+			}
+			
+			if (time >= from)
+			{
+				aggregate.add(index(time), occupied);
+			}
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Accumulates time in the target statuses as a step function of the
+	 * samples.
+	 * 
+	 */
+	private static class StatusTimer implements SampleVisitor
+	{
+		private int mask;
+		private long from;
+		private long to;
+		
+		private long total;
+		
+		/**
+		 * Time of the previous sample, clamped to from, or -1 before any.
+		 */
+		private long previous = -1;
+		private boolean inStatus;
+		
+		public StatusTimer(int mask, long from, long to)
+		{
+			this.mask = mask;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public boolean sample(long time, int occupied, int capacity, CarParkStatus status)
+		{
+			if (time >= to)
+			{
+				return false;
+			}
+			
+			if (time < from)
+			{
+				hold(from, status);
+			}
+			else
+			{
+				sample(time, status);
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Sample within the range, closes the previous step.
+		 * 
+		 * @param time
+		 * @param status
+		 */
+		public void sample(long time, CarParkStatus status)
+		{
+			close(time);
+			
+			hold(time, status);
+		}
+		
+		/**
+		 * End the previous step.
+		 * 
+		 * @param time
+		 */
+		public void close(long time)
+		{
+			if (previous >= 0 && inStatus)
+			{
+				total += time - previous;
+			}
+			
+			previous = time;
+		}
+		
+		/**
+		 * Start a step without closing the previous one.
+		 * 
+		 * @param time
+		 * @param status
+		 */
+		public void hold(long time, CarParkStatus status)
+		{
+			previous = time;
+			inStatus = (BlockSummary.mask(status) & mask) != 0;
+		}
+		
+		public void add(long time)
+		{
+			total += time;
+		}
+		
+		public long finish()
+		{
+			close(to);
+			
+			return total;
+		}
+	}
+	
+}
@@ -0,0 +1,117 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import java.io.IOException;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+
+/**
+ * Feeds parsed car park records straight into an occupancy store. Set the
+ * poll time, then fetch with this as the sink. The store is synced when the
+ * parse completes.
+ * 
+ */
+public class OccupancyRecorder implements RecordSink<CarParkData>
+{
+	private OccupancyStore store;
+	
+	private long time;
+	private int count;
+	private Exception error;
+	
+	public OccupancyRecorder(OccupancyStore store)
+	{
+		this.store = store;
+	}
+	
+	/**
+	 * Start a poll.
+	 * 
+	 * @param time
+	 *            Milliseconds since the epoch, usually the publication time.
+	 */
+	public void setTime(long time)
+	{
+		this.time = time;
+		
+		count = 0;
+		error = null;
+	}
+	
+	@Override
+	public boolean accept(CarParkData record)
+	{
+		try
+		{
+			if (store.append(time, record))
+			{
+				count++;
+			}
+			
+			return true;
+		}
+		catch (IOException e)
+		{
+			error = e;
+			
+			return false;
+		}
+	}
+	
+	@Override
+	public void end(int state)
+	{
+		if (state == StreamParser.DONE && error == null)
+		{
+			try
+			{
+				store.sync();
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+		}
+	}
+	
+	@Override
+	public void error(Exception e)
+	{
+		error = e;
+	}
+	
+	/**
+	 * Samples stored this poll.
+	 * 
+	 * @return The count.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+	
+	public Exception getError()
+	{
+		return error;
+	}
+	
+}
@@ -0,0 +1,242 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.netthreads.transportation.data.CarParkStatus;
+
+/**
+ * The segments of one car park, oldest first.
+ * 
+ * Appends are serialised on the series. Readers take the current segment
+ * array, which is replaced rather than changed on rollover, so they never
+ * block the writer.
+ * 
+ */
+class OccupancySeries
+{
+	private String identity;
+	private File directory;
+	private int segmentSamples;
+	
+	private volatile Segment[] segments;
+	
+	/**
+	 * Open series, creating the directory if needed.
+	 * 
+	 * @param identity
+	 *            Car park identity.
+	 * @param directory
+	 * @param segmentSamples
+	 *            Samples per segment before rolling over.
+	 * 
+	 * @throws IOException
+	 */
+	public OccupancySeries(String identity, File directory, int segmentSamples) throws IOException
+	{
+		this.identity = identity;
+		this.directory = directory;
+		this.segmentSamples = segmentSamples;
+		
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create " + directory);
+		}
+		
+		// Rollover did not complete.
+		File[] temps = list(Segment.EXTENSION_TEMP);
+		
+		for (File temp : temps)
+		{
+			temp.delete();
+		}
+		
+		File[] files = list(Segment.EXTENSION);
+		
+		Arrays.sort(files);
+		
+		Segment[] opened = new Segment[files.length];
+		
+		int count = 0;
+		
+		for (File file : files)
+		{
+			Segment segment = Segment.open(file);
+			
+			if (segment.getSamples() > 0)
+			{
+				opened[count++] = segment;
+			}
+			else
+			{
+				// Created but crashed before the first sample landed.
+				segment.close();
+				file.delete();
+			}
+		}
+		
+		segments = Arrays.copyOf(opened, count);
+		
+		for (int index = 0; index < count - 1; index++)
+		{
+			segments[index].seal();
+		}
+	}
+	
+	private File[] list(final String extension) throws IOException
+	{
+		File[] files = directory.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File directory, String name)
+			{
+				return name.endsWith(extension);
+			}
+		});
+		
+		if (files == null)
+		{
+			throw new IOException("Cannot list " + directory);
+		}
+		
+		return files;
+	}
+	
+	/**
+	 * Append sample.
+	 * 
+	 * @param time
+	 *            Seconds.
+	 * @param occupied
+	 * @param capacity
+	 * @param status
+	 * 
+	 * @return False if time is not after the last sample.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized boolean append(long time, int occupied, int capacity, CarParkStatus status) throws IOException
+	{
+		Segment current = segments.length > 0 ? segments[segments.length - 1] : null;
+		
+		if (current != null && time <= current.getLastTime())
+		{
+			return false;
+		}
+		
+		if (current == null || current.getSamples() >= segmentSamples)
+		{
+			if (current != null)
+			{
+				// Must be durable before the next segment exists.
+				current.seal();
+			}
+			
+			Segment[] next = Arrays.copyOf(segments, segments.length + 1);
+			
+			current = next[segments.length] = Segment.create(directory, time);
+			
+			segments = next;
+		}
+		
+		current.append(time, occupied, capacity, status);
+		
+		return true;
+	}
+	
+	/**
+	 * Visit samples in a time range.
+	 * 
+	 * @param from
+	 *            Seconds, inclusive.
+	 * @param to
+	 *            Seconds, inclusive.
+	 * @param visitor
+	 * 
+	 * @return False if the visitor stopped.
+	 * 
+	 * @throws IOException
+	 */
+	public boolean read(long from, long to, SampleVisitor visitor) throws IOException
+	{
+		Segment[] current = segments;
+		
+		for (int index = findSegment(current, from); index < current.length && current[index].getBase() <= to; index++)
+		{
+			if (!current[index].read(from, to, visitor))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Segment holding a time.
+	 * 
+	 * @param segments
+	 * @param time
+	 *            Seconds.
+	 * 
+	 * @return The last segment starting at or before time, or the first.
+	 */
+	static int findSegment(Segment[] segments, long time)
+	{
+		int index = 0;
+		
+		while (index + 1 < segments.length && segments[index + 1].getBase() <= time)
+		{
+			index++;
+		}
+		
+		return index;
+	}
+	
+	public String getIdentity()
+	{
+		return identity;
+	}
+	
+	Segment[] getSegments()
+	{
+		return segments;
+	}
+	
+	public synchronized void sync() throws IOException
+	{
+		if (segments.length > 0)
+		{
+			segments[segments.length - 1].sync();
+		}
+	}
+	
+	public synchronized void close() throws IOException
+	{
+		for (Segment segment : segments)
+		{
+			segment.close();
+		}
+	}
+	
+}
@@ -0,0 +1,327 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.netthreads.transportation.data.CarParkData;
+
+/**
+ * Embedded store of car park occupancy history.
+ * 
+ * Each car park has a directory of append-only segment files, see Segment,
+ * holding (time, occupied spaces, capacity, status) samples delta and
+ * varint encoded, typically three or four bytes a sample. Times are held to
+ * the second, which is the resolution of the feed.
+ * 
+ * Samples must arrive in time order per car park, a sample at or before
+ * the last one is ignored so polling an unchanged feed adds nothing.
+ * Appends are written straight to the file, sync() forces them to disk.
+ * Any number of threads may read while the poller writes.
+ * 
+ */
+public class OccupancyStore
+{
+	public static final long SECOND = 1000;
+	
+	/**
+	 * About four weeks of five minute samples.
+	 */
+	public static final int DEFAULT_SEGMENT_SAMPLES = 8192;
+	
+	private static final char ESCAPE = '_';
+	
+	private File directory;
+	private int segmentSamples;
+	
+	private ConcurrentHashMap<String, OccupancySeries> series = new ConcurrentHashMap<String, OccupancySeries>();
+	
+	/**
+	 * Open store.
+	 * 
+	 * @param directory
+	 *            Created if it does not exist.
+	 * 
+	 * @throws IOException
+	 */
+	public OccupancyStore(File directory) throws IOException
+	{
+		this(directory, DEFAULT_SEGMENT_SAMPLES);
+	}
+	
+	/**
+	 * Open store.
+	 * 
+	 * @param directory
+	 *            Created if it does not exist.
+	 * @param segmentSamples
+	 *            Samples per segment before rolling over to a new one.
+	 * 
+	 * @throws IOException
+	 */
+	public OccupancyStore(File directory, int segmentSamples) throws IOException
+	{
+		this.directory = directory;
+		this.segmentSamples = Math.max(1, segmentSamples);
+		
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create " + directory);
+		}
+		
+		File[] files = directory.listFiles();
+		
+		if (files == null)
+		{
+			throw new IOException("Cannot list " + directory);
+		}
+		
+		for (File file : files)
+		{
+			if (file.isDirectory())
+			{
+				String identity = decode(file.getName());
+				
+				series.put(identity, new OccupancySeries(identity, file, this.segmentSamples));
+			}
+		}
+	}
+	
+	/**
+	 * Append car park sample.
+	 * 
+	 * @param time
+	 *            Milliseconds since the epoch.
+	 * @param record
+	 * 
+	 * @return True if stored, false if there is no identity or the time is
+	 *         not after the last sample.
+	 * 
+	 * @throws IOException
+	 */
+	public boolean append(long time, CarParkData record) throws IOException
+	{
+		String identity = record.getCarParkIdentity();
+		
+		if (identity == null || identity.length() == 0)
+		{
+			return false;
+		}
+		
+		return getSeries(identity).append(time / SECOND, record.getOccupiedSpacesInt(), record.getTotalCapacityInt(), record.getCarParkStatusCode());
+	}
+	
+	/**
+	 * Append a poll of car parks.
+	 * 
+	 * @param time
+	 *            Milliseconds since the epoch.
+	 * @param records
+	 * 
+	 * @return Number stored.
+	 * 
+	 * @throws IOException
+	 */
+	public int append(long time, Collection<CarParkData> records) throws IOException
+	{
+		int count = 0;
+		
+		for (CarParkData record : records)
+		{
+			if (append(time, record))
+			{
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Visit samples for a car park in time order.
+	 * 
+	 * @param carParkIdentity
+	 * @param from
+	 *            Milliseconds, inclusive.
+	 * @param to
+	 *            Milliseconds, inclusive.
+	 * @param visitor
+	 * 
+	 * @return False if the visitor stopped.
+	 * 
+	 * @throws IOException
+	 */
+	public boolean read(String carParkIdentity, long from, long to, SampleVisitor visitor) throws IOException
+	{
+		OccupancySeries target = series.get(carParkIdentity);
+		
+		if (target == null)
+		{
+			return true;
+		}
+		
+		// Round from up to the stored resolution.
+		return target.read((from + SECOND - 1) / SECOND, to / SECOND, visitor);
+	}
+	
+	/**
+	 * Car parks with history.
+	 * 
+	 * @return Identities, sorted.
+	 */
+	public Set<String> getCarParks()
+	{
+		return new TreeSet<String>(series.keySet());
+	}
+	
+	/**
+	 * Series for a car park.
+	 * 
+	 * @param identity
+	 * 
+	 * @return The series or null if the car park has no history.
+	 */
+	OccupancySeries findSeries(String identity)
+	{
+		return series.get(identity);
+	}
+	
+	OccupancySeries getSeries(String identity) throws IOException
+	{
+		OccupancySeries target = series.get(identity);
+		
+		if (target == null)
+		{
+			synchronized (series)
+			{
+				target = series.get(identity);
+				
+				if (target == null)
+				{
+					target = new OccupancySeries(identity, new File(directory, encode(identity)), segmentSamples);
+					
+					series.put(identity, target);
+				}
+			}
+		}
+		
+		return target;
+	}
+	
+	/**
+	 * Force appended samples to disk.
+	 * 
+	 * @throws IOException
+	 */
+	public void sync() throws IOException
+	{
+		for (OccupancySeries target : series.values())
+		{
+			target.sync();
+		}
+	}
+	
+	/**
+	 * Sync and close all segments.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		IOException error = null;
+		
+		for (OccupancySeries target : series.values())
+		{
+			try
+			{
+				target.sync();
+				target.close();
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+		}
+		
+		series.clear();
+		
+		if (error != null)
+		{
+			throw error;
+		}
+	}
+	
+	/**
+	 * Directory name for an identity. Identities hold spaces and colons so
+	 * anything other than letters, digits, dot and dash is escaped.
+	 * 
+	 * @param identity
+	 * 
+	 * @return The name.
+	 */
+	static String encode(String identity)
+	{
+		StringBuilder builder = new StringBuilder(identity.length() + 16);
+		
+		for (int index = 0; index < identity.length(); index++)
+		{
+			char c = identity.charAt(index);
+			
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-')
+			{
+				builder.append(c);
+			}
+			else
+			{
+				builder.append(ESCAPE).append(String.format("%04x", (int) c));
+			}
+		}
+		
+		return builder.toString();
+	}
+	
+	static String decode(String name)
+	{
+		StringBuilder builder = new StringBuilder(name.length());
+		
+		for (int index = 0; index < name.length(); index++)
+		{
+			char c = name.charAt(index);
+			
+			if (c == ESCAPE && index + 4 < name.length())
+			{
+				builder.append((char) Integer.parseInt(name.substring(index + 1, index + 5), 16));
+				
+				index += 4;
+			}
+			else
+			{
+				builder.append(c);
+			}
+		}
+		
+		return builder.toString();
+	}
+	
+}
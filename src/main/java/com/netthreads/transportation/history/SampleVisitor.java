@@ -0,0 +1,43 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import com.netthreads.transportation.data.CarParkStatus;
+
+/**
+ * Receives stored occupancy samples in time order.
+ * 
+ */
+public interface SampleVisitor
+{
+	/**
+	 * Visit sample.
+	 * 
+	 * @param time
+	 *            Milliseconds since the epoch.
+	 * @param occupied
+	 *            Occupied spaces or CarParkData.NO_VALUE.
+	 * @param capacity
+	 *            Total capacity or CarParkData.NO_VALUE.
+	 * @param status
+	 * 
+	 * @return True to continue, false to stop.
+	 */
+	public boolean sample(long time, int occupied, int capacity, CarParkStatus status);
+}
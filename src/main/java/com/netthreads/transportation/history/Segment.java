@@ -0,0 +1,783 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.netthreads.transportation.data.CarParkStatus;
+
+/**
+ * One append-only file of samples for a car park.
+ * 
+ * The file is a header followed by frames. Each frame starts with a tag
+ * byte. Times are seconds, a key frame holds the time relative to the
+ * segment base and absolute values, other frames hold varint deltas from
+ * the frame before. Status and capacity are only written when they change.
+ * A check byte ends each frame so a torn or zero filled tail is found.
+ * Every KEY_INTERVAL frames is a key frame so reads can start part way
+ * through. The sparse index holds a BlockSummary for each key frame, the
+ * offset plus aggregates of the samples up to the next key frame, so
+ * queries can skip decoding whole blocks.
+ * 
+ * <pre>
+ * header : magic(4) version(1) base(8)
+ * key    : tag time occupied capacity status check
+ * delta  : tag time occupied [status] [capacity] check
+ * </pre>
+ * 
+ * Status is stored by CarParkStatus ordinal so new statuses must be added
+ * to the end of the enum.
+ * 
+ * A single writer appends, readers see frames up to the published length.
+ * A torn frame at the tail, left by a crash, is truncated when the segment
+ * is opened.
+ * 
+ */
+class Segment
+{
+	public static final String EXTENSION = ".seg";
+	public static final String EXTENSION_TEMP = ".tmp";
+	
+	public static final int MAGIC = 0x4F434331;
+	public static final byte FORMAT_VERSION = 1;
+	public static final int HEADER_SIZE = 13;
+	
+	public static final int KEY_INTERVAL = 64;
+	
+	private static final int TAG = 0xA0;
+	private static final int TAG_MASK = 0xF8;
+	private static final int FLAG_KEY = 0x01;
+	private static final int FLAG_STATUS = 0x02;
+	private static final int FLAG_CAPACITY = 0x04;
+	
+	private static final int MAX_FRAME = 32;
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final CarParkStatus[] STATUSES = CarParkStatus.values();
+	
+	private File file;
+	private FileChannel channel;
+	private long base;
+	
+	/**
+	 * Bytes readers may see.
+	 */
+	private volatile long length;
+	
+	/**
+	 * No more appends, guarded by this.
+	 */
+	private boolean sealed;
+	
+	// Sparse index, guarded by this.
+	private BlockSummary[] blocks = new BlockSummary[16];
+	private int keys;
+	
+	// Writer state.
+	private int samples;
+	private long lastTime;
+	private int lastOccupied;
+	private int lastCapacity;
+	private CarParkStatus lastStatus;
+	private BlockSummary building;
+	private byte[] frame = new byte[MAX_FRAME];
+	
+	private Segment(File file, FileChannel channel, long base)
+	{
+		this.file = file;
+		this.channel = channel;
+		this.base = base;
+		
+		lastTime = base;
+		length = HEADER_SIZE;
+	}
+	
+	/**
+	 * Create a new empty segment. The header is written to a temporary file
+	 * and forced before it is renamed into place, so a segment file is never
+	 * seen without a header.
+	 * 
+	 * @param directory
+	 * @param base
+	 *            Time of the first sample, seconds.
+	 * 
+	 * @return The segment.
+	 * 
+	 * @throws IOException
+	 */
+	public static Segment create(File directory, long base) throws IOException
+	{
+		String name = String.format("%016x", base);
+		
+		File temp = new File(directory, name + EXTENSION_TEMP);
+		File file = new File(directory, name + EXTENSION);
+		
+		RandomAccessFile output = new RandomAccessFile(temp, "rw");
+		
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.put(FORMAT_VERSION);
+			header.putLong(base);
+			header.flip();
+			
+			output.setLength(0);
+			output.getChannel().write(header, 0);
+			output.getChannel().force(true);
+		}
+		finally
+		{
+			output.close();
+		}
+		
+		if (!temp.renameTo(file))
+		{
+			throw new IOException("Cannot rename " + temp + " to " + file);
+		}
+		
+		return new Segment(file, new RandomAccessFile(file, "rw").getChannel(), base);
+	}
+	
+	/**
+	 * Open an existing segment, rebuilding the index and truncating any
+	 * torn frame at the tail.
+	 * 
+	 * @param file
+	 * 
+	 * @return The segment.
+	 * 
+	 * @throws IOException
+	 *             If the header is not valid.
+	 */
+	public static Segment open(File file) throws IOException
+	{
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+			{
+				// Fill.
+			}
+			
+			header.flip();
+			
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.get() != FORMAT_VERSION)
+			{
+				throw new IOException("Not a segment " + file);
+			}
+			
+			Segment segment = new Segment(file, channel, header.getLong());
+			
+			segment.recover();
+			
+			return segment;
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Scan frames to rebuild the index and writer state.
+	 * 
+	 * @throws IOException
+	 */
+	private void recover() throws IOException
+	{
+		long size = channel.size();
+		
+		Decoder decoder = new Decoder(HEADER_SIZE, size);
+		
+		while (decoder.next())
+		{
+			if (decoder.key)
+			{
+				addKey(decoder.time, decoder.offset);
+			}
+			
+			building.add(decoder.time, decoder.occupied, decoder.status, decoder.end);
+			
+			samples++;
+			lastTime = decoder.time;
+			lastOccupied = decoder.occupied;
+			lastCapacity = decoder.capacity;
+			lastStatus = decoder.status;
+		}
+		
+		if (decoder.end < size)
+		{
+			channel.truncate(decoder.end);
+			channel.force(true);
+		}
+		
+		length = decoder.end;
+	}
+	
+	/**
+	 * Append a sample.
+	 * 
+	 * @param time
+	 *            Seconds, later than the last sample.
+	 * @param occupied
+	 * @param capacity
+	 * @param status
+	 * 
+	 * @throws IOException
+	 */
+	public void append(long time, int occupied, int capacity, CarParkStatus status) throws IOException
+	{
+		boolean key = samples % KEY_INTERVAL == 0;
+		
+		int size = 1;
+		int tag = TAG;
+		
+		if (key)
+		{
+			tag |= FLAG_KEY;
+			
+			size = putVarint(frame, size, time - base);
+			size = putVarint(frame, size, zigzag(occupied));
+			size = putVarint(frame, size, zigzag(capacity));
+			frame[size++] = (byte) status.ordinal();
+		}
+		else
+		{
+			size = putVarint(frame, size, time - lastTime);
+			size = putVarint(frame, size, zigzag((long) occupied - lastOccupied));
+			
+			if (status != lastStatus)
+			{
+				tag |= FLAG_STATUS;
+				frame[size++] = (byte) status.ordinal();
+			}
+			
+			if (capacity != lastCapacity)
+			{
+				tag |= FLAG_CAPACITY;
+				size = putVarint(frame, size, zigzag(capacity));
+			}
+		}
+		
+		frame[0] = (byte) tag;
+		frame[size] = check(frame, 0, size);
+		size++;
+		
+		long offset = length;
+		
+		ByteBuffer buffer = ByteBuffer.wrap(frame, 0, size);
+		
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer, offset + buffer.position());
+		}
+		
+		if (key)
+		{
+			addKey(time, offset);
+		}
+		
+		building.add(time, occupied, status, offset + size);
+		
+		samples++;
+		lastTime = time;
+		lastOccupied = occupied;
+		lastCapacity = capacity;
+		lastStatus = status;
+		
+		// Publish.
+		length = offset + size;
+	}
+	
+	/**
+	 * Visit samples from the key frame at or before from, up to and
+	 * including to.
+	 * 
+	 * @param from
+	 *            Seconds.
+	 * @param to
+	 *            Seconds.
+	 * @param visitor
+	 * 
+	 * @return False if the visitor stopped.
+	 * 
+	 * @throws IOException
+	 */
+	public boolean read(long from, long to, SampleVisitor visitor) throws IOException
+	{
+		long limit = length;
+		
+		int block = findBlock(from);
+		
+		Decoder decoder = new Decoder(block < 0 ? HEADER_SIZE : getBlock(block).getOffset(), limit);
+		
+		while (decoder.next())
+		{
+			if (decoder.time > to)
+			{
+				break;
+			}
+			
+			if (decoder.time >= from && !visitor.sample(decoder.time * OccupancyStore.SECOND, decoder.occupied, decoder.capacity, decoder.status))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Visit the samples of one block.
+	 * 
+	 * @param block
+	 * @param visitor
+	 * 
+	 * @return False if the visitor stopped.
+	 * 
+	 * @throws IOException
+	 */
+	public boolean readBlock(int block, SampleVisitor visitor) throws IOException
+	{
+		long start = getBlock(block).getOffset();
+		
+		Decoder decoder = new Decoder(start, length);
+		
+		while (decoder.next())
+		{
+			// The writer may have started the next block.
+			if (decoder.key && decoder.offset != start)
+			{
+				break;
+			}
+			
+			if (!visitor.sample(decoder.time * OccupancyStore.SECOND, decoder.occupied, decoder.capacity, decoder.status))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Last block starting at or before time.
+	 * 
+	 * @param time
+	 *            Seconds.
+	 * 
+	 * @return The block or -1 when time precedes them all.
+	 */
+	public synchronized int findBlock(long time)
+	{
+		int low = 0;
+		int high = keys - 1;
+		
+		int block = -1;
+		
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			
+			if (blocks[middle].getTime() <= time)
+			{
+				block = middle;
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		
+		return block;
+	}
+	
+	public synchronized int getBlockCount()
+	{
+		return keys;
+	}
+	
+	/**
+	 * Block for its time and offset.
+	 * 
+	 * @param block
+	 * 
+	 * @return The block.
+	 */
+	private synchronized BlockSummary getBlock(int block)
+	{
+		return blocks[block];
+	}
+	
+	/**
+	 * Summary of a complete block.
+	 * 
+	 * @param block
+	 * 
+	 * @return The summary, null while the writer may still add to it.
+	 */
+	public synchronized BlockSummary getSummary(int block)
+	{
+		return block < keys - 1 || sealed ? blocks[block] : null;
+	}
+	
+	/**
+	 * Start a block. Its predecessor is complete from here on.
+	 * 
+	 * @param time
+	 * @param offset
+	 */
+	private synchronized void addKey(long time, long offset)
+	{
+		if (keys == blocks.length)
+		{
+			blocks = Arrays.copyOf(blocks, keys * 2);
+		}
+		
+		building = new BlockSummary(time, offset);
+		
+		blocks[keys++] = building;
+	}
+	
+	/**
+	 * Sync and stop appending, the last block summary is then complete.
+	 * 
+	 * @throws IOException
+	 */
+	public void seal() throws IOException
+	{
+		sync();
+		
+		synchronized (this)
+		{
+			sealed = true;
+		}
+	}
+	
+	/**
+	 * Force appended samples to disk.
+	 * 
+	 * @throws IOException
+	 */
+	public void sync() throws IOException
+	{
+		channel.force(false);
+	}
+	
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+	
+	public File getFile()
+	{
+		return file;
+	}
+	
+	/**
+	 * Time of the first sample, seconds.
+	 * 
+	 * @return The base time.
+	 */
+	public long getBase()
+	{
+		return base;
+	}
+	
+	/**
+	 * Time of the last sample written, seconds. Writer only.
+	 * 
+	 * @return The time.
+	 */
+	public long getLastTime()
+	{
+		return lastTime;
+	}
+	
+	/**
+	 * Samples written. Writer only.
+	 * 
+	 * @return The count.
+	 */
+	public int getSamples()
+	{
+		return samples;
+	}
+	
+	public long getLength()
+	{
+		return length;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Encoding
+	// ------------------------------------------------------------------------
+	
+	private static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	private static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private static byte check(byte[] data, int offset, int length)
+	{
+		int hash = 0x5A;
+		
+		for (int index = offset; index < offset + length; index++)
+		{
+			hash = (hash * 31) ^ data[index];
+		}
+		
+		return (byte) (hash ^ (hash >>> 8));
+	}
+	
+	private static int putVarint(byte[] data, int index, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			data[index++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		
+		data[index++] = (byte) value;
+		
+		return index;
+	}
+	
+	/**
+	 * Decodes frames between two offsets, reading the file in blocks.
+	 * 
+	 */
+	private class Decoder
+	{
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private byte[] data = buffer.array();
+		private int index;
+		private int count;
+		
+		/**
+		 * File offset of data[0].
+		 */
+		private long position;
+		private long limit;
+		
+		/**
+		 * Offset after the last good frame.
+		 */
+		private long end;
+		
+		// Current frame.
+		private long offset;
+		private boolean key;
+		private long time;
+		private int occupied;
+		private int capacity;
+		private CarParkStatus status;
+		
+		private boolean started;
+		
+		public Decoder(long start, long limit)
+		{
+			this.position = start;
+			this.limit = limit;
+			
+			end = start;
+			time = base;
+		}
+		
+		/**
+		 * Decode next frame.
+		 * 
+		 * @return False at the limit or a bad frame.
+		 * 
+		 * @throws IOException
+		 */
+		public boolean next() throws IOException
+		{
+			if (count - index < MAX_FRAME)
+			{
+				fill();
+			}
+			
+			if (index == count)
+			{
+				return false;
+			}
+			
+			offset = position + index;
+			
+			int start = index;
+			
+			int tag = data[index++] & 0xFF;
+			
+			if ((tag & TAG_MASK) != TAG)
+			{
+				return false;
+			}
+			
+			key = (tag & FLAG_KEY) != 0;
+			
+			// Deltas need a key frame to start from.
+			if (!key && !started)
+			{
+				return false;
+			}
+			
+			long nextTime;
+			long nextOccupied;
+			long nextCapacity = capacity;
+			int nextStatus = status == null ? 0 : status.ordinal();
+			
+			try
+			{
+				if (key)
+				{
+					nextTime = base + readVarint();
+					nextOccupied = unzigzag(readVarint());
+					nextCapacity = unzigzag(readVarint());
+					nextStatus = readByte();
+				}
+				else
+				{
+					nextTime = time + readVarint();
+					nextOccupied = occupied + unzigzag(readVarint());
+					
+					if ((tag & FLAG_STATUS) != 0)
+					{
+						nextStatus = readByte();
+					}
+					
+					if ((tag & FLAG_CAPACITY) != 0)
+					{
+						nextCapacity = unzigzag(readVarint());
+					}
+				}
+				
+				if ((byte) readByte() != check(data, start, index - start - 1))
+				{
+					return false;
+				}
+			}
+			catch (IndexOutOfBoundsException e)
+			{
+				// Torn frame.
+				return false;
+			}
+			
+			if ((started && nextTime <= time) || nextStatus >= STATUSES.length || nextOccupied != (int) nextOccupied || nextCapacity != (int) nextCapacity)
+			{
+				return false;
+			}
+			
+			started = true;
+			
+			time = nextTime;
+			occupied = (int) nextOccupied;
+			capacity = (int) nextCapacity;
+			status = STATUSES[nextStatus];
+			
+			end = position + index;
+			
+			return true;
+		}
+		
+		private int readByte()
+		{
+			if (index == count)
+			{
+				throw new IndexOutOfBoundsException();
+			}
+			
+			return data[index++] & 0xFF;
+		}
+		
+		private long readVarint()
+		{
+			long value = 0;
+			
+			for (int shift = 0; shift < 64; shift += 7)
+			{
+				int b = readByte();
+				
+				value |= (long) (b & 0x7F) << shift;
+				
+				if ((b & 0x80) == 0)
+				{
+					return value;
+				}
+			}
+			
+			throw new IndexOutOfBoundsException();
+		}
+		
+		/**
+		 * Move unread bytes down and read more up to the limit.
+		 * 
+		 * @throws IOException
+		 */
+		private void fill() throws IOException
+		{
+			int remaining = count - index;
+			
+			System.arraycopy(data, index, data, 0, remaining);
+			
+			position += index;
+			index = 0;
+			count = remaining;
+			
+			long available = limit - position - count;
+			
+			if (available > 0)
+			{
+				buffer.clear();
+				buffer.position(count);
+				buffer.limit(count + (int) Math.min(available, data.length - count));
+				
+				while (buffer.hasRemaining())
+				{
+					int read = channel.read(buffer, position + buffer.position());
+					
+					if (read < 0)
+					{
+						break;
+					}
+				}
+				
+				count = buffer.position();
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,125 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.live;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.netthreads.transportation.data.SituationRecord;
+
+/**
+ * The records of one completed poll. Immutable, readers may keep and share
+ * a snapshot for as long as they like.
+ * 
+ */
+public class LiveSnapshot<T extends SituationRecord>
+{
+	private long sequence;
+	private long published;
+	
+	private List<T> records;
+	private Map<String, T> ids;
+	
+	/**
+	 * Construct snapshot, taking ownership of the collections.
+	 * 
+	 * @param sequence
+	 * @param published
+	 * @param records
+	 * @param ids
+	 */
+	LiveSnapshot(long sequence, long published, List<T> records, Map<String, T> ids)
+	{
+		this.sequence = sequence;
+		this.published = published;
+		this.records = Collections.unmodifiableList(records);
+		this.ids = Collections.unmodifiableMap(ids);
+	}
+	
+	/**
+	 * Snapshot before the first poll.
+	 * 
+	 * @return An empty snapshot.
+	 */
+	static <T extends SituationRecord> LiveSnapshot<T> empty()
+	{
+		return new LiveSnapshot<T>(0, 0, new ArrayList<T>(0), new HashMap<String, T>(0));
+	}
+	
+	/**
+	 * Record by id.
+	 * 
+	 * @param id
+	 * 
+	 * @return The record or null.
+	 */
+	public T get(String id)
+	{
+		return ids.get(id);
+	}
+	
+	/**
+	 * Records in feed order, read only.
+	 * 
+	 * @return The records.
+	 */
+	public List<T> getRecords()
+	{
+		return records;
+	}
+	
+	/**
+	 * Records by id, read only.
+	 * 
+	 * @return The map.
+	 */
+	public Map<String, T> getIds()
+	{
+		return ids;
+	}
+	
+	public int size()
+	{
+		return records.size();
+	}
+	
+	/**
+	 * Count of snapshots published before and including this one.
+	 * 
+	 * @return The sequence, zero before the first poll.
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+	
+	/**
+	 * When published.
+	 * 
+	 * @return Milliseconds since the epoch.
+	 */
+	public long getPublished()
+	{
+		return published;
+	}
+	
+}
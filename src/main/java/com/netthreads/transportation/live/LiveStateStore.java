@@ -0,0 +1,239 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.live;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.netthreads.transportation.data.SituationRecord;
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.RecordFingerprints;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.UnchangedListener;
+
+/**
+ * Current state of a feed for concurrent readers.
+ * 
+ * Each poll is fetched into a new list and id map off to the side. When
+ * the poll completes they become an immutable LiveSnapshot, published with
+ * a single atomic reference swap. Readers call current() and work with the
+ * snapshot they get, they never block and never see a poll in progress.
+ * A cancelled or failed poll is discarded and the last snapshot stays.
+ * Superseded snapshots are garbage once no reader holds them.
+ * 
+ * Records skipped as unchanged by a stream parser using fingerprints are
+ * carried over from the last snapshot, set the store as the unchanged
+ * listener and give it the same fingerprints. If a skipped record is not in
+ * the last snapshot the poll is not published and the fingerprints are
+ * cleared, so the next poll builds every record. Records in a snapshot must
+ * not be released to a recycling data factory. Polls must be fetched one at
+ * a time.
+ * 
+ */
+public class LiveStateStore<T extends SituationRecord> implements RecordSink<T>, UnchangedListener
+{
+	private AtomicReference<LiveSnapshot<T>> current = new AtomicReference<LiveSnapshot<T>>(LiveSnapshot.<T> empty());
+	
+	// Next snapshot, writer only.
+	private List<T> records;
+	private Map<String, T> ids;
+	
+	private Exception error;
+	
+	private RecordFingerprints fingerprints;
+	
+	// A record skipped as unchanged was not in the last snapshot.
+	private String missing;
+	
+	/**
+	 * Fetch a poll and publish it if it completes.
+	 * 
+	 * @param streamParser
+	 * @param stream
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The final parse state.
+	 */
+	public int poll(StreamParser<T> streamParser, InputStream stream, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		return streamParser.fetch(stream, this, dataFactory, pullParser);
+	}
+	
+	/**
+	 * The last published snapshot.
+	 * 
+	 * @return The snapshot, empty before the first poll completes.
+	 */
+	public LiveSnapshot<T> current()
+	{
+		return current.get();
+	}
+	
+	/**
+	 * Set the fingerprints of the stream parser which has this store as its
+	 * unchanged listener.
+	 * 
+	 * @param fingerprints
+	 */
+	public void setFingerprints(RecordFingerprints fingerprints)
+	{
+		this.fingerprints = fingerprints;
+	}
+	
+	/**
+	 * Publish a complete set of records fetched elsewhere. The fingerprints
+	 * no longer match the snapshot and are cleared.
+	 * 
+	 * @param records
+	 * 
+	 * @return The new snapshot.
+	 */
+	public LiveSnapshot<T> publish(List<T> records)
+	{
+		if (fingerprints != null)
+		{
+			fingerprints.clear();
+		}
+		
+		start(records.size());
+		
+		for (T record : records)
+		{
+			add(record);
+		}
+		
+		return publish();
+	}
+	
+	@Override
+	public boolean accept(T record)
+	{
+		if (records == null)
+		{
+			start(current.get().size());
+		}
+		
+		add(record);
+		
+		return true;
+	}
+	
+	@Override
+	public void unchanged(String id)
+	{
+		T previous = current.get().get(id);
+		
+		if (previous != null)
+		{
+			accept(previous);
+		}
+		else if (missing == null)
+		{
+			// Cannot build it, the parser has dropped its data.
+			missing = id;
+		}
+	}
+	
+	@Override
+	public void end(int state)
+	{
+		if (state == StreamParser.DONE && missing == null)
+		{
+			if (records == null)
+			{
+				start(0);
+			}
+			
+			publish();
+		}
+		else
+		{
+			if (missing != null)
+			{
+				error = new IllegalStateException("Unchanged record not in last snapshot: " + missing);
+				
+				if (fingerprints != null)
+				{
+					fingerprints.clear();
+				}
+			}
+			
+			// Keep the last complete poll. The fingerprints only store hashes
+			// of completed polls so still match it.
+			records = null;
+			ids = null;
+		}
+		
+		missing = null;
+	}
+	
+	@Override
+	public void error(Exception e)
+	{
+		error = e;
+	}
+	
+	/**
+	 * Error from the last failed poll.
+	 * 
+	 * @return The error or null.
+	 */
+	public Exception getError()
+	{
+		return error;
+	}
+	
+	private void start(int size)
+	{
+		records = new ArrayList<T>(size);
+		ids = new HashMap<String, T>(size * 4 / 3 + 1);
+		
+		error = null;
+	}
+	
+	private void add(T record)
+	{
+		records.add(record);
+		
+		if (record.getId() != null)
+		{
+			ids.put(record.getId(), record);
+		}
+	}
+	
+	private LiveSnapshot<T> publish()
+	{
+		LiveSnapshot<T> next = new LiveSnapshot<T>(current.get().getSequence() + 1, System.currentTimeMillis(), records, ids);
+		
+		records = null;
+		ids = null;
+		
+		current.set(next);
+		
+		return next;
+	}
+	
+}
@@ -0,0 +1,193 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log linear histogram of non-negative values.
+ * 
+ * Values below SUB_BUCKETS are counted exactly. Above that each power of two
+ * is split into SUB_BUCKETS / 2 equal buckets, so a recorded value is known
+ * to within 1/16th of itself whatever its size, in a fixed table of under a
+ * thousand counts. Recording is a few shifts and an atomic increment, safe
+ * from any number of threads.
+ * 
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 5;
+	
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+	
+	private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF_BUCKETS;
+	
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong sum = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Count a value.
+	 * 
+	 * @param value
+	 *            Negative values count as zero.
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+		
+		counts.incrementAndGet(index(value));
+		
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		
+		long current;
+		
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+		{
+			// Retry.
+		}
+	}
+	
+	/**
+	 * Value at or below which the given percentage of values fall.
+	 * 
+	 * @param percentile
+	 *            0 to 100.
+	 * 
+	 * @return The highest value in the bucket holding the percentile, no
+	 *         more than the maximum recorded, zero if empty.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long total = count.get();
+		
+		if (total == 0)
+		{
+			return 0;
+		}
+		
+		long target = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+		
+		target = Math.max(1, target);
+		
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			
+			if (seen >= target)
+			{
+				return Math.min(highest(i), max.get());
+			}
+		}
+		
+		return max.get();
+	}
+	
+	public long getCount()
+	{
+		return count.get();
+	}
+	
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	/**
+	 * Mean of the values.
+	 * 
+	 * @return The mean, zero if empty.
+	 */
+	public double getMean()
+	{
+		long total = count.get();
+		
+		return total > 0 ? (double) sum.get() / total : 0;
+	}
+	
+	/**
+	 * Clear the counts. Values recorded meanwhile may be partly lost.
+	 * 
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+	
+	/**
+	 * Bucket holding a value.
+	 * 
+	 * @param value
+	 * 
+	 * @return The index.
+	 */
+	static int index(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		
+		int shift = exponent - SUB_BUCKET_BITS + 1;
+		
+		return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (int) (value >>> shift) - HALF_BUCKETS;
+	}
+	
+	/**
+	 * Highest value held by a bucket.
+	 * 
+	 * @param index
+	 * 
+	 * @return The value.
+	 */
+	static long highest(int index)
+	{
+		if (index < SUB_BUCKETS)
+		{
+			return index;
+		}
+		
+		int shift = (index - SUB_BUCKETS) / HALF_BUCKETS + 1;
+		
+		long sub = (index - SUB_BUCKETS) % HALF_BUCKETS + HALF_BUCKETS;
+		
+		return ((sub + 1) << shift) - 1;
+	}
+	
+}
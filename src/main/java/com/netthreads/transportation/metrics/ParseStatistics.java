@@ -0,0 +1,225 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.netthreads.transportation.parser.FetchMetrics;
+import com.netthreads.transportation.parser.FetchStats;
+
+/**
+ * Running totals and latency histograms for the fetches of one feed type.
+ * 
+ * Set one instance on every stream parser fetching that feed, it is safe to
+ * share between threads. Each fetch costs a handful of atomic updates.
+ * 
+ * To publish to a metrics registry either read snapshot(), a flat map of
+ * names to numbers suited to polled gauges, or wrap this in a FetchMetrics
+ * which forwards each fetch to the registry as well.
+ * 
+ */
+public class ParseStatistics implements FetchMetrics
+{
+	public static final String FETCHES = "fetches";
+	public static final String BYTES = "bytes";
+	public static final String TOKENS = "tokens";
+	public static final String RECORDS = "records";
+	public static final String SKIPPED = "skipped";
+	public static final String IO_NANOS = "io.nanos";
+	public static final String PARSE_NANOS = "parse.nanos";
+	public static final String RECORDS_PER_SECOND = "records.per.second";
+	public static final String ERRORS = "errors.";
+	public static final String FETCH_MICROS = "fetch.micros.";
+	public static final String PARSE_MICROS = "parse.micros.";
+	
+	private static final String[] ERROR_NAMES = { "none", "parse", "io", "timeout", "cancelled" };
+	
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 100 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999", "max" };
+	
+	private static final long NANOS_PER_MICRO = 1000;
+	private static final double NANOS_PER_SECOND = 1e9;
+	
+	private String name;
+	
+	private AtomicLong fetches = new AtomicLong();
+	private AtomicLong bytes = new AtomicLong();
+	private AtomicLong tokens = new AtomicLong();
+	private AtomicLong records = new AtomicLong();
+	private AtomicLong skipped = new AtomicLong();
+	private AtomicLong ioNanos = new AtomicLong();
+	private AtomicLong parseNanos = new AtomicLong();
+	
+	private AtomicLongArray errors = new AtomicLongArray(FetchStats.ERROR_KINDS);
+	
+	private LatencyHistogram fetchTime = new LatencyHistogram();
+	private LatencyHistogram parseTime = new LatencyHistogram();
+	
+	/**
+	 * Construct statistics.
+	 * 
+	 * @param name
+	 *            Feed type, prefixes the snapshot names.
+	 */
+	public ParseStatistics(String name)
+	{
+		this.name = name;
+	}
+	
+	@Override
+	public void fetched(FetchStats stats)
+	{
+		fetches.incrementAndGet();
+		bytes.addAndGet(stats.getBytes());
+		tokens.addAndGet(stats.getTokens());
+		records.addAndGet(stats.getRecords());
+		skipped.addAndGet(stats.getSkipped());
+		ioNanos.addAndGet(stats.getIoNanos());
+		parseNanos.addAndGet(stats.getParseNanos());
+		
+		errors.incrementAndGet(stats.getErrorKind());
+		
+		fetchTime.record(stats.getTotalNanos() / NANOS_PER_MICRO);
+		parseTime.record(stats.getParseNanos() / NANOS_PER_MICRO);
+	}
+	
+	/**
+	 * Current values by name, each prefixed by the feed type. Totals are
+	 * read one at a time so may straddle a fetch.
+	 * 
+	 * @return A new map, in a stable order.
+	 */
+	public Map<String, Number> snapshot()
+	{
+		Map<String, Number> values = new LinkedHashMap<String, Number>();
+		
+		String prefix = name + ".";
+		
+		values.put(prefix + FETCHES, fetches.get());
+		values.put(prefix + BYTES, bytes.get());
+		values.put(prefix + TOKENS, tokens.get());
+		values.put(prefix + RECORDS, records.get());
+		values.put(prefix + SKIPPED, skipped.get());
+		values.put(prefix + IO_NANOS, ioNanos.get());
+		values.put(prefix + PARSE_NANOS, parseNanos.get());
+		values.put(prefix + RECORDS_PER_SECOND, getRecordsPerSecond());
+		
+		for (int i = FetchStats.ERROR_PARSE; i < FetchStats.ERROR_KINDS; i++)
+		{
+			values.put(prefix + ERRORS + ERROR_NAMES[i], errors.get(i));
+		}
+		
+		for (int i = 0; i < PERCENTILES.length; i++)
+		{
+			values.put(prefix + FETCH_MICROS + PERCENTILE_NAMES[i], fetchTime.getValueAtPercentile(PERCENTILES[i]));
+			values.put(prefix + PARSE_MICROS + PERCENTILE_NAMES[i], parseTime.getValueAtPercentile(PERCENTILES[i]));
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Records passed on per second of parse time.
+	 * 
+	 * @return The rate, zero before the first fetch.
+	 */
+	public double getRecordsPerSecond()
+	{
+		long nanos = parseNanos.get();
+		
+		return nanos > 0 ? records.get() * NANOS_PER_SECOND / nanos : 0;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	public long getFetches()
+	{
+		return fetches.get();
+	}
+	
+	public long getBytes()
+	{
+		return bytes.get();
+	}
+	
+	public long getTokens()
+	{
+		return tokens.get();
+	}
+	
+	public long getRecords()
+	{
+		return records.get();
+	}
+	
+	public long getSkipped()
+	{
+		return skipped.get();
+	}
+	
+	public long getIoNanos()
+	{
+		return ioNanos.get();
+	}
+	
+	public long getParseNanos()
+	{
+		return parseNanos.get();
+	}
+	
+	/**
+	 * Fetches ending for a reason.
+	 * 
+	 * @param errorKind
+	 *            One of the FetchStats.ERROR_ values.
+	 * 
+	 * @return The count.
+	 */
+	public long getErrors(int errorKind)
+	{
+		return errors.get(errorKind);
+	}
+	
+	/**
+	 * Wall time of each fetch.
+	 * 
+	 * @return Histogram in microseconds.
+	 */
+	public LatencyHistogram getFetchTime()
+	{
+		return fetchTime;
+	}
+	
+	/**
+	 * Time of each fetch not spent waiting on the stream.
+	 * 
+	 * @return Histogram in microseconds.
+	 */
+	public LatencyHistogram getParseTime()
+	{
+		return parseTime;
+	}
+	
+}
@@ -0,0 +1,322 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Finds the byte ranges of the elements of one array in a JSON document
+ * without tokenizing it.
+ * 
+ * The array is named by the keys leading to it from the root object, by
+ * default payloadPublication/situation. The scanner only tracks nesting
+ * depth, strings and escapes and compares keys byte by byte so it runs much
+ * faster than a full parse. A single object in place of the array, as
+ * written when a feed holds one situation, is treated as an array of one.
+ * 
+ * Scanning is incremental, bytes can be fed in any size of chunk and
+ * positions are reported relative to the first byte ever scanned. Not thread
+ * safe.
+ * 
+ */
+public class ElementScanner
+{
+	public static final String[] SITUATION_PATH = { "payloadPublication", "situation" };
+	
+	/**
+	 * Element boundaries.
+	 * 
+	 */
+	public interface Listener
+	{
+		/**
+		 * Element starts.
+		 * 
+		 * @param position
+		 *            Position of the first byte.
+		 */
+		public void elementStart(long position);
+		
+		/**
+		 * Element ends.
+		 * 
+		 * @param position
+		 *            Position after the last byte.
+		 */
+		public void elementEnd(long position);
+	}
+	
+	private String[] names;
+	private byte[][] path;
+	
+	// Scan state.
+	private long position;
+	private int depth;
+	private int matched;
+	private boolean inString;
+	private boolean escape;
+	private boolean keyMatch;
+	private int keyIndex;
+	private boolean candidate;
+	private boolean key;
+	private boolean inElement;
+	private boolean arrayFound;
+	private int elementDepth;
+	
+	/**
+	 * Construct scanner for the situation array.
+	 * 
+	 */
+	public ElementScanner()
+	{
+		this(SITUATION_PATH);
+	}
+	
+	/**
+	 * Construct scanner.
+	 * 
+	 * @param path
+	 *            Keys from the root object to the array.
+	 */
+	public ElementScanner(String... path)
+	{
+		this.names = path.clone();
+		this.path = new byte[path.length][];
+		
+		try
+		{
+			for (int i = 0; i < path.length; i++)
+			{
+				this.path[i] = path[i].getBytes("UTF-8");
+			}
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		
+		reset();
+	}
+	
+	/**
+	 * Scan bytes.
+	 * 
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @param listener
+	 */
+	public void scan(byte[] buffer, int offset, int length, Listener listener)
+	{
+		int end = offset + length;
+		
+		for (int i = offset; i < end; i++)
+		{
+			byte b = buffer[i];
+			
+			if (inString)
+			{
+				if (escape)
+				{
+					escape = false;
+					keyMatch = false;
+				}
+				else if (b == '\\')
+				{
+					escape = true;
+				}
+				else if (b == '"')
+				{
+					inString = false;
+					
+					candidate = keyMatch && keyIndex == path[matched].length;
+				}
+				else if (keyMatch)
+				{
+					byte[] segment = path[matched];
+					
+					keyMatch = keyIndex < segment.length && segment[keyIndex] == b;
+					keyIndex++;
+				}
+			}
+			else
+			{
+				switch (b)
+				{
+					case '"':
+						inString = true;
+						
+						// Only keys in the deepest matched object are of interest.
+						keyMatch = depth == matched + 1 && matched < path.length;
+						keyIndex = 0;
+						candidate = false;
+						break;
+					case ':':
+						key = candidate;
+						break;
+					case ',':
+						key = false;
+						candidate = false;
+						break;
+					case '{':
+					case '[':
+						if (depth == matched + 1 && matched < path.length && key)
+						{
+							matched++;
+							
+							if (matched == path.length)
+							{
+								arrayFound = true;
+								
+								// Elements sit inside the array, a lone object is
+								// the element itself.
+								elementDepth = b == '[' ? depth + 2 : depth + 1;
+							}
+						}
+						
+						key = false;
+						candidate = false;
+						
+						depth++;
+						
+						if (depth == elementDepth && matched == path.length)
+						{
+							inElement = true;
+							
+							listener.elementStart(position + (i - offset));
+						}
+						break;
+					case '}':
+					case ']':
+						if (depth == elementDepth && inElement)
+						{
+							inElement = false;
+							
+							listener.elementEnd(position + (i - offset) + 1);
+						}
+						
+						depth--;
+						
+						if (matched > depth - 1)
+						{
+							matched = Math.max(0, depth - 1);
+						}
+						
+						key = false;
+						candidate = false;
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		
+		position += length;
+	}
+	
+	/**
+	 * Check if the array has been found.
+	 * 
+	 * @return True if the scanner has entered the array.
+	 */
+	public boolean isArrayFound()
+	{
+		return arrayFound;
+	}
+	
+	/**
+	 * Check if inside an element.
+	 * 
+	 * @return True if an element has started but not ended.
+	 */
+	public boolean isInElement()
+	{
+		return inElement;
+	}
+	
+	/**
+	 * Bytes scanned so far.
+	 * 
+	 * @return The position.
+	 */
+	public long getPosition()
+	{
+		return position;
+	}
+	
+	/**
+	 * Start a new document.
+	 * 
+	 */
+	public void reset()
+	{
+		position = 0;
+		depth = 0;
+		matched = 0;
+		inString = false;
+		escape = false;
+		keyMatch = false;
+		keyIndex = 0;
+		candidate = false;
+		key = false;
+		inElement = false;
+		arrayFound = false;
+		elementDepth = path.length + 2;
+	}
+	
+	/**
+	 * Document prefix which puts elements back at their original path.
+	 * 
+	 * @return The prefix.
+	 */
+	public String getPrefix()
+	{
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append('{');
+		
+		for (int i = 0; i < path.length; i++)
+		{
+			builder.append('"').append(names[i]).append("\":");
+			builder.append(i == path.length - 1 ? '[' : '{');
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Document suffix to close the prefix.
+	 * 
+	 * @return The suffix.
+	 */
+	public String getSuffix()
+	{
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append(']');
+		
+		for (int i = 0; i < path.length; i++)
+		{
+			builder.append('}');
+		}
+		
+		return builder.toString();
+	}
+	
+}
@@ -0,0 +1,165 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+/**
+ * Measurements of one fetch.
+ * 
+ */
+public class FetchStats
+{
+	public static final int ERROR_NONE = 0;
+	public static final int ERROR_PARSE = 1;
+	public static final int ERROR_IO = 2;
+	public static final int ERROR_TIMEOUT = 3;
+	public static final int ERROR_CANCELLED = 4;
+	
+	public static final int ERROR_KINDS = 5;
+	
+	private long bytes;
+	private long tokens;
+	private int records;
+	private int skipped;
+	private long ioNanos;
+	private long totalNanos;
+	private int state;
+	private int errorKind;
+	
+	/**
+	 * Set the values.
+	 * 
+	 * @param bytes
+	 * @param tokens
+	 * @param records
+	 * @param skipped
+	 * @param ioNanos
+	 * @param totalNanos
+	 * @param state
+	 * @param errorKind
+	 */
+	void set(long bytes, long tokens, int records, int skipped, long ioNanos, long totalNanos, int state, int errorKind)
+	{
+		this.bytes = bytes;
+		this.tokens = tokens;
+		this.records = records;
+		this.skipped = skipped;
+		this.ioNanos = ioNanos;
+		this.totalNanos = totalNanos;
+		this.state = state;
+		this.errorKind = errorKind;
+	}
+	
+	/**
+	 * Bytes read from the source.
+	 * 
+	 * @return The count.
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+	
+	/**
+	 * JSON tokens read, including those of skipped subtrees.
+	 * 
+	 * @return The count.
+	 */
+	public long getTokens()
+	{
+		return tokens;
+	}
+	
+	/**
+	 * Records passed on.
+	 * 
+	 * @return The count.
+	 */
+	public int getRecords()
+	{
+		return records;
+	}
+	
+	/**
+	 * Records dropped as unchanged.
+	 * 
+	 * @return The count.
+	 */
+	public int getSkipped()
+	{
+		return skipped;
+	}
+	
+	/**
+	 * Time spent waiting on the source stream.
+	 * 
+	 * @return Nanoseconds, zero when parsing from memory.
+	 */
+	public long getIoNanos()
+	{
+		return ioNanos;
+	}
+	
+	/**
+	 * Time spent parsing and in the sink.
+	 * 
+	 * @return Nanoseconds.
+	 */
+	public long getParseNanos()
+	{
+		return totalNanos - ioNanos;
+	}
+	
+	/**
+	 * Wall time of the fetch.
+	 * 
+	 * @return Nanoseconds.
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+	
+	/**
+	 * Final parse state, see StreamParser.
+	 * 
+	 * @return The state.
+	 */
+	public int getState()
+	{
+		return state;
+	}
+	
+	/**
+	 * Why the fetch did not finish.
+	 * 
+	 * @return One of the ERROR_ values, ERROR_NONE when done.
+	 */
+	public int getErrorKind()
+	{
+		return errorKind;
+	}
+	
+	@Override
+	public String toString()
+	{
+		String text = state + ", " + records + " records, " + skipped + " skipped, " + tokens + " tokens, " + bytes + " bytes, " + (ioNanos / 1000) + "/" + (totalNanos / 1000) + "us io/total";
+		
+		return text;
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+/**
+ * Optional JSONParser extension for parsers which can name the record they
+ * have just read. Needed for unchanged record detection, see
+ * StreamParserImpl.setFingerprints(), records from other parsers are always
+ * built.
+ * 
+ */
+public interface IdentifiedJSONParser<T> extends JSONParser<T>
+{
+	/**
+	 * Id of the record read, valid until it is populated or discarded.
+	 * 
+	 * @return The id.
+	 */
+	public String getRecordId();
+
+	/**
+	 * Drop the data read for a record which will not be populated.
+	 * 
+	 */
+	public void discardRecord();
+}
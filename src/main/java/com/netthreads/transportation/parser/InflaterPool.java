@@ -0,0 +1,163 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.util.ArrayDeque;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of Inflaters.
+ * 
+ * An Inflater holds native memory until end() is called, creating one per
+ * fetch leaves that to finalization. Released inflaters are reset and handed
+ * out again, once the pool holds maxSize of a kind further releases are
+ * ended.
+ * 
+ * Thread safe.
+ * 
+ */
+public class InflaterPool
+{
+	public static final int DEFAULT_MAX_SIZE = 8;
+	
+	private ArrayDeque<Inflater> raw;
+	private ArrayDeque<Inflater> wrapped;
+	private int maxSize;
+	
+	private long created;
+	private long reused;
+	
+	/**
+	 * Construct pool.
+	 * 
+	 */
+	public InflaterPool()
+	{
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * Construct pool.
+	 * 
+	 * @param maxSize
+	 *            Most inflaters of each kind held.
+	 */
+	public InflaterPool(int maxSize)
+	{
+		this.maxSize = maxSize;
+		
+		raw = new ArrayDeque<Inflater>();
+		wrapped = new ArrayDeque<Inflater>();
+	}
+	
+	/**
+	 * Take an inflater.
+	 * 
+	 * @param nowrap
+	 *            True for raw deflate data, false for the zlib format.
+	 * 
+	 * @return The inflater, reset.
+	 */
+	public synchronized Inflater acquire(boolean nowrap)
+	{
+		Inflater inflater = (nowrap ? raw : wrapped).pollFirst();
+		
+		if (inflater == null)
+		{
+			inflater = new Inflater(nowrap);
+			
+			created++;
+		}
+		else
+		{
+			reused++;
+		}
+		
+		return inflater;
+	}
+	
+	/**
+	 * Return an inflater.
+	 * 
+	 * @param inflater
+	 * @param nowrap
+	 *            As acquired.
+	 */
+	public synchronized void release(Inflater inflater, boolean nowrap)
+	{
+		ArrayDeque<Inflater> pool = nowrap ? raw : wrapped;
+		
+		if (pool.size() < maxSize)
+		{
+			inflater.reset();
+			
+			pool.addFirst(inflater);
+		}
+		else
+		{
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * End every pooled inflater.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		for (Inflater inflater : raw)
+		{
+			inflater.end();
+		}
+		
+		for (Inflater inflater : wrapped)
+		{
+			inflater.end();
+		}
+		
+		raw.clear();
+		wrapped.clear();
+	}
+	
+	/**
+	 * Inflaters waiting to be reused.
+	 * 
+	 * @return The pool size.
+	 */
+	public synchronized int size()
+	{
+		return raw.size() + wrapped.size();
+	}
+	
+	public synchronized long getCreated()
+	{
+		return created;
+	}
+	
+	public synchronized long getReused()
+	{
+		return reused;
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+}
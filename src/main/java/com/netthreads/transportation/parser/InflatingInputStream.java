@@ -0,0 +1,527 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses gzip or zlib input, passing anything else through unchanged.
+ * 
+ * The format is decided from the first bytes. Gzip headers and trailers are
+ * handled here, including concatenated members, so the inflater only sees
+ * raw deflate data. Inflaters come from a pool and the input buffer belongs
+ * to the stream, reset() starts on a new source without allocating.
+ * 
+ * Not thread safe, use one per parser.
+ * 
+ */
+public class InflatingInputStream extends InputStream
+{
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+	private static final int GZIP_FHCRC = 2;
+	private static final int GZIP_FEXTRA = 4;
+	private static final int GZIP_FNAME = 8;
+	private static final int GZIP_FCOMMENT = 16;
+	private static final int GZIP_TIME_FLAGS_OS = 6;
+	
+	private static final int DEFLATE = 8;
+	
+	private static final int ZLIB_METHOD_MASK = 0x0f;
+	private static final int ZLIB_MAX_WINDOW = 7;
+	private static final int ZLIB_FDICT = 0x20;
+	private static final int ZLIB_CHECK = 31;
+	
+	private static final int MAGIC_LENGTH = 2;
+	
+	private static final int FORMAT_UNKNOWN = 0;
+	private static final int FORMAT_PLAIN = 1;
+	private static final int FORMAT_GZIP = 2;
+	private static final int FORMAT_ZLIB = 3;
+	private static final int FORMAT_END = 4;
+	
+	private InflaterPool pool;
+	private byte[] buffer;
+	private byte[] single = new byte[1];
+	
+	private InputStream in;
+	private int position;
+	private int limit;
+	private int format;
+	
+	private Inflater inflater;
+	private boolean nowrap;
+	private CRC32 crc = new CRC32();
+	private long written;
+	
+	/**
+	 * Construct stream, call reset() before reading.
+	 * 
+	 * @param pool
+	 */
+	public InflatingInputStream(InflaterPool pool)
+	{
+		this(pool, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Construct stream, call reset() before reading.
+	 * 
+	 * @param pool
+	 * @param bufferSize
+	 *            Bytes read from the source at a time.
+	 */
+	public InflatingInputStream(InflaterPool pool, int bufferSize)
+	{
+		this.pool = pool;
+		
+		buffer = new byte[Math.max(bufferSize, MAGIC_LENGTH)];
+		
+		format = FORMAT_END;
+	}
+	
+	/**
+	 * Start on a new source, returning any inflater held.
+	 * 
+	 * @param stream
+	 * 
+	 * @return This stream.
+	 */
+	public InflatingInputStream reset(InputStream stream)
+	{
+		release();
+		
+		in = stream;
+		
+		position = 0;
+		limit = 0;
+		
+		format = FORMAT_UNKNOWN;
+		
+		return this;
+	}
+	
+	/**
+	 * Check whether data in memory is compressed.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return True if gzip or zlib.
+	 */
+	public static boolean isCompressed(byte[] data, int offset, int length)
+	{
+		return length >= MAGIC_LENGTH && (isGzip(data[offset], data[offset + 1]) || isZlib(data[offset], data[offset + 1]));
+	}
+	
+	/**
+	 * Check for the gzip magic number.
+	 * 
+	 * @param first
+	 * @param second
+	 * 
+	 * @return True if gzip.
+	 */
+	private static boolean isGzip(byte first, byte second)
+	{
+		return (first & 0xff) == GZIP_MAGIC_1 && (second & 0xff) == GZIP_MAGIC_2;
+	}
+	
+	/**
+	 * Check for a zlib header without a preset dictionary. No JSON document
+	 * starting with a structural character or white space can match.
+	 * 
+	 * @param first
+	 * @param second
+	 * 
+	 * @return True if zlib.
+	 */
+	private static boolean isZlib(byte first, byte second)
+	{
+		int cmf = first & 0xff;
+		int flg = second & 0xff;
+		
+		return (cmf & ZLIB_METHOD_MASK) == DEFLATE && (cmf >> 4) <= ZLIB_MAX_WINDOW && (flg & ZLIB_FDICT) == 0 && ((cmf << 8) | flg) % ZLIB_CHECK == 0;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		int read = read(single, 0, 1);
+		
+		return read == -1 ? -1 : single[0] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] data, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		
+		if (format == FORMAT_UNKNOWN)
+		{
+			detect();
+		}
+		
+		int read;
+		
+		switch (format)
+		{
+			case FORMAT_PLAIN:
+				if (position < limit)
+				{
+					read = Math.min(length, limit - position);
+					
+					System.arraycopy(buffer, position, data, offset, read);
+					
+					position += read;
+				}
+				else
+				{
+					read = in.read(data, offset, length);
+				}
+				break;
+			case FORMAT_GZIP:
+			case FORMAT_ZLIB:
+				read = inflate(data, offset, length);
+				break;
+			default:
+				read = -1;
+				break;
+		}
+		
+		return read;
+	}
+	
+	/**
+	 * Decide the format from the first bytes.
+	 * 
+	 * @throws IOException
+	 */
+	private void detect() throws IOException
+	{
+		format = FORMAT_PLAIN;
+		
+		if (ensure(MAGIC_LENGTH))
+		{
+			if (isGzip(buffer[position], buffer[position + 1]))
+			{
+				startMember();
+			}
+			else if (isZlib(buffer[position], buffer[position + 1]))
+			{
+				// The inflater checks the zlib header and trailer itself.
+				format = FORMAT_ZLIB;
+				
+				nowrap = false;
+				inflater = pool.acquire(nowrap);
+				
+				feed();
+			}
+		}
+	}
+	
+	/**
+	 * Read a gzip member header and start inflating its data.
+	 * 
+	 * @throws IOException
+	 */
+	private void startMember() throws IOException
+	{
+		readByte();
+		readByte();
+		
+		if (readByte() != DEFLATE)
+		{
+			throw new ZipException("Unsupported gzip compression method");
+		}
+		
+		int flags = readByte();
+		
+		skip(GZIP_TIME_FLAGS_OS);
+		
+		if ((flags & GZIP_FEXTRA) != 0)
+		{
+			skip(readByte() | (readByte() << 8));
+		}
+		
+		if ((flags & GZIP_FNAME) != 0)
+		{
+			while (readByte() != 0)
+			{
+				// Skip name.
+			}
+		}
+		
+		if ((flags & GZIP_FCOMMENT) != 0)
+		{
+			while (readByte() != 0)
+			{
+				// Skip comment.
+			}
+		}
+		
+		if ((flags & GZIP_FHCRC) != 0)
+		{
+			skip(2);
+		}
+		
+		if (inflater == null)
+		{
+			nowrap = true;
+			inflater = pool.acquire(nowrap);
+		}
+		else
+		{
+			inflater.reset();
+		}
+		
+		crc.reset();
+		written = 0;
+		
+		format = FORMAT_GZIP;
+		
+		if (position < limit)
+		{
+			feed();
+		}
+	}
+	
+	/**
+	 * Check a gzip member trailer and move on to the next member, if any.
+	 * 
+	 * @throws IOException
+	 */
+	private void endMember() throws IOException
+	{
+		long check = readInt();
+		long size = readInt();
+		
+		if (check != crc.getValue() || size != (written & 0xffffffffL))
+		{
+			throw new ZipException("Corrupt gzip trailer");
+		}
+		
+		// Anything other than another member after the trailer is ignored.
+		if (ensure(MAGIC_LENGTH) && isGzip(buffer[position], buffer[position + 1]))
+		{
+			startMember();
+		}
+		else
+		{
+			format = FORMAT_END;
+		}
+	}
+	
+	/**
+	 * Inflate into the caller's buffer, reading input as needed.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return Bytes inflated or -1 at the end.
+	 * 
+	 * @throws IOException
+	 */
+	private int inflate(byte[] data, int offset, int length) throws IOException
+	{
+		while (format == FORMAT_GZIP || format == FORMAT_ZLIB)
+		{
+			int read;
+			
+			try
+			{
+				read = inflater.inflate(data, offset, length);
+			}
+			catch (DataFormatException e)
+			{
+				throw new ZipException(e.getMessage());
+			}
+			
+			if (read > 0)
+			{
+				if (format == FORMAT_GZIP)
+				{
+					crc.update(data, offset, read);
+					
+					written += read;
+				}
+				
+				return read;
+			}
+			
+			if (inflater.finished())
+			{
+				// Input left over belongs to what follows.
+				position = limit - inflater.getRemaining();
+				
+				if (format == FORMAT_GZIP)
+				{
+					endMember();
+				}
+				else
+				{
+					format = FORMAT_END;
+				}
+			}
+			else if (inflater.needsDictionary())
+			{
+				throw new ZipException("Preset dictionary not supported");
+			}
+			else if (inflater.needsInput())
+			{
+				if (!fill())
+				{
+					throw new EOFException("Unexpected end of compressed stream");
+				}
+				
+				feed();
+			}
+		}
+		
+		release();
+		
+		return -1;
+	}
+	
+	/**
+	 * Hand the buffered input to the inflater.
+	 * 
+	 */
+	private void feed()
+	{
+		inflater.setInput(buffer, position, limit - position);
+		
+		position = limit;
+	}
+	
+	/**
+	 * Refill the empty buffer.
+	 * 
+	 * @return False at end of stream.
+	 * 
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException
+	{
+		int read = in.read(buffer, 0, buffer.length);
+		
+		position = 0;
+		limit = Math.max(read, 0);
+		
+		return read > 0;
+	}
+	
+	/**
+	 * Make sure a number of bytes are buffered, moving what is left to the
+	 * front.
+	 * 
+	 * @param count
+	 * 
+	 * @return False if the stream ended first.
+	 * 
+	 * @throws IOException
+	 */
+	private boolean ensure(int count) throws IOException
+	{
+		if (limit - position < count)
+		{
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			
+			limit -= position;
+			position = 0;
+			
+			int read;
+			
+			while (limit < count && (read = in.read(buffer, limit, buffer.length - limit)) != -1)
+			{
+				limit += read;
+			}
+		}
+		
+		return limit - position >= count;
+	}
+	
+	private int readByte() throws IOException
+	{
+		if (position == limit && !fill())
+		{
+			throw new EOFException("Unexpected end of gzip header");
+		}
+		
+		return buffer[position++] & 0xff;
+	}
+	
+	private long readInt() throws IOException
+	{
+		return readByte() | (readByte() << 8) | (readByte() << 16) | ((long) readByte() << 24);
+	}
+	
+	private void skip(int count) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+		{
+			readByte();
+		}
+	}
+	
+	/**
+	 * Return the inflater to the pool, safe to call more than once.
+	 * 
+	 */
+	public void release()
+	{
+		if (inflater != null)
+		{
+			pool.release(inflater, nowrap);
+			
+			inflater = null;
+		}
+	}
+	
+	/**
+	 * Return the inflater and close the source.
+	 * 
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		release();
+		
+		format = FORMAT_END;
+		
+		if (in != null)
+		{
+			in.close();
+		}
+	}
+	
+}
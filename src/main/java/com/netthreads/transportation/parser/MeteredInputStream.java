@@ -0,0 +1,121 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream and the time spent reading them.
+ * 
+ * The parser reads in buffer sized blocks so timing each read is cheap.
+ * 
+ */
+class MeteredInputStream extends FilterInputStream
+{
+	private long count;
+	private long nanos;
+	
+	MeteredInputStream()
+	{
+		super(null);
+	}
+	
+	/**
+	 * Start on a new stream.
+	 * 
+	 * @param stream
+	 * 
+	 * @return This stream.
+	 */
+	MeteredInputStream reset(InputStream stream)
+	{
+		in = stream;
+		
+		count = 0;
+		nanos = 0;
+		
+		return this;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		long start = System.nanoTime();
+		
+		int value = in.read();
+		
+		nanos += System.nanoTime() - start;
+		
+		if (value != -1)
+		{
+			count++;
+		}
+		
+		return value;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		long start = System.nanoTime();
+		
+		int read = in.read(buffer, offset, length);
+		
+		nanos += System.nanoTime() - start;
+		
+		if (read > 0)
+		{
+			count += read;
+		}
+		
+		return read;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException
+	{
+		long start = System.nanoTime();
+		
+		long skipped = in.skip(n);
+		
+		nanos += System.nanoTime() - start;
+		
+		count += skipped;
+		
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+	
+	long getCount()
+	{
+		return count;
+	}
+	
+	long getNanos()
+	{
+		return nanos;
+	}
+}
@@ -0,0 +1,463 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the situation array of a feed in parallel.
+ * 
+ * The document is read into memory and an ElementScanner finds where each
+ * situation starts and ends. The situations are split into chunks of roughly
+ * equal size, each chunk is wrapped in the payloadPublication/situation
+ * prefix so that it parses exactly like the original and the chunks are
+ * parsed on the executor. Records are returned in document order.
+ * 
+ * Any ExecutorService will do, a ForkJoinPool included. The data factory is
+ * called from several threads so it must be thread safe, the JSON parser
+ * factory supplies one parser per chunk. Documents without a situation array
+ * or too small to split are parsed on the calling thread.
+ * 
+ */
+public class ParallelStreamParser<T>
+{
+	public static final int DEFAULT_CHUNKS_PER_THREAD = 4;
+	public static final int DEFAULT_MIN_CHUNK_SIZE = 16 * 1024;
+	
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	
+	private ExecutorService executor;
+	private int parallelism;
+	
+	private int chunksPerThread = DEFAULT_CHUNKS_PER_THREAD;
+	private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+	
+	// Control
+	private volatile int state = StreamParser.WAITING;
+	private volatile boolean cancelled = false;
+	
+	// Set when a chunk fails and the rest of the current fetch is abandoned.
+	private volatile boolean stopped = false;
+	
+	private List<StreamParser<T>> active;
+	
+	/**
+	 * Construct parser.
+	 * 
+	 * @param executor
+	 *            Runs the chunks.
+	 * @param parallelism
+	 *            Number of threads the executor can run at once.
+	 */
+	public ParallelStreamParser(ExecutorService executor, int parallelism)
+	{
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+		
+		active = new ArrayList<StreamParser<T>>();
+	}
+	
+	/**
+	 * Fetch and parse data.
+	 * 
+	 * @param stream
+	 * @param list
+	 * @param dataFactory
+	 * @param parserFactory
+	 * 
+	 * @return The final state.
+	 */
+	public int fetch(InputStream stream, List<T> list, DataFactory<T> dataFactory, JSONParserFactory<T> parserFactory)
+	{
+		byte[] data;
+		
+		try
+		{
+			data = readFully(stream);
+		}
+		catch (IOException e)
+		{
+			// Oops
+			state = StreamParser.ERROR;
+			
+			return state;
+		}
+		
+		return fetch(data, 0, data.length, list, dataFactory, parserFactory);
+	}
+	
+	/**
+	 * Parse data held in memory.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param list
+	 * @param dataFactory
+	 * @param parserFactory
+	 * 
+	 * @return The final state.
+	 */
+	public int fetch(byte[] data, int offset, int length, List<T> list, DataFactory<T> dataFactory, JSONParserFactory<T> parserFactory)
+	{
+		stopped = false;
+		
+		state = StreamParser.BUSY;
+		
+		ElementScanner scanner = new ElementScanner();
+		
+		Chunker chunker = new Chunker(offset, targetChunkSize(length));
+		
+		scanner.scan(data, offset, length, chunker);
+		
+		List<int[]> chunks = chunker.finish();
+		
+		if (!scanner.isArrayFound() || chunks.size() < 2)
+		{
+			// Nothing to split.
+			Chunk chunk = new Chunk(new ByteArrayInputStream(data, offset, length), dataFactory, parserFactory.createParser());
+			
+			chunk.call();
+			
+			list.addAll(chunk.records);
+			
+			finish(chunk.state);
+			
+			return state;
+		}
+		
+		byte[] prefix = bytes(scanner.getPrefix());
+		byte[] suffix = bytes(scanner.getSuffix());
+		
+		List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(chunks.size());
+		
+		for (int[] range : chunks)
+		{
+			InputStream stream = new SequenceInputStream(new ByteArrayInputStream(prefix), new SequenceInputStream(new ByteArrayInputStream(data, range[0], range[1] - range[0]), new ByteArrayInputStream(suffix)));
+			
+			futures.add(executor.submit(new Chunk(stream, dataFactory, parserFactory.createParser())));
+		}
+		
+		// Gather in order, stop at the first chunk which did not complete and
+		// abandon the rest.
+		int result = StreamParser.DONE;
+		
+		for (Future<Chunk> future : futures)
+		{
+			try
+			{
+				Chunk chunk = future.get();
+				
+				if (result == StreamParser.DONE)
+				{
+					list.addAll(chunk.records);
+					
+					result = chunk.state;
+					
+					if (result != StreamParser.DONE)
+					{
+						stop();
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				
+				stop();
+				
+				if (result == StreamParser.DONE)
+				{
+					result = StreamParser.CANCELLED;
+				}
+			}
+			catch (ExecutionException e)
+			{
+				// Oops
+				stop();
+				
+				if (result == StreamParser.DONE)
+				{
+					result = StreamParser.ERROR;
+				}
+			}
+		}
+		
+		finish(result);
+		
+		return state;
+	}
+	
+	/**
+	 * Cancel parsing, chunks in progress are stopped and those waiting are
+	 * skipped. A cancel which arrives before a fetch starts stops that fetch,
+	 * the parser stays cancelled until reset().
+	 * 
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		
+		stop();
+	}
+	
+	/**
+	 * Clear a cancel.
+	 * 
+	 */
+	public void reset()
+	{
+		cancelled = false;
+		
+		state = StreamParser.WAITING;
+	}
+	
+	/**
+	 * Abandon the chunks of the current fetch.
+	 * 
+	 */
+	private void stop()
+	{
+		stopped = true;
+		
+		synchronized (active)
+		{
+			for (StreamParser<T> parser : active)
+			{
+				parser.cancel();
+			}
+		}
+	}
+	
+	/**
+	 * Return state.
+	 * 
+	 * @return The state.
+	 */
+	public int getState()
+	{
+		return state;
+	}
+	
+	public int getChunksPerThread()
+	{
+		return chunksPerThread;
+	}
+	
+	public void setChunksPerThread(int chunksPerThread)
+	{
+		this.chunksPerThread = Math.max(1, chunksPerThread);
+	}
+	
+	public int getMinChunkSize()
+	{
+		return minChunkSize;
+	}
+	
+	public void setMinChunkSize(int minChunkSize)
+	{
+		this.minChunkSize = Math.max(1, minChunkSize);
+	}
+	
+	/**
+	 * Set final state.
+	 * 
+	 * @param result
+	 */
+	private void finish(int result)
+	{
+		if ((cancelled || stopped) && result == StreamParser.DONE)
+		{
+			result = StreamParser.CANCELLED;
+		}
+		
+		state = result;
+	}
+	
+	/**
+	 * Size to aim for so that each thread gets a few chunks.
+	 * 
+	 * @param length
+	 * 
+	 * @return Chunk size in bytes.
+	 */
+	private int targetChunkSize(int length)
+	{
+		int size = length / (parallelism * chunksPerThread);
+		
+		return Math.max(minChunkSize, size);
+	}
+	
+	/**
+	 * Read whole stream.
+	 * 
+	 * @param stream
+	 * 
+	 * @return The bytes.
+	 * 
+	 * @throws IOException
+	 */
+	private static byte[] readFully(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+		
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		
+		int count;
+		
+		while ((count = stream.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, count);
+		}
+		
+		return output.toByteArray();
+	}
+	
+	private static byte[] bytes(String text)
+	{
+		try
+		{
+			return text.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Groups consecutive elements into chunks.
+	 * 
+	 */
+	private static class Chunker implements ElementScanner.Listener
+	{
+		private int offset;
+		private int chunkSize;
+		
+		private List<int[]> chunks = new ArrayList<int[]>();
+		
+		private int start = -1;
+		private int end = -1;
+		
+		public Chunker(int offset, int chunkSize)
+		{
+			this.offset = offset;
+			this.chunkSize = chunkSize;
+		}
+		
+		@Override
+		public void elementStart(long position)
+		{
+			if (start < 0)
+			{
+				start = offset + (int) position;
+			}
+		}
+		
+		@Override
+		public void elementEnd(long position)
+		{
+			end = offset + (int) position;
+			
+			if (end - start >= chunkSize)
+			{
+				chunks.add(new int[] { start, end });
+				
+				start = -1;
+			}
+		}
+		
+		public List<int[]> finish()
+		{
+			if (start >= 0 && end > start)
+			{
+				chunks.add(new int[] { start, end });
+			}
+			
+			return chunks;
+		}
+	}
+	
+	/**
+	 * Parses one chunk.
+	 * 
+	 */
+	private class Chunk implements Callable<Chunk>
+	{
+		private InputStream stream;
+		private DataFactory<T> dataFactory;
+		private JSONParser<T> pullParser;
+		
+		private List<T> records = new ArrayList<T>();
+		private int state = StreamParser.CANCELLED;
+		
+		public Chunk(InputStream stream, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+		{
+			this.stream = stream;
+			this.dataFactory = dataFactory;
+			this.pullParser = pullParser;
+		}
+		
+		@Override
+		public Chunk call()
+		{
+			if (cancelled || stopped)
+			{
+				return this;
+			}
+			
+			StreamParser<T> parser = new StreamParserImpl<T>();
+			
+			synchronized (active)
+			{
+				active.add(parser);
+			}
+			
+			try
+			{
+				// Cancelled while registering.
+				if (!cancelled && !stopped)
+				{
+					state = parser.fetch(stream, records, dataFactory, pullParser);
+				}
+			}
+			finally
+			{
+				synchronized (active)
+				{
+					active.remove(parser);
+				}
+			}
+			
+			return this;
+		}
+	}
+	
+}
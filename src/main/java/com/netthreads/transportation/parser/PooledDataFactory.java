@@ -0,0 +1,124 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of records in front of another factory.
+ * 
+ * Released records are handed out again before any new ones are created. Once
+ * the pool holds maxSize records further releases are dropped and left to the
+ * garbage collector.
+ * 
+ * Thread safe.
+ * 
+ */
+public class PooledDataFactory<T> implements RecyclingDataFactory<T>
+{
+	public static final int DEFAULT_MAX_SIZE = 1024;
+	
+	private DataFactory<T> dataFactory;
+	private ArrayDeque<T> pool;
+	private int maxSize;
+	
+	private long created;
+	private long reused;
+	
+	/**
+	 * Construct pool.
+	 * 
+	 * @param dataFactory
+	 *            Creates records when the pool is empty.
+	 */
+	public PooledDataFactory(DataFactory<T> dataFactory)
+	{
+		this(dataFactory, DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * Construct pool.
+	 * 
+	 * @param dataFactory
+	 *            Creates records when the pool is empty.
+	 * @param maxSize
+	 *            Most records held.
+	 */
+	public PooledDataFactory(DataFactory<T> dataFactory, int maxSize)
+	{
+		this.dataFactory = dataFactory;
+		this.maxSize = maxSize;
+		
+		pool = new ArrayDeque<T>(Math.min(maxSize, DEFAULT_MAX_SIZE));
+	}
+	
+	@Override
+	public synchronized T createRecord()
+	{
+		T record = pool.pollFirst();
+		
+		if (record == null)
+		{
+			record = dataFactory.createRecord();
+			
+			created++;
+		}
+		else
+		{
+			reused++;
+		}
+		
+		return record;
+	}
+	
+	@Override
+	public synchronized void release(T record)
+	{
+		if (record != null && pool.size() < maxSize)
+		{
+			pool.addFirst(record);
+		}
+	}
+	
+	/**
+	 * Records waiting to be reused.
+	 * 
+	 * @return The pool size.
+	 */
+	public synchronized int size()
+	{
+		return pool.size();
+	}
+	
+	public synchronized long getCreated()
+	{
+		return created;
+	}
+	
+	public synchronized long getReused()
+	{
+		return reused;
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+}
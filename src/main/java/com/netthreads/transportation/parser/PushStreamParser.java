@@ -0,0 +1,377 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Non-blocking parser, the caller pushes bytes as they arrive and records
+ * are delivered to the sink as soon as they are complete.
+ * 
+ * An ElementScanner finds each situation in the bytes fed so far. Only the
+ * current situation is buffered, when it is complete it is parsed with the
+ * usual JSONParser callbacks, wrapped so that it sits at its original path.
+ * No thread waits on input, feed() only does work for the bytes given.
+ * 
+ * Call end() once the input is exhausted. Not thread safe, feed from one
+ * thread at a time.
+ * 
+ */
+public class PushStreamParser<T>
+{
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+	private static final int COPY_BUFFER_SIZE = 8 * 1024;
+	
+	private DataFactory<T> dataFactory;
+	private JSONParser<T> pullParser;
+	private RecordSink<T> sink;
+	
+	private StreamParserImpl<T> streamParser;
+	private ElementSink elementSink;
+	private ElementScanner scanner;
+	private ElementScanner.Listener boundaries;
+	
+	private byte[] prefix;
+	private byte[] suffix;
+	
+	/**
+	 * Prefix, current element and, when complete, suffix.
+	 */
+	private byte[] element;
+	private int elementLength;
+	
+	/**
+	 * Scratch space for buffers without an accessible array.
+	 */
+	private byte[] copy;
+	
+	// Chunk being scanned.
+	private byte[] chunk;
+	private int chunkOffset;
+	private long chunkPosition;
+	private int copyFrom;
+	
+	// Control
+	private volatile int state;
+	private volatile boolean cancelled;
+	
+	/**
+	 * Construct parser.
+	 * 
+	 * @param dataFactory
+	 * @param pullParser
+	 * @param sink
+	 *            Receives records, end() is called once the input ends.
+	 */
+	public PushStreamParser(DataFactory<T> dataFactory, JSONParser<T> pullParser, RecordSink<T> sink)
+	{
+		this.dataFactory = dataFactory;
+		this.pullParser = pullParser;
+		this.sink = sink;
+		
+		streamParser = new StreamParserImpl<T>();
+		elementSink = new ElementSink();
+		scanner = new ElementScanner();
+		
+		boundaries = new ElementScanner.Listener()
+		{
+			@Override
+			public void elementStart(long position)
+			{
+				startElement(position);
+			}
+			
+			@Override
+			public void elementEnd(long position)
+			{
+				endElement(position);
+			}
+		};
+		
+		prefix = bytes(scanner.getPrefix());
+		suffix = bytes(scanner.getSuffix());
+		
+		element = new byte[INITIAL_BUFFER_SIZE];
+		
+		reset();
+	}
+	
+	/**
+	 * Parse the bytes remaining in the buffer, the buffer is consumed.
+	 * 
+	 * @param buffer
+	 * 
+	 * @return False once parsing has stopped, further bytes are ignored.
+	 */
+	public boolean feed(ByteBuffer buffer)
+	{
+		start();
+		
+		if (buffer.hasArray())
+		{
+			int length = buffer.remaining();
+			
+			feed(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			
+			buffer.position(buffer.position() + length);
+		}
+		else
+		{
+			if (copy == null)
+			{
+				copy = new byte[COPY_BUFFER_SIZE];
+			}
+			
+			while (buffer.hasRemaining() && isRunning())
+			{
+				int length = Math.min(buffer.remaining(), copy.length);
+				
+				buffer.get(copy, 0, length);
+				
+				feed(copy, 0, length);
+			}
+			
+			buffer.position(buffer.limit());
+		}
+		
+		return isRunning();
+	}
+	
+	/**
+	 * Parse bytes.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return False once parsing has stopped, further bytes are ignored.
+	 */
+	public boolean feed(byte[] data, int offset, int length)
+	{
+		start();
+		
+		if (isRunning())
+		{
+			chunk = data;
+			chunkOffset = offset;
+			chunkPosition = scanner.getPosition();
+			copyFrom = scanner.isInElement() ? offset : -1;
+			
+			scanner.scan(data, offset, length, boundaries);
+			
+			// Keep the part of the element in this chunk.
+			if (copyFrom >= 0 && isRunning())
+			{
+				append(data, copyFrom, offset + length - copyFrom);
+			}
+			
+			chunk = null;
+		}
+		
+		return isRunning();
+	}
+	
+	/**
+	 * Input exhausted.
+	 * 
+	 * @return The final state.
+	 */
+	public int end()
+	{
+		if (cancelled)
+		{
+			state = StreamParser.CANCELLED;
+		}
+		else if (state != StreamParser.ERROR)
+		{
+			if (scanner.isInElement())
+			{
+				// Truncated.
+				state = StreamParser.ERROR;
+				
+				sink.error(new IOException("Input ended inside a situation"));
+			}
+			else
+			{
+				state = StreamParser.DONE;
+			}
+		}
+		
+		sink.end(state);
+		
+		return state;
+	}
+	
+	/**
+	 * Stop parsing, safe to call from another thread. Stays in effect until
+	 * reset().
+	 * 
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		
+		streamParser.cancel();
+	}
+	
+	/**
+	 * Get ready for a new document.
+	 * 
+	 */
+	public void reset()
+	{
+		scanner.reset();
+		
+		elementLength = 0;
+		
+		state = StreamParser.WAITING;
+		cancelled = false;
+		
+		streamParser.reset();
+	}
+	
+	public int getState()
+	{
+		return cancelled ? StreamParser.CANCELLED : state;
+	}
+	
+	/**
+	 * Element starts, buffer it from here.
+	 * 
+	 * @param position
+	 */
+	private void startElement(long position)
+	{
+		copyFrom = chunkOffset + (int) (position - chunkPosition);
+		
+		elementLength = 0;
+		
+		append(prefix, 0, prefix.length);
+	}
+	
+	/**
+	 * Element complete, parse it.
+	 * 
+	 * @param position
+	 */
+	private void endElement(long position)
+	{
+		if (!isRunning())
+		{
+			return;
+		}
+		
+		int end = chunkOffset + (int) (position - chunkPosition);
+		
+		append(chunk, copyFrom, end - copyFrom);
+		append(suffix, 0, suffix.length);
+		
+		copyFrom = -1;
+		
+		int result = streamParser.fetch(element, 0, elementLength, elementSink, dataFactory, pullParser);
+		
+		if (result == StreamParser.CANCELLED)
+		{
+			cancelled = true;
+		}
+		else if (result == StreamParser.ERROR)
+		{
+			state = StreamParser.ERROR;
+		}
+	}
+	
+	/**
+	 * First bytes of a document.
+	 * 
+	 */
+	private void start()
+	{
+		if (state == StreamParser.WAITING)
+		{
+			state = StreamParser.BUSY;
+		}
+	}
+	
+	private boolean isRunning()
+	{
+		return !cancelled && state == StreamParser.BUSY;
+	}
+	
+	/**
+	 * Add bytes to the element buffer.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	private void append(byte[] data, int offset, int length)
+	{
+		if (elementLength + length > element.length)
+		{
+			byte[] grown = new byte[Math.max(element.length * 2, elementLength + length)];
+			System.arraycopy(element, 0, grown, 0, elementLength);
+			element = grown;
+		}
+		
+		System.arraycopy(data, offset, element, elementLength, length);
+		
+		elementLength += length;
+	}
+	
+	private static byte[] bytes(String text)
+	{
+		try
+		{
+			return text.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Passes records on, the end of each element is not the end of the
+	 * input.
+	 * 
+	 */
+	private class ElementSink implements RecordSink<T>
+	{
+		@Override
+		public boolean accept(T record)
+		{
+			return sink.accept(record);
+		}
+		
+		@Override
+		public void end(int state)
+		{
+			// Wait for end().
+		}
+		
+		@Override
+		public void error(Exception e)
+		{
+			sink.error(e);
+		}
+	}
+	
+}
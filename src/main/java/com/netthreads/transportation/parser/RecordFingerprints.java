@@ -0,0 +1,205 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Content hashes of the records from the last poll, keyed by record id.
+ * 
+ * The stream parser hashes the tokens of each record as it reads them, 64
+ * bit FNV-1a over token types, field names and value text. Subtrees the
+ * parser skips cannot change a record and are not hashed. A record whose
+ * hash matches the one stored for its id is not built at all.
+ * 
+ * A poll's hashes are held aside and only replace the stored ones when the
+ * poll completes, so a cancelled or failed poll leaves the last completed
+ * poll's hashes in place. Entries for ids missing from a completed poll are
+ * dropped. Not thread safe, use one set of fingerprints per polled source.
+ * 
+ */
+public class RecordFingerprints
+{
+	public static final long SEED = 0xcbf29ce484222325L;
+	
+	private static final long PRIME = 0x100000001b3L;
+	
+	private Map<String, Entry> entries;
+	
+	private int generation;
+	
+	public RecordFingerprints()
+	{
+		entries = new HashMap<String, Entry>();
+	}
+	
+	/**
+	 * Start a poll.
+	 * 
+	 */
+	public void start()
+	{
+		generation++;
+	}
+	
+	/**
+	 * Compare a record hash with the last completed poll and hold it until
+	 * this poll completes.
+	 * 
+	 * @param id
+	 * @param hash
+	 * 
+	 * @return True if the hash is unchanged.
+	 */
+	public boolean update(String id, long hash)
+	{
+		Entry entry = entries.get(id);
+		
+		boolean unchanged = false;
+		
+		if (entry == null)
+		{
+			entries.put(id, new Entry(hash, generation));
+		}
+		else
+		{
+			unchanged = entry.stored && entry.hash == hash;
+			
+			entry.pending = hash;
+			entry.generation = generation;
+		}
+		
+		return unchanged;
+	}
+	
+	/**
+	 * Forget a record so it is built on the next poll.
+	 * 
+	 * @param id
+	 */
+	public void remove(String id)
+	{
+		entries.remove(id);
+	}
+	
+	/**
+	 * Poll complete, store its hashes and drop ids not seen. Not called for a
+	 * poll which was cancelled or failed.
+	 * 
+	 */
+	public void end()
+	{
+		Iterator<Entry> iterator = entries.values().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Entry entry = iterator.next();
+			
+			if (entry.generation != generation)
+			{
+				iterator.remove();
+			}
+			else
+			{
+				entry.hash = entry.pending;
+				entry.stored = true;
+			}
+		}
+	}
+	
+	/**
+	 * Number of ids held.
+	 * 
+	 * @return The count.
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+	
+	/**
+	 * Forget everything.
+	 * 
+	 */
+	public void clear()
+	{
+		entries.clear();
+	}
+	
+	/**
+	 * Add the current token to a hash.
+	 * 
+	 * @param hash
+	 * @param token
+	 * @param parser
+	 * 
+	 * @return The new hash.
+	 * 
+	 * @throws IOException
+	 */
+	public static long hash(long hash, JsonToken token, JsonParser parser) throws IOException
+	{
+		hash = (hash ^ token.ordinal()) * PRIME;
+		
+		if (token == JsonToken.FIELD_NAME)
+		{
+			// Names are interned, their hash codes are cached.
+			hash = (hash ^ parser.getCurrentName().hashCode()) * PRIME;
+		}
+		else if (token.isScalarValue())
+		{
+			char[] buffer = parser.getTextCharacters();
+			int offset = parser.getTextOffset();
+			int end = offset + parser.getTextLength();
+			
+			for (int i = offset; i < end; i++)
+			{
+				hash = (hash ^ buffer[i]) * PRIME;
+			}
+		}
+		
+		return hash;
+	}
+	
+	/**
+	 * Stored hash, the hash from the poll in progress and the poll it was
+	 * last seen in.
+	 * 
+	 */
+	private static class Entry
+	{
+		private long hash;
+		private boolean stored;
+		private long pending;
+		private int generation;
+		
+		public Entry(long pending, int generation)
+		{
+			this.pending = pending;
+			this.generation = generation;
+		}
+	}
+	
+}
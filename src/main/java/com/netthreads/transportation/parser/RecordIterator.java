@@ -0,0 +1,122 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Lazy record iterator. Each call to hasNext() pulls tokens from the stream
+ * only as far as the next complete record.
+ * 
+ * Parse failures end the iteration, check the owning parser state to see how
+ * the stream finished.
+ * 
+ */
+public class RecordIterator<T> implements Iterator<T>, Closeable
+{
+	private StreamParserImpl<T> owner;
+	private JsonParser parser;
+	private DataFactory<T> dataFactory;
+	private JSONParser<T> pullParser;
+	
+	private T next;
+	private boolean finished;
+	
+	/**
+	 * Construct iterator.
+	 * 
+	 * @param owner
+	 * @param parser
+	 * @param dataFactory
+	 * @param pullParser
+	 */
+	RecordIterator(StreamParserImpl<T> owner, JsonParser parser, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		this.owner = owner;
+		this.parser = parser;
+		this.dataFactory = dataFactory;
+		this.pullParser = pullParser;
+		
+		finished = false;
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		if (next == null && !finished)
+		{
+			next = owner.nextRecord(parser, dataFactory, pullParser);
+			
+			if (next == null)
+			{
+				finished = true;
+				
+				close();
+			}
+		}
+		
+		return next != null;
+	}
+	
+	@Override
+	public T next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		
+		T data = next;
+		
+		next = null;
+		
+		return data;
+	}
+	
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Release the underlying parser.
+	 * 
+	 */
+	@Override
+	public void close()
+	{
+		finished = true;
+		
+		try
+		{
+			parser.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing we can do.
+		}
+	}
+	
+}
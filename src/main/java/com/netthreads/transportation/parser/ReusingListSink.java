@@ -0,0 +1,132 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Refills a list from a new poll, reusing the records already in it.
+ * 
+ * Acts as both data factory and sink. The factory hands out the list's
+ * existing records in order and only creates new ones when the new poll has
+ * more records than the last. When the parse ends any records left over from
+ * the previous poll are removed from the list and, if the underlying factory
+ * recycles, released back to it.
+ * 
+ * Records are overwritten in place so anything still holding a reference to
+ * one from the previous poll will see it change.
+ * 
+ */
+public class ReusingListSink<T> implements DataFactory<T>, RecordSink<T>
+{
+	private List<T> list;
+	private DataFactory<T> dataFactory;
+	private RecyclingDataFactory<T> recycler;
+	
+	private ListIterator<T> iterator;
+	private boolean reused;
+	
+	private int index;
+	
+	/**
+	 * Construct sink.
+	 * 
+	 * @param list
+	 *            Records from the previous poll.
+	 * @param dataFactory
+	 *            Creates records when the list runs out.
+	 */
+	@SuppressWarnings("unchecked")
+	public ReusingListSink(List<T> list, DataFactory<T> dataFactory)
+	{
+		this.list = list;
+		this.dataFactory = dataFactory;
+		
+		if (dataFactory instanceof RecyclingDataFactory)
+		{
+			recycler = (RecyclingDataFactory<T>) dataFactory;
+		}
+		
+		// Walk rather than index so a LinkedList is not O(n^2).
+		iterator = list.listIterator();
+		
+		index = 0;
+	}
+	
+	@Override
+	public T createRecord()
+	{
+		reused = iterator.hasNext();
+		
+		if (reused)
+		{
+			return iterator.next();
+		}
+		
+		return dataFactory.createRecord();
+	}
+	
+	@Override
+	public boolean accept(T record)
+	{
+		if (!reused)
+		{
+			iterator.add(record);
+		}
+		
+		index++;
+		
+		return true;
+	}
+	
+	@Override
+	public void end(int state)
+	{
+		// Drop what the new poll did not overwrite.
+		List<T> rest = list.subList(index, list.size());
+		
+		if (recycler != null)
+		{
+			for (T record : rest)
+			{
+				recycler.release(record);
+			}
+		}
+		
+		rest.clear();
+	}
+	
+	@Override
+	public void error(Exception e)
+	{
+		// Nothing to do, state is returned from fetch.
+	}
+	
+	/**
+	 * Records written by this poll.
+	 * 
+	 * @return The count.
+	 */
+	public int getCount()
+	{
+		return index;
+	}
+	
+}
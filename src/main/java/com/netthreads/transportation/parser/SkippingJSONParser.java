@@ -0,0 +1,39 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+/**
+ * Optional JSONParser extension for parsers which know which parts of the
+ * document they can ignore. The stream parser checks for it with instanceof,
+ * plain JSONParser implementations see every token as before.
+ * 
+ */
+public interface SkippingJSONParser<T> extends JSONParser<T>
+{
+	/**
+	 * Check if an object or array holds nothing of interest. The stream parser
+	 * skips such tags without tokenizing their contents, neither start nor end
+	 * is dispatched.
+	 * 
+	 * @param tag
+	 * 
+	 * @return True if the tag can be skipped.
+	 */
+	public boolean isSkippable(String tag);
+}
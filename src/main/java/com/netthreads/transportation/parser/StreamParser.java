@@ -18,6 +18,7 @@
  */
 package com.netthreads.transportation.parser;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 
@@ -44,13 +45,47 @@ public interface StreamParser<T>
 	public int fetch(InputStream stream, List<T> list, DataFactory<T> dataFactory, JSONParser<T> pullParser);
 
 	/**
-	 * Reset parser(s).
+	 * Parse data, handing each record to the sink as soon as it is complete.
+	 * 
+	 * @param stream
+	 * @param sink
+	 * 
+	 * @return State
+	 */
+	public int fetch(InputStream stream, RecordSink<T> sink, DataFactory<T> dataFactory, JSONParser<T> pullParser);
+
+	/**
+	 * Parse data into a list which holds the records from a previous fetch,
+	 * overwriting those records in place rather than allocating new ones.
+	 * 
+	 * @param stream
+	 * @param list
+	 * 
+	 * @return State
+	 */
+	public int fetchInPlace(InputStream stream, List<T> list, DataFactory<T> dataFactory, JSONParser<T> pullParser);
+
+	/**
+	 * Return a lazy iterator which parses records on demand.
+	 * 
+	 * @param stream
+	 * 
+	 * @return The iterator.
+	 * 
+	 * @throws IOException
+	 */
+	public RecordIterator<T> iterator(InputStream stream, DataFactory<T> dataFactory, JSONParser<T> pullParser) throws IOException;
+
+	/**
+	 * Reset parser(s). Clears a cancel.
 	 * 
 	 */
 	public void reset();
 
 	/**
-	 * Cancel fetch
+	 * Cancel fetch. Stops the fetch in progress or, if none is running, the
+	 * next one. The parser stays cancelled, with every fetch returning
+	 * CANCELLED, until reset() is called.
 	 */
 	public void cancel();
 
@@ -18,6 +18,7 @@
  */
 package com.netthreads.transportation.parser;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -36,11 +37,44 @@ public class StreamParserImpl<T> implements StreamParser<T>
 	public static final String TEXT_LINK_DELIMETER = ";";
 	public static final String TEXT_TITLE_DELIMETER = " ";
 	
+	/**
+	 * Number of tokens between deadline checks.
+	 */
+	public static final int DEADLINE_CHECK_TOKENS = 256;
+	
+	public static final long NO_TIMEOUT = 0;
+	
 	private JsonFactory factory;
 	private JsonParser parser;
 	
 	// Control
-	private int state = WAITING;
+	private volatile int state = WAITING;
+	private volatile boolean cancelled = false;
+	
+	// Set when the sink or the deadline ends the current fetch early.
+	private boolean stopped;
+	
+	private long timeout = NO_TIMEOUT;
+	private long deadline;
+	private int deadlineCount;
+	
+	// Unchanged record detection, off unless fingerprints set.
+	private RecordFingerprints fingerprints;
+	private UnchangedListener unchangedListener;
+	private long hash;
+	
+	// Per fetch measurements, off unless metrics set.
+	private FetchMetrics metrics;
+	private FetchStats stats = new FetchStats();
+	private MeteredInputStream meteredStream = new MeteredInputStream();
+	private long startTime;
+	private long tokens;
+	private int records;
+	private int skipped;
+	private int errorKind;
+	
+	// Compressed input, off unless an inflater pool is set.
+	private InflatingInputStream inflatingStream;
 	
 	public StreamParserImpl()
 	{
@@ -57,89 +91,584 @@ public class StreamParserImpl<T> implements StreamParser<T>
 	@Override
 	public int fetch(InputStream stream, List<T> list, DataFactory<T> dataFactory, JSONParser<T> pullParser)
 	{
+		return fetch(stream, new ListRecordSink<T>(list), dataFactory, pullParser);
+	}
+	
+	/**
+	 * Fetch and parse data into a list, reusing the records already held.
+	 * 
+	 * @param stream
+	 * @param list
+	 * @param dataFactory
+	 *            Creates records if the list is short, released records are
+	 *            returned to it if it is a RecyclingDataFactory.
+	 */
+	@Override
+	public int fetchInPlace(InputStream stream, List<T> list, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		ReusingListSink<T> sink = new ReusingListSink<T>(list, dataFactory);
+		
+		return fetch(stream, sink, sink, pullParser);
+	}
+	
+	/**
+	 * Fetch and parse data, pushing each record to the sink as soon as it is
+	 * complete.
+	 * 
+	 * @param stream
+	 * @param sink
+	 * @param dataFactory
+	 */
+	@Override
+	public int fetch(InputStream stream, RecordSink<T> sink, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		return fetch(stream, null, 0, 0, sink, dataFactory, pullParser);
+	}
+	
+	/**
+	 * Parse a document held in memory, pushing each record to the sink as
+	 * soon as it is complete.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param sink
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The final state.
+	 */
+	public int fetch(byte[] data, int offset, int length, RecordSink<T> sink, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		return fetch(null, data, offset, length, sink, dataFactory, pullParser);
+	}
+	
+	/**
+	 * Parse from a stream or, if the stream is null, from memory.
+	 * 
+	 * @param stream
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @param sink
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The final state.
+	 */
+	private int fetch(InputStream stream, byte[] buffer, int offset, int length, RecordSink<T> sink, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		begin();
+		
+		pullParser.reset();
+		
 		state = BUSY;
 		
-		reset();
+		boolean fromStream = stream != null;
+		
+		if (metrics != null && fromStream)
+		{
+			stream = meteredStream.reset(stream);
+		}
+		
+		if (inflatingStream != null && (fromStream || InflatingInputStream.isCompressed(buffer, offset, length)))
+		{
+			stream = inflatingStream.reset(fromStream ? stream : new ByteArrayInputStream(buffer, offset, length));
+		}
 		
 		try
 		{
-			parser = factory.createJsonParser(stream);
+			parser = stream != null ? factory.createJsonParser(stream) : factory.createJsonParser(buffer, offset, length);
+			
+			boolean running = true;
 			
-			JsonToken jsonToken = null;
+			T data = null;
 			
-			while ((jsonToken = parser.nextToken()) != null)
+			while (running && (data = readRecord(parser, dataFactory, pullParser)) != null)
 			{
-				if (jsonToken.equals(JsonToken.START_OBJECT))
+				records++;
+				
+				// Sink can ask us to stop.
+				if (!sink.accept(data))
 				{
-					String tag = parser.getCurrentName();
+					stopped = true;
 					
-					if (tag != null)
+					running = false;
+				}
+			}
+			
+			if (cancelled || stopped)
+			{
+				state = CANCELLED;
+				
+				closeParser(parser);
+			}
+		}
+		catch (JsonParseException e)
+		{
+			// Oops
+			state = ERROR;
+			
+			errorKind = FetchStats.ERROR_PARSE;
+			
+			sink.error(e);
+		}
+		catch (IOException e)
+		{
+			// Oops
+			state = ERROR;
+			
+			errorKind = FetchStats.ERROR_IO;
+			
+			sink.error(e);
+		}
+		
+		if (state != CANCELLED && state != ERROR)
+		{
+			state = DONE;
+			
+			if (fingerprints != null)
+			{
+				fingerprints.end();
+			}
+		}
+		
+		if (inflatingStream != null)
+		{
+			inflatingStream.release();
+		}
+		
+		sink.end(state);
+		
+		if (metrics != null)
+		{
+			report(fromStream ? meteredStream.getCount() : length);
+		}
+		
+		return state;
+	}
+	
+	/**
+	 * Return a lazy iterator over the records in the stream. Nothing is read
+	 * until the first call to hasNext().
+	 * 
+	 * @param stream
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The iterator.
+	 * 
+	 * @throws IOException
+	 */
+	@Override
+	public RecordIterator<T> iterator(InputStream stream, DataFactory<T> dataFactory, JSONParser<T> pullParser) throws IOException
+	{
+		begin();
+		
+		pullParser.reset();
+		
+		state = BUSY;
+		
+		if (metrics != null)
+		{
+			stream = meteredStream.reset(stream);
+		}
+		
+		if (inflatingStream != null)
+		{
+			stream = inflatingStream.reset(stream);
+		}
+		
+		parser = factory.createJsonParser(stream);
+		
+		return new RecordIterator<T>(this, parser, dataFactory, pullParser);
+	}
+	
+	/**
+	 * Pull the next record for an iterator, updating the parser state when the
+	 * stream ends.
+	 * 
+	 * @param parser
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The next record or null if none left.
+	 */
+	T nextRecord(JsonParser parser, DataFactory<T> dataFactory, JSONParser<T> pullParser)
+	{
+		T data = null;
+		
+		if (state == BUSY)
+		{
+			try
+			{
+				data = readRecord(parser, dataFactory, pullParser);
+				
+				if (cancelled || stopped)
+				{
+					state = CANCELLED;
+					
+					data = null;
+				}
+				else if (data == null)
+				{
+					state = DONE;
+					
+					if (fingerprints != null)
 					{
-						pullParser.processStartObject(tag, parser);
+						fingerprints.end();
 					}
 				}
-				else if (jsonToken.equals(JsonToken.END_OBJECT))
+				else
+				{
+					records++;
+				}
+			}
+			catch (JsonParseException e)
+			{
+				// Oops
+				state = ERROR;
+				
+				errorKind = FetchStats.ERROR_PARSE;
+			}
+			catch (IOException e)
+			{
+				// Oops
+				state = ERROR;
+				
+				errorKind = FetchStats.ERROR_IO;
+			}
+			
+			if (state != BUSY)
+			{
+				if (inflatingStream != null)
+				{
+					inflatingStream.release();
+				}
+				
+				if (metrics != null)
 				{
-					String tag = parser.getCurrentName();
+					report(meteredStream.getCount());
+				}
+			}
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Read tokens until the next record is complete. Stops early if the parse
+	 * has been cancelled or the deadline has passed, in which case the
+	 * stopped flag is set and null returned.
+	 * 
+	 * @param parser
+	 * @param dataFactory
+	 * @param pullParser
+	 * 
+	 * @return The populated record or null at end of stream.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	private T readRecord(JsonParser parser, DataFactory<T> dataFactory, JSONParser<T> pullParser) throws JsonParseException, IOException
+	{
+		JsonToken jsonToken = null;
+		
+		while (!cancelled && !stopped && (jsonToken = parser.nextToken()) != null)
+		{
+			tokens++;
+			
+			if (timeout != NO_TIMEOUT && ++deadlineCount == DEADLINE_CHECK_TOKENS)
+			{
+				deadlineCount = 0;
+				
+				if (System.currentTimeMillis() > deadline)
+				{
+					stopped = true;
 					
-					if (tag != null)
+					errorKind = FetchStats.ERROR_TIMEOUT;
+				}
+			}
+			
+			if (fingerprints != null && pullParser.inTarget())
+			{
+				hash = RecordFingerprints.hash(hash, jsonToken, parser);
+			}
+			
+			if (jsonToken.equals(JsonToken.START_OBJECT))
+			{
+				String tag = parser.getCurrentName();
+				
+				if (tag != null)
+				{
+					if (isSkippable(pullParser, tag))
 					{
-						// Returns true when object complete.
-						if (pullParser.processEndObject(tag, parser))
+						parser.skipChildren();
+					}
+					else
+					{
+						pullParser.processStartObject(tag, parser);
+					}
+				}
+			}
+			else if (jsonToken.equals(JsonToken.END_OBJECT))
+			{
+				String tag = parser.getCurrentName();
+				
+				if (tag != null)
+				{
+					// Returns true when object complete.
+					if (pullParser.processEndObject(tag, parser))
+					{
+						if (fingerprints != null && isUnchanged(pullParser))
 						{
-							// Create holding record
-							T data = dataFactory.createRecord();
-							
-							pullParser.populateRecord(data);
-							
-							list.add(data);
+							continue;
 						}
+						
+						// Create holding record
+						T data = dataFactory.createRecord();
+						
+						pullParser.populateRecord(data);
+						
+						return data;
 					}
 				}
+			}
+			else if (jsonToken.equals(JsonToken.START_ARRAY))
+			{
+				String tag = parser.getCurrentName();
+				
+				if (tag != null && isSkippable(pullParser, tag))
+				{
+					parser.skipChildren();
+				}
 				else
 				{
 					pullParser.processObject(parser);
 				}
-				
 			}
+			else
+			{
+				pullParser.processObject(parser);
+			}
+			
 		}
-		catch (JsonParseException e)
+		
+		return null;
+	}
+	
+	/**
+	 * Ask the parser whether a tag can be skipped, if it knows.
+	 * 
+	 * @param pullParser
+	 * @param tag
+	 * 
+	 * @return True if the tag can be skipped.
+	 */
+	private boolean isSkippable(JSONParser<T> pullParser, String tag)
+	{
+		return pullParser instanceof SkippingJSONParser && ((SkippingJSONParser<T>) pullParser).isSkippable(tag);
+	}
+	
+	/**
+	 * Check the record just read against its fingerprint, dropping it if
+	 * unchanged.
+	 * 
+	 * @param pullParser
+	 * 
+	 * @return True if the record was dropped.
+	 */
+	private boolean isUnchanged(JSONParser<T> pullParser)
+	{
+		String id = pullParser instanceof IdentifiedJSONParser ? ((IdentifiedJSONParser<T>) pullParser).getRecordId() : null;
+		
+		// Records without an id cannot be matched with the last fetch.
+		boolean unchanged = id != null && id.length() > 0 && fingerprints.update(id, hash);
+		
+		hash = RecordFingerprints.SEED;
+		
+		if (unchanged)
 		{
-			// Oops
-			state = ERROR;
+			((IdentifiedJSONParser<T>) pullParser).discardRecord();
+			
+			skipped++;
+			
+			if (unchangedListener != null)
+			{
+				unchangedListener.unchanged(id);
+			}
 		}
-		catch (IOException e)
+		
+		return unchanged;
+	}
+	
+	/**
+	 * Pass the measurements of the fetch just finished to the metrics.
+	 * 
+	 * @param bytes
+	 */
+	private void report(long bytes)
+	{
+		if (state == CANCELLED && errorKind == FetchStats.ERROR_NONE)
 		{
-			// Oops
-			state = ERROR;
+			errorKind = FetchStats.ERROR_CANCELLED;
 		}
 		
-		if (state != CANCELLED && state != ERROR)
+		// No time is metered when parsing from memory.
+		stats.set(bytes, tokens, records, skipped, meteredStream.getNanos(), System.nanoTime() - startTime, state, errorKind);
+		
+		metrics.fetched(stats);
+	}
+	
+	/**
+	 * Close parser, this will also close the underlying stream.
+	 * 
+	 * @param parser
+	 */
+	private void closeParser(JsonParser parser)
+	{
+		try
 		{
-			state = DONE;
+			parser.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing we can do.
 		}
-		
-		return state;
 	}
 	
 	/**
-	 * Stops the handler process.
+	 * Stops the handler process. Safe to call from another thread, the parse
+	 * loop checks the flag on every token. The flag is only cleared by
+	 * reset() so a cancel which lands just before a fetch starts still stops
+	 * it.
 	 * 
 	 */
 	@Override
 	public void cancel()
 	{
+		cancelled = true;
+		
 		state = CANCELLED;
 	}
 	
 	/**
-	 * Reset parser state.
+	 * Reset parser state, clearing any cancel.
 	 * 
 	 */
 	@Override
 	public void reset()
 	{
-		state = WAITING;
+		cancelled = false;
+		
+		begin();
+	}
+	
+	/**
+	 * Prepare for a new fetch. Leaves the cancelled flag alone.
+	 * 
+	 */
+	private void begin()
+	{
+		state = cancelled ? CANCELLED : WAITING;
+		
+		stopped = false;
+		
+		deadlineCount = 0;
+		
+		hash = RecordFingerprints.SEED;
+		
+		tokens = 0;
+		records = 0;
+		skipped = 0;
+		errorKind = FetchStats.ERROR_NONE;
+		
+		if (metrics != null)
+		{
+			meteredStream.reset(null);
+			
+			startTime = System.nanoTime();
+		}
+		
+		if (fingerprints != null)
+		{
+			fingerprints.start();
+		}
+		
+		if (timeout != NO_TIMEOUT)
+		{
+			deadline = System.currentTimeMillis() + timeout;
+		}
+	}
+	
+	/**
+	 * Set the maximum time a fetch may run before it is cancelled.
+	 * 
+	 * @param timeout
+	 *            Milliseconds or NO_TIMEOUT.
+	 */
+	public void setTimeout(long timeout)
+	{
+		this.timeout = timeout;
+	}
+	
+	public long getTimeout()
+	{
+		return timeout;
+	}
+	
+	/**
+	 * Skip records whose content is unchanged since the last fetch. No record
+	 * is created or populated for them, the listener is told their id
+	 * instead. The same fingerprints must be used for every fetch of a
+	 * source. Only applies to pull parsers which implement
+	 * IdentifiedJSONParser, other parsers have every record built.
+	 * 
+	 * @param fingerprints
+	 *            Hashes from the last fetch or null to build every record.
+	 * @param unchangedListener
+	 *            Told about skipped records, may be null.
+	 */
+	public void setFingerprints(RecordFingerprints fingerprints, UnchangedListener unchangedListener)
+	{
+		this.fingerprints = fingerprints;
+		this.unchangedListener = unchangedListener;
+	}
+	
+	public RecordFingerprints getFingerprints()
+	{
+		return fingerprints;
+	}
+	
+	/**
+	 * Measure each fetch: bytes, tokens, records, time waiting on the stream
+	 * and time parsing. The metrics are told at the end of each fetch, or
+	 * when an iterator reaches the end. With no metrics nothing is timed.
+	 * 
+	 * @param metrics
+	 *            Told about each fetch or null for none.
+	 */
+	public void setMetrics(FetchMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	public FetchMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Decompress gzip and zlib input as it is parsed. The format is detected
+	 * from the first bytes, plain input is parsed as before. Metrics count
+	 * the compressed bytes.
+	 * 
+	 * @param inflaterPool
+	 *            Supplies inflaters or null to parse input as it is.
+	 */
+	public void setInflaterPool(InflaterPool inflaterPool)
+	{
+		inflatingStream = inflaterPool != null ? new InflatingInputStream(inflaterPool) : null;
 	}
 	
 	/**
@@ -0,0 +1,437 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Decode numeric values straight from the parser's text buffer.
+ * 
+ * The feeds carry numbers as JSON strings, e.g. "occupiedSpaces":"87", so
+ * these read the characters in place rather than building a String and
+ * parsing it.
+ * 
+ */
+public final class TokenValues
+{
+	/**
+	 * Largest mantissa which converts to a double exactly.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	
+	/**
+	 * Powers of ten which are exact doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	
+	static
+	{
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+		{
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+		}
+	}
+	
+	private TokenValues()
+	{
+		// Static methods only.
+	}
+	
+	/**
+	 * Read the current token as an int.
+	 * 
+	 * @param parser
+	 * @param missing
+	 *            Returned if the token is not an integer.
+	 * 
+	 * @return The value.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	public static int getInt(JsonParser parser, int missing) throws JsonParseException, IOException
+	{
+		JsonToken token = parser.getCurrentToken();
+		
+		if (token == JsonToken.VALUE_NUMBER_INT)
+		{
+			return parser.getIntValue();
+		}
+		else if (token == JsonToken.VALUE_STRING)
+		{
+			return parseInt(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), missing);
+		}
+		
+		return missing;
+	}
+	
+	/**
+	 * Read the current token as a double.
+	 * 
+	 * @param parser
+	 * @param missing
+	 *            Returned if the token is not a number.
+	 * 
+	 * @return The value.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	public static double getDouble(JsonParser parser, double missing) throws JsonParseException, IOException
+	{
+		JsonToken token = parser.getCurrentToken();
+		
+		if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+		{
+			return parser.getDoubleValue();
+		}
+		else if (token == JsonToken.VALUE_STRING)
+		{
+			return parseDouble(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), missing);
+		}
+		
+		return missing;
+	}
+	
+	/**
+	 * Check the current token's text is what Integer.toString() gives for the
+	 * value it decodes to, in which case the value alone can rebuild it.
+	 * 
+	 * @param parser
+	 * 
+	 * @return True if the text is canonical.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	public static boolean isCanonicalInt(JsonParser parser) throws JsonParseException, IOException
+	{
+		return isCanonicalInt(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+	}
+	
+	/**
+	 * Check the current token's text is what Double.toString() gives for the
+	 * value it decodes to, in which case the value alone can rebuild it.
+	 * 
+	 * @param parser
+	 * 
+	 * @return True if the text is canonical.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	public static boolean isCanonicalDouble(JsonParser parser) throws JsonParseException, IOException
+	{
+		return isCanonicalDouble(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+	}
+	
+	/**
+	 * Check text is an int in Integer.toString() form, no sign other than a
+	 * leading minus and no leading zeros.
+	 * 
+	 * @param text
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return True if the text is canonical.
+	 */
+	public static boolean isCanonicalInt(char[] text, int offset, int length)
+	{
+		int end = offset + length;
+		int index = offset;
+		
+		if (index < end && text[index] == '-')
+		{
+			index++;
+		}
+		
+		int digits = end - index;
+		
+		if (digits == 0 || (text[index] == '0' && (digits > 1 || index > offset)))
+		{
+			return false;
+		}
+		
+		for (int i = index; i < end; i++)
+		{
+			if (text[i] < '0' || text[i] > '9')
+			{
+				return false;
+			}
+		}
+		
+		return parseInt(text, offset, length, Integer.MIN_VALUE) != Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Check text is a decimal in Double.toString() form. That is plain
+	 * notation for magnitudes from 10^-3 up to 10^7, at least one fraction
+	 * digit, no trailing zeros and no leading zeros. Up to 15 significant
+	 * digits are accepted, within that no shorter decimal has the same double
+	 * so the shortest form is the text itself.
+	 * 
+	 * @param text
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return True if the text is canonical.
+	 */
+	public static boolean isCanonicalDouble(char[] text, int offset, int length)
+	{
+		int end = offset + length;
+		int index = offset;
+		
+		if (index < end && text[index] == '-')
+		{
+			index++;
+		}
+		
+		// Whole part.
+		int start = index;
+		
+		while (index < end && text[index] >= '0' && text[index] <= '9')
+		{
+			index++;
+		}
+		
+		int whole = index - start;
+		
+		if (whole == 0 || whole > 7 || (whole > 1 && text[start] == '0'))
+		{
+			return false;
+		}
+		
+		if (index == end || text[index++] != '.')
+		{
+			return false;
+		}
+		
+		// Fraction.
+		int point = index;
+		
+		while (index < end && text[index] >= '0' && text[index] <= '9')
+		{
+			index++;
+		}
+		
+		int fraction = index - point;
+		
+		if (index != end || fraction == 0 || (fraction > 1 && text[end - 1] == '0'))
+		{
+			return false;
+		}
+		
+		int significant = whole + fraction;
+		
+		if (text[start] == '0')
+		{
+			// Below one, count from the first non zero fraction digit.
+			int zeros = 0;
+			
+			while (zeros < fraction && text[point + zeros] == '0')
+			{
+				zeros++;
+			}
+			
+			if (zeros == fraction)
+			{
+				// Zero itself, "0.0".
+				return true;
+			}
+			
+			if (zeros > 2)
+			{
+				return false;
+			}
+			
+			significant = fraction - zeros;
+		}
+		
+		return significant <= 15;
+	}
+	
+	/**
+	 * Parse decimal integer.
+	 * 
+	 * @param text
+	 * @param offset
+	 * @param length
+	 * @param missing
+	 *            Returned if the text is not an int.
+	 * 
+	 * @return The value.
+	 */
+	public static int parseInt(char[] text, int offset, int length, int missing)
+	{
+		int end = offset + length;
+		int index = offset;
+		
+		boolean negative = false;
+		if (index < end && (text[index] == '-' || text[index] == '+'))
+		{
+			negative = text[index] == '-';
+			index++;
+		}
+		
+		if (index == end)
+		{
+			return missing;
+		}
+		
+		long value = 0;
+		
+		while (index < end)
+		{
+			int digit = text[index++] - '0';
+			
+			if (digit < 0 || digit > 9)
+			{
+				return missing;
+			}
+			
+			value = value * 10 + digit;
+			
+			if (value > Integer.MAX_VALUE + 1L)
+			{
+				return missing;
+			}
+		}
+		
+		value = negative ? -value : value;
+		
+		if (value > Integer.MAX_VALUE)
+		{
+			return missing;
+		}
+		
+		return (int) value;
+	}
+	
+	/**
+	 * Parse decimal number. Values with up to 15 or so significant digits are
+	 * converted exactly with a single multiply or divide, anything longer falls
+	 * back to Double.parseDouble().
+	 * 
+	 * @param text
+	 * @param offset
+	 * @param length
+	 * @param missing
+	 *            Returned if the text is not a number.
+	 * 
+	 * @return The value.
+	 */
+	public static double parseDouble(char[] text, int offset, int length, double missing)
+	{
+		int end = offset + length;
+		int index = offset;
+		
+		boolean negative = false;
+		if (index < end && (text[index] == '-' || text[index] == '+'))
+		{
+			negative = text[index] == '-';
+			index++;
+		}
+		
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean exact = true;
+		boolean point = false;
+		
+		while (index < end)
+		{
+			char c = text[index];
+			
+			if (c >= '0' && c <= '9')
+			{
+				if (mantissa < MAX_EXACT_MANTISSA / 10)
+				{
+					mantissa = mantissa * 10 + (c - '0');
+					
+					if (point)
+					{
+						exponent--;
+					}
+				}
+				else
+				{
+					exact = false;
+				}
+				
+				digits++;
+			}
+			else if (c == '.' && !point)
+			{
+				point = true;
+			}
+			else
+			{
+				break;
+			}
+			
+			index++;
+		}
+		
+		if (digits == 0)
+		{
+			return missing;
+		}
+		
+		if (index < end)
+		{
+			char c = text[index++];
+			
+			if (c != 'e' && c != 'E')
+			{
+				return missing;
+			}
+			
+			int value = parseInt(text, index, end - index, Integer.MIN_VALUE);
+			
+			if (value == Integer.MIN_VALUE)
+			{
+				return missing;
+			}
+			
+			exact = false;
+		}
+		
+		if (!exact || exponent < -(POWERS_OF_TEN.length - 1))
+		{
+			try
+			{
+				return Double.parseDouble(new String(text, offset, length));
+			}
+			catch (NumberFormatException e)
+			{
+				return missing;
+			}
+		}
+		
+		double value = mantissa / POWERS_OF_TEN[-exponent];
+		
+		return negative ? -value : value;
+	}
+	
+}
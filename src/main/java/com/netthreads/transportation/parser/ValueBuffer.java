@@ -0,0 +1,169 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Holds the text of a record's values until the record is built.
+ * 
+ * Values are copied from the parser's character buffer into one reusable
+ * array and a handle returned. Strings are only created when the record is
+ * populated, so a record which is discarded allocates nothing. Not thread
+ * safe, use one per parser.
+ * 
+ */
+public class ValueBuffer
+{
+	/**
+	 * Handle for no value.
+	 */
+	public static final int NONE = -1;
+	
+	private static final int INITIAL_CHARS = 1024;
+	private static final int INITIAL_VALUES = 16;
+	
+	private char[] chars = new char[INITIAL_CHARS];
+	private int length;
+	
+	private int[] offsets = new int[INITIAL_VALUES];
+	private int[] lengths = new int[INITIAL_VALUES];
+	private int count;
+	
+	/**
+	 * Hold the parser's current token text.
+	 * 
+	 * @param parser
+	 * 
+	 * @return The handle.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	public int put(JsonParser parser) throws JsonParseException, IOException
+	{
+		return put(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+	}
+	
+	/**
+	 * Hold characters.
+	 * 
+	 * @param text
+	 * @param offset
+	 * @param size
+	 * 
+	 * @return The handle.
+	 */
+	public int put(char[] text, int offset, int size)
+	{
+		if (length + size > chars.length)
+		{
+			char[] grown = new char[Math.max(chars.length * 2, length + size)];
+			System.arraycopy(chars, 0, grown, 0, length);
+			chars = grown;
+		}
+		
+		if (count == offsets.length)
+		{
+			int[] grownOffsets = new int[count * 2];
+			int[] grownLengths = new int[count * 2];
+			System.arraycopy(offsets, 0, grownOffsets, 0, count);
+			System.arraycopy(lengths, 0, grownLengths, 0, count);
+			offsets = grownOffsets;
+			lengths = grownLengths;
+		}
+		
+		System.arraycopy(text, offset, chars, length, size);
+		
+		offsets[count] = length;
+		lengths[count] = size;
+		
+		length += size;
+		
+		return count++;
+	}
+	
+	/**
+	 * Build the value for a handle.
+	 * 
+	 * @param handle
+	 * @param missing
+	 *            Returned for NONE.
+	 * 
+	 * @return The value.
+	 */
+	public String get(int handle, String missing)
+	{
+		return handle == NONE ? missing : new String(chars, offsets[handle], lengths[handle]);
+	}
+	
+	/**
+	 * Build the value for a handle, unless it has the same text as the
+	 * previous value. Lets a record which is refilled in place keep its
+	 * Strings when they have not changed.
+	 * 
+	 * @param handle
+	 * @param missing
+	 *            Returned for NONE.
+	 * @param previous
+	 *            Value the record holds now, may be null.
+	 * 
+	 * @return The value.
+	 */
+	public String get(int handle, String missing, String previous)
+	{
+		if (handle == NONE)
+		{
+			return missing;
+		}
+		
+		int offset = offsets[handle];
+		int size = lengths[handle];
+		
+		if (previous != null && previous.length() == size)
+		{
+			int i = 0;
+			while (i < size && previous.charAt(i) == chars[offset + i])
+			{
+				i++;
+			}
+			
+			if (i == size)
+			{
+				return previous;
+			}
+		}
+		
+		return new String(chars, offset, size);
+	}
+	
+	/**
+	 * Drop all values, handles are no longer valid.
+	 * 
+	 */
+	public void clear()
+	{
+		length = 0;
+		count = 0;
+	}
+	
+}
@@ -0,0 +1,237 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Canonical instances for values which repeat across records and polls, such
+ * as car park status or town name.
+ * 
+ * Values are looked up straight from the parser's character buffer so a
+ * String is only built the first time a value is seen. Every later occurrence
+ * returns the same instance, which means filters can compare by reference.
+ * 
+ * The dictionary stops growing once it holds maxEntries values, after which
+ * unseen values are returned as new Strings. Not thread safe, use one per
+ * parser.
+ * 
+ */
+public class ValueDictionary
+{
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+	
+	private String[] values;
+	private int[] hashes;
+	private int mask;
+	private int size;
+	private int maxEntries;
+	
+	/**
+	 * Construct dictionary.
+	 * 
+	 * @param maxEntries
+	 *            Most values held.
+	 * @param seeds
+	 *            Values to hold from the start, these instances are returned
+	 *            for matching text.
+	 */
+	public ValueDictionary(int maxEntries, String... seeds)
+	{
+		this.maxEntries = maxEntries + seeds.length;
+		
+		int capacity = 16;
+		while (capacity < this.maxEntries * 2)
+		{
+			capacity <<= 1;
+		}
+		
+		values = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		
+		for (String seed : seeds)
+		{
+			add(seed);
+		}
+	}
+	
+	/**
+	 * Construct dictionary.
+	 * 
+	 * @param seeds
+	 *            Values to hold from the start.
+	 */
+	public ValueDictionary(String... seeds)
+	{
+		this(DEFAULT_MAX_ENTRIES, seeds);
+	}
+	
+	/**
+	 * Canonical value of the parser's current token.
+	 * 
+	 * @param parser
+	 * 
+	 * @return The value.
+	 * 
+	 * @throws JsonParseException
+	 * @throws IOException
+	 */
+	public String intern(JsonParser parser) throws JsonParseException, IOException
+	{
+		return intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+	}
+	
+	/**
+	 * Canonical value of characters.
+	 * 
+	 * @param text
+	 * @param offset
+	 * @param length
+	 * 
+	 * @return The value.
+	 */
+	public String intern(char[] text, int offset, int length)
+	{
+		// Same hash as String so seeds and lookups agree.
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + text[offset + i];
+		}
+		
+		int index = slot(hash);
+		
+		String value;
+		while ((value = values[index]) != null)
+		{
+			if (hashes[index] == hash && matches(value, text, offset, length))
+			{
+				return value;
+			}
+			
+			index = (index + 1) & mask;
+		}
+		
+		value = new String(text, offset, length);
+		
+		if (size < maxEntries)
+		{
+			values[index] = value;
+			hashes[index] = hash;
+			size++;
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Canonical value of a string.
+	 * 
+	 * @param text
+	 * 
+	 * @return The value.
+	 */
+	public String intern(String text)
+	{
+		if (text == null)
+		{
+			return null;
+		}
+		
+		int hash = text.hashCode();
+		int index = slot(hash);
+		
+		String value;
+		while ((value = values[index]) != null)
+		{
+			if (hashes[index] == hash && value.equals(text))
+			{
+				return value;
+			}
+			
+			index = (index + 1) & mask;
+		}
+		
+		if (size < maxEntries)
+		{
+			values[index] = text;
+			hashes[index] = hash;
+			size++;
+		}
+		
+		return text;
+	}
+	
+	/**
+	 * Number of values held.
+	 * 
+	 * @return The size.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Add seed value.
+	 * 
+	 */
+	private void add(String seed)
+	{
+		intern(seed);
+	}
+	
+	/**
+	 * Spread hash bits before masking.
+	 * 
+	 */
+	private int slot(int hash)
+	{
+		hash ^= (hash >>> 16);
+		
+		return hash & mask;
+	}
+	
+	/**
+	 * Compare value to characters.
+	 * 
+	 */
+	private static boolean matches(String value, char[] text, int offset, int length)
+	{
+		if (value.length() != length)
+		{
+			return false;
+		}
+		
+		for (int i = 0; i < length; i++)
+		{
+			if (value.charAt(i) != text[offset + i])
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+}
@@ -19,44 +19,102 @@
 package com.netthreads.transportation.parser.data;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 
 import com.netthreads.transportation.data.CarParkData;
-import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.data.CarParkStatus;
+import com.netthreads.transportation.data.SituationRecord;
+import com.netthreads.transportation.parser.IdentifiedJSONParser;
+import com.netthreads.transportation.parser.SkippingJSONParser;
+import com.netthreads.transportation.parser.TokenValues;
+import com.netthreads.transportation.parser.ValueBuffer;
+import com.netthreads.transportation.parser.ValueDictionary;
+import com.netthreads.transportation.parser.path.PathCursor;
+import com.netthreads.transportation.parser.path.PathMatcher;
 
 /**
  * Type: Car park Data. Method: JSON
  * 
  */
-public class CarParkDataParser implements JSONParser<CarParkData>
+public class CarParkDataParser implements SkippingJSONParser<CarParkData>, IdentifiedJSONParser<CarParkData>
 {
+	// Path ids.
+	private static final int PATH_SITUATION_RECORD = 0;
+	private static final int PATH_ID = 1;
+	private static final int PATH_LATITUDE = 2;
+	private static final int PATH_LONGITUDE = 3;
+	private static final int PATH_CAR_PARK_IDENTITY = 4;
+	private static final int PATH_CAR_PARK_OCCUPANCY = 5;
+	private static final int PATH_CAR_PARK_STATUS = 6;
+	private static final int PATH_OCCUPIED_SPACES = 7;
+	private static final int PATH_TOTAL_CAPACITY = 8;
+	private static final int PATH_VERSION = 9;
+	private static final int PATH_VERSION_TIME = 10;
+	
+	private static final int MAX_IDS = 4096;
+	
+	private static final String RECORD = "payloadPublication/situation/situationRecord";
+	
+	/**
+	 * Paths to extract, compiled once.
+	 */
+	private static final PathMatcher MATCHER = new PathMatcher.Builder()
+	        .add(RECORD, PATH_SITUATION_RECORD)
+	        .add(RECORD + "/@attributes/id", PATH_ID)
+	        .add(RECORD + "/" + SituationRecord.TAG_SITUATION_RECORD_VERSION, PATH_VERSION)
+	        .add(RECORD + "/" + SituationRecord.TAG_SITUATION_RECORD_VERSION_TIME, PATH_VERSION_TIME)
+	        .add(RECORD + "/groupOfLocations/**/pointCoordinates/latitude", PATH_LATITUDE)
+	        .add(RECORD + "/groupOfLocations/**/pointCoordinates/longitude", PATH_LONGITUDE)
+	        .add(RECORD + "/carParkIdentity", PATH_CAR_PARK_IDENTITY)
+	        .add(RECORD + "/carParkOccupancy", PATH_CAR_PARK_OCCUPANCY)
+	        .add(RECORD + "/carParkStatus", PATH_CAR_PARK_STATUS)
+	        .add(RECORD + "/occupiedSpaces", PATH_OCCUPIED_SPACES)
+	        .add(RECORD + "/totalCapacity", PATH_TOTAL_CAPACITY)
+	        .compile();
+	
 	// Record values.
 	private String id;
-	private String latitude;
-	private String longitude;
+	private int version;
+	private int versionTime;
+	private double latitude;
+	private double longitude;
 	private String carParkIdentity;
-	private String carParkOccupancy;
+	private int carParkOccupancy;
 	private String carParkStatus;
-	private String occupiedSpaces;
-	private String totalCapacity;
+	private int occupiedSpaces;
+	private int totalCapacity;
+	
+	// Handles of numeric text which the values alone cannot rebuild.
+	private int carParkOccupancyText;
+	private int occupiedSpacesText;
+	private int totalCapacityText;
+	private int latitudeText;
+	private int longitudeText;
 	
 	/**
-	 * Tag Map.
+	 * Document position.
 	 */
-	@SuppressWarnings("serial")
-	private Map<String, Boolean> inTagMap = new HashMap<String, Boolean>()
-	{
-		{
-			put(CarParkData.TAG_SITUATION_RECORD, false);
-			put(CarParkData.TAG_ATTRIBUTES, false);
-			put(CarParkData.TAG_POINT_COORDINATES, false);
-		}
-	};
+	private PathCursor cursor = MATCHER.newCursor();
+	
+	/**
+	 * Canonical status and identity values, kept across polls.
+	 */
+	private ValueDictionary dictionary = new ValueDictionary(CarParkStatus.texts());
+	
+	/**
+	 * Canonical record ids, these repeat on every poll.
+	 */
+	private ValueDictionary ids = new ValueDictionary(MAX_IDS);
+	
+	/**
+	 * Text of the record being read, built into Strings when populated.
+	 */
+	private ValueBuffer values = new ValueBuffer();
+	
+	private boolean inSituationRecord = false;
 	
 	/**
 	 * Construct parser.
@@ -77,14 +135,27 @@ public class CarParkDataParser implements JSONParser<CarParkData>
 	@Override
 	public boolean processStartObject(String tag, JsonParser parser)
 	{
-		boolean status = inTagMap.containsKey(tag);
+		int path = cursor.push(tag);
 		
-		if (status)
+		if (path == PATH_SITUATION_RECORD)
 		{
-			inTagMap.put(tag, true);
+			inSituationRecord = true;
 		}
 		
-		return status;
+		return path != PathMatcher.NO_MATCH;
+	}
+	
+	/**
+	 * Nothing under the tag matches a path.
+	 * 
+	 * @param tag
+	 * 
+	 * @return True if tag can be skipped.
+	 */
+	@Override
+	public boolean isSkippable(String tag)
+	{
+		return cursor.isDead(tag);
 	}
 	
 	/**
@@ -97,26 +168,18 @@ public class CarParkDataParser implements JSONParser<CarParkData>
 	{
 		boolean ready = false;
 		
-		Boolean inSituationRecord = inTagMap.get(CarParkData.TAG_SITUATION_RECORD);
-		
-		if (inSituationRecord != null)
+		if (cursor.pop() == PATH_SITUATION_RECORD)
 		{
-			if (tag.equals(CarParkData.TAG_SITUATION_RECORD))
-			{
-				ready = true;
-			}
+			inSituationRecord = false;
 			
-			if (inTagMap.containsKey(tag))
-			{
-				inTagMap.put(tag, false);
-			}
+			ready = true;
 		}
 		
 		return ready;
 	}
 	
 	/**
-	 * Collect text values depending on conditions.
+	 * Collect text values depending on position.
 	 * 
 	 * @param text
 	 * @throws IOException
@@ -125,67 +188,57 @@ public class CarParkDataParser implements JSONParser<CarParkData>
 	@Override
 	public void processObject(JsonParser parser) throws JsonParseException, IOException
 	{
-		// Old way was easier to understand.
-		boolean inSituationRecord = inTagMap.get(CarParkData.TAG_SITUATION_RECORD);
-		
-		String text = parser.getText();
+		JsonToken token = parser.getCurrentToken();
 		
-		if (inSituationRecord)
+		if (token == JsonToken.START_ARRAY)
 		{
-			boolean inAttributes = inTagMap.get(CarParkData.TAG_ATTRIBUTES);
-			
-			if (inAttributes)
-			{
-				if (text.equals(CarParkData.TAG_ID))
-				{
-					// Extract id
-					parser.nextToken();
-					id = parser.getText();
-				}
-			}
-			else
+			cursor.push(parser.getCurrentName());
+		}
+		else if (token == JsonToken.END_ARRAY)
+		{
+			cursor.pop();
+		}
+		else if (token != JsonToken.FIELD_NAME)
+		{
+			switch (cursor.match(parser.getCurrentName()))
 			{
-				boolean inPointCoordinates = inTagMap.get(CarParkData.TAG_POINT_COORDINATES);
-				
-				if (inPointCoordinates)
-				{
-					if (text.equals(CarParkData.TAG_LATITUDE))
-					{
-						parser.nextToken();
-						latitude = parser.getText();
-					}
-					else if (text.equals(CarParkData.TAG_LONGITUDE))
-					{
-						parser.nextToken();
-						longitude = parser.getText();
-					}
-				}
-				else if (text.equals(CarParkData.TAG_CAR_PARK_IDENTITY))
-				{
-					parser.nextToken();
-					carParkIdentity = parser.getText();
-				}
-				else if (text.equals(CarParkData.TAG_CAR_PARK_OCCUPANCY))
-				{
-					parser.nextToken();
-					carParkOccupancy = parser.getText();
-				}
-				else if (text.equals(CarParkData.TAG_CAR_PARK_STATUS))
-				{
-					parser.nextToken();
-					carParkStatus = parser.getText();
-				}
-				else if (text.equals(CarParkData.TAG_OCCUPIED_SPACES))
-				{
-					parser.nextToken();
-					occupiedSpaces = parser.getText();
-				}
-				else if (text.equals(CarParkData.TAG_TOTAL_CAPACITY))
-				{
-					parser.nextToken();
-					totalCapacity = parser.getText();
-				}
-				
+				case PATH_ID:
+					id = ids.intern(parser);
+					break;
+				case PATH_VERSION:
+					version = TokenValues.getInt(parser, SituationRecord.NO_VERSION);
+					break;
+				case PATH_VERSION_TIME:
+					versionTime = values.put(parser);
+					break;
+				case PATH_LATITUDE:
+					latitude = TokenValues.getDouble(parser, CarParkData.NO_COORDINATE);
+					latitudeText = TokenValues.isCanonicalDouble(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				case PATH_LONGITUDE:
+					longitude = TokenValues.getDouble(parser, CarParkData.NO_COORDINATE);
+					longitudeText = TokenValues.isCanonicalDouble(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				case PATH_CAR_PARK_IDENTITY:
+					carParkIdentity = dictionary.intern(parser);
+					break;
+				case PATH_CAR_PARK_OCCUPANCY:
+					carParkOccupancy = TokenValues.getInt(parser, CarParkData.NO_VALUE);
+					carParkOccupancyText = TokenValues.isCanonicalInt(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				case PATH_CAR_PARK_STATUS:
+					carParkStatus = dictionary.intern(parser);
+					break;
+				case PATH_OCCUPIED_SPACES:
+					occupiedSpaces = TokenValues.getInt(parser, CarParkData.NO_VALUE);
+					occupiedSpacesText = TokenValues.isCanonicalInt(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				case PATH_TOTAL_CAPACITY:
+					totalCapacity = TokenValues.getInt(parser, CarParkData.NO_VALUE);
+					totalCapacityText = TokenValues.isCanonicalInt(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				default:
+					break;
 			}
 		}
 	}
@@ -199,33 +252,120 @@ public class CarParkDataParser implements JSONParser<CarParkData>
 	{
 		// Populate record.
 		record.setId(id);
-		record.setLatitude(latitude);
-		record.setLongitude(longitude);
+		record.setVersion(version);
+		record.setVersionTime(values.get(versionTime, "", record.getVersionTime()));
+		
+		if (latitudeText == ValueBuffer.NONE)
+		{
+			record.setLatitudeDouble(latitude);
+		}
+		else
+		{
+			record.setLatitude(latitude, values.get(latitudeText, "", record.getLatitude()));
+		}
+		
+		if (longitudeText == ValueBuffer.NONE)
+		{
+			record.setLongitudeDouble(longitude);
+		}
+		else
+		{
+			record.setLongitude(longitude, values.get(longitudeText, "", record.getLongitude()));
+		}
+		
 		record.setCarParkIdentity(carParkIdentity);
-		record.setCarParkOccupancy(carParkOccupancy);
+		
+		if (carParkOccupancyText == ValueBuffer.NONE)
+		{
+			record.setCarParkOccupancyInt(carParkOccupancy);
+		}
+		else
+		{
+			record.setCarParkOccupancy(carParkOccupancy, values.get(carParkOccupancyText, "", record.getCarParkOccupancy()));
+		}
+		
 		record.setCarParkStatus(carParkStatus);
-		record.setOccupiedSpaces(occupiedSpaces);
-		record.setTotalCapacity(totalCapacity);
+		
+		if (occupiedSpacesText == ValueBuffer.NONE)
+		{
+			record.setOccupiedSpacesInt(occupiedSpaces);
+		}
+		else
+		{
+			record.setOccupiedSpaces(occupiedSpaces, values.get(occupiedSpacesText, "", record.getOccupiedSpaces()));
+		}
+		
+		if (totalCapacityText == ValueBuffer.NONE)
+		{
+			record.setTotalCapacityInt(totalCapacity);
+		}
+		else
+		{
+			record.setTotalCapacity(totalCapacity, values.get(totalCapacityText, "", record.getTotalCapacity()));
+		}
 		
 		// Reset parser fields.
-		reset();
+		resetValues();
+	}
+	
+	/**
+	 * Id of the record read.
+	 * 
+	 * @return The id.
+	 */
+	@Override
+	public String getRecordId()
+	{
+		return id;
+	}
+	
+	/**
+	 * Drop parsed data without building a record.
+	 * 
+	 */
+	@Override
+	public void discardRecord()
+	{
+		resetValues();
 	}
 	
 	/**
-	 * Reset parsed strings.
+	 * Reset parsed strings and document position.
 	 * 
 	 */
 	@Override
 	public void reset()
 	{
+		resetValues();
+		
+		cursor.reset();
+		
+		inSituationRecord = false;
+	}
+	
+	/**
+	 * Reset parsed values.
+	 * 
+	 */
+	private void resetValues()
+	{
+		values.clear();
+		
 		id = "";
-		latitude = "";
-		longitude = "";
+		version = SituationRecord.NO_VERSION;
+		versionTime = ValueBuffer.NONE;
+		latitude = CarParkData.NO_COORDINATE;
+		latitudeText = ValueBuffer.NONE;
+		longitude = CarParkData.NO_COORDINATE;
+		longitudeText = ValueBuffer.NONE;
 		carParkIdentity = "";
-		carParkOccupancy = "";
+		carParkOccupancy = CarParkData.NO_VALUE;
+		carParkOccupancyText = ValueBuffer.NONE;
 		carParkStatus = "";
-		occupiedSpaces = "";
-		totalCapacity = "";
+		occupiedSpaces = CarParkData.NO_VALUE;
+		occupiedSpacesText = ValueBuffer.NONE;
+		totalCapacity = CarParkData.NO_VALUE;
+		totalCapacityText = ValueBuffer.NONE;
 	}
 	
 	/**
@@ -236,15 +376,7 @@ public class CarParkDataParser implements JSONParser<CarParkData>
 	@Override
 	public boolean inTarget()
 	{
-		boolean state = false;
-		Iterator<Boolean> iterator = inTagMap.values().iterator();
-		while (!state && iterator.hasNext())
-		{
-			Boolean item = iterator.next();
-			state |= item;
-		}
-		
-		return state;
+		return inSituationRecord;
 	}
 	
 }
@@ -19,50 +19,106 @@
 package com.netthreads.transportation.parser.data;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 
+import com.netthreads.transportation.data.NetworkManagementType;
+import com.netthreads.transportation.data.SituationRecord;
 import com.netthreads.transportation.data.TrafficData;
-import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.IdentifiedJSONParser;
+import com.netthreads.transportation.parser.SkippingJSONParser;
+import com.netthreads.transportation.parser.TokenValues;
+import com.netthreads.transportation.parser.ValueBuffer;
+import com.netthreads.transportation.parser.ValueDictionary;
+import com.netthreads.transportation.parser.path.PathCursor;
+import com.netthreads.transportation.parser.path.PathMatcher;
 
 /**
  * Type: Traffic Data. Method: JSON
  * 
  */
-public class TrafficDataParser implements JSONParser<TrafficData>
+public class TrafficDataParser implements SkippingJSONParser<TrafficData>, IdentifiedJSONParser<TrafficData>
 {
+	// Path ids.
+	private static final int PATH_SITUATION_RECORD = 0;
+	private static final int PATH_ID = 1;
+	private static final int PATH_LATITUDE = 2;
+	private static final int PATH_LONGITUDE = 3;
+	private static final int PATH_NAME_VALUE = 4;
+	private static final int PATH_NAME_DESCRIPTOR_TYPE = 5;
+	private static final int PATH_NETWORK_MANAGEMENT_TYPE = 6;
+	private static final int PATH_OVERALL_START_TIME = 7;
+	private static final int PATH_OVERALL_END_TIME = 8;
+	private static final int PATH_COMMENT = 9;
+	private static final int PATH_VERSION = 10;
+	private static final int PATH_VERSION_TIME = 11;
+	
+	private static final int MAX_IDS = 4096;
+	
+	private static final String RECORD = "payloadPublication/situation/situationRecord";
+	private static final String POINT = RECORD + "/groupOfLocations/**/point";
+	private static final String VALIDITY = RECORD + "/validity/validityTimeSpecification";
+	
+	/**
+	 * Paths to extract, compiled once.
+	 */
+	private static final PathMatcher MATCHER = new PathMatcher.Builder()
+	        .add(RECORD, PATH_SITUATION_RECORD)
+	        .add(RECORD + "/@attributes/id", PATH_ID)
+	        .add(RECORD + "/" + SituationRecord.TAG_SITUATION_RECORD_VERSION, PATH_VERSION)
+	        .add(RECORD + "/" + SituationRecord.TAG_SITUATION_RECORD_VERSION_TIME, PATH_VERSION_TIME)
+	        .add(POINT + "/pointCoordinates/latitude", PATH_LATITUDE)
+	        .add(POINT + "/pointCoordinates/longitude", PATH_LONGITUDE)
+	        .add(POINT + "/name/descriptor/value", PATH_NAME_VALUE)
+	        .add(POINT + "/name/tpegDescriptorType", PATH_NAME_DESCRIPTOR_TYPE)
+	        .add(RECORD + "/networkManagementType", PATH_NETWORK_MANAGEMENT_TYPE)
+	        .add(VALIDITY + "/overallStartTime", PATH_OVERALL_START_TIME)
+	        .add(VALIDITY + "/overallEndTime", PATH_OVERALL_END_TIME)
+	        .add(RECORD + "/nonGeneralPublicComment/comment/value", PATH_COMMENT)
+	        .compile();
+	
 	// Record values.
 	private String id;
-	private String description;
+	private int version;
+	private int versionTime;
+	private int description;
 	private String temp;
 	private String localLinkName;
 	private String linkName;
 	private String townName;
 	private String type;
-	private String latitude;
-	private String longitude;
-	private String overallStartTime;
-	private String overallEndTime;
+	private double latitude;
+	private double longitude;
+	private int overallStartTime;
+	private int overallEndTime;
+	
+	// Handles of numeric text which the values alone cannot rebuild.
+	private int latitudeText;
+	private int longitudeText;
 	
 	/**
-	 * Tag Map.
+	 * Document position.
 	 */
-	@SuppressWarnings("serial")
-	private Map<String, Boolean> inTagMap = new HashMap<String, Boolean>()
-	{
-		{
-			put(TrafficData.TAG_SITUATION_RECORD, false);
-			put(TrafficData.TAG_ATTRIBUTES, false);
-			put(TrafficData.TAG_POINT, false);
-			put(TrafficData.TAG_POINT_COORDINATES, false);
-			put(TrafficData.TAG_NON_GENERAL_PUBLIC_COMMENT, false);
-		}
-	};
+	private PathCursor cursor = MATCHER.newCursor();
+	
+	/**
+	 * Canonical type, descriptor and name values, kept across polls.
+	 */
+	private ValueDictionary dictionary = new ValueDictionary(NetworkManagementType.texts());
+	
+	/**
+	 * Canonical record ids, these repeat on every poll.
+	 */
+	private ValueDictionary ids = new ValueDictionary(MAX_IDS);
+	
+	/**
+	 * Text of the record being read, built into Strings when populated.
+	 */
+	private ValueBuffer values = new ValueBuffer();
+	
+	private boolean inSituationRecord = false;
 	
 	/**
 	 * Construct parser.
@@ -70,6 +126,10 @@ public class TrafficDataParser implements JSONParser<TrafficData>
 	 */
 	public TrafficDataParser()
 	{
+		dictionary.intern(TrafficData.TAG_LINK_NAME);
+		dictionary.intern(TrafficData.TAG_LOCAL_LINK_NAME);
+		dictionary.intern(TrafficData.TAG_TOWN_NAME);
+		
 		reset();
 	}
 	
@@ -83,14 +143,27 @@ public class TrafficDataParser implements JSONParser<TrafficData>
 	@Override
 	public boolean processStartObject(String tag, JsonParser parser)
 	{
-		boolean status = inTagMap.containsKey(tag);
+		int path = cursor.push(tag);
 		
-		if (status)
+		if (path == PATH_SITUATION_RECORD)
 		{
-			inTagMap.put(tag, true);
+			inSituationRecord = true;
 		}
 		
-		return status;
+		return path != PathMatcher.NO_MATCH;
+	}
+	
+	/**
+	 * Nothing under the tag matches a path.
+	 * 
+	 * @param tag
+	 * 
+	 * @return True if tag can be skipped.
+	 */
+	@Override
+	public boolean isSkippable(String tag)
+	{
+		return cursor.isDead(tag);
 	}
 	
 	/**
@@ -103,26 +176,18 @@ public class TrafficDataParser implements JSONParser<TrafficData>
 	{
 		boolean ready = false;
 		
-		Boolean inSituationRecord = inTagMap.get(TrafficData.TAG_SITUATION_RECORD);
-		
-		if (inSituationRecord != null)
+		if (cursor.pop() == PATH_SITUATION_RECORD)
 		{
-			if (tag.equals(TrafficData.TAG_SITUATION_RECORD))
-			{
-				ready = true;
-			}
+			inSituationRecord = false;
 			
-			if (inTagMap.containsKey(tag))
-			{
-				inTagMap.put(tag, false);
-			}
+			ready = true;
 		}
 		
 		return ready;
 	}
 	
 	/**
-	 * Collect text values depending on conditions.
+	 * Collect text values depending on position.
 	 * 
 	 * @param text
 	 * @throws IOException 
@@ -131,119 +196,84 @@ public class TrafficDataParser implements JSONParser<TrafficData>
 	@Override
 	public void processObject(JsonParser parser) throws JsonParseException, IOException
 	{
-		// Old way was easier to understand.
-		boolean inSituationRecord = inTagMap.get(TrafficData.TAG_SITUATION_RECORD);
-		
-		String text = parser.getText();
+		JsonToken token = parser.getCurrentToken();
 		
-		if (inSituationRecord)
+		if (token == JsonToken.START_ARRAY)
 		{
-			boolean inAttributes = inTagMap.get(TrafficData.TAG_ATTRIBUTES);
-			
-			if (inAttributes)
-			{
-				if (text.equals(TrafficData.TAG_ID))
-				{
-					// Extract id
-					parser.nextToken();
-					id = parser.getText();
-				}
-			}
-			else
+			cursor.push(parser.getCurrentName());
+		}
+		else if (token == JsonToken.END_ARRAY)
+		{
+			cursor.pop();
+		}
+		else if (token != JsonToken.FIELD_NAME)
+		{
+			switch (cursor.match(parser.getCurrentName()))
 			{
-				boolean inPoint = inTagMap.get(TrafficData.TAG_POINT);
-				
-				if (inPoint)
-				{
-					boolean inPointCoordinates = inTagMap.get(TrafficData.TAG_POINT_COORDINATES);
-					
-					if (inPointCoordinates)
-					{
-						if (text.equals(TrafficData.TAG_LATITUDE))
-						{
-							parser.nextToken();
-							latitude = parser.getText();
-						}
-						else if (text.equals(TrafficData.TAG_LONGITUDE))
-						{
-							parser.nextToken();
-							longitude = parser.getText();
-						}
-					}
-					else if (text.equals(TrafficData.TAG_NAME))
-					{
-						while (parser.nextToken() != JsonToken.END_ARRAY)
-						{
-							text = parser.getText();
-							if (text.equals(TrafficData.TAG_VALUE))
-							{
-								parser.nextToken();
-								temp = parser.getText();
-							}
-							else if (text.equals(TrafficData.TAG_TPEG_DESCRIPTOR_TYPE))
-							{
-								parser.nextToken();
-								text = parser.getText();
-								if (text.equals(TrafficData.TAG_LINK_NAME))
-								{
-									linkName = temp;
-								}
-								else if (text.equals(TrafficData.TAG_LOCAL_LINK_NAME))
-								{
-									localLinkName = temp;
-								}
-								else if (text.equals(TrafficData.TAG_TOWN_NAME))
-								{
-									townName = temp;
-								}
-							}
-						}
-					}
-				}
-				else
-				{
-					if (text.equals(TrafficData.TAG_NETWORK_MANAGEMENT_TYPE))
-					{
-						parser.nextToken();
-						type = parser.getText();
-					}
-					else
-					{
-						if (text.equals(TrafficData.TAG_OVERALL_START_TIME))
-						{
-							parser.nextToken();
-							overallStartTime = parser.getText();
-						}
-						else
-						{
-							if (text.equals(TrafficData.TAG_OVERALL_END_TIME))
-							{
-								parser.nextToken();
-								overallEndTime = parser.getText();
-							}
-							else
-							{
-								boolean inNonGeneralPublicComment = inTagMap.get(TrafficData.TAG_NON_GENERAL_PUBLIC_COMMENT);
-								
-								if (inNonGeneralPublicComment)
-								{
-									if (text.equals(TrafficData.TAG_COMMENT))
-									{
-										parser.nextToken();
-										parser.nextToken();
-										parser.nextToken();
-										description = parser.getText();
-									}
-								}
-							}
-							
-						}
-					}
-				}
+				case PATH_ID:
+					id = ids.intern(parser);
+					break;
+				case PATH_VERSION:
+					version = TokenValues.getInt(parser, SituationRecord.NO_VERSION);
+					break;
+				case PATH_VERSION_TIME:
+					versionTime = values.put(parser);
+					break;
+				case PATH_LATITUDE:
+					latitude = TokenValues.getDouble(parser, TrafficData.NO_COORDINATE);
+					latitudeText = TokenValues.isCanonicalDouble(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				case PATH_LONGITUDE:
+					longitude = TokenValues.getDouble(parser, TrafficData.NO_COORDINATE);
+					longitudeText = TokenValues.isCanonicalDouble(parser) ? ValueBuffer.NONE : values.put(parser);
+					break;
+				case PATH_NAME_VALUE:
+					// Descriptor value precedes its type.
+					temp = dictionary.intern(parser);
+					break;
+				case PATH_NAME_DESCRIPTOR_TYPE:
+					processDescriptorType(dictionary.intern(parser));
+					break;
+				case PATH_NETWORK_MANAGEMENT_TYPE:
+					type = dictionary.intern(parser);
+					break;
+				case PATH_OVERALL_START_TIME:
+					overallStartTime = values.put(parser);
+					break;
+				case PATH_OVERALL_END_TIME:
+					overallEndTime = values.put(parser);
+					break;
+				case PATH_COMMENT:
+					description = values.put(parser);
+					break;
+				default:
+					break;
 			}
 		}
 	}
 	
+	/**
+	 * Assign the last descriptor value according to its type.
+	 * 
+	 * @param text
+	 *            Canonical descriptor type.
+	 */
+	private void processDescriptorType(String text)
+	{
+		if (text == TrafficData.TAG_LINK_NAME)
+		{
+			linkName = temp;
+		}
+		else if (text == TrafficData.TAG_LOCAL_LINK_NAME)
+		{
+			localLinkName = temp;
+		}
+		else if (text == TrafficData.TAG_TOWN_NAME)
+		{
+			townName = temp;
+		}
+	}
+	
 	/**
 	 * Build record from parsed data.
 	 * 
@@ -253,37 +283,97 @@ public class TrafficDataParser implements JSONParser<TrafficData>
 	{
 		// Populate record.
 		record.setId(id);
-		record.setDescription(description);
+		record.setVersion(version);
+		record.setVersionTime(values.get(versionTime, "", record.getVersionTime()));
+		record.setDescription(values.get(description, "", record.getDescription()));
 		record.setLinkName(linkName);
 		record.setLocalLinkName(localLinkName);
 		record.setTownName(townName);
 		record.setType(type);
-		record.setLatitude(latitude);
-		record.setLongitude(longitude);
-		record.setOverallStartTime(overallStartTime);
-		record.setOverallEndTime(overallEndTime);
+		
+		if (latitudeText == ValueBuffer.NONE)
+		{
+			record.setLatitudeDouble(latitude);
+		}
+		else
+		{
+			record.setLatitude(latitude, values.get(latitudeText, "", record.getLatitude()));
+		}
+		
+		if (longitudeText == ValueBuffer.NONE)
+		{
+			record.setLongitudeDouble(longitude);
+		}
+		else
+		{
+			record.setLongitude(longitude, values.get(longitudeText, "", record.getLongitude()));
+		}
+		
+		record.setOverallStartTime(values.get(overallStartTime, "", record.getOverallStartTime()));
+		record.setOverallEndTime(values.get(overallEndTime, "", record.getOverallEndTime()));
 		
 		// Reset parser fields.
-		reset();
+		resetValues();
 	}
 	
 	/**
-	 * Reset parsed strings.
+	 * Id of the record read.
+	 * 
+	 * @return The id.
+	 */
+	@Override
+	public String getRecordId()
+	{
+		return id;
+	}
+	
+	/**
+	 * Drop parsed data without building a record.
+	 * 
+	 */
+	@Override
+	public void discardRecord()
+	{
+		resetValues();
+	}
+	
+	/**
+	 * Reset parsed strings and document position.
 	 * 
 	 */
 	@Override
 	public void reset()
 	{
+		resetValues();
+		
+		cursor.reset();
+		
+		inSituationRecord = false;
+	}
+	
+	/**
+	 * Reset parsed values.
+	 * 
+	 */
+	private void resetValues()
+	{
+		values.clear();
+		
 		id = "";
-		description = "";
+		version = SituationRecord.NO_VERSION;
+		versionTime = ValueBuffer.NONE;
+		description = ValueBuffer.NONE;
+		temp = "";
 		localLinkName = "";
 		linkName = "";
 		townName = "";
 		type = TrafficData.TEXT_UNKNOWN;
-		latitude = "";
-		longitude = "";
-		overallStartTime = "";
-		overallEndTime = "";
+		latitude = TrafficData.NO_COORDINATE;
+		latitudeText = ValueBuffer.NONE;
+		longitude = TrafficData.NO_COORDINATE;
+		longitudeText = ValueBuffer.NONE;
+		overallStartTime = ValueBuffer.NONE;
+		overallEndTime = ValueBuffer.NONE;
 	}
 	
 	/**
@@ -294,15 +384,7 @@ public class TrafficDataParser implements JSONParser<TrafficData>
 	@Override
 	public boolean inTarget()
 	{
-		boolean state = false;
-		Iterator<Boolean> iterator = inTagMap.values().iterator();
-		while (!state && iterator.hasNext())
-		{
-			Boolean item = iterator.next();
-			state |= item;
-		}
-		
-		return state;
+		return inSituationRecord;
 	}
 	
 }
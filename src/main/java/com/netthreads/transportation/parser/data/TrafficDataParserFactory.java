@@ -0,0 +1,37 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser.data;
+
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.JSONParserFactory;
+
+/**
+ * TrafficData parser factory.
+ * 
+ */
+public class TrafficDataParserFactory implements JSONParserFactory<TrafficData>
+{
+	@Override
+	public JSONParser<TrafficData> createParser()
+	{
+		return new TrafficDataParser();
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser.path;
+
+/**
+ * Tracks the position of a parser in the document against a compiled
+ * PathMatcher. The matcher state for each open object or array is held in an
+ * array indexed by depth.
+ * 
+ * Not thread safe, use one cursor per parser.
+ * 
+ */
+public class PathCursor
+{
+	private static final int INITIAL_DEPTH = 32;
+	
+	private PathMatcher matcher;
+	
+	private int[] states;
+	private int[] accepts;
+	private int depth;
+	
+	/**
+	 * Construct cursor.
+	 * 
+	 * @param matcher
+	 */
+	PathCursor(PathMatcher matcher)
+	{
+		this.matcher = matcher;
+		
+		states = new int[INITIAL_DEPTH];
+		accepts = new int[INITIAL_DEPTH];
+		
+		reset();
+	}
+	
+	/**
+	 * Enter an object or array.
+	 * 
+	 * @param name
+	 *            The field name or null for an array element (which stays at
+	 *            the same level as its array).
+	 * 
+	 * @return Id of the path matched by the new level or NO_MATCH.
+	 */
+	public int push(String name)
+	{
+		int state = states[depth];
+		int next = state;
+		int accept = PathMatcher.NO_MATCH;
+		
+		if (name != null && state != PathMatcher.DEAD)
+		{
+			int entry = matcher.find(state, name);
+			
+			next = matcher.next(state, entry);
+			accept = matcher.accept(state, entry);
+		}
+		
+		if (++depth == states.length)
+		{
+			grow();
+		}
+		
+		states[depth] = next;
+		accepts[depth] = accept;
+		
+		return accept;
+	}
+	
+	/**
+	 * Leave an object or array.
+	 * 
+	 * @return Id of the path matched by the level left or NO_MATCH.
+	 */
+	public int pop()
+	{
+		int accept = PathMatcher.NO_MATCH;
+		
+		if (depth > 0)
+		{
+			accept = accepts[depth];
+			
+			depth--;
+		}
+		
+		return accept;
+	}
+	
+	/**
+	 * Match a value name at the current level without entering it.
+	 * 
+	 * @param name
+	 * 
+	 * @return Id of the path matched or NO_MATCH.
+	 */
+	public int match(String name)
+	{
+		int state = states[depth];
+		
+		if (name == null || state == PathMatcher.DEAD)
+		{
+			return PathMatcher.NO_MATCH;
+		}
+		
+		return matcher.accept(state, matcher.find(state, name));
+	}
+	
+	/**
+	 * Check if nothing below the named child can match.
+	 * 
+	 * @param name
+	 * 
+	 * @return True if the child leads to the dead state.
+	 */
+	public boolean isDead(String name)
+	{
+		int state = states[depth];
+		
+		if (state == PathMatcher.DEAD)
+		{
+			return true;
+		}
+		
+		return name != null && matcher.next(state, matcher.find(state, name)) == PathMatcher.DEAD;
+	}
+	
+	/**
+	 * Current depth.
+	 * 
+	 * @return The depth, zero at the root.
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+	
+	/**
+	 * Return to the document root.
+	 * 
+	 */
+	public void reset()
+	{
+		depth = 0;
+		states[0] = matcher.getStart();
+		accepts[0] = PathMatcher.NO_MATCH;
+	}
+	
+	/**
+	 * Deeper document than expected.
+	 * 
+	 */
+	private void grow()
+	{
+		int[] newStates = new int[states.length * 2];
+		int[] newAccepts = new int[accepts.length * 2];
+		
+		System.arraycopy(states, 0, newStates, 0, states.length);
+		System.arraycopy(accepts, 0, newAccepts, 0, accepts.length);
+		
+		states = newStates;
+		accepts = newAccepts;
+	}
+	
+}
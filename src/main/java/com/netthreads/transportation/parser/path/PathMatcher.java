@@ -0,0 +1,443 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.parser.path;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled set of path specifications.
+ * 
+ * A path is a list of object names separated by '/' and anchored at the
+ * document root, for example:
+ * 
+ * <pre>
+ * payloadPublication/situation/situationRecord/groupOfLocations/&#42;&#42;/pointCoordinates/latitude
+ * </pre>
+ * 
+ * '*' matches exactly one level and '**' matches any number of levels
+ * (including none). Arrays are transparent, their elements sit at the same
+ * level as the array name.
+ * 
+ * The paths are compiled once into a deterministic state machine. Each state
+ * holds a small table of the names which lead somewhere different from the
+ * "any other name" transition so matching a name costs a scan of a handful of
+ * entries and never allocates. Jackson interns field names so the scan is
+ * normally an identity comparison.
+ * 
+ */
+public class PathMatcher
+{
+	public static final String SEPARATOR = "/";
+	public static final String ANY = "*";
+	public static final String ANY_DEPTH = "**";
+	
+	/**
+	 * Returned when a path does not match.
+	 */
+	public static final int NO_MATCH = -1;
+	
+	/**
+	 * State from which nothing can match.
+	 */
+	public static final int DEAD = 0;
+	
+	// Per state.
+	private int start;
+	private int[] tableStart;
+	private int[] tableEnd;
+	private int[] otherNext;
+	private int[] otherAccept;
+	
+	// Flattened transition tables.
+	private String[] names;
+	private int[] hashes;
+	private int[] nexts;
+	private int[] accepts;
+	
+	/**
+	 * Construct from compiled tables.
+	 * 
+	 */
+	private PathMatcher(int start, int[] tableStart, int[] tableEnd, int[] otherNext, int[] otherAccept, String[] names, int[] nexts, int[] accepts)
+	{
+		this.start = start;
+		this.tableStart = tableStart;
+		this.tableEnd = tableEnd;
+		this.otherNext = otherNext;
+		this.otherAccept = otherAccept;
+		this.names = names;
+		this.nexts = nexts;
+		this.accepts = accepts;
+		
+		hashes = new int[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			hashes[i] = names[i].hashCode();
+		}
+	}
+	
+	/**
+	 * Create a cursor to track a document against this matcher.
+	 * 
+	 * @return The cursor.
+	 */
+	public PathCursor newCursor()
+	{
+		return new PathCursor(this);
+	}
+	
+	/**
+	 * Root state.
+	 * 
+	 * @return The start state.
+	 */
+	public int getStart()
+	{
+		return start;
+	}
+	
+	/**
+	 * Look up the transition entry for a name.
+	 * 
+	 * @param state
+	 * @param name
+	 * 
+	 * @return Index of table entry or NO_MATCH if the name takes the "other"
+	 *         transition.
+	 */
+	public int find(int state, String name)
+	{
+		int end = tableEnd[state];
+		
+		// Interned names first.
+		for (int i = tableStart[state]; i < end; i++)
+		{
+			if (names[i] == name)
+			{
+				return i;
+			}
+		}
+		
+		// Fall back for names which are not canonical.
+		int hash = name.hashCode();
+		for (int i = tableStart[state]; i < end; i++)
+		{
+			if (hashes[i] == hash && names[i].equals(name))
+			{
+				return i;
+			}
+		}
+		
+		return NO_MATCH;
+	}
+	
+	/**
+	 * Next state for a table entry.
+	 * 
+	 * @param state
+	 * @param entry
+	 *            Result of find().
+	 * 
+	 * @return The next state.
+	 */
+	public int next(int state, int entry)
+	{
+		return entry == NO_MATCH ? otherNext[state] : nexts[entry];
+	}
+	
+	/**
+	 * Path id completed by a table entry.
+	 * 
+	 * @param state
+	 * @param entry
+	 *            Result of find().
+	 * 
+	 * @return The path id or NO_MATCH.
+	 */
+	public int accept(int state, int entry)
+	{
+		return entry == NO_MATCH ? otherAccept[state] : accepts[entry];
+	}
+	
+	/**
+	 * Number of compiled states, including the dead state.
+	 * 
+	 * @return The state count.
+	 */
+	public int getStateCount()
+	{
+		return tableStart.length;
+	}
+	
+	/**
+	 * Builds and compiles a matcher.
+	 * 
+	 */
+	public static class Builder
+	{
+		private List<String[]> paths = new ArrayList<String[]>();
+		private List<Integer> ids = new ArrayList<Integer>();
+		
+		/**
+		 * Add path.
+		 * 
+		 * @param path
+		 *            The path spec.
+		 * @param id
+		 *            Value reported when the path matches, must not be
+		 *            negative.
+		 * 
+		 * @return This builder.
+		 */
+		public Builder add(String path, int id)
+		{
+			if (id < 0)
+			{
+				throw new IllegalArgumentException("Path id must not be negative: " + id);
+			}
+			
+			String[] segments = path.split(SEPARATOR);
+			
+			for (int i = 0; i < segments.length; i++)
+			{
+				if (segments[i].length() == 0)
+				{
+					throw new IllegalArgumentException("Empty segment in path: " + path);
+				}
+				
+				segments[i] = segments[i].intern();
+			}
+			
+			if (segments[segments.length - 1] == ANY_DEPTH)
+			{
+				throw new IllegalArgumentException("Path must not end with " + ANY_DEPTH + ": " + path);
+			}
+			
+			paths.add(segments);
+			ids.add(id);
+			
+			return this;
+		}
+		
+		/**
+		 * Compile paths into a state machine.
+		 * 
+		 * @return The matcher.
+		 */
+		public PathMatcher compile()
+		{
+			// Position numbering, one per (path, segments matched).
+			int[] offsets = new int[paths.size() + 1];
+			for (int p = 0; p < paths.size(); p++)
+			{
+				offsets[p + 1] = offsets[p] + paths.get(p).length + 1;
+			}
+			
+			// Alphabet of literal names.
+			Set<String> alphabet = new LinkedHashSet<String>();
+			for (String[] segments : paths)
+			{
+				for (String segment : segments)
+				{
+					if (segment != ANY && segment != ANY_DEPTH)
+					{
+						alphabet.add(segment);
+					}
+				}
+			}
+			
+			List<BitSet> states = new ArrayList<BitSet>();
+			Map<BitSet, Integer> stateIndex = new HashMap<BitSet, Integer>();
+			
+			// Dead state is always zero.
+			BitSet dead = new BitSet();
+			states.add(dead);
+			stateIndex.put(dead, DEAD);
+			
+			BitSet initial = new BitSet();
+			for (int p = 0; p < paths.size(); p++)
+			{
+				initial.set(offsets[p]);
+			}
+			closure(initial, offsets);
+			
+			int startState = addState(initial, states, stateIndex);
+			
+			List<int[]> tables = new ArrayList<int[]>();
+			List<String> tableNames = new ArrayList<String>();
+			List<Integer> tableNexts = new ArrayList<Integer>();
+			List<Integer> tableAccepts = new ArrayList<Integer>();
+			List<Integer> others = new ArrayList<Integer>();
+			List<Integer> otherAccepts = new ArrayList<Integer>();
+			
+			// Work through states as they are discovered.
+			for (int s = 0; s < states.size(); s++)
+			{
+				BitSet current = states.get(s);
+				
+				BitSet other = step(current, null, offsets);
+				int otherState = addState(other, states, stateIndex);
+				int otherId = acceptId(other, offsets);
+				
+				others.add(otherState);
+				otherAccepts.add(otherId);
+				
+				int from = tableNames.size();
+				
+				for (String name : alphabet)
+				{
+					BitSet target = step(current, name, offsets);
+					
+					if (!target.equals(other))
+					{
+						tableNames.add(name);
+						tableNexts.add(addState(target, states, stateIndex));
+						tableAccepts.add(acceptId(target, offsets));
+					}
+				}
+				
+				tables.add(new int[] { from, tableNames.size() });
+			}
+			
+			int count = states.size();
+			int[] tableStart = new int[count];
+			int[] tableEnd = new int[count];
+			int[] otherNext = new int[count];
+			int[] otherAccept = new int[count];
+			for (int s = 0; s < count; s++)
+			{
+				tableStart[s] = tables.get(s)[0];
+				tableEnd[s] = tables.get(s)[1];
+				otherNext[s] = others.get(s);
+				otherAccept[s] = otherAccepts.get(s);
+			}
+			
+			int entries = tableNames.size();
+			String[] names = tableNames.toArray(new String[entries]);
+			int[] nexts = new int[entries];
+			int[] accepts = new int[entries];
+			for (int i = 0; i < entries; i++)
+			{
+				nexts[i] = tableNexts.get(i);
+				accepts[i] = tableAccepts.get(i);
+			}
+			
+			return new PathMatcher(startState, tableStart, tableEnd, otherNext, otherAccept, names, nexts, accepts);
+		}
+		
+		/**
+		 * Register state if new.
+		 * 
+		 */
+		private int addState(BitSet set, List<BitSet> states, Map<BitSet, Integer> stateIndex)
+		{
+			Integer index = stateIndex.get(set);
+			
+			if (index == null)
+			{
+				index = states.size();
+				states.add(set);
+				stateIndex.put(set, index);
+			}
+			
+			return index;
+		}
+		
+		/**
+		 * Advance all positions over one name.
+		 * 
+		 * @param name
+		 *            The name or null for a name not in the alphabet.
+		 */
+		private BitSet step(BitSet current, String name, int[] offsets)
+		{
+			BitSet target = new BitSet();
+			
+			for (int p = 0; p < paths.size(); p++)
+			{
+				String[] segments = paths.get(p);
+				
+				for (int i = 0; i < segments.length; i++)
+				{
+					if (current.get(offsets[p] + i))
+					{
+						String segment = segments[i];
+						
+						if (segment == ANY_DEPTH)
+						{
+							target.set(offsets[p] + i);
+						}
+						else if (segment == ANY || segment == name)
+						{
+							target.set(offsets[p] + i + 1);
+						}
+					}
+				}
+			}
+			
+			closure(target, offsets);
+			
+			return target;
+		}
+		
+		/**
+		 * A '**' may match nothing so positions before one also sit after it.
+		 * 
+		 */
+		private void closure(BitSet set, int[] offsets)
+		{
+			for (int p = 0; p < paths.size(); p++)
+			{
+				String[] segments = paths.get(p);
+				
+				for (int i = 0; i < segments.length; i++)
+				{
+					if (set.get(offsets[p] + i) && segments[i] == ANY_DEPTH)
+					{
+						set.set(offsets[p] + i + 1);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * First path completed by a set of positions.
+		 * 
+		 */
+		private int acceptId(BitSet set, int[] offsets)
+		{
+			for (int p = 0; p < paths.size(); p++)
+			{
+				if (set.get(offsets[p] + paths.get(p).length))
+				{
+					return ids.get(p);
+				}
+			}
+			
+			return NO_MATCH;
+		}
+	}
+	
+}
@@ -0,0 +1,186 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.poller;
+
+import com.netthreads.transportation.parser.StreamParser;
+
+/**
+ * Running totals for one scheduled feed.
+ * 
+ * Written by the fetching thread, each value is safe to read from any
+ * thread but values read one after another may straddle a poll.
+ * 
+ */
+public class FeedHealth
+{
+	public static final long NEVER = 0;
+	
+	private String name;
+	
+	private volatile long lastAttempt = NEVER;
+	private volatile long lastSuccess = NEVER;
+	private volatile long lastDuration;
+	private volatile int lastState = StreamParser.WAITING;
+	private volatile Exception lastError;
+	
+	private volatile int successes;
+	private volatile int failures;
+	private volatile int skipped;
+	
+	private volatile boolean running;
+	
+	/**
+	 * Construct health.
+	 * 
+	 * @param name
+	 */
+	public FeedHealth(String name)
+	{
+		this.name = name;
+	}
+	
+	/**
+	 * Poll started.
+	 * 
+	 * @param time
+	 */
+	void started(long time)
+	{
+		lastAttempt = time;
+		running = true;
+	}
+	
+	/**
+	 * Poll finished.
+	 * 
+	 * @param state
+	 * @param duration
+	 * @param error
+	 */
+	void finished(int state, long duration, Exception error)
+	{
+		lastState = state;
+		lastDuration = duration;
+		lastError = error;
+		
+		if (state == StreamParser.DONE)
+		{
+			lastSuccess = lastAttempt;
+			successes++;
+		}
+		else
+		{
+			failures++;
+		}
+		
+		running = false;
+	}
+	
+	/**
+	 * Run skipped because the last one was still going.
+	 * 
+	 */
+	void skipped()
+	{
+		skipped++;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * Start of the last poll.
+	 * 
+	 * @return Milliseconds since the epoch or NEVER.
+	 */
+	public long getLastAttempt()
+	{
+		return lastAttempt;
+	}
+	
+	/**
+	 * Start of the last poll that completed.
+	 * 
+	 * @return Milliseconds since the epoch or NEVER.
+	 */
+	public long getLastSuccess()
+	{
+		return lastSuccess;
+	}
+	
+	/**
+	 * Time taken by the last poll.
+	 * 
+	 * @return Milliseconds.
+	 */
+	public long getLastDuration()
+	{
+		return lastDuration;
+	}
+	
+	/**
+	 * Parse state of the last poll, see StreamParser.
+	 * 
+	 * @return The state.
+	 */
+	public int getLastState()
+	{
+		return lastState;
+	}
+	
+	/**
+	 * Error from the last poll.
+	 * 
+	 * @return The error or null.
+	 */
+	public Exception getLastError()
+	{
+		return lastError;
+	}
+	
+	public int getSuccesses()
+	{
+		return successes;
+	}
+	
+	public int getFailures()
+	{
+		return failures;
+	}
+	
+	public int getSkipped()
+	{
+		return skipped;
+	}
+	
+	public boolean isRunning()
+	{
+		return running;
+	}
+	
+	@Override
+	public String toString()
+	{
+		String text = name + ", " + successes + " ok, " + failures + " failed, " + skipped + " skipped, last " + lastDuration + "ms";
+		
+		return text;
+	}
+}
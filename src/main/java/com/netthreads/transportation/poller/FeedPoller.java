@@ -0,0 +1,406 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.poller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.InflaterPool;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+
+/**
+ * Polls one feed over HTTP.
+ * 
+ * Each poll is a conditional GET carrying the ETag and Last-Modified of the
+ * last successful poll. A 304 response, or a 200 with the same ETag, reuses
+ * the previous records without parsing. The body is parsed as it downloads,
+ * a read-ahead reader fetches the next buffers while the current ones are
+ * parsed.
+ * 
+ * Bodies are read to the end and closed so HttpURLConnection can keep the
+ * connection alive for the next poll. Connect, read and parse timeouts are
+ * set per poller. Polls must not overlap, use one poller per feed.
+ * 
+ * cancel() stops a poll at any stage, including while connecting or waiting
+ * for the response headers, by dropping the connection. The poller stays
+ * cancelled until reset().
+ * 
+ */
+public class FeedPoller<T> implements Pollable<T>
+{
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	public static final int DEFAULT_READ_TIMEOUT = 30000;
+	
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String HEADER_ACCEPT = "Accept";
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	
+	private static final String TYPE_JSON = "application/json";
+	private static final String ENCODING_GZIP = "gzip";
+	
+	private static final int DRAIN_BUFFER_SIZE = 4096;
+	
+	private URL url;
+	private DataFactory<T> dataFactory;
+	private JSONParser<T> pullParser;
+	private Executor executor;
+	
+	private StreamParserImpl<T> streamParser;
+	
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+	
+	private boolean compressed;
+	
+	// Control
+	private volatile boolean cancelled;
+	private volatile HttpURLConnection active;
+	
+	/**
+	 * Last successful poll.
+	 */
+	private FeedResult<T> last;
+	
+	/**
+	 * Construct poller.
+	 * 
+	 * @param url
+	 * @param dataFactory
+	 * @param pullParser
+	 * @param executor
+	 *            Runs the read-ahead reader, a thread per poll is started if
+	 *            null.
+	 */
+	public FeedPoller(URL url, DataFactory<T> dataFactory, JSONParser<T> pullParser, Executor executor)
+	{
+		this.url = url;
+		this.dataFactory = dataFactory;
+		this.pullParser = pullParser;
+		this.executor = executor;
+		
+		streamParser = new StreamParserImpl<T>();
+	}
+	
+	/**
+	 * Fetch the feed if it has changed.
+	 * 
+	 * @return The result, never null.
+	 */
+	@Override
+	public FeedResult<T> poll()
+	{
+		long start = System.currentTimeMillis();
+		
+		HttpURLConnection connection = null;
+		
+		int responseCode = 0;
+		
+		FeedResult<T> result;
+		
+		try
+		{
+			connection = (HttpURLConnection) url.openConnection();
+			
+			// Published before checking the flag, so a cancel either sees
+			// the connection or is seen here.
+			active = connection;
+			
+			if (cancelled)
+			{
+				return cancelled(responseCode, start);
+			}
+			
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setUseCaches(false);
+			connection.setRequestProperty(HEADER_ACCEPT, TYPE_JSON);
+			
+			if (compressed)
+			{
+				connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+			}
+			
+			if (last != null)
+			{
+				if (last.getEtag() != null)
+				{
+					connection.setRequestProperty(HEADER_IF_NONE_MATCH, last.getEtag());
+				}
+				
+				if (last.getLastModified() != null)
+				{
+					connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, last.getLastModified());
+				}
+			}
+			
+			responseCode = connection.getResponseCode();
+			
+			if (cancelled)
+			{
+				connection.disconnect();
+				
+				return cancelled(responseCode, start);
+			}
+			
+			String etag = connection.getHeaderField(HEADER_ETAG);
+			String lastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+			
+			if (last != null && (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED || (responseCode == HttpURLConnection.HTTP_OK && etag != null && etag.equals(last.getEtag()))))
+			{
+				// Unchanged, keep the connection by reading any body.
+				long bytes = drain(connection.getInputStream());
+				
+				result = new FeedResult<T>(last.getRecords(), StreamParser.DONE, responseCode, false, last.getEtag(), last.getLastModified(), bytes, System.currentTimeMillis() - start, null);
+			}
+			else if (responseCode == HttpURLConnection.HTTP_OK)
+			{
+				ReadAheadInputStream stream = new ReadAheadInputStream(connection.getInputStream(), executor);
+				
+				List<T> records = new ArrayList<T>();
+				
+				int state;
+				
+				try
+				{
+					state = streamParser.fetch(stream, records, dataFactory, pullParser);
+					
+					if (state == StreamParser.DONE)
+					{
+						// Trailing bytes, the connection is released at the end.
+						drain(stream);
+					}
+				}
+				finally
+				{
+					stream.close();
+				}
+				
+				if (cancelled)
+				{
+					// Dropping the connection can fail the parse first.
+					state = StreamParser.CANCELLED;
+				}
+				
+				result = new FeedResult<T>(Collections.unmodifiableList(records), state, responseCode, true, etag, lastModified, stream.getCount(), System.currentTimeMillis() - start, null);
+				
+				if (state == StreamParser.DONE)
+				{
+					last = result;
+				}
+			}
+			else
+			{
+				drain(connection.getErrorStream());
+				
+				result = error(responseCode, start, new IOException("HTTP " + responseCode));
+			}
+		}
+		catch (IOException e)
+		{
+			// Oops, or the connection was dropped by cancel().
+			result = cancelled ? cancelled(responseCode, start) : error(responseCode, start, e);
+		}
+		finally
+		{
+			active = null;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Stop a poll in progress from another thread, or the next poll if none
+	 * is running. Later polls return CANCELLED until reset().
+	 * 
+	 */
+	@Override
+	public void cancel()
+	{
+		cancelled = true;
+		
+		streamParser.cancel();
+		
+		HttpURLConnection connection = active;
+		
+		if (connection != null)
+		{
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Forget the last poll and clear a cancel, the next poll fetches and
+	 * parses unconditionally.
+	 * 
+	 */
+	@Override
+	public void reset()
+	{
+		last = null;
+		
+		cancelled = false;
+		
+		streamParser.reset();
+	}
+	
+	/**
+	 * Last successful poll.
+	 * 
+	 * @return The result or null.
+	 */
+	public FeedResult<T> getLast()
+	{
+		return last;
+	}
+	
+	public URL getUrl()
+	{
+		return url;
+	}
+	
+	public int getConnectTimeout()
+	{
+		return connectTimeout;
+	}
+	
+	public void setConnectTimeout(int connectTimeout)
+	{
+		this.connectTimeout = connectTimeout;
+	}
+	
+	public int getReadTimeout()
+	{
+		return readTimeout;
+	}
+	
+	public void setReadTimeout(int readTimeout)
+	{
+		this.readTimeout = readTimeout;
+	}
+	
+	/**
+	 * Set the maximum time a parse may run.
+	 * 
+	 * @param parseTimeout
+	 *            Milliseconds or StreamParserImpl.NO_TIMEOUT.
+	 */
+	public void setParseTimeout(long parseTimeout)
+	{
+		streamParser.setTimeout(parseTimeout);
+	}
+	
+	public long getParseTimeout()
+	{
+		return streamParser.getTimeout();
+	}
+	
+	/**
+	 * Ask for gzip bodies and decompress them as they are parsed. Byte
+	 * counts are then of the compressed body.
+	 * 
+	 * @param inflaterPool
+	 *            Supplies inflaters or null for uncompressed bodies.
+	 */
+	public void setInflaterPool(InflaterPool inflaterPool)
+	{
+		compressed = inflaterPool != null;
+		
+		streamParser.setInflaterPool(inflaterPool);
+	}
+	
+	/**
+	 * Build a failed result.
+	 * 
+	 * @param responseCode
+	 * @param start
+	 * @param e
+	 * 
+	 * @return The result.
+	 */
+	private FeedResult<T> error(int responseCode, long start, Exception e)
+	{
+		List<T> empty = Collections.emptyList();
+		
+		return new FeedResult<T>(empty, StreamParser.ERROR, responseCode, false, null, null, 0, System.currentTimeMillis() - start, e);
+	}
+	
+	/**
+	 * Build a cancelled result.
+	 * 
+	 * @param responseCode
+	 * @param start
+	 * 
+	 * @return The result.
+	 */
+	private FeedResult<T> cancelled(int responseCode, long start)
+	{
+		List<T> empty = Collections.emptyList();
+		
+		return new FeedResult<T>(empty, StreamParser.CANCELLED, responseCode, false, null, null, 0, System.currentTimeMillis() - start, null);
+	}
+	
+	/**
+	 * Read a stream to the end and close it.
+	 * 
+	 * @param stream
+	 *            May be null.
+	 * 
+	 * @return Bytes read.
+	 * 
+	 * @throws IOException
+	 */
+	private static long drain(InputStream stream) throws IOException
+	{
+		long count = 0;
+		
+		if (stream != null)
+		{
+			try
+			{
+				byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+				
+				int read;
+				
+				while ((read = stream.read(buffer)) != -1)
+				{
+					count += read;
+				}
+			}
+			finally
+			{
+				stream.close();
+			}
+		}
+		
+		return count;
+	}
+	
+}
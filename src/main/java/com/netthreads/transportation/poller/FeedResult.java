@@ -0,0 +1,141 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.poller;
+
+import java.util.List;
+
+import com.netthreads.transportation.parser.StreamParser;
+
+/**
+ * Outcome of one poll of a feed.
+ * 
+ * When the server reports the document unchanged the records are those of
+ * the last successful poll, the same list instance, and isModified() is
+ * false.
+ * 
+ */
+public class FeedResult<T>
+{
+	private List<T> records;
+	private int state;
+	private int responseCode;
+	private boolean modified;
+	private String etag;
+	private String lastModified;
+	private long bytes;
+	private long elapsed;
+	private Exception error;
+	
+	/**
+	 * Construct result.
+	 * 
+	 * @param records
+	 * @param state
+	 *            Parse state, see StreamParser.
+	 * @param responseCode
+	 * @param modified
+	 * @param etag
+	 * @param lastModified
+	 * @param bytes
+	 *            Bytes downloaded.
+	 * @param elapsed
+	 *            Milliseconds taken.
+	 * @param error
+	 */
+	public FeedResult(List<T> records, int state, int responseCode, boolean modified, String etag, String lastModified, long bytes, long elapsed, Exception error)
+	{
+		this.records = records;
+		this.state = state;
+		this.responseCode = responseCode;
+		this.modified = modified;
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.bytes = bytes;
+		this.elapsed = elapsed;
+		this.error = error;
+	}
+	
+	/**
+	 * Records, read only.
+	 * 
+	 * @return The records.
+	 */
+	public List<T> getRecords()
+	{
+		return records;
+	}
+	
+	public int getState()
+	{
+		return state;
+	}
+	
+	/**
+	 * Check the poll succeeded, either parsed or unchanged.
+	 * 
+	 * @return True if the records are complete.
+	 */
+	public boolean isDone()
+	{
+		return state == StreamParser.DONE;
+	}
+	
+	public int getResponseCode()
+	{
+		return responseCode;
+	}
+	
+	public boolean isModified()
+	{
+		return modified;
+	}
+	
+	public String getEtag()
+	{
+		return etag;
+	}
+	
+	public String getLastModified()
+	{
+		return lastModified;
+	}
+	
+	public long getBytes()
+	{
+		return bytes;
+	}
+	
+	public long getElapsed()
+	{
+		return elapsed;
+	}
+	
+	public Exception getError()
+	{
+		return error;
+	}
+	
+	@Override
+	public String toString()
+	{
+		String text = responseCode + ", " + state + ", " + (modified ? "modified" : "unchanged") + ", " + records.size() + " records, " + bytes + " bytes, " + elapsed + "ms";
+		
+		return text;
+	}
+}
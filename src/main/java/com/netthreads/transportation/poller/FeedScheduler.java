@@ -0,0 +1,398 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.poller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netthreads.transportation.parser.StreamParser;
+
+/**
+ * Polls a set of feeds, each on its own interval.
+ * 
+ * A single timer thread decides when each feed is due and hands the poll to
+ * a fixed pool of fetch threads, so at most concurrency polls run at once
+ * whatever the number of feeds. Each feed is due every interval from when
+ * it was added, delayed by a fresh random jitter each time so feeds with
+ * the same interval do not all hit their servers together. A feed due while
+ * its last poll is still queued or running is skipped rather than queued
+ * again.
+ * 
+ * Shutdown stops the timer, cancels the polls in progress and waits for the
+ * fetch threads to finish. Feeds are reset when added, so one removed while
+ * polling can be added again once its cancelled poll has ended.
+ * 
+ */
+public class FeedScheduler
+{
+	private static final String THREAD_TIMER = "feed-timer-";
+	private static final String THREAD_FETCH = "feed-fetch-";
+	
+	/**
+	 * One scheduled feed.
+	 * 
+	 */
+	private class Entry<T> implements Runnable
+	{
+		private String name;
+		private Pollable<T> feed;
+		private long interval;
+		private long jitter;
+		private FeedListener<T> listener;
+		
+		private FeedHealth health;
+		
+		private AtomicBoolean busy = new AtomicBoolean();
+		
+		// Timer thread only.
+		private long due;
+		private volatile ScheduledFuture<?> next;
+		private volatile boolean removed;
+		
+		private Runnable tick = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				tick();
+			}
+		};
+		
+		Entry(String name, Pollable<T> feed, long interval, long jitter, FeedListener<T> listener)
+		{
+			this.name = name;
+			this.feed = feed;
+			this.interval = interval;
+			this.jitter = jitter;
+			this.listener = listener;
+			
+			health = new FeedHealth(name);
+		}
+		
+		/**
+		 * Schedule the next tick.
+		 * 
+		 */
+		void schedule()
+		{
+			long delay = due - System.currentTimeMillis();
+			
+			if (jitter > 0)
+			{
+				delay += (long) (random.nextDouble() * jitter);
+			}
+			
+			try
+			{
+				next = timer.schedule(tick, Math.max(0, delay), TimeUnit.MILLISECONDS);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// Shut down.
+			}
+		}
+		
+		/**
+		 * Due, hand the poll to a fetch thread unless the last is going.
+		 * 
+		 */
+		void tick()
+		{
+			if (removed)
+			{
+				return;
+			}
+			
+			if (busy.compareAndSet(false, true))
+			{
+				try
+				{
+					fetchers.execute(this);
+				}
+				catch (RejectedExecutionException e)
+				{
+					busy.set(false);
+					
+					return;
+				}
+			}
+			else
+			{
+				health.skipped();
+			}
+			
+			// Fixed rate, if the timer has fallen behind skip to the next slot.
+			long now = System.currentTimeMillis();
+			
+			due += interval;
+			
+			if (due < now)
+			{
+				due += ((now - due) / interval + 1) * interval;
+			}
+			
+			schedule();
+		}
+		
+		/**
+		 * Poll, on a fetch thread.
+		 * 
+		 */
+		@Override
+		public void run()
+		{
+			if (removed)
+			{
+				busy.set(false);
+				
+				return;
+			}
+			
+			long start = System.currentTimeMillis();
+			
+			health.started(start);
+			
+			try
+			{
+				FeedResult<T> result = feed.poll();
+				
+				health.finished(result.getState(), System.currentTimeMillis() - start, result.getError());
+				
+				if (listener != null)
+				{
+					listener.polled(name, result);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				// Keep the fetch thread and the feed going.
+				if (health.isRunning())
+				{
+					health.finished(StreamParser.ERROR, System.currentTimeMillis() - start, e);
+				}
+			}
+			finally
+			{
+				busy.set(false);
+			}
+		}
+		
+		void stop()
+		{
+			removed = true;
+			
+			ScheduledFuture<?> future = next;
+			
+			if (future != null)
+			{
+				future.cancel(false);
+			}
+			
+			if (busy.get())
+			{
+				feed.cancel();
+			}
+		}
+	}
+	
+	private ScheduledExecutorService timer;
+	private ExecutorService fetchers;
+	
+	private Map<String, Entry<?>> entries = new LinkedHashMap<String, Entry<?>>();
+	
+	private Random random = new Random();
+	
+	/**
+	 * Construct scheduler.
+	 * 
+	 * @param concurrency
+	 *            Most polls running at once.
+	 */
+	public FeedScheduler(int concurrency)
+	{
+		timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(THREAD_TIMER));
+		fetchers = Executors.newFixedThreadPool(Math.max(1, concurrency), new NamedThreadFactory(THREAD_FETCH));
+	}
+	
+	/**
+	 * Add a feed, the first poll is due after the jitter. The feed is reset
+	 * first.
+	 * 
+	 * @param name
+	 *            Unique name.
+	 * @param feed
+	 * @param interval
+	 *            Milliseconds between polls.
+	 * @param jitter
+	 *            Most milliseconds each poll is delayed by, zero for none.
+	 * @param listener
+	 *            Told of each result, may be null.
+	 * 
+	 * @return The feed health.
+	 */
+	public synchronized <T> FeedHealth add(String name, Pollable<T> feed, long interval, long jitter, FeedListener<T> listener)
+	{
+		if (interval <= 0 || jitter < 0)
+		{
+			throw new IllegalArgumentException("Bad interval " + interval + " or jitter " + jitter);
+		}
+		
+		if (entries.containsKey(name))
+		{
+			throw new IllegalArgumentException("Feed already scheduled " + name);
+		}
+		
+		if (timer.isShutdown())
+		{
+			throw new IllegalStateException("Scheduler shut down");
+		}
+		
+		// Clear a cancel left by a scheduler it was removed from.
+		feed.reset();
+		
+		Entry<T> entry = new Entry<T>(name, feed, interval, jitter, listener);
+		
+		entries.put(name, entry);
+		
+		entry.due = System.currentTimeMillis();
+		entry.schedule();
+		
+		return entry.health;
+	}
+	
+	/**
+	 * Stop polling a feed, cancelling any poll in progress.
+	 * 
+	 * @param name
+	 * 
+	 * @return True if the feed was scheduled.
+	 */
+	public synchronized boolean remove(String name)
+	{
+		Entry<?> entry = entries.remove(name);
+		
+		if (entry != null)
+		{
+			entry.stop();
+		}
+		
+		return entry != null;
+	}
+	
+	/**
+	 * Health of a feed.
+	 * 
+	 * @param name
+	 * 
+	 * @return The health or null if not scheduled.
+	 */
+	public synchronized FeedHealth getHealth(String name)
+	{
+		Entry<?> entry = entries.get(name);
+		
+		return entry != null ? entry.health : null;
+	}
+	
+	/**
+	 * Health of every feed, in the order added.
+	 * 
+	 * @return A new list.
+	 */
+	public synchronized List<FeedHealth> getHealth()
+	{
+		List<FeedHealth> health = new ArrayList<FeedHealth>(entries.size());
+		
+		for (Entry<?> entry : entries.values())
+		{
+			health.add(entry.health);
+		}
+		
+		return health;
+	}
+	
+	/**
+	 * Stop polling, cancel polls in progress and wait for them to end.
+	 * 
+	 * @param timeout
+	 *            Most milliseconds to wait.
+	 * 
+	 * @return True if every fetch thread finished.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public boolean shutdown(long timeout) throws InterruptedException
+	{
+		synchronized (this)
+		{
+			timer.shutdownNow();
+			fetchers.shutdown();
+			
+			for (Entry<?> entry : entries.values())
+			{
+				entry.stop();
+			}
+		}
+		
+		long end = System.currentTimeMillis() + timeout;
+		
+		boolean terminated = timer.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		
+		terminated &= fetchers.awaitTermination(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		
+		return terminated;
+	}
+	
+	/**
+	 * Daemon threads with a name prefix.
+	 * 
+	 */
+	private static class NamedThreadFactory implements ThreadFactory
+	{
+		private String prefix;
+		private AtomicInteger count = new AtomicInteger();
+		
+		NamedThreadFactory(String prefix)
+		{
+			this.prefix = prefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+			
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	}
+	
+}
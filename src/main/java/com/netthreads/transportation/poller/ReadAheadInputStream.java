@@ -0,0 +1,291 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.poller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Reads a stream on another thread so that downloading and parsing overlap.
+ * 
+ * A reader task fills a small set of buffers from the source while the
+ * consumer parses the ones already filled. The number of buffers bounds how
+ * far it reads ahead. The reader closes the source when it reaches the end
+ * or the stream is closed, whichever comes first.
+ * 
+ */
+public class ReadAheadInputStream extends InputStream
+{
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+	public static final int DEFAULT_CHUNKS = 4;
+	
+	/**
+	 * Marks the end of the source.
+	 */
+	private static final Chunk END = new Chunk(0);
+	
+	private InputStream source;
+	
+	private BlockingQueue<Chunk> filled;
+	private BlockingQueue<Chunk> empty;
+	
+	private Chunk current;
+	private int position;
+	private boolean finished;
+	
+	private volatile boolean closed;
+	private volatile IOException error;
+	private volatile long count;
+	
+	/**
+	 * Construct stream.
+	 * 
+	 * @param source
+	 * @param executor
+	 *            Runs the reader, a new thread is started if null.
+	 */
+	public ReadAheadInputStream(InputStream source, Executor executor)
+	{
+		this(source, executor, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+	}
+	
+	/**
+	 * Construct stream.
+	 * 
+	 * @param source
+	 * @param executor
+	 *            Runs the reader, a new thread is started if null.
+	 * @param chunkSize
+	 *            Bytes per buffer.
+	 * @param chunks
+	 *            Number of buffers.
+	 */
+	public ReadAheadInputStream(InputStream source, Executor executor, int chunkSize, int chunks)
+	{
+		this.source = source;
+		
+		filled = new LinkedBlockingQueue<Chunk>();
+		empty = new LinkedBlockingQueue<Chunk>();
+		
+		for (int i = 0; i < chunks; i++)
+		{
+			empty.add(new Chunk(chunkSize));
+		}
+		
+		Runnable reader = new Reader();
+		
+		if (executor != null)
+		{
+			executor.execute(reader);
+		}
+		else
+		{
+			Thread thread = new Thread(reader, "read-ahead");
+			
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		if (!next())
+		{
+			return -1;
+		}
+		
+		return current.data[position++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		
+		if (!next())
+		{
+			return -1;
+		}
+		
+		int size = Math.min(length, current.length - position);
+		
+		System.arraycopy(current.data, position, buffer, offset, size);
+		
+		position += size;
+		
+		return size;
+	}
+	
+	@Override
+	public int available()
+	{
+		return current != null && current != END ? current.length - position : 0;
+	}
+	
+	/**
+	 * Stop reading, the reader closes the source.
+	 * 
+	 */
+	@Override
+	public void close()
+	{
+		if (!closed)
+		{
+			closed = true;
+			
+			// Wake the reader if it is waiting for a buffer.
+			empty.offer(END);
+		}
+	}
+	
+	/**
+	 * Bytes read from the source so far.
+	 * 
+	 * @return The count.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Make sure the current buffer has bytes left.
+	 * 
+	 * @return False at end of stream.
+	 * 
+	 * @throws IOException
+	 */
+	private boolean next() throws IOException
+	{
+		while (!finished && (current == null || position == current.length))
+		{
+			if (current != null)
+			{
+				empty.offer(current);
+			}
+			
+			try
+			{
+				current = filled.take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				
+				throw new InterruptedIOException();
+			}
+			
+			position = 0;
+			
+			if (current == END)
+			{
+				finished = true;
+			}
+		}
+		
+		if (finished && error != null)
+		{
+			throw error;
+		}
+		
+		return !finished;
+	}
+	
+	/**
+	 * Fills buffers from the source.
+	 * 
+	 */
+	private class Reader implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					Chunk chunk = empty.take();
+					
+					if (closed)
+					{
+						break;
+					}
+					
+					chunk.length = source.read(chunk.data);
+					
+					if (chunk.length < 0)
+					{
+						break;
+					}
+					
+					count += chunk.length;
+					
+					filled.add(chunk);
+				}
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+			catch (InterruptedException e)
+			{
+				error = new InterruptedIOException();
+			}
+			finally
+			{
+				// Closed before the end is signalled so a consumer reading to
+				// the end knows the source has been released.
+				try
+				{
+					source.close();
+				}
+				catch (IOException e)
+				{
+					// Nothing we can do.
+				}
+				
+				filled.add(END);
+			}
+		}
+	}
+	
+	/**
+	 * Buffer and the number of bytes it holds.
+	 * 
+	 */
+	private static class Chunk
+	{
+		private byte[] data;
+		private int length;
+		
+		public Chunk(int size)
+		{
+			data = new byte[size];
+		}
+	}
+	
+}
@@ -0,0 +1,320 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.replay;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.InflaterPool;
+import com.netthreads.transportation.parser.JSONParserFactory;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+
+/**
+ * Replays archived feed files.
+ * 
+ * Each file is memory mapped and parsed on the executor, at most
+ * concurrency files at a time. Records are passed to the sink tagged with
+ * their file and the feed publication time. Directories are replayed in
+ * file name order, which for time stamped archives is poll order, but files
+ * run in parallel so records from different files interleave. Gzipped
+ * files are decompressed as they are parsed, byte totals are compressed.
+ * 
+ * The data factory must be thread safe, the JSON parser factory supplies a
+ * parser per file.
+ * 
+ * cancel() stops the replay in progress, or the next if none is running, and
+ * stays in effect until reset(). A sink stopping only ends its own replay.
+ * 
+ */
+public class FeedReplayer<T>
+{
+	public static final String EXTENSION_JSON = ".json";
+	public static final String EXTENSION_GZIP = ".json.gz";
+	
+	private ExecutorService executor;
+	private int concurrency;
+	private DataFactory<T> dataFactory;
+	private JSONParserFactory<T> parserFactory;
+	
+	private InflaterPool inflaterPool;
+	
+	private volatile boolean cancelled;
+	
+	/**
+	 * Construct replayer.
+	 * 
+	 * @param executor
+	 *            Runs the files.
+	 * @param concurrency
+	 *            Most files in progress at once.
+	 * @param dataFactory
+	 * @param parserFactory
+	 */
+	public FeedReplayer(ExecutorService executor, int concurrency, DataFactory<T> dataFactory, JSONParserFactory<T> parserFactory)
+	{
+		this.executor = executor;
+		this.concurrency = Math.max(1, concurrency);
+		this.dataFactory = dataFactory;
+		this.parserFactory = parserFactory;
+		
+		inflaterPool = new InflaterPool(this.concurrency);
+	}
+	
+	/**
+	 * Replay the JSON files in a directory, plain or gzipped.
+	 * 
+	 * @param directory
+	 * @param sink
+	 * 
+	 * @return The report.
+	 * 
+	 * @throws IOException
+	 *             If the directory cannot be listed.
+	 */
+	public ReplayReport replay(File directory, ReplaySink<T> sink) throws IOException
+	{
+		File[] files = directory.listFiles(new FileFilter()
+		{
+			@Override
+			public boolean accept(File file)
+			{
+				return file.isFile() && (file.getName().endsWith(EXTENSION_JSON) || file.getName().endsWith(EXTENSION_GZIP));
+			}
+		});
+		
+		if (files == null)
+		{
+			throw new IOException("Cannot list " + directory);
+		}
+		
+		Arrays.sort(files);
+		
+		return replay(Arrays.asList(files), sink);
+	}
+	
+	/**
+	 * Replay files.
+	 * 
+	 * @param files
+	 * @param sink
+	 * 
+	 * @return The report, once every file has finished.
+	 */
+	public ReplayReport replay(List<File> files, ReplaySink<T> sink)
+	{
+		long start = System.currentTimeMillis();
+		
+		Semaphore permits = new Semaphore(concurrency);
+		
+		Totals totals = new Totals();
+		
+		List<File> pending = new ArrayList<File>(files);
+		
+		try
+		{
+			for (File file : pending)
+			{
+				permits.acquire();
+				
+				if (cancelled || totals.stopped)
+				{
+					permits.release();
+					
+					break;
+				}
+				
+				executor.execute(new Replay(file, sink, permits, totals));
+			}
+			
+			// Wait for the files in progress.
+			permits.acquire(concurrency);
+			permits.release(concurrency);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			
+			totals.stopped = true;
+		}
+		
+		return new ReplayReport(totals.files.get(), totals.failed.get(), totals.records.get(), totals.bytes.get(), System.currentTimeMillis() - start, cancelled || totals.stopped);
+	}
+	
+	/**
+	 * Stop the replay, files in progress finish their current record. Later
+	 * replays are cancelled until reset().
+	 * 
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	/**
+	 * Clear a cancel.
+	 * 
+	 */
+	public void reset()
+	{
+		cancelled = false;
+	}
+	
+	/**
+	 * Running totals.
+	 * 
+	 */
+	private static class Totals
+	{
+		private AtomicInteger files = new AtomicInteger();
+		private AtomicInteger failed = new AtomicInteger();
+		private AtomicLong records = new AtomicLong();
+		private AtomicLong bytes = new AtomicLong();
+		
+		// Sink stopped or interrupted, ends this replay only.
+		private volatile boolean stopped;
+	}
+	
+	/**
+	 * Replays one file.
+	 * 
+	 */
+	private class Replay implements Runnable, RecordSink<T>
+	{
+		private File file;
+		private ReplaySink<T> sink;
+		private Semaphore permits;
+		private Totals totals;
+		
+		private PublicationTimeParser<T> pullParser;
+		private long records;
+		private Exception error;
+		
+		public Replay(File file, ReplaySink<T> sink, Semaphore permits, Totals totals)
+		{
+			this.file = file;
+			this.sink = sink;
+			this.permits = permits;
+			this.totals = totals;
+		}
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				pullParser = new PublicationTimeParser<T>(parserFactory.createParser());
+				
+				MappedInputStream stream = new MappedInputStream(new FileInputStream(file).getChannel());
+				
+				int state;
+				
+				try
+				{
+					StreamParserImpl<T> streamParser = new StreamParserImpl<T>();
+					
+					streamParser.setInflaterPool(inflaterPool);
+					
+					state = streamParser.fetch(stream, this, dataFactory, pullParser);
+				}
+				finally
+				{
+					stream.close();
+				}
+				
+				totals.records.addAndGet(records);
+				
+				if (state == StreamParser.ERROR)
+				{
+					fail(error);
+				}
+				else
+				{
+					totals.bytes.addAndGet(stream.getCount());
+					
+					if (state == StreamParser.DONE)
+					{
+						totals.files.incrementAndGet();
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				fail(e);
+			}
+			catch (RuntimeException e)
+			{
+				fail(e);
+			}
+			finally
+			{
+				permits.release();
+			}
+		}
+		
+		@Override
+		public boolean accept(T record)
+		{
+			records++;
+			
+			if (cancelled || totals.stopped)
+			{
+				return false;
+			}
+			
+			if (!sink.accept(file, pullParser.getPublicationTime(), record))
+			{
+				totals.stopped = true;
+			}
+			
+			return !totals.stopped;
+		}
+		
+		@Override
+		public void end(int state)
+		{
+			// Totals taken in run().
+		}
+		
+		@Override
+		public void error(Exception e)
+		{
+			error = e;
+		}
+		
+		private void fail(Exception e)
+		{
+			totals.failed.incrementAndGet();
+			
+			sink.error(file, e);
+		}
+	}
+	
+}
@@ -0,0 +1,193 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through memory mapped regions.
+ * 
+ * Bytes are copied straight from the mapping into the caller's array, there
+ * is no read system call or intermediate buffer. Files larger than one
+ * region are mapped a region at a time. Mappings are released when they are
+ * garbage collected.
+ * 
+ */
+public class MappedInputStream extends InputStream
+{
+	public static final long DEFAULT_REGION_SIZE = 256L * 1024 * 1024;
+	
+	private FileChannel channel;
+	private long size;
+	private long regionSize;
+	
+	private MappedByteBuffer buffer;
+	private long position;
+	
+	private long count;
+	
+	/**
+	 * Construct stream.
+	 * 
+	 * @param channel
+	 *            Open for reading, closed with the stream.
+	 * 
+	 * @throws IOException
+	 */
+	public MappedInputStream(FileChannel channel) throws IOException
+	{
+		this(channel, DEFAULT_REGION_SIZE);
+	}
+	
+	/**
+	 * Construct stream.
+	 * 
+	 * @param channel
+	 *            Open for reading, closed with the stream.
+	 * @param regionSize
+	 *            Most bytes mapped at once.
+	 * 
+	 * @throws IOException
+	 */
+	public MappedInputStream(FileChannel channel, long regionSize) throws IOException
+	{
+		this.channel = channel;
+		this.regionSize = Math.min(regionSize, Integer.MAX_VALUE);
+		
+		size = channel.size();
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		if (!next())
+		{
+			return -1;
+		}
+		
+		count++;
+		
+		return buffer.get() & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] data, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		
+		if (!next())
+		{
+			return -1;
+		}
+		
+		int read = Math.min(length, buffer.remaining());
+		
+		buffer.get(data, offset, read);
+		
+		count += read;
+		
+		return read;
+	}
+	
+	@Override
+	public long skip(long count) throws IOException
+	{
+		long skipped = 0;
+		
+		while (skipped < count && next())
+		{
+			int step = (int) Math.min(count - skipped, buffer.remaining());
+			
+			buffer.position(buffer.position() + step);
+			
+			skipped += step;
+		}
+		
+		count += skipped;
+		
+		return skipped;
+	}
+	
+	@Override
+	public int available()
+	{
+		return buffer != null ? buffer.remaining() : 0;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		buffer = null;
+		
+		channel.close();
+	}
+	
+	/**
+	 * File size.
+	 * 
+	 * @return Bytes.
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+	
+	/**
+	 * Bytes read or skipped so far.
+	 * 
+	 * @return The count.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Map the next region if the current one is used up.
+	 * 
+	 * @return False at end of file.
+	 * 
+	 * @throws IOException
+	 */
+	private boolean next() throws IOException
+	{
+		if (buffer == null || !buffer.hasRemaining())
+		{
+			if (position >= size)
+			{
+				return false;
+			}
+			
+			long length = Math.min(regionSize, size - position);
+			
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			
+			position += length;
+		}
+		
+		return true;
+	}
+	
+}
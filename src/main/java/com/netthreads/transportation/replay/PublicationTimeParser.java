@@ -0,0 +1,125 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.replay;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonStreamContext;
+import org.codehaus.jackson.JsonToken;
+
+import com.netthreads.transportation.parser.IdentifiedJSONParser;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.SkippingJSONParser;
+
+/**
+ * Passes everything to a parser, noting payloadPublication/publicationTime
+ * on the way. The time precedes the situations in the feeds.
+ * 
+ */
+class PublicationTimeParser<T> implements SkippingJSONParser<T>, IdentifiedJSONParser<T>
+{
+	public static final String TAG_PAYLOAD_PUBLICATION = "payloadPublication";
+	public static final String TAG_PUBLICATION_TIME = "publicationTime";
+	
+	private JSONParser<T> parser;
+	
+	private String publicationTime = "";
+	
+	public PublicationTimeParser(JSONParser<T> parser)
+	{
+		this.parser = parser;
+	}
+	
+	public String getPublicationTime()
+	{
+		return publicationTime;
+	}
+	
+	@Override
+	public boolean processStartObject(String tag, JsonParser jsonParser)
+	{
+		return parser.processStartObject(tag, jsonParser);
+	}
+	
+	@Override
+	public boolean isSkippable(String tag)
+	{
+		return parser instanceof SkippingJSONParser && ((SkippingJSONParser<T>) parser).isSkippable(tag);
+	}
+	
+	@Override
+	public boolean processEndObject(String tag, JsonParser jsonParser)
+	{
+		return parser.processEndObject(tag, jsonParser);
+	}
+	
+	@Override
+	public void processObject(JsonParser jsonParser) throws JsonParseException, IOException
+	{
+		if (jsonParser.getCurrentToken() == JsonToken.VALUE_STRING && TAG_PUBLICATION_TIME.equals(jsonParser.getCurrentName()))
+		{
+			JsonStreamContext parent = jsonParser.getParsingContext().getParent();
+			
+			if (parent != null && TAG_PAYLOAD_PUBLICATION.equals(parent.getCurrentName()))
+			{
+				publicationTime = jsonParser.getText();
+			}
+		}
+		
+		parser.processObject(jsonParser);
+	}
+	
+	@Override
+	public void populateRecord(T data)
+	{
+		parser.populateRecord(data);
+	}
+	
+	@Override
+	public String getRecordId()
+	{
+		return parser instanceof IdentifiedJSONParser ? ((IdentifiedJSONParser<T>) parser).getRecordId() : null;
+	}
+	
+	@Override
+	public void discardRecord()
+	{
+		if (parser instanceof IdentifiedJSONParser)
+		{
+			((IdentifiedJSONParser<T>) parser).discardRecord();
+		}
+	}
+	
+	@Override
+	public void reset()
+	{
+		publicationTime = "";
+		
+		parser.reset();
+	}
+	
+	@Override
+	public boolean inTarget()
+	{
+		return parser.inTarget();
+	}
+	
+}
@@ -0,0 +1,106 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.replay;
+
+/**
+ * Totals for one replay.
+ * 
+ */
+public class ReplayReport
+{
+	private int files;
+	private int failed;
+	private long records;
+	private long bytes;
+	private long elapsed;
+	private boolean cancelled;
+	
+	public ReplayReport(int files, int failed, long records, long bytes, long elapsed, boolean cancelled)
+	{
+		this.files = files;
+		this.failed = failed;
+		this.records = records;
+		this.bytes = bytes;
+		this.elapsed = elapsed;
+		this.cancelled = cancelled;
+	}
+	
+	/**
+	 * Files parsed completely.
+	 * 
+	 * @return The count.
+	 */
+	public int getFiles()
+	{
+		return files;
+	}
+	
+	/**
+	 * Files which could not be read or parsed.
+	 * 
+	 * @return The count.
+	 */
+	public int getFailed()
+	{
+		return failed;
+	}
+	
+	public long getRecords()
+	{
+		return records;
+	}
+	
+	public long getBytes()
+	{
+		return bytes;
+	}
+	
+	/**
+	 * Wall clock time.
+	 * 
+	 * @return Milliseconds.
+	 */
+	public long getElapsed()
+	{
+		return elapsed;
+	}
+	
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+	
+	public double getRecordsPerSecond()
+	{
+		return elapsed > 0 ? records * 1000.0 / elapsed : 0;
+	}
+	
+	public double getMegabytesPerSecond()
+	{
+		return elapsed > 0 ? bytes * 1000.0 / elapsed / (1024 * 1024) : 0;
+	}
+	
+	@Override
+	public String toString()
+	{
+		String text = files + " files, " + failed + " failed, " + records + " records, " + bytes + " bytes in " + elapsed + "ms, " + Math.round(getRecordsPerSecond()) + " records/s, " + Math.round(getMegabytesPerSecond()) + " MB/s" + (cancelled ? ", cancelled" : "");
+		
+		return text;
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.replay;
+
+import java.io.File;
+
+/**
+ * Receives replayed records. Files are replayed in parallel so the sink is
+ * called from several threads at once, records from one file arrive in
+ * document order.
+ * 
+ */
+public interface ReplaySink<T>
+{
+	/**
+	 * Accept a record.
+	 * 
+	 * @param file
+	 *            File the record came from.
+	 * @param publicationTime
+	 *            Feed publication time, empty if the file has none.
+	 * @param record
+	 * 
+	 * @return False to stop the replay.
+	 */
+	public boolean accept(File file, String publicationTime, T record);
+	
+	/**
+	 * A file could not be read or parsed.
+	 * 
+	 * @param file
+	 * @param e
+	 */
+	public void error(File file, Exception e);
+}
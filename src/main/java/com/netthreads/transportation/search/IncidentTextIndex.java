@@ -0,0 +1,597 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.netthreads.transportation.change.ChangeListener;
+import com.netthreads.transportation.data.TrafficData;
+
+/**
+ * Inverted index of incidents by link name, local link name and town name.
+ * 
+ * Values are matched whole or by token, a token being a run of letters and
+ * digits, so "M8 J15 - J16" gives m8, j15 and j16. Matching ignores case.
+ * Searches return sets of incident ids.
+ * 
+ * The index follows a ChangeFeed as its listener. Changes collect on the
+ * writer side and become visible when publish() is called, normally once
+ * each poll has been fetched. Publishing builds a new immutable snapshot,
+ * reusing the id sets of every term the poll did not touch, and swaps it in
+ * with one volatile write. Searches read the current snapshot and never
+ * lock.
+ * 
+ */
+public class IncidentTextIndex implements ChangeListener<TrafficData>
+{
+	/**
+	 * Indexed fields.
+	 * 
+	 */
+	public enum Field
+	{
+		LINK_NAME
+		{
+			@Override
+			String get(TrafficData record)
+			{
+				return record.getLinkName();
+			}
+		},
+		LOCAL_LINK_NAME
+		{
+			@Override
+			String get(TrafficData record)
+			{
+				return record.getLocalLinkName();
+			}
+		},
+		TOWN_NAME
+		{
+			@Override
+			String get(TrafficData record)
+			{
+				return record.getTownName();
+			}
+		};
+		
+		abstract String get(TrafficData record);
+	}
+	
+	private static final Field[] FIELDS = Field.values();
+	
+	private static final Set<String> NONE = Collections.emptySet();
+	
+	private FieldState[] states;
+	
+	private volatile FieldSnapshot[] snapshot;
+	
+	/**
+	 * Writer side of one field.
+	 * 
+	 */
+	private static class FieldState
+	{
+		private Map<String, Set<String>> tokens = new HashMap<String, Set<String>>();
+		private Map<String, Set<String>> values = new HashMap<String, Set<String>>();
+		
+		private Set<String> dirtyTokens = new HashSet<String>();
+		private Set<String> dirtyValues = new HashSet<String>();
+	}
+	
+	/**
+	 * Published view of one field, never changed once built.
+	 * 
+	 */
+	private static class FieldSnapshot
+	{
+		/**
+		 * Sorted for prefix search.
+		 */
+		private String[] tokens;
+		private List<Set<String>> postings;
+		
+		private Map<String, Set<String>> values;
+		
+		public FieldSnapshot(String[] tokens, List<Set<String>> postings, Map<String, Set<String>> values)
+		{
+			this.tokens = tokens;
+			this.postings = postings;
+			this.values = values;
+		}
+		
+		public Set<String> token(String token)
+		{
+			int index = Arrays.binarySearch(tokens, token);
+			
+			return index >= 0 ? postings.get(index) : NONE;
+		}
+	}
+	
+	public IncidentTextIndex()
+	{
+		clear();
+	}
+	
+	// ------------------------------------------------------------------------
+	// Writer
+	// ------------------------------------------------------------------------
+	
+	@Override
+	public synchronized void added(TrafficData record)
+	{
+		index(record, true);
+	}
+	
+	@Override
+	public synchronized void updated(TrafficData previous, TrafficData record)
+	{
+		index(previous, false);
+		index(record, true);
+	}
+	
+	@Override
+	public synchronized void removed(TrafficData previous)
+	{
+		index(previous, false);
+	}
+	
+	/**
+	 * Replace the contents with a set of incidents and publish.
+	 * 
+	 * @param records
+	 */
+	public synchronized void build(Collection<TrafficData> records)
+	{
+		clear();
+		
+		for (TrafficData record : records)
+		{
+			index(record, true);
+		}
+		
+		publish();
+	}
+	
+	/**
+	 * Empty the index, readers see it empty at once.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		states = new FieldState[FIELDS.length];
+		
+		FieldSnapshot[] empty = new FieldSnapshot[FIELDS.length];
+		
+		for (int index = 0; index < FIELDS.length; index++)
+		{
+			states[index] = new FieldState();
+			
+			empty[index] = new FieldSnapshot(new String[0], new ArrayList<Set<String>>(), new HashMap<String, Set<String>>());
+		}
+		
+		snapshot = empty;
+	}
+	
+	/**
+	 * Make the changes since the last publish visible to searches.
+	 * 
+	 */
+	public synchronized void publish()
+	{
+		FieldSnapshot[] current = snapshot;
+		FieldSnapshot[] next = new FieldSnapshot[FIELDS.length];
+		
+		for (int index = 0; index < FIELDS.length; index++)
+		{
+			next[index] = publish(states[index], current[index]);
+		}
+		
+		snapshot = next;
+	}
+	
+	/**
+	 * Merge the changed terms of a field into its last snapshot.
+	 * 
+	 * @param state
+	 * @param previous
+	 * 
+	 * @return The new snapshot, previous if nothing changed.
+	 */
+	private static FieldSnapshot publish(FieldState state, FieldSnapshot previous)
+	{
+		if (state.dirtyTokens.isEmpty() && state.dirtyValues.isEmpty())
+		{
+			return previous;
+		}
+		
+		String[] dirty = state.dirtyTokens.toArray(new String[state.dirtyTokens.size()]);
+		
+		Arrays.sort(dirty);
+		
+		List<String> tokens = new ArrayList<String>(previous.tokens.length + dirty.length);
+		List<Set<String>> postings = new ArrayList<Set<String>>(previous.tokens.length + dirty.length);
+		
+		int old = 0;
+		int changed = 0;
+		
+		while (old < previous.tokens.length || changed < dirty.length)
+		{
+			int compare;
+			
+			if (old == previous.tokens.length)
+			{
+				compare = 1;
+			}
+			else if (changed == dirty.length)
+			{
+				compare = -1;
+			}
+			else
+			{
+				compare = previous.tokens[old].compareTo(dirty[changed]);
+			}
+			
+			if (compare < 0)
+			{
+				// Untouched, share the published set.
+				tokens.add(previous.tokens[old]);
+				postings.add(previous.postings.get(old));
+				
+				old++;
+			}
+			else
+			{
+				String token = dirty[changed];
+				
+				Set<String> ids = state.tokens.get(token);
+				
+				if (ids != null)
+				{
+					tokens.add(token);
+					postings.add(compare == 0 ? freeze(ids, previous.postings.get(old)) : freeze(ids, NONE));
+				}
+				
+				if (compare == 0)
+				{
+					old++;
+				}
+				
+				changed++;
+			}
+		}
+		
+		Map<String, Set<String>> values = new HashMap<String, Set<String>>(previous.values);
+		
+		for (String value : state.dirtyValues)
+		{
+			Set<String> ids = state.values.get(value);
+			
+			if (ids == null)
+			{
+				values.remove(value);
+			}
+			else
+			{
+				Set<String> published = values.get(value);
+				
+				values.put(value, freeze(ids, published != null ? published : NONE));
+			}
+		}
+		
+		state.dirtyTokens.clear();
+		state.dirtyValues.clear();
+		
+		return new FieldSnapshot(tokens.toArray(new String[tokens.size()]), postings, values);
+	}
+	
+	/**
+	 * Read only copy of a term's ids.
+	 * 
+	 * @param ids
+	 * @param published
+	 *            The ids last published for the term.
+	 * 
+	 * @return The published set if the ids are the same, else a copy.
+	 */
+	private static Set<String> freeze(Set<String> ids, Set<String> published)
+	{
+		if (published.equals(ids))
+		{
+			return published;
+		}
+		
+		return Collections.unmodifiableSet(new HashSet<String>(ids));
+	}
+	
+	private void index(TrafficData record, boolean add)
+	{
+		String id = record.getId();
+		
+		if (id == null)
+		{
+			return;
+		}
+		
+		for (Field field : FIELDS)
+		{
+			String value = normalise(field.get(record));
+			
+			if (value.length() == 0 || value.equals(TrafficData.TEXT_UNKNOWN))
+			{
+				continue;
+			}
+			
+			FieldState state = states[field.ordinal()];
+			
+			if (update(state.values, value, id, add))
+			{
+				state.dirtyValues.add(value);
+			}
+			
+			for (String token : tokenise(value))
+			{
+				if (update(state.tokens, token, id, add))
+				{
+					state.dirtyTokens.add(token);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add or remove an id under a term.
+	 * 
+	 * @return True if the term changed.
+	 */
+	private static boolean update(Map<String, Set<String>> terms, String term, String id, boolean add)
+	{
+		Set<String> ids = terms.get(term);
+		
+		if (add)
+		{
+			if (ids == null)
+			{
+				ids = new HashSet<String>();
+				
+				terms.put(term, ids);
+			}
+			
+			return ids.add(id);
+		}
+		
+		if (ids == null || !ids.remove(id))
+		{
+			return false;
+		}
+		
+		if (ids.isEmpty())
+		{
+			terms.remove(term);
+		}
+		
+		return true;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Search
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Incidents with a field equal to a value, ignoring case and spacing.
+	 * 
+	 * @param field
+	 * @param value
+	 * 
+	 * @return Ids, read only.
+	 */
+	public Set<String> find(Field field, String value)
+	{
+		Set<String> ids = snapshot[field.ordinal()].values.get(normalise(value));
+		
+		return ids != null ? ids : NONE;
+	}
+	
+	/**
+	 * Incidents with a token in a field.
+	 * 
+	 * @param field
+	 *            The field, null for any.
+	 * @param token
+	 *            For example "M8".
+	 * 
+	 * @return Ids, read only.
+	 */
+	public Set<String> token(Field field, String token)
+	{
+		FieldSnapshot[] current = snapshot;
+		
+		String term = normalise(token);
+		
+		if (field != null)
+		{
+			return current[field.ordinal()].token(term);
+		}
+		
+		Set<String> result = NONE;
+		
+		for (FieldSnapshot fieldSnapshot : current)
+		{
+			result = union(result, fieldSnapshot.token(term));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Incidents with a token in a field starting with a prefix, "A8" finds
+	 * the A80 and A82.
+	 * 
+	 * @param field
+	 *            The field, null for any.
+	 * @param prefix
+	 * 
+	 * @return Ids, read only.
+	 */
+	public Set<String> prefix(Field field, String prefix)
+	{
+		FieldSnapshot[] current = snapshot;
+		
+		String term = normalise(prefix);
+		
+		Set<String> result = NONE;
+		
+		for (int index = 0; index < current.length; index++)
+		{
+			if (field != null && field.ordinal() != index)
+			{
+				continue;
+			}
+			
+			String[] tokens = current[index].tokens;
+			
+			int position = Arrays.binarySearch(tokens, term);
+			
+			if (position < 0)
+			{
+				position = -position - 1;
+			}
+			
+			while (position < tokens.length && tokens[position].startsWith(term))
+			{
+				result = union(result, current[index].postings.get(position));
+				
+				position++;
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Union that avoids copying while only one set is non empty.
+	 * 
+	 */
+	private static Set<String> union(Set<String> result, Set<String> ids)
+	{
+		if (ids.isEmpty() || result == ids)
+		{
+			return result;
+		}
+		
+		if (result.isEmpty())
+		{
+			return ids;
+		}
+		
+		Set<String> merged = new HashSet<String>(result);
+		
+		merged.addAll(ids);
+		
+		return Collections.unmodifiableSet(merged);
+	}
+	
+	// ------------------------------------------------------------------------
+	// Text
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Lower case with single spaces.
+	 * 
+	 * @param text
+	 * 
+	 * @return The text, empty for null.
+	 */
+	static String normalise(String text)
+	{
+		if (text == null)
+		{
+			return "";
+		}
+		
+		StringBuilder builder = new StringBuilder(text.length());
+		
+		boolean space = false;
+		
+		for (int index = 0; index < text.length(); index++)
+		{
+			char c = text.charAt(index);
+			
+			if (Character.isWhitespace(c))
+			{
+				space = builder.length() > 0;
+			}
+			else
+			{
+				if (space)
+				{
+					builder.append(' ');
+					
+					space = false;
+				}
+				
+				builder.append(c);
+			}
+		}
+		
+		return builder.toString().toLowerCase(Locale.UK);
+	}
+	
+	/**
+	 * Split normalised text into runs of letters and digits.
+	 * 
+	 * @param text
+	 * 
+	 * @return The tokens.
+	 */
+	static List<String> tokenise(String text)
+	{
+		List<String> tokens = new ArrayList<String>(4);
+		
+		int start = -1;
+		
+		for (int index = 0; index <= text.length(); index++)
+		{
+			boolean part = index < text.length() && Character.isLetterOrDigit(text.charAt(index));
+			
+			if (part && start < 0)
+			{
+				start = index;
+			}
+			else if (!part && start >= 0)
+			{
+				tokens.add(text.substring(start, index));
+				
+				start = -1;
+			}
+		}
+		
+		return tokens;
+	}
+	
+}
@@ -0,0 +1,322 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.snapshot;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+
+/**
+ * Column oriented car park feed. Each field is held in its own primitive
+ * array, row i of every column belongs to the same car park.
+ * 
+ * Car park identity and status repeat across polls so they are dictionary
+ * encoded, the row holds an index into the dictionary.
+ * 
+ * Instances are immutable once built, see CarParkSnapshotBuilder.
+ * 
+ */
+public class CarParkSnapshot
+{
+	public static final int NO_VALUE = CarParkData.NO_VALUE;
+	
+	/**
+	 * Returned when a status is not in the dictionary.
+	 */
+	public static final byte NO_STATUS = -1;
+	
+	private int size;
+	
+	private String[] ids;
+	private int[] occupied;
+	private int[] capacity;
+	private int[] occupancy;
+	private double[] latitude;
+	private double[] longitude;
+	private byte[] status;
+	private int[] identity;
+	
+	private String[] statusDictionary;
+	private String[] identityDictionary;
+	
+	/**
+	 * Construct from columns.
+	 * 
+	 */
+	CarParkSnapshot(int size, String[] ids, int[] occupied, int[] capacity, int[] occupancy, double[] latitude, double[] longitude, byte[] status, int[] identity, String[] statusDictionary, String[] identityDictionary)
+	{
+		this.size = size;
+		this.ids = ids;
+		this.occupied = occupied;
+		this.capacity = capacity;
+		this.occupancy = occupancy;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.status = status;
+		this.identity = identity;
+		this.statusDictionary = statusDictionary;
+		this.identityDictionary = identityDictionary;
+	}
+	
+	/**
+	 * Number of car parks.
+	 * 
+	 * @return The row count.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Aggregates
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Total free spaces over all car parks which report both counts.
+	 * 
+	 * @return The free space count.
+	 */
+	public long totalFreeSpaces()
+	{
+		long total = 0;
+		
+		for (int i = 0; i < size; i++)
+		{
+			int used = occupied[i];
+			int available = capacity[i];
+			
+			if (used != NO_VALUE && available != NO_VALUE)
+			{
+				total += available - used;
+			}
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Count car parks with status.
+	 * 
+	 * @param code
+	 *            Status code, see getStatusCode().
+	 * 
+	 * @return The count.
+	 */
+	public int countByStatus(byte code)
+	{
+		int count = 0;
+		
+		for (int i = 0; i < size; i++)
+		{
+			if (status[i] == code)
+			{
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Count car parks with status.
+	 * 
+	 * @param text
+	 *            Status as it appears in the feed, e.g. "enoughSpacesAvailable".
+	 * 
+	 * @return The count.
+	 */
+	public int countByStatus(String text)
+	{
+		byte code = getStatusCode(text);
+		
+		return code == NO_STATUS ? 0 : countByStatus(code);
+	}
+	
+	/**
+	 * Count car parks with status.
+	 * 
+	 * @param status
+	 * 
+	 * @return The count.
+	 */
+	public int countByStatus(CarParkStatus status)
+	{
+		return countByStatus(status.getText());
+	}
+	
+	/**
+	 * Count car parks by status.
+	 * 
+	 * @return Counts indexed by status code.
+	 */
+	public int[] countByStatus()
+	{
+		int[] counts = new int[statusDictionary.length];
+		
+		for (int i = 0; i < size; i++)
+		{
+			counts[status[i]]++;
+		}
+		
+		return counts;
+	}
+	
+	/**
+	 * Find car parks with at least a number of free spaces.
+	 * 
+	 * @param minFreeSpaces
+	 * @param rows
+	 *            Receives matching row numbers, must be at least size() long.
+	 * 
+	 * @return Number of rows written.
+	 */
+	public int filterByMinFreeSpaces(int minFreeSpaces, int[] rows)
+	{
+		int count = 0;
+		
+		for (int i = 0; i < size; i++)
+		{
+			int used = occupied[i];
+			int available = capacity[i];
+			
+			if (used != NO_VALUE && available != NO_VALUE && available - used >= minFreeSpaces)
+			{
+				rows[count++] = i;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Find car parks with at least a number of free spaces.
+	 * 
+	 * @param minFreeSpaces
+	 * 
+	 * @return Matching row numbers.
+	 */
+	public int[] filterByMinFreeSpaces(int minFreeSpaces)
+	{
+		int[] rows = new int[size];
+		
+		int count = filterByMinFreeSpaces(minFreeSpaces, rows);
+		
+		int[] result = new int[count];
+		System.arraycopy(rows, 0, result, 0, count);
+		
+		return result;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Row access
+	// ------------------------------------------------------------------------
+	
+	public String getId(int row)
+	{
+		return ids[row];
+	}
+	
+	public int getOccupiedSpaces(int row)
+	{
+		return occupied[row];
+	}
+	
+	public int getTotalCapacity(int row)
+	{
+		return capacity[row];
+	}
+	
+	public int getFreeSpaces(int row)
+	{
+		int used = occupied[row];
+		int available = capacity[row];
+		
+		return used == NO_VALUE || available == NO_VALUE ? NO_VALUE : available - used;
+	}
+	
+	public int getCarParkOccupancy(int row)
+	{
+		return occupancy[row];
+	}
+	
+	public double getLatitude(int row)
+	{
+		return latitude[row];
+	}
+	
+	public double getLongitude(int row)
+	{
+		return longitude[row];
+	}
+	
+	public byte getStatus(int row)
+	{
+		return status[row];
+	}
+	
+	public String getCarParkStatus(int row)
+	{
+		return statusDictionary[status[row]];
+	}
+	
+	public int getIdentity(int row)
+	{
+		return identity[row];
+	}
+	
+	public String getCarParkIdentity(int row)
+	{
+		return identityDictionary[identity[row]];
+	}
+	
+	// ------------------------------------------------------------------------
+	// Dictionaries
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * Look up status code.
+	 * 
+	 * @param text
+	 * 
+	 * @return The code or NO_STATUS if no car park has this status.
+	 */
+	public byte getStatusCode(String text)
+	{
+		for (int i = 0; i < statusDictionary.length; i++)
+		{
+			if (statusDictionary[i].equals(text))
+			{
+				return (byte) i;
+			}
+		}
+		
+		return NO_STATUS;
+	}
+	
+	public String[] getStatusDictionary()
+	{
+		return statusDictionary.clone();
+	}
+	
+	public String[] getIdentityDictionary()
+	{
+		return identityDictionary.clone();
+	}
+	
+}
@@ -0,0 +1,355 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.snapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+
+/**
+ * Builds a CarParkSnapshot straight from the stream parser.
+ * 
+ * The builder acts as both data factory and sink. The factory hands out the
+ * same scratch record every time and the sink copies it into the columns, so
+ * a whole feed is parsed with a single CarParkData allocation.
+ * 
+ * <pre>
+ * CarParkSnapshotBuilder builder = new CarParkSnapshotBuilder();
+ * streamParser.fetch(stream, builder, builder, new CarParkDataParser());
+ * CarParkSnapshot snapshot = builder.build();
+ * </pre>
+ * 
+ * A snapshot is only built from a fetch which finished DONE, a cancelled or
+ * failed fetch would give a partial snapshot which looks complete.
+ * 
+ */
+public class CarParkSnapshotBuilder implements DataFactory<CarParkData>, RecordSink<CarParkData>
+{
+	private static final int DEFAULT_CAPACITY = 64;
+	
+	/**
+	 * Status codes are bytes.
+	 */
+	private static final int MAX_STATUS_CODES = Byte.MAX_VALUE + 1;
+	
+	private CarParkData scratch = new CarParkData();
+	
+	// Outcome of the fetch feeding the builder, WAITING if records were added
+	// directly.
+	private int state = StreamParser.WAITING;
+	private Exception error;
+	
+	private int size;
+	
+	private String[] ids;
+	private int[] occupied;
+	private int[] capacity;
+	private int[] occupancy;
+	private double[] latitude;
+	private double[] longitude;
+	private byte[] status;
+	private int[] identity;
+	
+	private List<String> statusDictionary = new ArrayList<String>();
+	private Map<String, Integer> statusCodes = new HashMap<String, Integer>();
+	private List<String> identityDictionary = new ArrayList<String>();
+	private Map<String, Integer> identityCodes = new HashMap<String, Integer>();
+	
+	/**
+	 * Construct builder.
+	 * 
+	 */
+	public CarParkSnapshotBuilder()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Construct builder.
+	 * 
+	 * @param capacity
+	 *            Expected number of car parks.
+	 */
+	public CarParkSnapshotBuilder(int capacity)
+	{
+		allocate(Math.max(1, capacity));
+	}
+	
+	@Override
+	public CarParkData createRecord()
+	{
+		return scratch;
+	}
+	
+	@Override
+	public boolean accept(CarParkData record)
+	{
+		if (state == StreamParser.ERROR)
+		{
+			return false;
+		}
+		
+		state = StreamParser.BUSY;
+		
+		if (!append(record))
+		{
+			error(new IllegalStateException("Too many distinct values"));
+			
+			return false;
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public void end(int state)
+	{
+		if (this.state != StreamParser.ERROR)
+		{
+			this.state = state;
+		}
+	}
+	
+	@Override
+	public void error(Exception e)
+	{
+		state = StreamParser.ERROR;
+		
+		if (error == null)
+		{
+			error = e;
+		}
+	}
+	
+	/**
+	 * Append car park.
+	 * 
+	 * @param record
+	 * 
+	 * @throws IllegalStateException
+	 *             If the status or identity dictionary is full.
+	 */
+	public void add(CarParkData record)
+	{
+		if (!append(record))
+		{
+			throw new IllegalStateException("Too many distinct values");
+		}
+	}
+	
+	/**
+	 * State of the fetch feeding the builder.
+	 * 
+	 * @return The state, WAITING if records were added directly.
+	 */
+	public int getState()
+	{
+		return state;
+	}
+	
+	/**
+	 * First error reported by the fetch.
+	 * 
+	 * @return The error or null.
+	 */
+	public Exception getError()
+	{
+		return error;
+	}
+	
+	/**
+	 * Append car park unless a dictionary is full.
+	 * 
+	 * @param record
+	 * 
+	 * @return False if the record could not be added.
+	 */
+	private boolean append(CarParkData record)
+	{
+		int statusCode = encode(record.getCarParkStatus(), statusDictionary, statusCodes, MAX_STATUS_CODES);
+		int identityCode = encode(record.getCarParkIdentity(), identityDictionary, identityCodes, Integer.MAX_VALUE);
+		
+		if (statusCode < 0 || identityCode < 0)
+		{
+			return false;
+		}
+		
+		if (size == ids.length)
+		{
+			grow();
+		}
+		
+		ids[size] = record.getId();
+		occupied[size] = record.getOccupiedSpacesInt();
+		capacity[size] = record.getTotalCapacityInt();
+		occupancy[size] = record.getCarParkOccupancyInt();
+		latitude[size] = record.getLatitudeDouble();
+		longitude[size] = record.getLongitudeDouble();
+		status[size] = (byte) statusCode;
+		identity[size] = identityCode;
+		
+		size++;
+		
+		return true;
+	}
+	
+	/**
+	 * Build snapshot. The builder is reset and can be used again.
+	 * 
+	 * @return The snapshot.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the fetch did not finish DONE, the records are dropped.
+	 */
+	public CarParkSnapshot build()
+	{
+		if (state != StreamParser.DONE && state != StreamParser.WAITING)
+		{
+			IllegalStateException e = new IllegalStateException("Fetch did not complete, state " + state);
+			
+			if (error != null)
+			{
+				e.initCause(error);
+			}
+			
+			reset();
+			
+			throw e;
+		}
+		
+		CarParkSnapshot snapshot = new CarParkSnapshot(size, ids, occupied, capacity, occupancy, latitude, longitude, status, identity, statusDictionary.toArray(new String[statusDictionary.size()]), identityDictionary.toArray(new String[identityDictionary.size()]));
+		
+		reset();
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Start again with fresh columns.
+	 * 
+	 */
+	private void reset()
+	{
+		allocate(Math.max(1, size));
+		
+		statusDictionary.clear();
+		statusCodes.clear();
+		identityDictionary.clear();
+		identityCodes.clear();
+		
+		state = StreamParser.WAITING;
+		error = null;
+	}
+	
+	/**
+	 * Dictionary encode value.
+	 * 
+	 * @return The code or -1 if the dictionary is full.
+	 */
+	private int encode(String value, List<String> dictionary, Map<String, Integer> codes, int limit)
+	{
+		if (value == null)
+		{
+			value = "";
+		}
+		
+		Integer code = codes.get(value);
+		
+		if (code == null)
+		{
+			if (dictionary.size() == limit)
+			{
+				return -1;
+			}
+			
+			code = dictionary.size();
+			
+			dictionary.add(value);
+			codes.put(value, code);
+		}
+		
+		return code;
+	}
+	
+	/**
+	 * Fresh columns.
+	 * 
+	 */
+	private void allocate(int length)
+	{
+		size = 0;
+		
+		ids = new String[length];
+		occupied = new int[length];
+		capacity = new int[length];
+		occupancy = new int[length];
+		latitude = new double[length];
+		longitude = new double[length];
+		status = new byte[length];
+		identity = new int[length];
+	}
+	
+	/**
+	 * Double column length.
+	 * 
+	 */
+	private void grow()
+	{
+		int length = ids.length * 2;
+		
+		String[] newIds = new String[length];
+		System.arraycopy(ids, 0, newIds, 0, size);
+		ids = newIds;
+		
+		int[] newOccupied = new int[length];
+		System.arraycopy(occupied, 0, newOccupied, 0, size);
+		occupied = newOccupied;
+		
+		int[] newCapacity = new int[length];
+		System.arraycopy(capacity, 0, newCapacity, 0, size);
+		capacity = newCapacity;
+		
+		int[] newOccupancy = new int[length];
+		System.arraycopy(occupancy, 0, newOccupancy, 0, size);
+		occupancy = newOccupancy;
+		
+		double[] newLatitude = new double[length];
+		System.arraycopy(latitude, 0, newLatitude, 0, size);
+		latitude = newLatitude;
+		
+		double[] newLongitude = new double[length];
+		System.arraycopy(longitude, 0, newLongitude, 0, size);
+		longitude = newLongitude;
+		
+		byte[] newStatus = new byte[length];
+		System.arraycopy(status, 0, newStatus, 0, size);
+		status = newStatus;
+		
+		int[] newIdentity = new int[length];
+		System.arraycopy(identity, 0, newIdentity, 0, size);
+		identity = newIdentity;
+	}
+	
+}
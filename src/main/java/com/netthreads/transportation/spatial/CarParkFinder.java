@@ -0,0 +1,300 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.spatial;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+import com.netthreads.transportation.parser.RecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+
+/**
+ * Finds the closest car parks with space.
+ * 
+ * Fetch each poll of the car park feed with the finder as the sink, or pass
+ * the fetched list to update(). Each car park is replaced in the grid as its
+ * record arrives so free spaces are always those of the latest poll, car
+ * parks missing from a completed poll are dropped. Queries read free spaces
+ * and status from the record fields, nothing is parsed.
+ * 
+ * Queries may run on any thread while a poll is applied, polls must be
+ * applied one at a time. Queries allocate nothing, each thread reuses its
+ * own filter.
+ * 
+ */
+public class CarParkFinder implements RecordSink<CarParkData>
+{
+	private GridIndex<CarParkData> index;
+	
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	
+	// Entries count, for readers on other threads.
+	private volatile int size;
+	
+	private ThreadLocal<SpaceFilter> filters = new ThreadLocal<SpaceFilter>()
+	{
+		@Override
+		protected SpaceFilter initialValue()
+		{
+			return new SpaceFilter();
+		}
+	};
+	
+	private int generation;
+	private boolean polling;
+	
+	private Exception error;
+	
+	/**
+	 * Car park and the poll it was last seen in.
+	 * 
+	 */
+	private static class Entry
+	{
+		private CarParkData record;
+		private int generation;
+		
+		public Entry(CarParkData record, int generation)
+		{
+			this.record = record;
+			this.generation = generation;
+		}
+	}
+	
+	/**
+	 * Accepts car parks with enough free spaces in an allowed status.
+	 * 
+	 */
+	private static class SpaceFilter implements SpatialFilter<CarParkData>
+	{
+		private int minFreeSpaces;
+		private Set<CarParkStatus> statuses;
+		
+		public void set(int minFreeSpaces, Set<CarParkStatus> statuses)
+		{
+			this.minFreeSpaces = minFreeSpaces;
+			this.statuses = statuses;
+		}
+		
+		@Override
+		public boolean accept(CarParkData record)
+		{
+			if (minFreeSpaces > 0)
+			{
+				int free = record.getFreeSpaces();
+				
+				if (free == CarParkData.NO_VALUE || free < minFreeSpaces)
+				{
+					return false;
+				}
+			}
+			
+			return statuses == null || statuses.contains(record.getCarParkStatusCode());
+		}
+	}
+	
+	public CarParkFinder()
+	{
+		this(GridIndex.DEFAULT_CELL_SIZE);
+	}
+	
+	/**
+	 * Construct finder.
+	 * 
+	 * @param cellSize
+	 *            Grid cell size, degrees.
+	 */
+	public CarParkFinder(double cellSize)
+	{
+		index = new GridIndex<CarParkData>(cellSize);
+	}
+	
+	/**
+	 * Closest car parks.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param count
+	 *            Car parks wanted.
+	 * @param minFreeSpaces
+	 *            Least free spaces, zero or less to include car parks not
+	 *            reporting occupancy.
+	 * @param statuses
+	 *            Allowed statuses, null for any.
+	 * @param results
+	 *            Filled nearest first.
+	 * 
+	 * @return Number found.
+	 */
+	public int nearest(double latitude, double longitude, int count, int minFreeSpaces, Set<CarParkStatus> statuses, NearestResults<CarParkData> results)
+	{
+		return nearest(latitude, longitude, count, Double.POSITIVE_INFINITY, minFreeSpaces, statuses, results);
+	}
+	
+	/**
+	 * Closest car parks within a distance.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param count
+	 * @param metres
+	 *            Furthest distance.
+	 * @param minFreeSpaces
+	 * @param statuses
+	 * @param results
+	 * 
+	 * @return Number found.
+	 */
+	public int nearest(double latitude, double longitude, int count, double metres, int minFreeSpaces, Set<CarParkStatus> statuses, NearestResults<CarParkData> results)
+	{
+		SpaceFilter filter = filters.get();
+		
+		filter.set(minFreeSpaces, statuses);
+		
+		try
+		{
+			return index.nearest(latitude, longitude, count, metres, filter, results);
+		}
+		finally
+		{
+			// Do not hold on to the caller's set.
+			filter.set(0, null);
+		}
+	}
+	
+	/**
+	 * Apply a complete poll.
+	 * 
+	 * @param records
+	 */
+	public void update(Collection<CarParkData> records)
+	{
+		for (CarParkData record : records)
+		{
+			accept(record);
+		}
+		
+		end(StreamParser.DONE);
+	}
+	
+	@Override
+	public boolean accept(CarParkData record)
+	{
+		if (!polling)
+		{
+			polling = true;
+			generation++;
+			error = null;
+		}
+		
+		String id = record.getId();
+		
+		if (id == null)
+		{
+			return true;
+		}
+		
+		Entry entry = entries.get(id);
+		
+		if (entry == null)
+		{
+			entries.put(id, new Entry(record, generation));
+			
+			index.add(record);
+			
+			size = entries.size();
+		}
+		else
+		{
+			entry.generation = generation;
+			
+			if (entry.record != record)
+			{
+				index.updated(entry.record, record);
+				
+				entry.record = record;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Poll finished, drop car parks it did not contain if it completed.
+	 * 
+	 * @param state
+	 */
+	@Override
+	public void end(int state)
+	{
+		if (state == StreamParser.DONE)
+		{
+			if (!polling)
+			{
+				// Empty poll.
+				generation++;
+			}
+			
+			Iterator<Entry> iterator = entries.values().iterator();
+			
+			while (iterator.hasNext())
+			{
+				Entry entry = iterator.next();
+				
+				if (entry.generation != generation)
+				{
+					index.remove(entry.record);
+					
+					iterator.remove();
+				}
+			}
+			
+			size = entries.size();
+		}
+		
+		polling = false;
+	}
+	
+	@Override
+	public void error(Exception e)
+	{
+		error = e;
+	}
+	
+	public Exception getError()
+	{
+		return error;
+	}
+	
+	/**
+	 * Car parks held, may be called from any thread.
+	 * 
+	 * @return The count.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+}
@@ -0,0 +1,750 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.spatial;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.netthreads.transportation.change.ChangeListener;
+import com.netthreads.transportation.data.SituationRecord;
+
+/**
+ * Uniform grid of records by point coordinates.
+ * 
+ * Space is cut into square cells of cellSize degrees. Only occupied cells
+ * exist, held in an open addressed table keyed by cell. Each cell keeps the
+ * coordinates of its records in primitive arrays so queries test points
+ * without touching the records. Queries allocate nothing, results go to a
+ * visitor. Nearest neighbour queries search rings of cells outward from
+ * the point until no closer record can remain.
+ * 
+ * The index follows a feed as a ChangeListener, or is built from a list of
+ * records after a fetch. Records without coordinates are not indexed.
+ * Queries may run on any number of threads alongside updates. Longitude
+ * does not wrap at the antimeridian.
+ * 
+ */
+public class GridIndex<T extends SituationRecord> implements ChangeListener<T>
+{
+	/**
+	 * About two kilometres north to south.
+	 */
+	public static final double DEFAULT_CELL_SIZE = 0.02;
+	
+	private static final int INITIAL_CELLS = 64;
+	private static final int INITIAL_CELL_SIZE = 4;
+	
+	private double cellSize;
+	
+	private Cell[] cells;
+	private int cellCount;
+	private int size;
+	
+	// Extent of the cells created.
+	private long minX;
+	private long maxX;
+	private long minY;
+	private long maxY;
+	
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Records in one cell.
+	 * 
+	 */
+	private static class Cell
+	{
+		private long key;
+		private int count;
+		private double[] latitude = new double[INITIAL_CELL_SIZE];
+		private double[] longitude = new double[INITIAL_CELL_SIZE];
+		private double[] cosine = new double[INITIAL_CELL_SIZE];
+		private Object[] records = new Object[INITIAL_CELL_SIZE];
+		
+		public Cell(long key)
+		{
+			this.key = key;
+		}
+	}
+	
+	public GridIndex()
+	{
+		this(DEFAULT_CELL_SIZE);
+	}
+	
+	/**
+	 * Construct index.
+	 * 
+	 * @param cellSize
+	 *            Cell width and height, degrees. Around the size of typical
+	 *            queries works best.
+	 */
+	public GridIndex(double cellSize)
+	{
+		if (!(cellSize > 0))
+		{
+			throw new IllegalArgumentException("Cell size must be positive");
+		}
+		
+		this.cellSize = cellSize;
+		
+		cells = new Cell[INITIAL_CELLS];
+	}
+	
+	/**
+	 * Replace the contents with a set of records.
+	 * 
+	 * @param records
+	 */
+	public void build(Collection<T> records)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			clearCells();
+			
+			for (T record : records)
+			{
+				insert(record);
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add record.
+	 * 
+	 * @param record
+	 * 
+	 * @return False if it has no coordinates.
+	 */
+	public boolean add(T record)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			return insert(record);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Remove record, found by its coordinates and id.
+	 * 
+	 * @param record
+	 * 
+	 * @return True if it was indexed.
+	 */
+	public boolean remove(T record)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			return delete(record);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public void added(T record)
+	{
+		add(record);
+	}
+	
+	@Override
+	public void updated(T previous, T record)
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			delete(previous);
+			insert(record);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public void removed(T previous)
+	{
+		remove(previous);
+	}
+	
+	public void clear()
+	{
+		lock.writeLock().lock();
+		
+		try
+		{
+			clearCells();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Visit records inside a box, edges included.
+	 * 
+	 * @param south
+	 * @param west
+	 * @param north
+	 * @param east
+	 * @param visitor
+	 * 
+	 * @return False if the visitor stopped.
+	 */
+	public boolean search(double south, double west, double north, double east, SpatialVisitor<T> visitor)
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			return scan(south, west, north, east, Double.NaN, Double.NaN, 0, visitor);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Visit records within a great circle distance of a point.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param metres
+	 * @param visitor
+	 * 
+	 * @return False if the visitor stopped.
+	 */
+	public boolean radius(double latitude, double longitude, double metres, SpatialVisitor<T> visitor)
+	{
+		double latitudeSpan = Haversine.latitudeSpan(metres);
+		double longitudeSpan = Haversine.longitudeSpan(latitude, metres);
+		
+		lock.readLock().lock();
+		
+		try
+		{
+			return scan(latitude - latitudeSpan, longitude - longitudeSpan, latitude + latitudeSpan, longitude + longitudeSpan, latitude, longitude, metres, visitor);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Find the records closest to a point.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param count
+	 *            Neighbours wanted, at most the results capacity.
+	 * @param metres
+	 *            Furthest distance, infinite for no limit.
+	 * @param filter
+	 *            Records to consider, null for all.
+	 * @param results
+	 *            Cleared, then filled nearest first.
+	 * 
+	 * @return Number found.
+	 */
+	public int nearest(double latitude, double longitude, int count, double metres, SpatialFilter<T> filter, NearestResults<T> results)
+	{
+		results.clear(count);
+		
+		lock.readLock().lock();
+		
+		try
+		{
+			if (size == 0 || count <= 0)
+			{
+				return 0;
+			}
+			
+			long x = cell(longitude);
+			long y = cell(latitude);
+			
+			double cosine = Math.cos(Math.toRadians(latitude));
+			
+			for (long ring = 0;; ring++)
+			{
+				if (8 * ring > cellCount)
+				{
+					// Rings now hold more cells than exist, finish with the
+					// occupied cells outside the rings searched.
+					for (Cell cell : cells)
+					{
+						if (cell != null && (Math.abs((cell.key >> 32) - x) >= ring || Math.abs((int) cell.key - y) >= ring))
+						{
+							nearest(cell, latitude, longitude, cosine, metres, filter, results);
+						}
+					}
+					
+					break;
+				}
+				
+				if (ring == 0)
+				{
+					nearest(find(key(x, y)), latitude, longitude, cosine, metres, filter, results);
+				}
+				else
+				{
+					for (long column = x - ring; column <= x + ring; column++)
+					{
+						nearest(find(key(column, y - ring)), latitude, longitude, cosine, metres, filter, results);
+						nearest(find(key(column, y + ring)), latitude, longitude, cosine, metres, filter, results);
+					}
+					
+					for (long row = y - ring + 1; row < y + ring; row++)
+					{
+						nearest(find(key(x - ring, row)), latitude, longitude, cosine, metres, filter, results);
+						nearest(find(key(x + ring, row)), latitude, longitude, cosine, metres, filter, results);
+					}
+				}
+				
+				if (x - ring <= minX && x + ring >= maxX && y - ring <= minY && y + ring >= maxY)
+				{
+					break;
+				}
+				
+				double outside = outside(latitude, longitude, x, y, ring);
+				
+				if (outside > metres || (results.isFull() && outside >= results.worst()))
+				{
+					break;
+				}
+			}
+			
+			return results.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	private void nearest(Cell cell, double latitude, double longitude, double cosine, double metres, SpatialFilter<T> filter, NearestResults<T> results)
+	{
+		if (cell == null)
+		{
+			return;
+		}
+		
+		for (int index = 0; index < cell.count; index++)
+		{
+			double limit = Math.min(metres, results.worst());
+			
+			// Latitude alone puts it too far away.
+			if (Math.abs(cell.latitude[index] - latitude) * Haversine.METRES_PER_DEGREE > limit)
+			{
+				continue;
+			}
+			
+			double distance = Haversine.distance(latitude, longitude, cosine, cell.latitude[index], cell.longitude[index], cell.cosine[index]);
+			
+			if (distance <= metres && distance < results.worst() && accept(filter, cell.records[index]))
+			{
+				results.offer(cell.records[index], distance);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private boolean accept(SpatialFilter<T> filter, Object record)
+	{
+		return filter == null || filter.accept((T) record);
+	}
+	
+	/**
+	 * Shortest distance from a point to anywhere outside the square of
+	 * rings around its cell.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param x
+	 *            Cell of the point.
+	 * @param y
+	 *            Cell of the point.
+	 * @param ring
+	 *            Last ring searched.
+	 * 
+	 * @return Metres.
+	 */
+	private double outside(double latitude, double longitude, long x, long y, long ring)
+	{
+		double north = (y + ring + 1) * cellSize - latitude;
+		double south = latitude - (y - ring) * cellSize;
+		double east = (x + ring + 1) * cellSize - longitude;
+		double west = longitude - (x - ring) * cellSize;
+		
+		double meridian = Math.min(Math.min(north, south), 180);
+		double parallel = Math.min(east, west);
+		
+		double distance = Math.toRadians(meridian) * Haversine.EARTH_RADIUS;
+		
+		if (parallel < 90)
+		{
+			// Distance to the great circle of a meridian parallel degrees away.
+			double across = Math.asin(Math.sin(Math.toRadians(parallel)) * Math.cos(Math.toRadians(latitude))) * Haversine.EARTH_RADIUS;
+			
+			distance = Math.min(distance, across);
+		}
+		
+		return distance;
+	}
+	
+	/**
+	 * Visit records in a box, and within a radius of a centre if one is
+	 * given.
+	 * 
+	 */
+	private boolean scan(double south, double west, double north, double east, double latitude, double longitude, double metres, SpatialVisitor<T> visitor)
+	{
+		if (size == 0 || !(south <= north) || !(west <= east))
+		{
+			return true;
+		}
+		
+		long minX = cell(west);
+		long maxX = cell(east);
+		long minY = cell(south);
+		long maxY = cell(north);
+		
+		// In doubles, unbounded boxes overflow longs.
+		double span = ((double) maxX - minX + 1) * ((double) maxY - minY + 1);
+		
+		if (span > cellCount)
+		{
+			// Box covers more cells than exist, walk the occupied ones.
+			for (Cell cell : cells)
+			{
+				if (cell != null)
+				{
+					long x = cell.key >> 32;
+					long y = (int) cell.key;
+					
+					if (x >= minX && x <= maxX && y >= minY && y <= maxY && !scan(cell, south, west, north, east, latitude, longitude, metres, visitor))
+					{
+						return false;
+					}
+				}
+			}
+		}
+		else
+		{
+			for (long x = minX; x <= maxX; x++)
+			{
+				for (long y = minY; y <= maxY; y++)
+				{
+					Cell cell = find(key(x, y));
+					
+					if (cell != null && !scan(cell, south, west, north, east, latitude, longitude, metres, visitor))
+					{
+						return false;
+					}
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private boolean scan(Cell cell, double south, double west, double north, double east, double latitude, double longitude, double metres, SpatialVisitor<T> visitor)
+	{
+		double[] latitudes = cell.latitude;
+		double[] longitudes = cell.longitude;
+		
+		boolean circle = !Double.isNaN(latitude);
+		
+		double cosine = circle ? Math.cos(Math.toRadians(latitude)) : 0;
+		
+		for (int index = 0; index < cell.count; index++)
+		{
+			double pointLatitude = latitudes[index];
+			double pointLongitude = longitudes[index];
+			
+			if (pointLatitude >= south && pointLatitude <= north && pointLongitude >= west && pointLongitude <= east)
+			{
+				if (circle && Haversine.distance(latitude, longitude, cosine, pointLatitude, pointLongitude, cell.cosine[index]) > metres)
+				{
+					continue;
+				}
+				
+				if (!visitor.visit((T) cell.records[index]))
+				{
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Number of records indexed.
+	 * 
+	 * @return The count.
+	 */
+	public int size()
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			return size;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Number of occupied cells.
+	 * 
+	 * @return The count.
+	 */
+	public int getCellCount()
+	{
+		lock.readLock().lock();
+		
+		try
+		{
+			return cellCount;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	public double getCellSize()
+	{
+		return cellSize;
+	}
+	
+	// ------------------------------------------------------------------------
+	// Cells, callers hold the lock.
+	// ------------------------------------------------------------------------
+	
+	private boolean insert(T record)
+	{
+		if (!record.hasCoordinates())
+		{
+			return false;
+		}
+		
+		double latitude = record.getLatitudeDouble();
+		double longitude = record.getLongitudeDouble();
+		
+		long key = key(cell(longitude), cell(latitude));
+		
+		Cell cell = find(key);
+		
+		if (cell == null)
+		{
+			cell = create(key);
+		}
+		
+		if (cell.count == cell.records.length)
+		{
+			int capacity = cell.count * 2;
+			
+			cell.latitude = Arrays.copyOf(cell.latitude, capacity);
+			cell.longitude = Arrays.copyOf(cell.longitude, capacity);
+			cell.cosine = Arrays.copyOf(cell.cosine, capacity);
+			cell.records = Arrays.copyOf(cell.records, capacity);
+		}
+		
+		cell.latitude[cell.count] = latitude;
+		cell.longitude[cell.count] = longitude;
+		cell.cosine[cell.count] = Math.cos(Math.toRadians(latitude));
+		cell.records[cell.count] = record;
+		cell.count++;
+		
+		size++;
+		
+		return true;
+	}
+	
+	private boolean delete(T record)
+	{
+		if (!record.hasCoordinates())
+		{
+			return false;
+		}
+		
+		Cell cell = find(key(cell(record.getLongitudeDouble()), cell(record.getLatitudeDouble())));
+		
+		if (cell == null)
+		{
+			return false;
+		}
+		
+		for (int index = 0; index < cell.count; index++)
+		{
+			Object other = cell.records[index];
+			
+			if (other == record || (record.getId() != null && record.getId().equals(((SituationRecord) other).getId())))
+			{
+				int last = --cell.count;
+				
+				// Fill the gap with the last entry.
+				cell.latitude[index] = cell.latitude[last];
+				cell.longitude[index] = cell.longitude[last];
+				cell.cosine[index] = cell.cosine[last];
+				cell.records[index] = cell.records[last];
+				cell.records[last] = null;
+				
+				size--;
+				
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private void clearCells()
+	{
+		Arrays.fill(cells, null);
+		
+		cellCount = 0;
+		size = 0;
+	}
+	
+	private long cell(double value)
+	{
+		return (long) Math.floor(value / cellSize);
+	}
+	
+	private static long key(long x, long y)
+	{
+		return (x << 32) | (y & 0xFFFFFFFFL);
+	}
+	
+	private int slot(long key)
+	{
+		long hash = key * 0x9E3779B97F4A7C15L;
+		
+		return (int) (hash ^ (hash >>> 32)) & (cells.length - 1);
+	}
+	
+	private Cell find(long key)
+	{
+		int mask = cells.length - 1;
+		
+		for (int index = slot(key);; index = (index + 1) & mask)
+		{
+			Cell cell = cells[index];
+			
+			if (cell == null || cell.key == key)
+			{
+				return cell;
+			}
+		}
+	}
+	
+	/**
+	 * Add an empty cell. Cells are kept until the index is cleared so the
+	 * table never needs tombstones.
+	 * 
+	 * @param key
+	 * 
+	 * @return The cell.
+	 */
+	private Cell create(long key)
+	{
+		if ((cellCount + 1) * 2 > cells.length)
+		{
+			Cell[] previous = cells;
+			
+			cells = new Cell[previous.length * 2];
+			
+			for (Cell cell : previous)
+			{
+				if (cell != null)
+				{
+					place(cell);
+				}
+			}
+		}
+		
+		Cell cell = new Cell(key);
+		
+		place(cell);
+		
+		long x = key >> 32;
+		long y = (int) key;
+		
+		if (cellCount == 0)
+		{
+			minX = maxX = x;
+			minY = maxY = y;
+		}
+		else
+		{
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		
+		cellCount++;
+		
+		return cell;
+	}
+	
+	private void place(Cell cell)
+	{
+		int mask = cells.length - 1;
+		
+		int index = slot(cell.key);
+		
+		while (cells[index] != null)
+		{
+			index = (index + 1) & mask;
+		}
+		
+		cells[index] = cell;
+	}
+	
+}
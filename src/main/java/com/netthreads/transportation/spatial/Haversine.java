@@ -0,0 +1,124 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.spatial;
+
+/**
+ * Great circle distances on a spherical earth.
+ * 
+ */
+public final class Haversine
+{
+	/**
+	 * Mean earth radius, metres.
+	 */
+	public static final double EARTH_RADIUS = 6371008.8;
+	
+	/**
+	 * Length of a degree of latitude, metres.
+	 */
+	public static final double METRES_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+	
+	private Haversine()
+	{
+	}
+	
+	/**
+	 * Distance between two points.
+	 * 
+	 * @param latitude1
+	 *            Degrees.
+	 * @param longitude1
+	 *            Degrees.
+	 * @param latitude2
+	 *            Degrees.
+	 * @param longitude2
+	 *            Degrees.
+	 * 
+	 * @return Metres.
+	 */
+	public static double distance(double latitude1, double longitude1, double latitude2, double longitude2)
+	{
+		double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+		double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+		
+		double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+		
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+	
+	/**
+	 * Distance between two points with the cosines of their latitudes
+	 * already known, for repeated tests against one point.
+	 * 
+	 * @param latitude1
+	 * @param longitude1
+	 * @param cosine1
+	 *            Cosine of latitude1.
+	 * @param latitude2
+	 * @param longitude2
+	 * @param cosine2
+	 *            Cosine of latitude2.
+	 * 
+	 * @return Metres.
+	 */
+	public static double distance(double latitude1, double longitude1, double cosine1, double latitude2, double longitude2, double cosine2)
+	{
+		double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+		double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+		
+		double a = sinLatitude * sinLatitude + cosine1 * cosine2 * sinLongitude * sinLongitude;
+		
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+	
+	/**
+	 * Latitude either side of a point that contains a radius.
+	 * 
+	 * @param metres
+	 * 
+	 * @return Degrees.
+	 */
+	public static double latitudeSpan(double metres)
+	{
+		return metres / METRES_PER_DEGREE;
+	}
+	
+	/**
+	 * Longitude either side of a point that contains a radius.
+	 * 
+	 * @param latitude
+	 *            Degrees.
+	 * @param metres
+	 * 
+	 * @return Degrees, 180 when the radius reaches a pole.
+	 */
+	public static double longitudeSpan(double latitude, double metres)
+	{
+		double angle = metres / EARTH_RADIUS;
+		double cosLatitude = Math.cos(Math.toRadians(latitude));
+		
+		if (angle >= Math.PI / 2 || Math.sin(angle) >= cosLatitude)
+		{
+			return 180;
+		}
+		
+		return Math.toDegrees(Math.asin(Math.sin(angle) / cosLatitude));
+	}
+	
+}
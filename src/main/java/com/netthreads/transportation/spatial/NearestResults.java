@@ -0,0 +1,143 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.spatial;
+
+import java.util.Arrays;
+
+/**
+ * The closest records found by a nearest neighbour query, nearest first.
+ * Allocate once and reuse across queries.
+ * 
+ */
+public class NearestResults<T>
+{
+	private Object[] records;
+	private double[] distances;
+	private int size;
+	private int limit;
+	
+	/**
+	 * Construct results.
+	 * 
+	 * @param capacity
+	 *            Largest number of neighbours a query may ask for.
+	 */
+	public NearestResults(int capacity)
+	{
+		records = new Object[capacity];
+		distances = new double[capacity];
+		
+		limit = capacity;
+	}
+	
+	/**
+	 * Empty the results for a query.
+	 * 
+	 * @param limit
+	 *            Neighbours wanted, at most the capacity.
+	 */
+	void clear(int limit)
+	{
+		Arrays.fill(records, 0, size, null);
+		
+		this.limit = Math.min(limit, records.length);
+		
+		size = 0;
+	}
+	
+	/**
+	 * Distance a record must beat to be kept.
+	 * 
+	 * @return Metres, infinite until the results are full.
+	 */
+	double worst()
+	{
+		return size < limit ? Double.POSITIVE_INFINITY : distances[size - 1];
+	}
+	
+	boolean isFull()
+	{
+		return size == limit;
+	}
+	
+	/**
+	 * Insert in distance order, dropping the furthest when full.
+	 * 
+	 * @param record
+	 * @param distance
+	 */
+	void offer(Object record, double distance)
+	{
+		if (limit == 0 || distance >= worst())
+		{
+			return;
+		}
+		
+		int index = size < limit ? size++ : size - 1;
+		
+		while (index > 0 && distances[index - 1] > distance)
+		{
+			records[index] = records[index - 1];
+			distances[index] = distances[index - 1];
+			index--;
+		}
+		
+		records[index] = record;
+		distances[index] = distance;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public int capacity()
+	{
+		return records.length;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public T get(int index)
+	{
+		if (index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+		
+		return (T) records[index];
+	}
+	
+	/**
+	 * Distance to result.
+	 * 
+	 * @param index
+	 * 
+	 * @return Metres.
+	 */
+	public double getDistance(int index)
+	{
+		if (index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+		
+		return distances[index];
+	}
+	
+}
@@ -0,0 +1,268 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.parser.ListRecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+
+/**
+ * Cancel a fetch from another thread part way through a large feed.
+ * 
+ */
+public class TestCancel
+{
+	private static final int RECORD_COUNT = 20000;
+	
+	/**
+	 * Test cancel halfway through, from a thread running alongside the parse.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancelFromAnotherThread() throws Exception
+	{
+		final StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		final CountDownLatch halfway = new CountDownLatch(1);
+		
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					halfway.await();
+					
+					streamParser.cancel();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		
+		thread.start();
+		
+		final List<CarParkData> list = new LinkedList<CarParkData>();
+		
+		ListRecordSink<CarParkData> sink = new ListRecordSink<CarParkData>(list)
+		{
+			@Override
+			public boolean accept(CarParkData record)
+			{
+				super.accept(record);
+				
+				if (list.size() == RECORD_COUNT / 2)
+				{
+					halfway.countDown();
+				}
+				else if (list.size() > RECORD_COUNT / 2)
+				{
+					// Keep the loop going, slowly enough for the cancel to land.
+					try
+					{
+						Thread.sleep(1);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+				
+				return true;
+			}
+		};
+		
+		int state = streamParser.fetch(generateFeed(RECORD_COUNT), sink, new CarParkDataFactory(), new CarParkDataParser());
+		
+		thread.join();
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, streamParser.getState());
+		
+		// Records parsed before the cancel was seen are kept, the rest dropped.
+		org.junit.Assert.assertTrue(list.size() >= RECORD_COUNT / 2);
+		org.junit.Assert.assertTrue(list.size() < RECORD_COUNT);
+		org.junit.Assert.assertEquals("CP0_1", list.get(0).getId());
+	}
+	
+	/**
+	 * Test an expired deadline stops the parse.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTimeout() throws Exception
+	{
+		final StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		streamParser.setTimeout(1);
+		
+		final List<CarParkData> list = new LinkedList<CarParkData>();
+		
+		ListRecordSink<CarParkData> sink = new ListRecordSink<CarParkData>(list)
+		{
+			@Override
+			public boolean accept(CarParkData record)
+			{
+				try
+				{
+					Thread.sleep(5);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				
+				return super.accept(record);
+			}
+		};
+		
+		int state = streamParser.fetch(generateFeed(RECORD_COUNT), sink, new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertTrue(list.size() < RECORD_COUNT);
+	}
+	
+	/**
+	 * Test a cancel which arrives before the fetch starts is not lost, and
+	 * that reset() clears it.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancelBeforeFetch() throws Exception
+	{
+		StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		List<CarParkData> list = new LinkedList<CarParkData>();
+		
+		streamParser.cancel();
+		
+		int state = streamParser.fetch(generateFeed(10), new ListRecordSink<CarParkData>(list), new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertEquals(0, list.size());
+		
+		// Still cancelled.
+		state = streamParser.fetch(generateFeed(10), new ListRecordSink<CarParkData>(list), new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertEquals(0, list.size());
+		
+		streamParser.reset();
+		
+		org.junit.Assert.assertEquals(StreamParser.WAITING, streamParser.getState());
+		
+		state = streamParser.fetch(generateFeed(10), new ListRecordSink<CarParkData>(list), new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.DONE, state);
+		org.junit.Assert.assertEquals(10, list.size());
+	}
+	
+	/**
+	 * Test a sink stopping the fetch does not cancel the next one.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSinkStopIsPerFetch() throws Exception
+	{
+		StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		final List<CarParkData> list = new LinkedList<CarParkData>();
+		
+		ListRecordSink<CarParkData> sink = new ListRecordSink<CarParkData>(list)
+		{
+			@Override
+			public boolean accept(CarParkData record)
+			{
+				super.accept(record);
+				
+				return list.size() < 5;
+			}
+		};
+		
+		int state = streamParser.fetch(generateFeed(10), sink, new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertEquals(5, list.size());
+		
+		list.clear();
+		
+		state = streamParser.fetch(generateFeed(10), new ListRecordSink<CarParkData>(list), new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.DONE, state);
+		org.junit.Assert.assertEquals(10, list.size());
+	}
+	
+	/**
+	 * Build a synthetic car park feed.
+	 * 
+	 * @param count
+	 * 
+	 * @return The stream.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 */
+	private InputStream generateFeed(int count) throws UnsupportedEncodingException
+	{
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("{\"payloadPublication\":{\"publicationTime\":\"2013-11-17T09:30:33\",\"situation\":[");
+		
+		for (int i = 0; i < count; i++)
+		{
+			if (i > 0)
+			{
+				builder.append(',');
+			}
+			
+			builder.append("{\"@attributes\":{\"id\":\"CP").append(i).append("\"},");
+			builder.append("\"situationRecord\":{\"@attributes\":{\"id\":\"CP").append(i).append("_1\"},");
+			builder.append("\"groupOfLocations\":{\"locationContainedInGroup\":{\"pointByCoordinates\":{\"pointCoordinates\":{");
+			builder.append("\"latitude\":\"55.8637962189\",\"longitude\":\"-4.2498235923\"}}}},");
+			builder.append("\"carParkIdentity\":\"Car Park ").append(i).append(":CP").append(i).append("\",");
+			builder.append("\"carParkOccupancy\":\"").append(i % 100).append("\",");
+			builder.append("\"carParkStatus\":\"enoughSpacesAvailable\",");
+			builder.append("\"occupiedSpaces\":\"").append(i % 500).append("\",");
+			builder.append("\"totalCapacity\":\"500\"}}");
+		}
+		
+		builder.append("]}}");
+		
+		return new ByteArrayInputStream(builder.toString().getBytes("UTF-8"));
+	}
+	
+}
@@ -0,0 +1,207 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.spatial.CarParkFinder;
+import com.netthreads.transportation.spatial.Haversine;
+import com.netthreads.transportation.spatial.NearestResults;
+
+/**
+ * Check nearest car park queries against sorting every car park.
+ * 
+ */
+public class TestCarParkFinder
+{
+	private static final String JSON_CAR_PARK_FILE = "/carParkData.json";
+	
+	private static final CarParkStatus[] STATUSES = { CarParkStatus.ENOUGH_SPACES_AVAILABLE, CarParkStatus.SPACES_AVAILABLE, CarParkStatus.ALMOST_FULL, CarParkStatus.CAR_PARK_FULL, CarParkStatus.CAR_PARK_CLOSED };
+	
+	private static CarParkData carPark(Random random, int index)
+	{
+		CarParkData data = new CarParkData();
+		
+		int capacity = 50 + random.nextInt(500);
+		
+		data.setId("CP" + index + "_1");
+		data.setCarParkIdentity("Car Park " + index + ":CP" + index);
+		data.setLatitudeDouble(55.8 + random.nextDouble() / 5);
+		data.setLongitudeDouble(-4.4 + random.nextDouble() / 2);
+		data.setTotalCapacityInt(capacity);
+		data.setOccupiedSpacesInt(index % 29 == 0 ? CarParkData.NO_VALUE : random.nextInt(capacity + 1));
+		data.setCarParkStatusCode(STATUSES[random.nextInt(STATUSES.length)]);
+		
+		return data;
+	}
+	
+	private static void check(CarParkFinder finder, List<CarParkData> carParks, Random random, NearestResults<CarParkData> results)
+	{
+		Set<CarParkStatus> open = EnumSet.of(CarParkStatus.ENOUGH_SPACES_AVAILABLE, CarParkStatus.SPACES_AVAILABLE, CarParkStatus.ALMOST_FULL);
+		
+		for (int query = 0; query < 300; query++)
+		{
+			final double latitude = 55.75 + random.nextDouble() * 0.3;
+			final double longitude = -4.5 + random.nextDouble() * 0.7;
+			
+			int count = 1 + random.nextInt(5);
+			int minFree = random.nextInt(3) * 100;
+			Set<CarParkStatus> statuses = query % 2 == 0 ? null : open;
+			double metres = query % 3 == 0 ? 3000 : Double.POSITIVE_INFINITY;
+			
+			List<CarParkData> expected = new ArrayList<CarParkData>();
+			
+			for (CarParkData data : carParks)
+			{
+				int free = data.getFreeSpaces();
+				
+				if (minFree > 0 && (free == CarParkData.NO_VALUE || free < minFree))
+				{
+					continue;
+				}
+				
+				if (statuses != null && !statuses.contains(data.getCarParkStatusCode()))
+				{
+					continue;
+				}
+				
+				if (Haversine.distance(latitude, longitude, data.getLatitudeDouble(), data.getLongitudeDouble()) <= metres)
+				{
+					expected.add(data);
+				}
+			}
+			
+			Collections.sort(expected, new Comparator<CarParkData>()
+			{
+				@Override
+				public int compare(CarParkData first, CarParkData second)
+				{
+					return Double.compare(Haversine.distance(latitude, longitude, first.getLatitudeDouble(), first.getLongitudeDouble()), Haversine.distance(latitude, longitude, second.getLatitudeDouble(), second.getLongitudeDouble()));
+				}
+			});
+			
+			int found = finder.nearest(latitude, longitude, count, metres, minFree, statuses, results);
+			
+			Assert.assertEquals(Math.min(count, expected.size()), found);
+			
+			for (int index = 0; index < found; index++)
+			{
+				Assert.assertEquals(expected.get(index).getId(), results.get(index).getId());
+			}
+		}
+	}
+	
+	/**
+	 * Queries follow polls.
+	 * 
+	 */
+	@Test
+	public void testNearest()
+	{
+		Random random = new Random(19);
+		
+		List<CarParkData> carParks = new ArrayList<CarParkData>();
+		
+		for (int index = 0; index < 400; index++)
+		{
+			carParks.add(carPark(random, index));
+		}
+		
+		CarParkFinder finder = new CarParkFinder();
+		
+		NearestResults<CarParkData> results = new NearestResults<CarParkData>(5);
+		
+		finder.update(carParks);
+		
+		Assert.assertEquals(carParks.size(), finder.size());
+		
+		check(finder, carParks, random, results);
+		
+		// Next poll, new occupancy everywhere and some car parks gone.
+		List<CarParkData> poll = new ArrayList<CarParkData>();
+		
+		for (int index = 0; index < 300; index++)
+		{
+			CarParkData data = carPark(new Random(index), index);
+			
+			data.setLatitudeDouble(carParks.get(index).getLatitudeDouble());
+			data.setLongitudeDouble(carParks.get(index).getLongitudeDouble());
+			
+			poll.add(data);
+		}
+		
+		finder.update(poll);
+		
+		Assert.assertEquals(poll.size(), finder.size());
+		
+		check(finder, poll, random, results);
+		
+		finder.update(new ArrayList<CarParkData>());
+		
+		Assert.assertEquals(0, finder.size());
+		Assert.assertEquals(0, finder.nearest(55.86, -4.25, 3, 0, null, results));
+	}
+	
+	/**
+	 * Fetch the feed into the finder.
+	 * 
+	 */
+	@Test
+	public void testFeed()
+	{
+		CarParkFinder finder = new CarParkFinder();
+		
+		StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		int state = streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CAR_PARK_FILE), finder, new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertTrue(finder.size() > 3);
+		
+		NearestResults<CarParkData> results = new NearestResults<CarParkData>(3);
+		
+		Assert.assertEquals(3, finder.nearest(55.8609, -4.2514, 3, 1, null, results));
+		
+		for (int index = 0; index < results.size(); index++)
+		{
+			Assert.assertTrue(results.get(index).getFreeSpaces() >= 1);
+			
+			if (index > 0)
+			{
+				Assert.assertTrue(results.getDistance(index - 1) <= results.getDistance(index));
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,505 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.change.ChangeFeed;
+import com.netthreads.transportation.change.ChangeListener;
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.SituationRecord;
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.DataFactory;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.ListRecordSink;
+import com.netthreads.transportation.parser.RecordFingerprints;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.UnchangedListener;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * Change feed tests.
+ * 
+ */
+public class TestChangeFeed
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	private static final String JSON_CARPARK_FILE = "/carParkData.json";
+	
+	/**
+	 * Records changes as text.
+	 * 
+	 */
+	private static class Changes implements ChangeListener<TrafficData>
+	{
+		private List<String> events = new ArrayList<String>();
+		
+		@Override
+		public void added(TrafficData record)
+		{
+			events.add("added " + record.getId());
+		}
+		
+		@Override
+		public void updated(TrafficData previous, TrafficData record)
+		{
+			events.add("updated " + record.getId() + " " + previous.getVersion() + ">" + record.getVersion());
+		}
+		
+		@Override
+		public void removed(TrafficData previous)
+		{
+			events.add("removed " + previous.getId());
+		}
+	}
+	
+	/**
+	 * Parser with only the JSONParser methods, as written before the optional
+	 * extensions existed.
+	 * 
+	 */
+	private static class PlainParser implements JSONParser<CarParkData>
+	{
+		private CarParkDataParser parser = new CarParkDataParser();
+		
+		@Override
+		public boolean processStartObject(String tag, JsonParser jsonParser)
+		{
+			return parser.processStartObject(tag, jsonParser);
+		}
+		
+		@Override
+		public boolean processEndObject(String tag, JsonParser jsonParser)
+		{
+			return parser.processEndObject(tag, jsonParser);
+		}
+		
+		@Override
+		public void processObject(JsonParser jsonParser) throws JsonParseException, IOException
+		{
+			parser.processObject(jsonParser);
+		}
+		
+		@Override
+		public void populateRecord(CarParkData data)
+		{
+			parser.populateRecord(data);
+		}
+		
+		@Override
+		public void reset()
+		{
+			parser.reset();
+		}
+		
+		@Override
+		public boolean inTarget()
+		{
+			return parser.inTarget();
+		}
+	}
+	
+	private StreamParser<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+	private TrafficDataFactory dataFactory = new TrafficDataFactory();
+	private TrafficDataParser pullParser = new TrafficDataParser();
+	
+	/**
+	 * Test successive polls.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPolls() throws Exception
+	{
+		Changes changes = new Changes();
+		
+		ChangeFeed<TrafficData> feed = new ChangeFeed<TrafficData>(changes);
+		
+		feed.poll(streamParser, feed("a:1", "b:1", "c:1"), dataFactory, pullParser);
+		
+		Assert.assertEquals("[added a, added b, added c]", changes.events.toString());
+		
+		changes.events.clear();
+		
+		feed.poll(streamParser, feed("a:1", "b:2", "d:1"), dataFactory, pullParser);
+		
+		Assert.assertEquals("[updated b 1>2, added d, removed c]", changes.events.toString());
+		Assert.assertEquals(3, feed.size());
+		Assert.assertEquals(2, feed.get("b").getVersion());
+		
+		// Broken poll, nothing removed.
+		changes.events.clear();
+		
+		String text = "{\"payloadPublication\":{\"situation\":[" + record("a", 2) + ",{";
+		
+		int state = feed.poll(streamParser, new ByteArrayInputStream(text.getBytes("UTF-8")), dataFactory, pullParser);
+		
+		Assert.assertEquals(StreamParser.ERROR, state);
+		Assert.assertEquals("[updated a 1>2]", changes.events.toString());
+		Assert.assertEquals(3, feed.size());
+		Assert.assertNotNull(feed.getError());
+	}
+	
+	/**
+	 * Test versions are read from the feed and an identical poll only reports
+	 * the records which carry no version.
+	 * 
+	 */
+	@Test
+	public void testTrafficFile()
+	{
+		Changes changes = new Changes();
+		
+		ChangeFeed<TrafficData> feed = new ChangeFeed<TrafficData>(changes);
+		
+		feed.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), dataFactory, pullParser);
+		
+		Assert.assertTrue(feed.size() > 0);
+		Assert.assertEquals(feed.size(), changes.events.size());
+		
+		int unversioned = 0;
+		
+		for (TrafficData record : feed.getRecords())
+		{
+			if (record.getVersion() == SituationRecord.NO_VERSION)
+			{
+				Assert.assertEquals("", record.getVersionTime());
+				
+				unversioned++;
+			}
+			else
+			{
+				Assert.assertEquals(1, record.getVersion());
+				Assert.assertTrue(record.getVersionTime().length() > 0);
+			}
+		}
+		
+		Assert.assertTrue(unversioned < feed.size());
+		
+		changes.events.clear();
+		
+		feed.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), dataFactory, pullParser);
+		
+		Assert.assertEquals(unversioned, changes.events.size());
+	}
+	
+	/**
+	 * Test unchanged records are not built when fingerprints are on.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFingerprints() throws Exception
+	{
+		final int[] created = new int[1];
+		final List<String> unchanged = new ArrayList<String>();
+		
+		DataFactory<CarParkData> factory = new CarParkDataFactory()
+		{
+			@Override
+			public CarParkData createRecord()
+			{
+				created[0]++;
+				
+				return super.createRecord();
+			}
+		};
+		
+		StreamParserImpl<CarParkData> carParkParser = new StreamParserImpl<CarParkData>();
+		
+		RecordFingerprints fingerprints = new RecordFingerprints();
+		
+		carParkParser.setFingerprints(fingerprints, new UnchangedListener()
+		{
+			@Override
+			public void unchanged(String id)
+			{
+				unchanged.add(id);
+			}
+		});
+		
+		byte[] data = read(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE));
+		
+		CarParkDataParser pullParser = new CarParkDataParser();
+		
+		List<CarParkData> list = new ArrayList<CarParkData>();
+		
+		carParkParser.fetch(new ByteArrayInputStream(data), list, factory, pullParser);
+		
+		Assert.assertTrue(list.size() > 1);
+		Assert.assertEquals(list.size(), created[0]);
+		Assert.assertEquals(list.size(), fingerprints.size());
+		Assert.assertTrue(unchanged.isEmpty());
+		
+		// Same again, nothing built.
+		created[0] = 0;
+		
+		int state = carParkParser.fetch(new ByteArrayInputStream(data), new ListRecordSink<CarParkData>(new ArrayList<CarParkData>()), factory, pullParser);
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertEquals(0, created[0]);
+		Assert.assertEquals(list.size(), unchanged.size());
+		Assert.assertEquals(list.get(0).getId(), unchanged.get(0));
+		
+		// One occupancy moves, only that record is built.
+		created[0] = 0;
+		unchanged.clear();
+		
+		String text = new String(data, "UTF-8");
+		String occupied = "\"occupiedSpaces\":\"" + list.get(0).getOccupiedSpaces() + "\"";
+		
+		text = text.replaceFirst(occupied, "\"occupiedSpaces\":\"" + (list.get(0).getOccupiedSpacesInt() + 1) + "\"");
+		
+		List<CarParkData> changed = new ArrayList<CarParkData>();
+		
+		carParkParser.fetch(new ByteArrayInputStream(text.getBytes("UTF-8")), changed, factory, pullParser);
+		
+		Assert.assertEquals(1, created[0]);
+		Assert.assertEquals(list.get(0).getId(), changed.get(0).getId());
+		Assert.assertEquals(list.get(0).getOccupiedSpacesInt() + 1, changed.get(0).getOccupiedSpacesInt());
+		Assert.assertEquals(list.size() - 1, unchanged.size());
+	}
+	
+	/**
+	 * Test a cancelled poll does not store its hashes, the next poll is
+	 * compared with the last completed one.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFingerprintsCancelledPoll() throws Exception
+	{
+		final List<String> unchanged = new ArrayList<String>();
+		
+		StreamParserImpl<CarParkData> carParkParser = new StreamParserImpl<CarParkData>();
+		
+		carParkParser.setFingerprints(new RecordFingerprints(), new UnchangedListener()
+		{
+			@Override
+			public void unchanged(String id)
+			{
+				unchanged.add(id);
+			}
+		});
+		
+		byte[] data = read(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE));
+		
+		CarParkDataParser pullParser = new CarParkDataParser();
+		
+		// First poll stops after three records.
+		final List<CarParkData> list = new ArrayList<CarParkData>();
+		
+		ListRecordSink<CarParkData> stopping = new ListRecordSink<CarParkData>(list)
+		{
+			@Override
+			public boolean accept(CarParkData record)
+			{
+				super.accept(record);
+				
+				return list.size() < 3;
+			}
+		};
+		
+		int state = carParkParser.fetch(new ByteArrayInputStream(data), stopping, new CarParkDataFactory(), pullParser);
+		
+		Assert.assertEquals(StreamParser.CANCELLED, state);
+		Assert.assertEquals(3, list.size());
+		
+		// Full poll builds everything.
+		list.clear();
+		
+		state = carParkParser.fetch(new ByteArrayInputStream(data), list, new CarParkDataFactory(), pullParser);
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertEquals(10, list.size());
+		Assert.assertTrue(unchanged.isEmpty());
+		
+		// A changed poll which is cancelled, then the same change in full.
+		String text = new String(data, "UTF-8");
+		String occupied = "\"occupiedSpaces\":\"" + list.get(0).getOccupiedSpaces() + "\"";
+		
+		byte[] changed = text.replaceFirst(occupied, "\"occupiedSpaces\":\"" + (list.get(0).getOccupiedSpacesInt() + 1) + "\"").getBytes("UTF-8");
+		
+		list.clear();
+		
+		ListRecordSink<CarParkData> first = new ListRecordSink<CarParkData>(list)
+		{
+			@Override
+			public boolean accept(CarParkData record)
+			{
+				super.accept(record);
+				
+				return false;
+			}
+		};
+		
+		state = carParkParser.fetch(new ByteArrayInputStream(changed), first, new CarParkDataFactory(), pullParser);
+		
+		Assert.assertEquals(StreamParser.CANCELLED, state);
+		Assert.assertEquals(1, list.size());
+		
+		list.clear();
+		unchanged.clear();
+		
+		state = carParkParser.fetch(new ByteArrayInputStream(changed), list, new CarParkDataFactory(), pullParser);
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertEquals(1, list.size());
+		Assert.assertEquals("CPG04C_1", list.get(0).getId());
+		Assert.assertEquals(9, unchanged.size());
+	}
+	
+	/**
+	 * Test a parser which cannot name its records has every record built.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFingerprintsPlainParser() throws Exception
+	{
+		final List<String> unchanged = new ArrayList<String>();
+		
+		StreamParserImpl<CarParkData> carParkParser = new StreamParserImpl<CarParkData>();
+		
+		carParkParser.setFingerprints(new RecordFingerprints(), new UnchangedListener()
+		{
+			@Override
+			public void unchanged(String id)
+			{
+				unchanged.add(id);
+			}
+		});
+		
+		byte[] data = read(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE));
+		
+		PlainParser pullParser = new PlainParser();
+		
+		for (int i = 0; i < 2; i++)
+		{
+			List<CarParkData> list = new ArrayList<CarParkData>();
+			
+			int state = carParkParser.fetch(new ByteArrayInputStream(data), list, new CarParkDataFactory(), pullParser);
+			
+			Assert.assertEquals(StreamParser.DONE, state);
+			Assert.assertEquals(10, list.size());
+			Assert.assertEquals("CPG04C_1", list.get(0).getId());
+		}
+		
+		Assert.assertTrue(unchanged.isEmpty());
+	}
+	
+	/**
+	 * Test the change feed keeps records skipped by the parser.
+	 * 
+	 */
+	@Test
+	public void testFeedWithFingerprints()
+	{
+		Changes changes = new Changes();
+		
+		ChangeFeed<TrafficData> feed = new ChangeFeed<TrafficData>(changes);
+		
+		StreamParserImpl<TrafficData> trafficParser = new StreamParserImpl<TrafficData>();
+		
+		trafficParser.setFingerprints(new RecordFingerprints(), feed);
+		
+		feed.poll(trafficParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), dataFactory, pullParser);
+		
+		int size = feed.size();
+		
+		changes.events.clear();
+		
+		feed.poll(trafficParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), dataFactory, pullParser);
+		
+		// Even records without versions are skipped now.
+		Assert.assertTrue(changes.events.isEmpty());
+		Assert.assertEquals(size, feed.size());
+	}
+	
+	/**
+	 * Build a feed from id:version pairs.
+	 * 
+	 * @param records
+	 * 
+	 * @return The stream.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 */
+	private InputStream feed(String... records) throws UnsupportedEncodingException
+	{
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("{\"payloadPublication\":{\"situation\":[");
+		
+		for (int i = 0; i < records.length; i++)
+		{
+			String[] values = records[i].split(":");
+			
+			if (i > 0)
+			{
+				builder.append(',');
+			}
+			
+			builder.append(record(values[0], Integer.parseInt(values[1])));
+		}
+		
+		builder.append("]}}");
+		
+		return new ByteArrayInputStream(builder.toString().getBytes("UTF-8"));
+	}
+	
+	private byte[] read(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[4096];
+		
+		int count;
+		
+		while ((count = stream.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, count);
+		}
+		
+		stream.close();
+		
+		return output.toByteArray();
+	}
+	
+	private String record(String id, int version)
+	{
+		return "{\"situationRecord\":{\"@attributes\":{\"id\":\"" + id + "\"},\"situationRecordVersion\":\"" + version + "\",\"situationRecordVersionTime\":\"2015-03-06T09:2" + version + ":00\"}}";
+	}
+	
+}
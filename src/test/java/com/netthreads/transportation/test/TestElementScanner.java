@@ -0,0 +1,132 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.parser.ElementScanner;
+
+/**
+ * Element scanner tests.
+ * 
+ */
+public class TestElementScanner
+{
+	private static final String DOCUMENT = "{\"header\":{\"situation\":[{\"x\":1}]},"
+	        + "\"payloadPublication\":{\"note\":\"\\\"situation\\\":[{\",\"situation\":["
+	        + "{\"id\":\"a}]\",\"situation\":[{}]},"
+	        + "{\"id\":\"b\\\"{\"}"
+	        + "],\"after\":{\"situation\":[{}]}}}";
+	
+	/**
+	 * Test elements are found whole, whatever size of chunk the bytes arrive
+	 * in.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testScan() throws Exception
+	{
+		byte[] data = DOCUMENT.getBytes("UTF-8");
+		
+		for (int size = 1; size <= data.length; size++)
+		{
+			ElementScanner scanner = new ElementScanner();
+			
+			final List<String> elements = new ArrayList<String>();
+			final long[] start = new long[1];
+			final String text = DOCUMENT;
+			
+			for (int offset = 0; offset < data.length; offset += size)
+			{
+				scanner.scan(data, offset, Math.min(size, data.length - offset), new ElementScanner.Listener()
+				{
+					@Override
+					public void elementStart(long position)
+					{
+						start[0] = position;
+					}
+					
+					@Override
+					public void elementEnd(long position)
+					{
+						elements.add(text.substring((int) start[0], (int) position));
+					}
+				});
+			}
+			
+			Assert.assertTrue(scanner.isArrayFound());
+			Assert.assertFalse(scanner.isInElement());
+			Assert.assertEquals(2, elements.size());
+			Assert.assertEquals("{\"id\":\"a}]\",\"situation\":[{}]}", elements.get(0));
+			Assert.assertEquals("{\"id\":\"b\\\"{\"}", elements.get(1));
+		}
+	}
+	
+	/**
+	 * Test a lone situation object is reported as one element.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSingleObject() throws Exception
+	{
+		String text = "{\"payloadPublication\":{\"situation\":{\"situationRecord\":{\"x\":[{}]}},\"after\":{}}}";
+		
+		byte[] data = text.getBytes("UTF-8");
+		
+		final List<long[]> elements = new ArrayList<long[]>();
+		
+		new ElementScanner().scan(data, 0, data.length, new ElementScanner.Listener()
+		{
+			@Override
+			public void elementStart(long position)
+			{
+				elements.add(new long[] { position, -1 });
+			}
+			
+			@Override
+			public void elementEnd(long position)
+			{
+				elements.get(elements.size() - 1)[1] = position;
+			}
+		});
+		
+		Assert.assertEquals(1, elements.size());
+		Assert.assertEquals("{\"situationRecord\":{\"x\":[{}]}}", text.substring((int) elements.get(0)[0], (int) elements.get(0)[1]));
+	}
+	
+	/**
+	 * Test the synthetic prefix and suffix.
+	 * 
+	 */
+	@Test
+	public void testWrap()
+	{
+		ElementScanner scanner = new ElementScanner();
+		
+		Assert.assertEquals("{\"payloadPublication\":{\"situation\":[", scanner.getPrefix());
+		Assert.assertEquals("]}}", scanner.getSuffix());
+	}
+	
+}
@@ -0,0 +1,353 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+import com.netthreads.transportation.poller.FeedPoller;
+import com.netthreads.transportation.poller.FeedResult;
+import com.netthreads.transportation.poller.ReadAheadInputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Poll the test resources from an embedded HTTP server.
+ * 
+ */
+public class TestFeedPoller
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	
+	private static final String LAST_MODIFIED = "Tue, 10 Mar 2015 14:40:52 GMT";
+	
+	private static final long SLOW_TIMEOUT = 10000;
+	
+	private HttpServer server;
+	private ExecutorService executor;
+	private ExecutorService serverExecutor;
+	
+	/**
+	 * Document version, changes the ETag.
+	 */
+	private AtomicInteger version = new AtomicInteger(1);
+	
+	private AtomicInteger requests = new AtomicInteger();
+	private AtomicInteger notModified = new AtomicInteger();
+	
+	/**
+	 * Client ports seen, one per connection.
+	 */
+	private Set<Integer> ports = Collections.synchronizedSet(new HashSet<Integer>());
+	
+	/**
+	 * Slow handler has the request, released to answer it.
+	 */
+	private CountDownLatch received = new CountDownLatch(1);
+	private CountDownLatch release = new CountDownLatch(1);
+	
+	/**
+	 * Serves resources with an ETag, honouring If-None-Match.
+	 * 
+	 */
+	private class ResourceHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			requests.incrementAndGet();
+			
+			ports.add(exchange.getRemoteAddress().getPort());
+			
+			String etag = "\"v" + version.get() + "\"";
+			
+			InputStream stream = ClassLoader.class.getResourceAsStream(exchange.getRequestURI().getPath());
+			
+			if (stream == null)
+			{
+				exchange.sendResponseHeaders(404, -1);
+			}
+			else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+			{
+				stream.close();
+				
+				notModified.incrementAndGet();
+				
+				exchange.getResponseHeaders().set("ETag", etag);
+				exchange.sendResponseHeaders(304, -1);
+			}
+			else
+			{
+				byte[] data = read(stream);
+				
+				exchange.getResponseHeaders().set("ETag", etag);
+				exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, data.length);
+				
+				OutputStream output = exchange.getResponseBody();
+				output.write(data);
+				output.close();
+			}
+			
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Holds the response headers back until released.
+	 * 
+	 */
+	private class SlowHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			received.countDown();
+			
+			try
+			{
+				release.await(SLOW_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		}
+	}
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new ResourceHandler());
+		server.createContext("/slow", new SlowHandler());
+		
+		// Slow requests must not hold up the others.
+		serverExecutor = Executors.newCachedThreadPool();
+		
+		server.setExecutor(serverExecutor);
+		server.start();
+		
+		executor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		release.countDown();
+		
+		server.stop(0);
+		
+		serverExecutor.shutdown();
+		
+		executor.shutdown();
+	}
+	
+	/**
+	 * Test a changed feed is parsed and an unchanged one reused.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConditionalPoll() throws Exception
+	{
+		FeedPoller<TrafficData> poller = new FeedPoller<TrafficData>(url(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser(), executor);
+		
+		FeedResult<TrafficData> first = poller.poll();
+		
+		Assert.assertEquals(200, first.getResponseCode());
+		Assert.assertEquals(StreamParser.DONE, first.getState());
+		Assert.assertTrue(first.isModified());
+		Assert.assertEquals(17, first.getRecords().size());
+		Assert.assertEquals("\"v1\"", first.getEtag());
+		Assert.assertEquals(LAST_MODIFIED, first.getLastModified());
+		Assert.assertTrue(first.getBytes() > 0);
+		
+		// Unchanged.
+		FeedResult<TrafficData> second = poller.poll();
+		
+		Assert.assertEquals(304, second.getResponseCode());
+		Assert.assertTrue(second.isDone());
+		Assert.assertFalse(second.isModified());
+		Assert.assertSame(first.getRecords(), second.getRecords());
+		Assert.assertEquals(1, notModified.get());
+		
+		// Changed.
+		version.incrementAndGet();
+		
+		FeedResult<TrafficData> third = poller.poll();
+		
+		Assert.assertEquals(200, third.getResponseCode());
+		Assert.assertTrue(third.isModified());
+		Assert.assertNotSame(first.getRecords(), third.getRecords());
+		Assert.assertEquals(first.getRecords().size(), third.getRecords().size());
+		Assert.assertEquals(3, requests.get());
+		
+		// Keep-alive, the parsed body left the connection reusable.
+		Assert.assertTrue(ports.size() < requests.get());
+	}
+	
+	/**
+	 * Test a missing feed reports an error and keeps nothing.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMissing() throws Exception
+	{
+		FeedPoller<TrafficData> poller = new FeedPoller<TrafficData>(url("/missing.json"), new TrafficDataFactory(), new TrafficDataParser(), null);
+		
+		FeedResult<TrafficData> result = poller.poll();
+		
+		Assert.assertEquals(404, result.getResponseCode());
+		Assert.assertEquals(StreamParser.ERROR, result.getState());
+		Assert.assertTrue(result.getRecords().isEmpty());
+		Assert.assertNotNull(result.getError());
+		Assert.assertNull(poller.getLast());
+	}
+	
+	/**
+	 * Test a cancel while the server holds back the response headers ends
+	 * the poll at once, and lasts until reset.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancelWaitingForHeaders() throws Exception
+	{
+		final FeedPoller<TrafficData> poller = new FeedPoller<TrafficData>(url("/slow"), new TrafficDataFactory(), new TrafficDataParser(), executor);
+		
+		Future<FeedResult<TrafficData>> future = executor.submit(new Callable<FeedResult<TrafficData>>()
+		{
+			@Override
+			public FeedResult<TrafficData> call() throws Exception
+			{
+				return poller.poll();
+			}
+		});
+		
+		Assert.assertTrue(received.await(SLOW_TIMEOUT, TimeUnit.MILLISECONDS));
+		
+		long start = System.currentTimeMillis();
+		
+		poller.cancel();
+		
+		FeedResult<TrafficData> result = future.get(SLOW_TIMEOUT / 2, TimeUnit.MILLISECONDS);
+		
+		Assert.assertTrue("Cancel took " + (System.currentTimeMillis() - start) + "ms", System.currentTimeMillis() - start < SLOW_TIMEOUT / 2);
+		Assert.assertEquals(StreamParser.CANCELLED, result.getState());
+		Assert.assertTrue(result.getRecords().isEmpty());
+		Assert.assertNull(result.getError());
+		Assert.assertNull(poller.getLast());
+		
+		release.countDown();
+		
+		// Stays cancelled without a request.
+		int count = requests.get();
+		
+		Assert.assertEquals(StreamParser.CANCELLED, poller.poll().getState());
+		Assert.assertEquals(count, requests.get());
+		
+		poller.reset();
+		
+		FeedPoller<TrafficData> other = new FeedPoller<TrafficData>(url(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser(), executor);
+		
+		other.cancel();
+		
+		Assert.assertEquals(StreamParser.CANCELLED, other.poll().getState());
+		
+		other.reset();
+		
+		FeedResult<TrafficData> after = other.poll();
+		
+		Assert.assertEquals(StreamParser.DONE, after.getState());
+		Assert.assertEquals(17, after.getRecords().size());
+	}
+	
+	/**
+	 * Test the read-ahead stream returns the source unchanged.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadAhead() throws Exception
+	{
+		byte[] data = read(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE));
+		
+		ReadAheadInputStream stream = new ReadAheadInputStream(new ByteArrayInputStream(data), executor, 7, 3);
+		
+		byte[] copy = read(stream);
+		
+		Assert.assertArrayEquals(data, copy);
+		Assert.assertEquals(data.length, stream.getCount());
+	}
+	
+	private URL url(String path) throws IOException
+	{
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+	
+	private static byte[] read(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[4096];
+		
+		int count;
+		
+		while ((count = stream.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, count);
+		}
+		
+		stream.close();
+		
+		return output.toByteArray();
+	}
+	
+}
@@ -0,0 +1,337 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParserFactory;
+import com.netthreads.transportation.replay.FeedReplayer;
+import com.netthreads.transportation.replay.MappedInputStream;
+import com.netthreads.transportation.replay.ReplayReport;
+import com.netthreads.transportation.replay.ReplaySink;
+
+/**
+ * Replay a directory of archived feeds.
+ * 
+ */
+public class TestFeedReplayer
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	
+	private static final String PUBLICATION_TIME = "2015-03-10T14:40:52";
+	
+	private static final int TRAFFIC_RECORDS = 17;
+	
+	private static final int FILES = 5;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ExecutorService executor;
+	
+	private byte[] data;
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		executor = Executors.newFixedThreadPool(2);
+		
+		data = read(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE));
+	}
+	
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Replay good files alongside a truncated one.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReplay() throws IOException
+	{
+		for (int index = 0; index < FILES; index++)
+		{
+			write(folder.newFile("traffic-" + index + ".json"), data, data.length);
+		}
+		
+		File corrupt = folder.newFile("traffic-corrupt.json");
+		
+		write(corrupt, data, data.length / 2);
+		
+		// Not a feed.
+		folder.newFile("notes.txt");
+		
+		final Map<String, Integer> counts = Collections.synchronizedMap(new HashMap<String, Integer>());
+		final Map<String, Exception> errors = Collections.synchronizedMap(new HashMap<String, Exception>());
+		
+		ReplaySink<TrafficData> sink = new ReplaySink<TrafficData>()
+		{
+			@Override
+			public boolean accept(File file, String publicationTime, TrafficData record)
+			{
+				Assert.assertEquals(PUBLICATION_TIME, publicationTime);
+				Assert.assertNotNull(record.getId());
+				
+				synchronized (counts)
+				{
+					Integer count = counts.get(file.getName());
+					
+					counts.put(file.getName(), count == null ? 1 : count + 1);
+				}
+				
+				return true;
+			}
+			
+			@Override
+			public void error(File file, Exception e)
+			{
+				errors.put(file.getName(), e);
+			}
+		};
+		
+		FeedReplayer<TrafficData> replayer = new FeedReplayer<TrafficData>(executor, 2, new TrafficDataFactory(), new TrafficDataParserFactory());
+		
+		ReplayReport report = replayer.replay(folder.getRoot(), sink);
+		
+		Assert.assertEquals(FILES, report.getFiles());
+		Assert.assertEquals(1, report.getFailed());
+		Assert.assertFalse(report.isCancelled());
+		Assert.assertEquals((long) FILES * data.length, report.getBytes());
+		
+		for (int index = 0; index < FILES; index++)
+		{
+			Assert.assertEquals(Integer.valueOf(TRAFFIC_RECORDS), counts.get("traffic-" + index + ".json"));
+		}
+		
+		Assert.assertEquals(1, errors.size());
+		Assert.assertTrue(errors.containsKey(corrupt.getName()));
+		
+		long records = 0;
+		
+		for (Integer count : counts.values())
+		{
+			records += count;
+		}
+		
+		Assert.assertEquals(records, report.getRecords());
+		
+		// Rates follow from the counts and elapsed time.
+		Assert.assertTrue(report.getElapsed() >= 0);
+		
+		if (report.getElapsed() > 0)
+		{
+			Assert.assertEquals(records * 1000.0 / report.getElapsed(), report.getRecordsPerSecond(), 1e-6);
+			Assert.assertEquals(report.getBytes() * 1000.0 / report.getElapsed() / (1024 * 1024), report.getMegabytesPerSecond(), 1e-6);
+		}
+		else
+		{
+			Assert.assertEquals(0.0, report.getRecordsPerSecond(), 0.0);
+		}
+		
+		Assert.assertTrue(report.toString().startsWith(FILES + " files, 1 failed, " + records + " records, "));
+	}
+	
+	/**
+	 * Stop after the first record.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testStop() throws IOException
+	{
+		for (int index = 0; index < FILES; index++)
+		{
+			write(folder.newFile("traffic-" + index + ".json"), data, data.length);
+		}
+		
+		ReplaySink<TrafficData> sink = new ReplaySink<TrafficData>()
+		{
+			@Override
+			public boolean accept(File file, String publicationTime, TrafficData record)
+			{
+				return false;
+			}
+			
+			@Override
+			public void error(File file, Exception e)
+			{
+			}
+		};
+		
+		FeedReplayer<TrafficData> replayer = new FeedReplayer<TrafficData>(executor, 1, new TrafficDataFactory(), new TrafficDataParserFactory());
+		
+		ReplayReport report = replayer.replay(folder.getRoot(), sink);
+		
+		Assert.assertTrue(report.isCancelled());
+		Assert.assertEquals(1, report.getRecords());
+		Assert.assertEquals(0, report.getFiles());
+		
+		// Only the bytes parsed before stopping.
+		Assert.assertTrue(report.getBytes() > 0);
+		Assert.assertTrue(report.getBytes() < data.length);
+		
+		// A sink stop ends its own replay only.
+		report = replayer.replay(folder.getRoot(), new CountingSink());
+		
+		Assert.assertFalse(report.isCancelled());
+		Assert.assertEquals(FILES, report.getFiles());
+	}
+	
+	/**
+	 * Cancel before a replay starts, lasts until reset.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testCancelBeforeReplay() throws IOException
+	{
+		for (int index = 0; index < FILES; index++)
+		{
+			write(folder.newFile("traffic-" + index + ".json"), data, data.length);
+		}
+		
+		FeedReplayer<TrafficData> replayer = new FeedReplayer<TrafficData>(executor, 2, new TrafficDataFactory(), new TrafficDataParserFactory());
+		
+		replayer.cancel();
+		
+		CountingSink sink = new CountingSink();
+		
+		ReplayReport report = replayer.replay(folder.getRoot(), sink);
+		
+		Assert.assertTrue(report.isCancelled());
+		Assert.assertEquals(0, report.getRecords());
+		Assert.assertEquals(0, report.getBytes());
+		Assert.assertEquals(0, sink.records.get());
+		
+		Assert.assertTrue(replayer.replay(folder.getRoot(), sink).isCancelled());
+		
+		replayer.reset();
+		
+		report = replayer.replay(folder.getRoot(), sink);
+		
+		Assert.assertFalse(report.isCancelled());
+		Assert.assertEquals(FILES, report.getFiles());
+		Assert.assertEquals(FILES * TRAFFIC_RECORDS, sink.records.get());
+	}
+	
+	/**
+	 * Read across mapped regions smaller than the file.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMappedRegions() throws IOException
+	{
+		File file = folder.newFile("traffic.json");
+		
+		write(file, data, data.length);
+		
+		MappedInputStream stream = new MappedInputStream(new FileInputStream(file).getChannel(), 1000);
+		
+		try
+		{
+			Assert.assertEquals(data.length, stream.getSize());
+			Assert.assertArrayEquals(data, read(stream));
+			Assert.assertEquals(data.length, stream.getCount());
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Accepts every record.
+	 * 
+	 */
+	private static class CountingSink implements ReplaySink<TrafficData>
+	{
+		private AtomicInteger records = new AtomicInteger();
+		
+		@Override
+		public boolean accept(File file, String publicationTime, TrafficData record)
+		{
+			records.incrementAndGet();
+			
+			return true;
+		}
+		
+		@Override
+		public void error(File file, Exception e)
+		{
+		}
+	}
+	
+	private static void write(File file, byte[] data, int length) throws IOException
+	{
+		FileOutputStream output = new FileOutputStream(file);
+		
+		try
+		{
+			output.write(data, 0, length);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	private static byte[] read(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[777];
+		
+		int count;
+		
+		while ((count = stream.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, count);
+		}
+		
+		stream.close();
+		
+		return output.toByteArray();
+	}
+	
+}
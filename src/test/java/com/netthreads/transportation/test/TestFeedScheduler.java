@@ -0,0 +1,259 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.poller.FeedHealth;
+import com.netthreads.transportation.poller.FeedListener;
+import com.netthreads.transportation.poller.FeedResult;
+import com.netthreads.transportation.poller.FeedScheduler;
+import com.netthreads.transportation.poller.Pollable;
+
+/**
+ * Feed scheduler tests.
+ * 
+ */
+public class TestFeedScheduler
+{
+	/**
+	 * Feed which takes a while and counts polls running at once.
+	 * 
+	 */
+	private static class SlowFeed implements Pollable<String>
+	{
+		private static AtomicInteger running = new AtomicInteger();
+		private static AtomicInteger peak = new AtomicInteger();
+		
+		private volatile long duration;
+		
+		private AtomicInteger polls = new AtomicInteger();
+		private AtomicInteger overlaps = new AtomicInteger();
+		private AtomicInteger active = new AtomicInteger();
+		
+		private volatile CountDownLatch cancelled = new CountDownLatch(1);
+		
+		SlowFeed(long duration)
+		{
+			this.duration = duration;
+		}
+		
+		@Override
+		public FeedResult<String> poll()
+		{
+			if (active.incrementAndGet() > 1)
+			{
+				overlaps.incrementAndGet();
+			}
+			
+			int now = running.incrementAndGet();
+			
+			synchronized (peak)
+			{
+				peak.set(Math.max(peak.get(), now));
+			}
+			
+			int state = StreamParser.DONE;
+			
+			try
+			{
+				if (cancelled.await(duration, TimeUnit.MILLISECONDS))
+				{
+					state = StreamParser.CANCELLED;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				state = StreamParser.ERROR;
+			}
+			finally
+			{
+				running.decrementAndGet();
+				active.decrementAndGet();
+			}
+			
+			polls.incrementAndGet();
+			
+			List<String> records = Collections.emptyList();
+			
+			return new FeedResult<String>(records, state, 200, true, null, null, 0, duration, null);
+		}
+		
+		@Override
+		public void cancel()
+		{
+			cancelled.countDown();
+		}
+		
+		@Override
+		public void reset()
+		{
+			cancelled = new CountDownLatch(1);
+		}
+	}
+	
+	/**
+	 * Test feeds poll on their own intervals, never overlap and never exceed
+	 * the concurrency between them.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSchedule() throws Exception
+	{
+		SlowFeed.peak.set(0);
+		
+		FeedScheduler scheduler = new FeedScheduler(2);
+		
+		final AtomicInteger results = new AtomicInteger();
+		
+		FeedListener<String> listener = new FeedListener<String>()
+		{
+			@Override
+			public void polled(String name, FeedResult<String> result)
+			{
+				results.incrementAndGet();
+			}
+		};
+		
+		SlowFeed fast = new SlowFeed(5);
+		SlowFeed slow = new SlowFeed(80);
+		SlowFeed other = new SlowFeed(5);
+		
+		FeedHealth fastHealth = scheduler.add("fast", fast, 20, 5, listener);
+		FeedHealth slowHealth = scheduler.add("slow", slow, 10, 0, listener);
+		scheduler.add("other", other, 100, 20, listener);
+		
+		Thread.sleep(500);
+		
+		Assert.assertTrue(scheduler.shutdown(1000));
+		
+		Assert.assertTrue(fast.polls.get() >= 5);
+		Assert.assertTrue(slow.polls.get() >= 2);
+		Assert.assertTrue(other.polls.get() >= 2);
+		
+		Assert.assertEquals(fast.polls.get() + slow.polls.get() + other.polls.get(), results.get());
+		
+		Assert.assertEquals(0, fast.overlaps.get());
+		Assert.assertEquals(0, slow.overlaps.get());
+		Assert.assertTrue(SlowFeed.peak.get() <= 2);
+		
+		// The slow feed is due every 10ms but takes 80ms.
+		Assert.assertTrue(slowHealth.getSkipped() > 0);
+		
+		// Shutdown may have cancelled the last poll.
+		Assert.assertTrue(fastHealth.getLastSuccess() != FeedHealth.NEVER);
+		Assert.assertTrue(fastHealth.getSuccesses() >= fast.polls.get() - 1);
+		Assert.assertEquals(fast.polls.get(), fastHealth.getSuccesses() + fastHealth.getFailures());
+		Assert.assertEquals(3, scheduler.getHealth().size());
+	}
+	
+	/**
+	 * Test a feed removed while polling polls normally when added back.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRemoveAndAdd() throws Exception
+	{
+		FeedScheduler scheduler = new FeedScheduler(1);
+		
+		SlowFeed feed = new SlowFeed(60000);
+		
+		FeedHealth health = scheduler.add("feed", feed, 1000, 0, null);
+		
+		while (!health.isRunning())
+		{
+			Thread.sleep(5);
+		}
+		
+		Assert.assertTrue(scheduler.remove("feed"));
+		
+		while (health.isRunning())
+		{
+			Thread.sleep(5);
+		}
+		
+		Assert.assertEquals(StreamParser.CANCELLED, health.getLastState());
+		
+		feed.duration = 5;
+		
+		FeedHealth again = scheduler.add("feed", feed, 20, 0, null);
+		
+		while (again.getSuccesses() + again.getFailures() < 3)
+		{
+			Thread.sleep(5);
+		}
+		
+		Assert.assertTrue(scheduler.shutdown(1000));
+		
+		// Shutdown may have cancelled the last poll.
+		Assert.assertTrue(again.getSuccesses() >= 2);
+		Assert.assertTrue(again.getFailures() <= 1);
+		Assert.assertEquals(0, feed.overlaps.get());
+	}
+	
+	/**
+	 * Test shutdown cancels a poll in progress.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testShutdown() throws Exception
+	{
+		FeedScheduler scheduler = new FeedScheduler(1);
+		
+		SlowFeed feed = new SlowFeed(60000);
+		
+		FeedHealth health = scheduler.add("stuck", feed, 1000, 0, null);
+		
+		while (!health.isRunning())
+		{
+			Thread.sleep(5);
+		}
+		
+		long start = System.currentTimeMillis();
+		
+		Assert.assertTrue(scheduler.shutdown(5000));
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		
+		Assert.assertEquals(StreamParser.CANCELLED, health.getLastState());
+		Assert.assertEquals(1, health.getFailures());
+		
+		try
+		{
+			scheduler.add("late", feed, 1000, 0, null);
+			
+			Assert.fail();
+		}
+		catch (IllegalStateException e)
+		{
+			// Expected.
+		}
+	}
+	
+}
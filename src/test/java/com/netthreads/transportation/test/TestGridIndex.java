@@ -0,0 +1,244 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.change.ChangeFeed;
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+import com.netthreads.transportation.spatial.GridIndex;
+import com.netthreads.transportation.spatial.Haversine;
+import com.netthreads.transportation.spatial.SpatialVisitor;
+
+/**
+ * Check grid queries against a linear scan.
+ * 
+ */
+public class TestGridIndex
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	
+	/**
+	 * Collects ids.
+	 * 
+	 */
+	private static class Ids implements SpatialVisitor<TrafficData>
+	{
+		private Set<String> ids = new HashSet<String>();
+		
+		@Override
+		public boolean visit(TrafficData record)
+		{
+			Assert.assertTrue(ids.add(record.getId()));
+			
+			return true;
+		}
+	}
+	
+	private static TrafficData record(String id, double latitude, double longitude)
+	{
+		TrafficData data = new TrafficData();
+		
+		data.setId(id);
+		data.setLatitudeDouble(latitude);
+		data.setLongitudeDouble(longitude);
+		
+		return data;
+	}
+	
+	private static void check(GridIndex<TrafficData> index, List<TrafficData> records, Random random)
+	{
+		Assert.assertEquals(records.size(), index.size());
+		
+		for (int query = 0; query < 200; query++)
+		{
+			double south = 55.7 + random.nextDouble() * 0.3;
+			double west = -4.5 + random.nextDouble() * 0.5;
+			double north = south + random.nextDouble() * 0.1;
+			double east = west + random.nextDouble() * 0.2;
+			
+			Ids box = new Ids();
+			index.search(south, west, north, east, box);
+			
+			Set<String> expected = new HashSet<String>();
+			
+			for (TrafficData data : records)
+			{
+				double latitude = data.getLatitudeDouble();
+				double longitude = data.getLongitudeDouble();
+				
+				if (latitude >= south && latitude <= north && longitude >= west && longitude <= east)
+				{
+					expected.add(data.getId());
+				}
+			}
+			
+			Assert.assertEquals(expected, box.ids);
+			
+			double metres = random.nextDouble() * 5000;
+			
+			Ids circle = new Ids();
+			index.radius(south, west, metres, circle);
+			
+			expected.clear();
+			
+			for (TrafficData data : records)
+			{
+				if (Haversine.distance(south, west, data.getLatitudeDouble(), data.getLongitudeDouble()) <= metres)
+				{
+					expected.add(data.getId());
+				}
+			}
+			
+			Assert.assertEquals(expected, circle.ids);
+		}
+		
+		// Larger than the occupied cells.
+		Ids all = new Ids();
+		index.search(-90, -180, 90, 180, all);
+		Assert.assertEquals(records.size(), all.ids.size());
+	}
+	
+	/**
+	 * Build, then follow adds, moves and removals.
+	 * 
+	 */
+	@Test
+	public void testQueries()
+	{
+		Random random = new Random(18);
+		
+		List<TrafficData> records = new ArrayList<TrafficData>();
+		
+		for (int index = 0; index < 5000; index++)
+		{
+			records.add(record("R" + index, 55.7 + random.nextDouble() * 0.4, -4.6 + random.nextDouble() * 0.8));
+		}
+		
+		GridIndex<TrafficData> index = new GridIndex<TrafficData>();
+		
+		index.build(records);
+		
+		check(index, records, random);
+		
+		for (int step = 0; step < 1000; step++)
+		{
+			int position = random.nextInt(records.size());
+			
+			TrafficData previous = records.get(position);
+			
+			if (step % 2 == 0)
+			{
+				TrafficData moved = record(previous.getId(), previous.getLatitudeDouble() + 0.05, previous.getLongitudeDouble() - 0.05);
+				
+				index.updated(previous, moved);
+				
+				records.set(position, moved);
+			}
+			else
+			{
+				index.removed(previous);
+				
+				records.remove(position);
+			}
+		}
+		
+		TrafficData missing = new TrafficData();
+		missing.setId("missing");
+		
+		Assert.assertFalse(index.add(missing));
+		
+		check(index, records, random);
+		
+		Counter first = new Counter(1);
+		
+		Assert.assertFalse(index.search(-90, -180, 90, 180, first));
+		Assert.assertEquals(1, first.count);
+	}
+	
+	/**
+	 * Stops after a number of records.
+	 * 
+	 */
+	private static class Counter implements SpatialVisitor<TrafficData>
+	{
+		private int limit;
+		private int count;
+		
+		public Counter(int limit)
+		{
+			this.limit = limit;
+		}
+		
+		@Override
+		public boolean visit(TrafficData record)
+		{
+			return ++count < limit;
+		}
+	}
+	
+	/**
+	 * Follow a parsed feed.
+	 * 
+	 */
+	@Test
+	public void testChangeFeed()
+	{
+		GridIndex<TrafficData> index = new GridIndex<TrafficData>();
+		
+		ChangeFeed<TrafficData> feed = new ChangeFeed<TrafficData>(index);
+		
+		StreamParser<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+		
+		int state = feed.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		
+		int located = 0;
+		
+		for (TrafficData data : feed.getRecords())
+		{
+			if (data.hasCoordinates())
+			{
+				located++;
+			}
+		}
+		
+		Assert.assertTrue(located > 0);
+		Assert.assertEquals(located, index.size());
+		
+		Counter counter = new Counter(Integer.MAX_VALUE);
+		
+		index.radius(55.86, -4.25, 50000, counter);
+		
+		Assert.assertTrue(counter.count > 0);
+	}
+	
+}
@@ -0,0 +1,191 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netthreads.transportation.change.ChangeFeed;
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+import com.netthreads.transportation.search.IncidentTextIndex;
+import com.netthreads.transportation.search.IncidentTextIndex.Field;
+
+/**
+ * Check index searches against filtering the feed.
+ * 
+ */
+public class TestIncidentTextIndex
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	
+	private IncidentTextIndex index;
+	private List<TrafficData> records;
+	
+	@Before
+	public void setUp()
+	{
+		index = new IncidentTextIndex();
+		
+		ChangeFeed<TrafficData> feed = new ChangeFeed<TrafficData>(index);
+		
+		int state = feed.poll(new StreamParserImpl<TrafficData>(), ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		
+		records = feed.getRecords();
+	}
+	
+	private static String text(TrafficData record, Field field)
+	{
+		String value;
+		
+		switch (field)
+		{
+			case LINK_NAME:
+				value = record.getLinkName();
+				break;
+			case LOCAL_LINK_NAME:
+				value = record.getLocalLinkName();
+				break;
+			default:
+				value = record.getTownName();
+				break;
+		}
+		
+		return value == null ? "" : value.toLowerCase(Locale.UK);
+	}
+	
+	/**
+	 * Ids of records with a token in a field starting with text.
+	 * 
+	 */
+	private Set<String> scan(Field field, String text, boolean prefix)
+	{
+		Set<String> ids = new HashSet<String>();
+		
+		for (TrafficData record : records)
+		{
+			for (Field candidate : Field.values())
+			{
+				if (field != null && candidate != field)
+				{
+					continue;
+				}
+				
+				for (String token : text(record, candidate).split("[^\\p{L}\\p{Nd}]+"))
+				{
+					if (token.length() > 0 && (prefix ? token.startsWith(text) : token.equals(text)))
+					{
+						ids.add(record.getId());
+					}
+				}
+			}
+		}
+		
+		return ids;
+	}
+	
+	@Test
+	public void testSearch()
+	{
+		// Nothing until published.
+		Assert.assertTrue(index.token(null, "glasgow").isEmpty());
+		
+		index.publish();
+		
+		Set<String> glasgow = index.find(Field.TOWN_NAME, " GLASGOW ");
+		
+		Assert.assertFalse(glasgow.isEmpty());
+		Assert.assertEquals(scan(Field.TOWN_NAME, "glasgow", false), glasgow);
+		
+		for (String text : new String[] { "a8", "a81", "m", "road", "street", "g", "x" })
+		{
+			for (Field field : new Field[] { null, Field.LINK_NAME, Field.LOCAL_LINK_NAME, Field.TOWN_NAME })
+			{
+				Assert.assertEquals(text + " " + field, scan(field, text, false), index.token(field, text.toUpperCase(Locale.UK)));
+				Assert.assertEquals(text + " " + field, scan(field, text, true), index.prefix(field, text));
+			}
+		}
+		
+		Assert.assertFalse(index.token(Field.LINK_NAME, "A81").isEmpty());
+	}
+	
+	@Test
+	public void testChanges()
+	{
+		index.publish();
+		
+		Set<String> glasgow = index.token(Field.TOWN_NAME, "glasgow");
+		Set<String> a81 = index.token(Field.LINK_NAME, "a81");
+		
+		Assert.assertFalse(a81.isEmpty());
+		
+		String id = a81.iterator().next();
+		
+		TrafficData previous = null;
+		
+		for (TrafficData record : records)
+		{
+			if (record.getId().equals(id))
+			{
+				previous = record;
+			}
+		}
+		
+		TrafficData moved = new TrafficData();
+		moved.setId(id);
+		moved.setLinkName("M8");
+		moved.setTownName(previous.getTownName());
+		
+		index.updated(previous, moved);
+		
+		// Readers keep the last snapshot until publish.
+		Assert.assertTrue(index.token(Field.LINK_NAME, "a81").contains(id));
+		
+		index.publish();
+		
+		Assert.assertFalse(index.token(Field.LINK_NAME, "a81").contains(id));
+		Assert.assertTrue(index.token(Field.LINK_NAME, "m8").contains(id));
+		Assert.assertTrue(index.find(Field.LINK_NAME, "m8").contains(id));
+		
+		// Untouched terms share the published set.
+		Assert.assertSame(glasgow, index.token(Field.TOWN_NAME, "glasgow"));
+		
+		index.removed(moved);
+		index.publish();
+		
+		Assert.assertFalse(index.token(null, "m8").contains(id));
+		Assert.assertFalse(index.token(Field.TOWN_NAME, "glasgow").contains(id));
+		
+		index.build(records);
+		
+		Assert.assertEquals(glasgow, index.token(Field.TOWN_NAME, "glasgow"));
+	}
+	
+}
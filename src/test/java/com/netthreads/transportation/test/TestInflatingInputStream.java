@@ -0,0 +1,240 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.InflaterPool;
+import com.netthreads.transportation.parser.InflatingInputStream;
+import com.netthreads.transportation.parser.ListRecordSink;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * Compressed input tests.
+ * 
+ */
+public class TestInflatingInputStream
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	
+	/**
+	 * Test plain, gzip and zlib documents parse to the same records with one
+	 * pooled inflater.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testParse() throws Exception
+	{
+		byte[] plain = read(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(plain);
+		gzip.close();
+		
+		byte[] gzipped = out.toByteArray();
+		
+		out = new ByteArrayOutputStream();
+		DeflaterOutputStream zlib = new DeflaterOutputStream(out);
+		zlib.write(plain);
+		zlib.close();
+		
+		byte[] zlibbed = out.toByteArray();
+		
+		Assert.assertTrue(gzipped.length < plain.length / 4);
+		
+		InflaterPool pool = new InflaterPool();
+		
+		StreamParserImpl<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+		streamParser.setInflaterPool(pool);
+		
+		List<TrafficData> expected = new ArrayList<TrafficData>();
+		
+		Assert.assertEquals(StreamParser.DONE, streamParser.fetch(new ByteArrayInputStream(plain), expected, new TrafficDataFactory(), new TrafficDataParser()));
+		Assert.assertTrue(expected.size() > 0);
+		
+		byte[][] documents = { gzipped, zlibbed, gzipped };
+		
+		for (byte[] document : documents)
+		{
+			List<TrafficData> list = new ArrayList<TrafficData>();
+			
+			Assert.assertEquals(StreamParser.DONE, streamParser.fetch(new ByteArrayInputStream(document), list, new TrafficDataFactory(), new TrafficDataParser()));
+			Assert.assertEquals(expected.size(), list.size());
+			Assert.assertEquals(expected.get(expected.size() - 1).getId(), list.get(list.size() - 1).getId());
+			
+			list.clear();
+			
+			Assert.assertEquals(StreamParser.DONE, streamParser.fetch(document, 0, document.length, new ListRecordSink<TrafficData>(list), new TrafficDataFactory(), new TrafficDataParser()));
+			Assert.assertEquals(expected.size(), list.size());
+		}
+		
+		// One of each kind created, then reused.
+		Assert.assertEquals(2, pool.getCreated());
+		Assert.assertEquals(4, pool.getReused());
+		Assert.assertEquals(2, pool.size());
+		
+		// Broken document, the inflater still goes back.
+		Assert.assertEquals(StreamParser.ERROR, streamParser.fetch(new ByteArrayInputStream(gzipped, 0, gzipped.length / 2), new ArrayList<TrafficData>(), new TrafficDataFactory(), new TrafficDataParser()));
+		Assert.assertEquals(2, pool.size());
+	}
+	
+	/**
+	 * Test gzip header fields, concatenated members and trailer checks.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMembers() throws Exception
+	{
+		InflaterPool pool = new InflaterPool();
+		InflatingInputStream stream = new InflatingInputStream(pool, 16);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(member("first,", true));
+		out.write(member("second", false));
+		
+		byte[] data = out.toByteArray();
+		
+		Assert.assertEquals("first,second", new String(read(stream.reset(new ByteArrayInputStream(data))), "UTF-8"));
+		
+		// Plain passes through.
+		Assert.assertEquals("{\"a\":1}", new String(read(stream.reset(new ByteArrayInputStream("{\"a\":1}".getBytes("UTF-8")))), "UTF-8"));
+		
+		// Bad CRC.
+		byte[] corrupt = member("text", false);
+		corrupt[corrupt.length - 8] ^= 1;
+		
+		try
+		{
+			read(stream.reset(new ByteArrayInputStream(corrupt)));
+			
+			Assert.fail();
+		}
+		catch (ZipException e)
+		{
+			// Expected.
+		}
+		
+		// Cut short.
+		try
+		{
+			read(stream.reset(new ByteArrayInputStream(data, 0, data.length - 12)));
+			
+			Assert.fail();
+		}
+		catch (EOFException e)
+		{
+			// Expected.
+		}
+		
+		stream.release();
+		
+		Assert.assertEquals(1, pool.getCreated());
+		Assert.assertEquals(1, pool.size());
+	}
+	
+	/**
+	 * Build a gzip member by hand, with a file name and extra field if asked.
+	 * 
+	 * @param text
+	 * @param fields
+	 * 
+	 * @return The member.
+	 * 
+	 * @throws IOException
+	 */
+	private static byte[] member(String text, boolean fields) throws IOException
+	{
+		byte[] content = text.getBytes("UTF-8");
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		out.write(0x1f);
+		out.write(0x8b);
+		out.write(8);
+		out.write(fields ? 4 | 8 : 0);
+		out.write(new byte[6]);
+		
+		if (fields)
+		{
+			out.write(3);
+			out.write(0);
+			out.write(new byte[] { 1, 2, 3 });
+			out.write("name.json".getBytes("UTF-8"));
+			out.write(0);
+		}
+		
+		DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+		deflater.write(content);
+		deflater.finish();
+		
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		
+		writeInt(out, crc.getValue());
+		writeInt(out, content.length);
+		
+		return out.toByteArray();
+	}
+	
+	private static void writeInt(ByteArrayOutputStream out, long value)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			out.write((int) (value >>> (i * 8)) & 0xff);
+		}
+	}
+	
+	private static byte[] read(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[7];
+		
+		int read;
+		
+		while ((read = stream.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, read);
+		}
+		
+		return out.toByteArray();
+	}
+	
+}
@@ -0,0 +1,320 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.live.LiveSnapshot;
+import com.netthreads.transportation.live.LiveStateStore;
+import com.netthreads.transportation.parser.RecordFingerprints;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * Live state store tests.
+ * 
+ */
+public class TestLiveStateStore
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	private static final String JSON_CARPARK_FILE = "/carParkData.json";
+	
+	/**
+	 * Test a poll is only visible once complete and a cancelled poll is
+	 * discarded.
+	 * 
+	 */
+	@Test
+	public void testPublish()
+	{
+		final LiveStateStore<TrafficData> store = new LiveStateStore<TrafficData>();
+		
+		Assert.assertEquals(0, store.current().size());
+		Assert.assertEquals(0, store.current().getSequence());
+		
+		final int[] seen = new int[1];
+		
+		// Readers see the empty snapshot until the poll is done.
+		LiveStateStore<TrafficData> watched = new LiveStateStore<TrafficData>()
+		{
+			@Override
+			public boolean accept(TrafficData record)
+			{
+				Assert.assertEquals(0, current().size());
+				
+				seen[0]++;
+				
+				return super.accept(record);
+			}
+		};
+		
+		int state = watched.poll(new StreamParserImpl<TrafficData>(), ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		
+		LiveSnapshot<TrafficData> first = watched.current();
+		
+		Assert.assertEquals(seen[0], first.size());
+		Assert.assertEquals(1, first.getSequence());
+		
+		for (TrafficData record : first.getRecords())
+		{
+			Assert.assertSame(record, first.get(record.getId()));
+		}
+		
+		// Cancel part way, the first snapshot stays.
+		final StreamParserImpl<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+		
+		LiveStateStore<TrafficData> cancelling = new LiveStateStore<TrafficData>()
+		{
+			private int count;
+			
+			@Override
+			public boolean accept(TrafficData record)
+			{
+				if (++count == 3)
+				{
+					streamParser.cancel();
+				}
+				
+				return super.accept(record);
+			}
+		};
+		
+		cancelling.publish(first.getRecords());
+		
+		LiveSnapshot<TrafficData> before = cancelling.current();
+		
+		state = cancelling.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.CANCELLED, state);
+		Assert.assertSame(before, cancelling.current());
+		Assert.assertEquals(first.size(), before.size());
+		
+		try
+		{
+			first.getRecords().clear();
+			
+			Assert.fail();
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// Expected.
+		}
+	}
+	
+	/**
+	 * Test records skipped as unchanged are carried into the next snapshot.
+	 * 
+	 */
+	@Test
+	public void testFingerprints()
+	{
+		LiveStateStore<CarParkData> store = new LiveStateStore<CarParkData>();
+		
+		StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		streamParser.setFingerprints(new RecordFingerprints(), store);
+		
+		store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		LiveSnapshot<CarParkData> first = store.current();
+		
+		Assert.assertTrue(first.size() > 0);
+		
+		store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		LiveSnapshot<CarParkData> second = store.current();
+		
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(first.size(), second.size());
+		
+		for (CarParkData record : first.getRecords())
+		{
+			Assert.assertSame(record, second.get(record.getId()));
+		}
+	}
+	
+	/**
+	 * Test a cancelled poll with fingerprints on does not hide records from
+	 * the next poll.
+	 * 
+	 */
+	@Test
+	public void testCancelledPollWithFingerprints()
+	{
+		final StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		LiveStateStore<CarParkData> store = new LiveStateStore<CarParkData>()
+		{
+			private int count;
+			
+			@Override
+			public boolean accept(CarParkData record)
+			{
+				if (++count == 3)
+				{
+					streamParser.cancel();
+				}
+				
+				return super.accept(record);
+			}
+		};
+		
+		RecordFingerprints fingerprints = new RecordFingerprints();
+		
+		streamParser.setFingerprints(fingerprints, store);
+		store.setFingerprints(fingerprints);
+		
+		int state = store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(StreamParser.CANCELLED, state);
+		Assert.assertEquals(0, store.current().size());
+		
+		streamParser.reset();
+		
+		state = store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertEquals(10, store.current().size());
+		Assert.assertNull(store.getError());
+	}
+	
+	/**
+	 * Test an unchanged record missing from the last snapshot stops the poll
+	 * being published and the next poll builds everything.
+	 * 
+	 */
+	@Test
+	public void testMissingPrevious()
+	{
+		StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		RecordFingerprints fingerprints = new RecordFingerprints();
+		
+		LiveStateStore<CarParkData> store = new LiveStateStore<CarParkData>();
+		
+		streamParser.setFingerprints(fingerprints, store);
+		store.setFingerprints(fingerprints);
+		
+		store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		LiveSnapshot<CarParkData> first = store.current();
+		
+		Assert.assertEquals(10, first.size());
+		
+		// Snapshot replaced from elsewhere, the fingerprints are dropped.
+		store.publish(first.getRecords().subList(0, 5));
+		
+		Assert.assertEquals(0, fingerprints.size());
+		
+		store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(10, store.current().size());
+		
+		// A second store sharing the fingerprints has none of the records.
+		LiveStateStore<CarParkData> other = new LiveStateStore<CarParkData>();
+		
+		streamParser.setFingerprints(fingerprints, other);
+		other.setFingerprints(fingerprints);
+		
+		int state = other.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertEquals(0, other.current().getSequence());
+		Assert.assertNotNull(other.getError());
+		Assert.assertEquals(0, fingerprints.size());
+		
+		other.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(10, other.current().size());
+		Assert.assertNull(other.getError());
+	}
+	
+	/**
+	 * Test readers always see a consistent snapshot while polls are
+	 * published.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReaders() throws Exception
+	{
+		final LiveStateStore<TrafficData> store = new LiveStateStore<TrafficData>();
+		
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicInteger failures = new AtomicInteger();
+		
+		Thread[] readers = new Thread[4];
+		
+		for (int i = 0; i < readers.length; i++)
+		{
+			readers[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					long sequence = 0;
+					
+					while (running.get())
+					{
+						LiveSnapshot<TrafficData> snapshot = store.current();
+						
+						if (snapshot.getSequence() < sequence || snapshot.getRecords().size() != snapshot.getIds().size())
+						{
+							failures.incrementAndGet();
+						}
+						
+						sequence = snapshot.getSequence();
+					}
+				}
+			};
+			
+			readers[i].start();
+		}
+		
+		StreamParserImpl<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+		
+		for (int i = 0; i < 50; i++)
+		{
+			store.poll(streamParser, ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), new TrafficDataFactory(), new TrafficDataParser());
+		}
+		
+		running.set(false);
+		
+		for (Thread reader : readers)
+		{
+			reader.join();
+		}
+		
+		Assert.assertEquals(0, failures.get());
+		Assert.assertEquals(50, store.current().getSequence());
+	}
+	
+}
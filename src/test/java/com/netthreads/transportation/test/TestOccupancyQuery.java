@@ -0,0 +1,209 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+import com.netthreads.transportation.history.OccupancyAggregate;
+import com.netthreads.transportation.history.OccupancyQuery;
+import com.netthreads.transportation.history.OccupancyStore;
+import com.netthreads.transportation.history.SampleVisitor;
+
+/**
+ * Check summary driven queries against a plain scan of the samples.
+ * 
+ */
+public class TestOccupancyQuery
+{
+	private static final String IDENTITY = "Cambridge Street:CPG03C";
+	
+	private static final long START = 1426000000000L;
+	private static final long INTERVAL = 300000L;
+	
+	private static final long MINUTE = 60000L;
+	private static final long DAY = 24 * 60 * MINUTE;
+	
+	private static final int SAMPLES = 2000;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private OccupancyStore store;
+	private OccupancyQuery query;
+	
+	private List<Long> times = new ArrayList<Long>();
+	private List<Integer> occupied = new ArrayList<Integer>();
+	private List<CarParkStatus> statuses = new ArrayList<CarParkStatus>();
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		store = new OccupancyStore(folder.newFolder("history"), 500);
+		
+		for (int index = 0; index < SAMPLES; index++)
+		{
+			CarParkData data = new CarParkData();
+			
+			boolean full = (index / 100) % 3 == 0;
+			
+			data.setCarParkIdentity(IDENTITY);
+			data.setTotalCapacityInt(812);
+			data.setOccupiedSpacesInt(index % 41 == 0 ? CarParkData.NO_VALUE : (full ? 812 : (index * 13) % 800));
+			data.setCarParkStatusCode(full ? CarParkStatus.CAR_PARK_FULL : CarParkStatus.SPACES_AVAILABLE);
+			
+			store.append(START + index * INTERVAL, data);
+		}
+		
+		store.read(IDENTITY, 0, Long.MAX_VALUE, new SampleVisitor()
+		{
+			@Override
+			public boolean sample(long time, int value, int capacity, CarParkStatus status)
+			{
+				times.add(time);
+				occupied.add(value);
+				statuses.add(status);
+				
+				return true;
+			}
+		});
+		
+		Assert.assertEquals(SAMPLES, times.size());
+		
+		query = new OccupancyQuery(store);
+	}
+	
+	@After
+	public void tearDown() throws IOException
+	{
+		store.close();
+	}
+	
+	@Test
+	public void testOccupancyAt() throws IOException
+	{
+		Assert.assertEquals(CarParkData.NO_VALUE, query.occupancyAt(IDENTITY, START - 1));
+		Assert.assertEquals(CarParkData.NO_VALUE, query.occupancyAt("Nowhere", START));
+		
+		for (int index = 0; index < SAMPLES; index += 7)
+		{
+			long time = times.get(index);
+			
+			Assert.assertEquals(occupied.get(index).intValue(), query.occupancyAt(IDENTITY, time));
+			Assert.assertEquals(occupied.get(index).intValue(), query.occupancyAt(IDENTITY, time + INTERVAL - 1));
+		}
+		
+		Assert.assertEquals(occupied.get(SAMPLES - 1).intValue(), query.occupancyAt(IDENTITY, Long.MAX_VALUE / 2));
+	}
+	
+	@Test
+	public void testAggregate() throws IOException
+	{
+		checkAggregate(START, START + SAMPLES * INTERVAL, 15 * MINUTE);
+		checkAggregate(START - DAY, START + 3 * DAY, DAY);
+		checkAggregate(START + 17 * INTERVAL + 1, START + 1234 * INTERVAL, 4 * 60 * MINUTE);
+		checkAggregate(START + 100 * INTERVAL, START + 101 * INTERVAL, MINUTE);
+	}
+	
+	@Test
+	public void testTimeInStatus() throws IOException
+	{
+		checkTimeInStatus(START - DAY, START + SAMPLES * INTERVAL);
+		checkTimeInStatus(START, START + 10 * DAY);
+		checkTimeInStatus(START + 49 * INTERVAL + 1, START + 1500 * INTERVAL - 1);
+		checkTimeInStatus(START + 200 * INTERVAL, START + 201 * INTERVAL);
+		
+		Assert.assertEquals(0, query.timeInStatus(IDENTITY, OccupancyQuery.FULL, START - DAY, START));
+	}
+	
+	private void checkAggregate(long from, long to, long bucket) throws IOException
+	{
+		OccupancyAggregate aggregate = query.aggregate(IDENTITY, from, to, bucket);
+		
+		Assert.assertEquals((to - from + bucket - 1) / bucket, aggregate.size());
+		
+		for (int index = 0; index < aggregate.size(); index++)
+		{
+			long start = aggregate.getStart(index);
+			long end = Math.min(to, start + bucket);
+			
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			long sum = 0;
+			int count = 0;
+			
+			for (int sample = 0; sample < SAMPLES; sample++)
+			{
+				long time = times.get(sample);
+				int value = occupied.get(sample);
+				
+				if (time >= start && time < end && value != CarParkData.NO_VALUE)
+				{
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+					sum += value;
+					count++;
+				}
+			}
+			
+			Assert.assertEquals(count, aggregate.getSamples(index));
+			
+			if (count > 0)
+			{
+				Assert.assertEquals(min, aggregate.getMin(index));
+				Assert.assertEquals(max, aggregate.getMax(index));
+				Assert.assertEquals((double) sum / count, aggregate.getAverage(index), 1e-9);
+			}
+			else
+			{
+				Assert.assertEquals(CarParkData.NO_VALUE, aggregate.getMin(index));
+				Assert.assertTrue(Double.isNaN(aggregate.getAverage(index)));
+			}
+		}
+	}
+	
+	private void checkTimeInStatus(long from, long to) throws IOException
+	{
+		long expected = 0;
+		
+		for (int sample = 0; sample < SAMPLES; sample++)
+		{
+			long start = Math.max(from, times.get(sample));
+			long end = Math.min(to, sample + 1 < SAMPLES ? times.get(sample + 1) : to);
+			
+			if (end > start && OccupancyQuery.FULL.contains(statuses.get(sample)))
+			{
+				expected += end - start;
+			}
+		}
+		
+		Assert.assertEquals(expected, query.timeInStatus(IDENTITY, OccupancyQuery.FULL, from, to));
+	}
+	
+}
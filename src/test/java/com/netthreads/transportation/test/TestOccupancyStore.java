@@ -0,0 +1,331 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
+import com.netthreads.transportation.history.OccupancyRecorder;
+import com.netthreads.transportation.history.OccupancyStore;
+import com.netthreads.transportation.history.SampleVisitor;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+
+/**
+ * Write and read back occupancy history.
+ * 
+ */
+public class TestOccupancyStore
+{
+	private static final String JSON_CAR_PARK_FILE = "/carParkData.json";
+	
+	private static final String IDENTITY = "Buchanan Galleries:CPG04C";
+	
+	private static final long START = 1426000000000L;
+	private static final long INTERVAL = 300000L;
+	
+	private static final int SEGMENT_SAMPLES = 100;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Sample values as a function of index.
+	 * 
+	 */
+	private static CarParkData sample(int index)
+	{
+		CarParkData data = new CarParkData();
+		
+		int occupied = (index * 37) % 500;
+		
+		data.setCarParkIdentity(IDENTITY);
+		data.setOccupiedSpacesInt(index % 97 == 0 ? CarParkData.NO_VALUE : occupied);
+		data.setTotalCapacityInt(index < 500 ? 500 : 600);
+		data.setCarParkStatusCode(occupied > 450 ? CarParkStatus.CAR_PARK_FULL : CarParkStatus.SPACES_AVAILABLE);
+		
+		return data;
+	}
+	
+	private static class Collector implements SampleVisitor
+	{
+		private List<Long> times = new ArrayList<Long>();
+		private List<CarParkData> samples = new ArrayList<CarParkData>();
+		
+		@Override
+		public boolean sample(long time, int occupied, int capacity, CarParkStatus status)
+		{
+			CarParkData data = new CarParkData();
+			
+			data.setOccupiedSpacesInt(occupied);
+			data.setTotalCapacityInt(capacity);
+			data.setCarParkStatusCode(status);
+			
+			times.add(time);
+			samples.add(data);
+			
+			return true;
+		}
+	}
+	
+	private static void check(Collector collector, int first, int count)
+	{
+		Assert.assertEquals(count, collector.samples.size());
+		
+		for (int index = 0; index < count; index++)
+		{
+			CarParkData expected = sample(first + index);
+			CarParkData actual = collector.samples.get(index);
+			
+			Assert.assertEquals(START + (first + index) * INTERVAL, collector.times.get(index).longValue());
+			Assert.assertEquals(expected.getOccupiedSpacesInt(), actual.getOccupiedSpacesInt());
+			Assert.assertEquals(expected.getTotalCapacityInt(), actual.getTotalCapacityInt());
+			Assert.assertEquals(expected.getCarParkStatusCode(), actual.getCarParkStatusCode());
+		}
+	}
+	
+	/**
+	 * Write across several segments, read ranges back, reopen.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		File directory = folder.newFolder("history");
+		
+		OccupancyStore store = new OccupancyStore(directory, SEGMENT_SAMPLES);
+		
+		int samples = 1000;
+		
+		for (int index = 0; index < samples; index++)
+		{
+			Assert.assertTrue(store.append(START + index * INTERVAL, sample(index)));
+		}
+		
+		// Repeated poll.
+		Assert.assertFalse(store.append(START + (samples - 1) * INTERVAL, sample(samples - 1)));
+		
+		Collector all = new Collector();
+		store.read(IDENTITY, 0, Long.MAX_VALUE, all);
+		check(all, 0, samples);
+		
+		Collector range = new Collector();
+		store.read(IDENTITY, START + 250 * INTERVAL, START + 649 * INTERVAL, range);
+		check(range, 250, 400);
+		
+		store.close();
+		
+		File[] segments = directory.listFiles()[0].listFiles();
+		
+		Assert.assertEquals(samples / SEGMENT_SAMPLES, segments.length);
+		
+		long bytes = 0;
+		
+		for (File segment : segments)
+		{
+			bytes += segment.length();
+		}
+		
+		// Under 7 bytes per sample on disk.
+		Assert.assertTrue("Bytes per sample " + (double) bytes / samples, bytes < samples * 7);
+		
+		store = new OccupancyStore(directory, SEGMENT_SAMPLES);
+		
+		Assert.assertTrue(store.getCarParks().contains(IDENTITY));
+		
+		Collector reopened = new Collector();
+		store.read(IDENTITY, START + 95 * INTERVAL, START + 105 * INTERVAL, reopened);
+		check(reopened, 95, 11);
+		
+		Assert.assertTrue(store.append(START + samples * INTERVAL, sample(samples)));
+		
+		store.close();
+	}
+	
+	/**
+	 * A torn frame at the tail is dropped on open and appends carry on.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testTornTail() throws IOException
+	{
+		File directory = folder.newFolder("history");
+		
+		OccupancyStore store = new OccupancyStore(directory);
+		
+		for (int index = 0; index < 10; index++)
+		{
+			store.append(START + index * INTERVAL, sample(index));
+		}
+		
+		store.close();
+		
+		File segment = directory.listFiles()[0].listFiles()[0];
+		
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		
+		try
+		{
+			// Lose the end of the last frame and add zero fill.
+			file.setLength(file.length() - 1);
+			file.seek(file.length());
+			file.write(new byte[16]);
+		}
+		finally
+		{
+			file.close();
+		}
+		
+		store = new OccupancyStore(directory);
+		
+		Collector recovered = new Collector();
+		store.read(IDENTITY, 0, Long.MAX_VALUE, recovered);
+		check(recovered, 0, 9);
+		
+		store.append(START + 9 * INTERVAL, sample(9));
+		store.append(START + 10 * INTERVAL, sample(10));
+		
+		store.close();
+		
+		store = new OccupancyStore(directory);
+		
+		Collector appended = new Collector();
+		store.read(IDENTITY, 0, Long.MAX_VALUE, appended);
+		check(appended, 0, 11);
+		
+		store.close();
+	}
+	
+	/**
+	 * Readers run alongside the writer.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentRead() throws Exception
+	{
+		final OccupancyStore store = new OccupancyStore(folder.newFolder("history"), SEGMENT_SAMPLES);
+		
+		final int samples = 3000;
+		
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		
+		Thread writer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					for (int index = 0; index < samples; index++)
+					{
+						store.append(START + index * INTERVAL, sample(index));
+					}
+				}
+				catch (Throwable e)
+				{
+					error.set(e);
+				}
+			}
+		};
+		
+		writer.start();
+		
+		int seen = 0;
+		
+		while (seen < samples && error.get() == null)
+		{
+			Collector collector = new Collector();
+			
+			store.read(IDENTITY, 0, Long.MAX_VALUE, collector);
+			
+			// Every read is a consistent prefix.
+			Assert.assertTrue(collector.samples.size() >= seen);
+			check(collector, 0, collector.samples.size());
+			
+			seen = collector.samples.size();
+		}
+		
+		writer.join();
+		
+		Assert.assertNull(error.get());
+		
+		store.close();
+	}
+	
+	/**
+	 * Record a parsed feed.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testRecorder() throws IOException
+	{
+		OccupancyStore store = new OccupancyStore(folder.newFolder("history"));
+		
+		OccupancyRecorder recorder = new OccupancyRecorder(store);
+		
+		StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		recorder.setTime(START);
+		
+		int state = streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CAR_PARK_FILE), recorder, new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertNull(recorder.getError());
+		Assert.assertTrue(recorder.getCount() > 0);
+		Assert.assertEquals(recorder.getCount(), store.getCarParks().size());
+		Assert.assertTrue(store.getCarParks().contains(IDENTITY));
+		
+		Collector collector = new Collector();
+		store.read(IDENTITY, START, START, collector);
+		
+		Assert.assertEquals(1, collector.samples.size());
+		Assert.assertEquals(87, collector.samples.get(0).getOccupiedSpacesInt());
+		Assert.assertEquals(2000, collector.samples.get(0).getTotalCapacityInt());
+		Assert.assertEquals(CarParkStatus.ENOUGH_SPACES_AVAILABLE, collector.samples.get(0).getCarParkStatusCode());
+		
+		// Same poll again adds nothing.
+		streamParser.reset();
+		
+		recorder.setTime(START);
+		
+		streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CAR_PARK_FILE), recorder, new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(0, recorder.getCount());
+		
+		store.close();
+	}
+	
+}
@@ -0,0 +1,280 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.metrics.LatencyHistogram;
+import com.netthreads.transportation.metrics.ParseStatistics;
+import com.netthreads.transportation.parser.FetchMetrics;
+import com.netthreads.transportation.parser.FetchStats;
+import com.netthreads.transportation.parser.ListRecordSink;
+import com.netthreads.transportation.parser.RecordFingerprints;
+import com.netthreads.transportation.parser.RecordIterator;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * Parse metrics tests.
+ * 
+ */
+public class TestParseMetrics
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	private static final String JSON_CARPARK_FILE = "/carParkData.json";
+	
+	/**
+	 * Keeps the last fetch measured.
+	 * 
+	 */
+	private static class LastFetch implements FetchMetrics
+	{
+		private FetchMetrics statistics;
+		
+		private long bytes;
+		private long tokens;
+		private int records;
+		private int skipped;
+		private long ioNanos;
+		private long totalNanos;
+		private int state;
+		private int errorKind;
+		
+		LastFetch(FetchMetrics statistics)
+		{
+			this.statistics = statistics;
+		}
+		
+		@Override
+		public void fetched(FetchStats stats)
+		{
+			bytes = stats.getBytes();
+			tokens = stats.getTokens();
+			records = stats.getRecords();
+			skipped = stats.getSkipped();
+			ioNanos = stats.getIoNanos();
+			totalNanos = stats.getTotalNanos();
+			state = stats.getState();
+			errorKind = stats.getErrorKind();
+			
+			statistics.fetched(stats);
+		}
+	}
+	
+	/**
+	 * Test each fetch is measured and totalled.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFetches() throws Exception
+	{
+		byte[] document = read(JSON_TRAFFIC_FILE);
+		
+		ParseStatistics statistics = new ParseStatistics("traffic");
+		LastFetch last = new LastFetch(statistics);
+		
+		StreamParserImpl<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+		streamParser.setMetrics(last);
+		
+		// Stream.
+		List<TrafficData> list = new ArrayList<TrafficData>();
+		
+		int state = streamParser.fetch(new ByteArrayInputStream(document), list, new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.DONE, state);
+		Assert.assertEquals(StreamParser.DONE, last.state);
+		Assert.assertEquals(FetchStats.ERROR_NONE, last.errorKind);
+		Assert.assertEquals(list.size(), last.records);
+		Assert.assertEquals(document.length, last.bytes);
+		Assert.assertTrue(last.tokens > list.size());
+		Assert.assertTrue(last.ioNanos > 0);
+		Assert.assertTrue(last.ioNanos <= last.totalNanos);
+		
+		long tokens = last.tokens;
+		
+		// Memory.
+		list.clear();
+		
+		streamParser.fetch(document, 0, document.length, new ListRecordSink<TrafficData>(list), new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(list.size(), last.records);
+		Assert.assertEquals(document.length, last.bytes);
+		Assert.assertEquals(tokens, last.tokens);
+		Assert.assertEquals(0, last.ioNanos);
+		
+		// Iterator, measured when it reaches the end.
+		RecordIterator<TrafficData> iterator = streamParser.iterator(new ByteArrayInputStream(document), new TrafficDataFactory(), new TrafficDataParser());
+		
+		int count = 0;
+		
+		while (iterator.hasNext())
+		{
+			iterator.next();
+			
+			count++;
+		}
+		
+		Assert.assertEquals(count, last.records);
+		Assert.assertEquals(tokens, last.tokens);
+		
+		// Broken document.
+		streamParser.fetch(new ByteArrayInputStream(document, 0, document.length / 2), new ArrayList<TrafficData>(), new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.ERROR, last.state);
+		Assert.assertEquals(FetchStats.ERROR_PARSE, last.errorKind);
+		
+		int broken = last.records;
+		
+		// Sink stops the fetch.
+		streamParser.fetch(new ByteArrayInputStream(document), new ListRecordSink<TrafficData>(new ArrayList<TrafficData>())
+		{
+			@Override
+			public boolean accept(TrafficData record)
+			{
+				return false;
+			}
+		}, new TrafficDataFactory(), new TrafficDataParser());
+		
+		Assert.assertEquals(StreamParser.CANCELLED, last.state);
+		Assert.assertEquals(FetchStats.ERROR_CANCELLED, last.errorKind);
+		Assert.assertEquals(1, last.records);
+		
+		Assert.assertEquals(5, statistics.getFetches());
+		Assert.assertEquals(1, statistics.getErrors(FetchStats.ERROR_PARSE));
+		Assert.assertEquals(1, statistics.getErrors(FetchStats.ERROR_CANCELLED));
+		Assert.assertEquals(3 * list.size() + broken + 1, statistics.getRecords());
+		Assert.assertEquals(5, statistics.getFetchTime().getCount());
+		Assert.assertTrue(statistics.getRecordsPerSecond() > 0);
+		
+		Map<String, Number> snapshot = statistics.snapshot();
+		
+		Assert.assertEquals(5L, snapshot.get("traffic.fetches"));
+		Assert.assertEquals(1L, snapshot.get("traffic.errors.parse"));
+		Assert.assertTrue(snapshot.containsKey("traffic.fetch.micros.p99"));
+	}
+	
+	/**
+	 * Test records dropped as unchanged are counted as skipped.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipped() throws Exception
+	{
+		ParseStatistics statistics = new ParseStatistics("carpark");
+		LastFetch last = new LastFetch(statistics);
+		
+		StreamParserImpl<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		streamParser.setMetrics(last);
+		streamParser.setFingerprints(new RecordFingerprints(), null);
+		
+		List<CarParkData> list = new ArrayList<CarParkData>();
+		
+		streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), list, new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(list.size(), last.records);
+		Assert.assertEquals(0, last.skipped);
+		
+		streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), new ArrayList<CarParkData>(), new CarParkDataFactory(), new CarParkDataParser());
+		
+		Assert.assertEquals(0, last.records);
+		Assert.assertEquals(list.size(), last.skipped);
+		Assert.assertEquals(list.size(), statistics.getSkipped());
+	}
+	
+	/**
+	 * Test histogram percentiles are within the bucket precision.
+	 * 
+	 */
+	@Test
+	public void testHistogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+		
+		for (long value = 1; value <= 100000; value++)
+		{
+			histogram.record(value);
+		}
+		
+		Assert.assertEquals(100000, histogram.getCount());
+		Assert.assertEquals(100000, histogram.getMax());
+		Assert.assertEquals(100000, histogram.getValueAtPercentile(100));
+		Assert.assertEquals(50000.5, histogram.getMean(), 0.001);
+		
+		double[] percentiles = { 0.001, 1, 25, 50, 90, 99, 99.9 };
+		
+		for (double percentile : percentiles)
+		{
+			long exact = (long) Math.ceil(percentile * 1000);
+			
+			long value = histogram.getValueAtPercentile(percentile);
+			
+			Assert.assertTrue(value >= exact);
+			Assert.assertTrue(value - exact <= exact / 16);
+		}
+		
+		// Small values are exact, large ones still bucketed.
+		histogram.reset();
+		
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+		
+		Assert.assertEquals(7, histogram.getValueAtPercentile(50));
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+	}
+	
+	private static byte[] read(String name) throws IOException
+	{
+		InputStream stream = ClassLoader.class.getResourceAsStream(name);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[4096];
+		
+		int read;
+		
+		while ((read = stream.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, read);
+		}
+		
+		stream.close();
+		
+		return out.toByteArray();
+	}
+	
+}
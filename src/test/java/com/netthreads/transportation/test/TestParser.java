@@ -18,20 +18,40 @@
  */
 package com.netthreads.transportation.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
 import org.junit.Test;
 
 import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.CarParkStatus;
 import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.JSONParser;
+import com.netthreads.transportation.parser.JSONParserFactory;
+import com.netthreads.transportation.parser.ParallelStreamParser;
+import com.netthreads.transportation.parser.PooledDataFactory;
+import com.netthreads.transportation.parser.RecordIterator;
 import com.netthreads.transportation.parser.StreamParser;
 import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.TokenValues;
 import com.netthreads.transportation.parser.data.CarParkDataFactory;
 import com.netthreads.transportation.parser.data.CarParkDataParser;
 import com.netthreads.transportation.parser.data.TrafficDataFactory;
 import com.netthreads.transportation.parser.data.TrafficDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataParserFactory;
+import com.netthreads.transportation.snapshot.CarParkSnapshot;
+import com.netthreads.transportation.snapshot.CarParkSnapshotBuilder;
 
 /**
  * Simple test to pull data items from Glasgow Traffic feed.
@@ -67,6 +87,161 @@ public class TestParser
 		dumpTrafficDataResults(list);
 	}
 	
+	/**
+	 * Test lazy iteration returns the same records as a full fetch.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testIterateTrafficData() throws IOException
+	{
+		final List<TrafficData> list = new LinkedList<TrafficData>();
+		final TrafficDataFactory dataFactory = new TrafficDataFactory();
+		
+		final StreamParser<TrafficData> streamParser = new StreamParserImpl<TrafficData>();
+		
+		streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), list, dataFactory, new TrafficDataParser());
+		
+		RecordIterator<TrafficData> iterator = streamParser.iterator(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), dataFactory, new TrafficDataParser());
+		
+		int count = 0;
+		while (iterator.hasNext())
+		{
+			TrafficData data = iterator.next();
+			
+			org.junit.Assert.assertEquals(list.get(count).getId(), data.getId());
+			
+			count++;
+		}
+		
+		org.junit.Assert.assertEquals(list.size(), count);
+		org.junit.Assert.assertEquals(StreamParser.DONE, streamParser.getState());
+	}
+	
+	/**
+	 * Test parallel parsing returns the same records, in order, as a
+	 * sequential fetch.
+	 * 
+	 */
+	@Test
+	public void testParallelTrafficData()
+	{
+		final List<TrafficData> expected = new ArrayList<TrafficData>();
+		final TrafficDataFactory dataFactory = new TrafficDataFactory();
+		
+		new StreamParserImpl<TrafficData>().fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), expected, dataFactory, new TrafficDataParser());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try
+		{
+			ParallelStreamParser<TrafficData> streamParser = new ParallelStreamParser<TrafficData>(executor, 4);
+			
+			// Force one chunk per situation.
+			streamParser.setMinChunkSize(1);
+			streamParser.setChunksPerThread(1000);
+			
+			final List<TrafficData> list = new ArrayList<TrafficData>();
+			
+			int state = streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), list, dataFactory, new TrafficDataParserFactory());
+			
+			org.junit.Assert.assertEquals(StreamParser.DONE, state);
+			org.junit.Assert.assertEquals(expected.size(), list.size());
+			
+			for (int i = 0; i < expected.size(); i++)
+			{
+				org.junit.Assert.assertEquals(expected.get(i).getId(), list.get(i).getId());
+				org.junit.Assert.assertEquals(expected.get(i).getDescription(), list.get(i).getDescription());
+				org.junit.Assert.assertEquals(expected.get(i).getLatitude(), list.get(i).getLatitude());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Test a chunk which ends in error stops the chunks after it.
+	 * 
+	 */
+	@Test
+	public void testParallelChunkError()
+	{
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicInteger populated = new AtomicInteger();
+		
+		// First chunk fails, the second is slow so the rest are still queued.
+		JSONParserFactory<TrafficData> parserFactory = new JSONParserFactory<TrafficData>()
+		{
+			@Override
+			public JSONParser<TrafficData> createParser()
+			{
+				final int chunk = created.getAndIncrement();
+				
+				return new TrafficDataParser()
+				{
+					@Override
+					public void processObject(JsonParser parser) throws JsonParseException, IOException
+					{
+						if (chunk == 0)
+						{
+							throw new JsonParseException("Bad chunk", null);
+						}
+						
+						super.processObject(parser);
+					}
+					
+					@Override
+					public void populateRecord(TrafficData record)
+					{
+						populated.incrementAndGet();
+						
+						if (chunk == 1)
+						{
+							try
+							{
+								Thread.sleep(200);
+							}
+							catch (InterruptedException e)
+							{
+								Thread.currentThread().interrupt();
+							}
+						}
+						
+						super.populateRecord(record);
+					}
+				};
+			}
+		};
+		
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		
+		try
+		{
+			ParallelStreamParser<TrafficData> streamParser = new ParallelStreamParser<TrafficData>(executor, 1);
+			
+			// Force one chunk per situation.
+			streamParser.setMinChunkSize(1);
+			streamParser.setChunksPerThread(1000);
+			
+			List<TrafficData> list = new ArrayList<TrafficData>();
+			
+			int state = streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), list, new TrafficDataFactory(), parserFactory);
+			
+			org.junit.Assert.assertEquals(StreamParser.ERROR, state);
+			org.junit.Assert.assertTrue(list.isEmpty());
+			org.junit.Assert.assertTrue(created.get() > 2);
+			
+			// At most the slow chunk's first record, the queued chunks never ran.
+			org.junit.Assert.assertTrue(populated.get() <= 1);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
 	/**
 	 * Test Car Park Data.
 	 * 
@@ -88,6 +263,394 @@ public class TestParser
 		dumpCarParkDataResults(list);
 	}
 	
+	/**
+	 * Test numeric values are decoded from the token stream.
+	 * 
+	 */
+	@Test
+	public void testCarParkValues()
+	{
+		final InputStream entityStream = ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE);
+		
+		final List<CarParkData> list = new LinkedList<CarParkData>();
+		
+		final StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		streamParser.fetch(entityStream, list, new CarParkDataFactory(), new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(10, list.size());
+		
+		CarParkData data = list.get(0);
+		
+		org.junit.Assert.assertEquals("CPG04C_1", data.getId());
+		org.junit.Assert.assertEquals(87, data.getOccupiedSpacesInt());
+		org.junit.Assert.assertEquals(2000, data.getTotalCapacityInt());
+		org.junit.Assert.assertEquals(4, data.getCarParkOccupancyInt());
+		org.junit.Assert.assertEquals(1913, data.getFreeSpaces());
+		org.junit.Assert.assertEquals(Double.parseDouble("55.86379621893744"), data.getLatitudeDouble(), 0.0);
+		org.junit.Assert.assertEquals(Double.parseDouble("-4.24982359238236"), data.getLongitudeDouble(), 0.0);
+		org.junit.Assert.assertEquals("87", data.getOccupiedSpaces());
+		
+		// Repeated values are canonical.
+		org.junit.Assert.assertEquals(CarParkStatus.ENOUGH_SPACES_AVAILABLE, data.getCarParkStatusCode());
+		org.junit.Assert.assertSame(data.getCarParkStatus(), list.get(1).getCarParkStatus());
+		org.junit.Assert.assertSame(CarParkStatus.CAR_PARK_CLOSED.getText(), list.get(7).getCarParkStatus());
+		org.junit.Assert.assertEquals(CarParkStatus.CAR_PARK_CLOSED, list.get(7).getCarParkStatusCode());
+	}
+	
+	/**
+	 * Test the String getters give back the feed's text unchanged.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testGetterText() throws IOException
+	{
+		List<CarParkData> carParks = new ArrayList<CarParkData>();
+		
+		new StreamParserImpl<CarParkData>().fetch(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), carParks, new CarParkDataFactory(), new CarParkDataParser());
+		
+		List<String> latitudes = fixtureValues(JSON_CARPARK_FILE, CarParkData.TAG_LATITUDE);
+		List<String> longitudes = fixtureValues(JSON_CARPARK_FILE, CarParkData.TAG_LONGITUDE);
+		List<String> occupancies = fixtureValues(JSON_CARPARK_FILE, CarParkData.TAG_CAR_PARK_OCCUPANCY);
+		List<String> occupied = fixtureValues(JSON_CARPARK_FILE, CarParkData.TAG_OCCUPIED_SPACES);
+		List<String> capacities = fixtureValues(JSON_CARPARK_FILE, CarParkData.TAG_TOTAL_CAPACITY);
+		
+		org.junit.Assert.assertEquals(latitudes.size(), carParks.size());
+		
+		for (int i = 0; i < carParks.size(); i++)
+		{
+			CarParkData data = carParks.get(i);
+			
+			org.junit.Assert.assertEquals(latitudes.get(i), data.getLatitude());
+			org.junit.Assert.assertEquals(longitudes.get(i), data.getLongitude());
+			org.junit.Assert.assertEquals(occupancies.get(i), data.getCarParkOccupancy());
+			org.junit.Assert.assertEquals(occupied.get(i), data.getOccupiedSpaces());
+			org.junit.Assert.assertEquals(capacities.get(i), data.getTotalCapacity());
+		}
+		
+		List<TrafficData> events = new ArrayList<TrafficData>();
+		
+		new StreamParserImpl<TrafficData>().fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), events, new TrafficDataFactory(), new TrafficDataParser());
+		
+		latitudes = fixtureValues(JSON_TRAFFIC_FILE, TrafficData.TAG_LATITUDE);
+		longitudes = fixtureValues(JSON_TRAFFIC_FILE, TrafficData.TAG_LONGITUDE);
+		
+		// Not every event has a location.
+		int located = 0;
+		
+		for (TrafficData event : events)
+		{
+			if (event.hasCoordinates())
+			{
+				org.junit.Assert.assertEquals(latitudes.get(located), event.getLatitude());
+				org.junit.Assert.assertEquals(longitudes.get(located), event.getLongitude());
+				
+				located++;
+			}
+			else
+			{
+				org.junit.Assert.assertEquals("", event.getLatitude());
+			}
+		}
+		
+		org.junit.Assert.assertEquals(latitudes.size(), located);
+		
+		// Text the values alone would not rebuild.
+		String feed = "{\"payloadPublication\":{\"situation\":[{\"situationRecord\":{\"@attributes\":{\"id\":\"CP1_1\"},"
+		        + "\"groupOfLocations\":{\"locationContainedInGroup\":{\"pointByCoordinates\":{\"pointCoordinates\":{\"latitude\":\"55\",\"longitude\":\"-4.250\"}}}},"
+		        + "\"carParkOccupancy\":\"05\",\"occupiedSpaces\":\"n/a\",\"totalCapacity\":\"500\"}}]}}";
+		
+		carParks.clear();
+		
+		new StreamParserImpl<CarParkData>().fetch(new ByteArrayInputStream(feed.getBytes("UTF-8")), carParks, new CarParkDataFactory(), new CarParkDataParser());
+		
+		CarParkData data = carParks.get(0);
+		
+		org.junit.Assert.assertEquals("55", data.getLatitude());
+		org.junit.Assert.assertEquals(55.0, data.getLatitudeDouble(), 0.0);
+		org.junit.Assert.assertEquals("-4.250", data.getLongitude());
+		org.junit.Assert.assertEquals("05", data.getCarParkOccupancy());
+		org.junit.Assert.assertEquals(5, data.getCarParkOccupancyInt());
+		org.junit.Assert.assertEquals("n/a", data.getOccupiedSpaces());
+		org.junit.Assert.assertEquals(CarParkData.NO_VALUE, data.getOccupiedSpacesInt());
+		org.junit.Assert.assertEquals("500", data.getTotalCapacity());
+		
+		// Setting the value drops the text.
+		data.setCarParkOccupancyInt(7);
+		
+		org.junit.Assert.assertEquals("7", data.getCarParkOccupancy());
+	}
+	
+	/**
+	 * Test a second poll reuses the first poll's records.
+	 * 
+	 */
+	@Test
+	public void testFetchInPlace()
+	{
+		final List<CarParkData> list = new ArrayList<CarParkData>();
+		final PooledDataFactory<CarParkData> dataFactory = new PooledDataFactory<CarParkData>(new CarParkDataFactory(), 4);
+		final CarParkDataParser parser = new CarParkDataParser();
+		
+		final StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		streamParser.fetchInPlace(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), list, dataFactory, parser);
+		
+		org.junit.Assert.assertEquals(10, list.size());
+		org.junit.Assert.assertEquals(10, dataFactory.getCreated());
+		
+		CarParkData first = list.get(0);
+		
+		// Scribble on a record, the next poll must overwrite it.
+		first.setOccupiedSpacesInt(0);
+		
+		// Pretend the last poll was longer.
+		list.add(new CarParkData());
+		list.add(new CarParkData());
+		
+		streamParser.fetchInPlace(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), list, dataFactory, parser);
+		
+		org.junit.Assert.assertEquals(10, list.size());
+		org.junit.Assert.assertSame(first, list.get(0));
+		org.junit.Assert.assertEquals(87, first.getOccupiedSpacesInt());
+		org.junit.Assert.assertEquals(10, dataFactory.getCreated());
+		
+		// Left over records went back to the pool.
+		org.junit.Assert.assertEquals(2, dataFactory.size());
+	}
+	
+	/**
+	 * Test refilling a linked list keeps unchanged values.
+	 * 
+	 */
+	@Test
+	public void testFetchInPlaceLinked()
+	{
+		final List<CarParkData> list = new LinkedList<CarParkData>();
+		final CarParkDataParser parser = new CarParkDataParser();
+		
+		final StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		streamParser.fetchInPlace(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), list, new CarParkDataFactory(), parser);
+		
+		org.junit.Assert.assertEquals(10, list.size());
+		
+		CarParkData first = list.get(0);
+		String versionTime = first.getVersionTime();
+		String latitude = first.getLatitude();
+		
+		// Drop a record, the next poll must add it back at the end.
+		list.remove(9);
+		
+		streamParser.fetchInPlace(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), list, new CarParkDataFactory(), parser);
+		
+		org.junit.Assert.assertEquals(10, list.size());
+		org.junit.Assert.assertSame(first, list.get(0));
+		org.junit.Assert.assertEquals("CPG04C_1", first.getId());
+		org.junit.Assert.assertSame(versionTime, first.getVersionTime());
+		org.junit.Assert.assertSame(latitude, first.getLatitude());
+		org.junit.Assert.assertNotNull(list.get(9).getId());
+	}
+	
+	/**
+	 * Test column snapshot built straight from the parser.
+	 * 
+	 */
+	@Test
+	public void testCarParkSnapshot()
+	{
+		final InputStream entityStream = ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE);
+		
+		final CarParkSnapshotBuilder builder = new CarParkSnapshotBuilder();
+		
+		final StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		streamParser.fetch(entityStream, builder, builder, new CarParkDataParser());
+		
+		CarParkSnapshot snapshot = builder.build();
+		
+		org.junit.Assert.assertEquals(10, snapshot.size());
+		org.junit.Assert.assertEquals(6165, snapshot.totalFreeSpaces());
+		org.junit.Assert.assertEquals(2, snapshot.countByStatus("carParkClosed"));
+		org.junit.Assert.assertEquals(8, snapshot.countByStatus("enoughSpacesAvailable"));
+		org.junit.Assert.assertEquals(0, snapshot.countByStatus("carParkFull"));
+		org.junit.Assert.assertEquals(4, snapshot.filterByMinFreeSpaces(500).length);
+		org.junit.Assert.assertEquals("Buchanan Galleries:CPG04C", snapshot.getCarParkIdentity(0));
+		org.junit.Assert.assertEquals(1913, snapshot.getFreeSpaces(0));
+	}
+	
+	/**
+	 * Test a snapshot is not built from a fetch which did not finish.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testCarParkSnapshotIncomplete() throws IOException
+	{
+		final CarParkSnapshotBuilder builder = new CarParkSnapshotBuilder();
+		
+		final StreamParser<CarParkData> streamParser = new StreamParserImpl<CarParkData>();
+		
+		// Cancelled.
+		streamParser.cancel();
+		
+		int state = streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), builder, builder, new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, builder.getState());
+		
+		try
+		{
+			builder.build();
+			
+			org.junit.Assert.fail("Built from a cancelled fetch");
+		}
+		catch (IllegalStateException e)
+		{
+			// Expected.
+		}
+		
+		// More status values than the status column holds.
+		StringBuilder feed = new StringBuilder("{\"payloadPublication\":{\"situation\":[");
+		
+		for (int i = 0; i < 200; i++)
+		{
+			feed.append(i > 0 ? "," : "").append("{\"situationRecord\":{\"@attributes\":{\"id\":\"CP").append(i).append("\"},\"carParkStatus\":\"status").append(i).append("\"}}");
+		}
+		
+		feed.append("]}}");
+		
+		streamParser.reset();
+		
+		state = streamParser.fetch(new ByteArrayInputStream(feed.toString().getBytes("UTF-8")), builder, builder, new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.CANCELLED, state);
+		org.junit.Assert.assertEquals(StreamParser.ERROR, builder.getState());
+		
+		Exception error = builder.getError();
+		
+		org.junit.Assert.assertNotNull(error);
+		
+		try
+		{
+			builder.build();
+			
+			org.junit.Assert.fail("Built from a failed fetch");
+		}
+		catch (IllegalStateException e)
+		{
+			org.junit.Assert.assertSame(error, e.getCause());
+		}
+		
+		// Builder is usable again.
+		state = streamParser.fetch(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), builder, builder, new CarParkDataParser());
+		
+		org.junit.Assert.assertEquals(StreamParser.DONE, state);
+		org.junit.Assert.assertEquals(10, builder.build().size());
+	}
+	
+	/**
+	 * Test number decoding from character buffers.
+	 * 
+	 */
+	@Test
+	public void testTokenValues()
+	{
+		String[] doubles = { "55.86379621893744", "-4.278163228904508", "0", "-0.5", "12345678901234567890.5", "1.5e3", "1." };
+		
+		for (String text : doubles)
+		{
+			char[] chars = (" " + text + " ").toCharArray();
+			
+			org.junit.Assert.assertEquals(text, Double.parseDouble(text), TokenValues.parseDouble(chars, 1, text.length(), Double.NaN), 0.0);
+		}
+		
+		org.junit.Assert.assertTrue(Double.isNaN(TokenValues.parseDouble("abc".toCharArray(), 0, 3, Double.NaN)));
+		org.junit.Assert.assertTrue(Double.isNaN(TokenValues.parseDouble(new char[0], 0, 0, Double.NaN)));
+		
+		org.junit.Assert.assertEquals(2000, TokenValues.parseInt("2000".toCharArray(), 0, 4, -1));
+		org.junit.Assert.assertEquals(-12, TokenValues.parseInt("-12".toCharArray(), 0, 3, -1));
+		org.junit.Assert.assertEquals(Integer.MIN_VALUE, TokenValues.parseInt("-2147483648".toCharArray(), 0, 11, -1));
+		org.junit.Assert.assertEquals(-1, TokenValues.parseInt("2147483648".toCharArray(), 0, 10, -1));
+		org.junit.Assert.assertEquals(-1, TokenValues.parseInt("12a".toCharArray(), 0, 3, -1));
+		org.junit.Assert.assertEquals(-1, TokenValues.parseInt("".toCharArray(), 0, 0, -1));
+		
+		String[] canonical = { "0", "87", "-12", "2000", "2147483647" };
+		
+		for (String text : canonical)
+		{
+			org.junit.Assert.assertTrue(text, TokenValues.isCanonicalInt(text.toCharArray(), 0, text.length()));
+			org.junit.Assert.assertEquals(text, Integer.toString(TokenValues.parseInt(text.toCharArray(), 0, text.length(), -1)));
+		}
+		
+		// Integer.MIN_VALUE is the missing value.
+		String[] notCanonical = { "", "-", "05", "-0", "+5", "5.0", "2147483648", "-2147483648", "n/a" };
+		
+		for (String text : notCanonical)
+		{
+			org.junit.Assert.assertFalse(text, TokenValues.isCanonicalInt(text.toCharArray(), 0, text.length()));
+		}
+		
+		canonical = new String[] { "0.0", "-0.5", "55.8637962189", "-4.25", "0.001", "9999999.5", "123456789.012345".substring(2) };
+		
+		for (String text : canonical)
+		{
+			org.junit.Assert.assertTrue(text, TokenValues.isCanonicalDouble(text.toCharArray(), 0, text.length()));
+			org.junit.Assert.assertEquals(text, Double.toString(TokenValues.parseDouble(text.toCharArray(), 0, text.length(), Double.NaN)));
+		}
+		
+		notCanonical = new String[] { "5", "5.", ".5", "05.5", "-4.250", "0.00", "0.0001", "10000000.0", "1.5e3", "55.86379621893744" };
+		
+		for (String text : notCanonical)
+		{
+			org.junit.Assert.assertFalse(text, TokenValues.isCanonicalDouble(text.toCharArray(), 0, text.length()));
+		}
+	}
+	
+	/**
+	 * Pull a field's text values from a fixture in document order.
+	 * 
+	 * @param file
+	 * @param tag
+	 * 
+	 * @return The values.
+	 * 
+	 * @throws IOException
+	 */
+	private List<String> fixtureValues(String file, String tag) throws IOException
+	{
+		InputStream stream = ClassLoader.class.getResourceAsStream(file);
+		
+		StringBuilder builder = new StringBuilder();
+		
+		try
+		{
+			byte[] buffer = new byte[4096];
+			
+			int count;
+			while ((count = stream.read(buffer)) > 0)
+			{
+				builder.append(new String(buffer, 0, count, "UTF-8"));
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+		
+		List<String> values = new ArrayList<String>();
+		
+		Matcher matcher = Pattern.compile("\"" + tag + "\"\\s*:\\s*\"([^\"]*)\"").matcher(builder);
+		
+		while (matcher.find())
+		{
+			values.add(matcher.group(1));
+		}
+		
+		return values;
+	}
+	
 	/**
 	 * Dump out results so we can take a look at them.
 	 * 
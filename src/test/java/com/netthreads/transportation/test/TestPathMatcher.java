@@ -0,0 +1,109 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.parser.path.PathCursor;
+import com.netthreads.transportation.parser.path.PathMatcher;
+
+/**
+ * Path matcher tests.
+ * 
+ */
+public class TestPathMatcher
+{
+	private static final int RECORD = 0;
+	private static final int LATITUDE = 1;
+	private static final int ID = 2;
+	
+	private PathMatcher matcher = new PathMatcher.Builder()
+	        .add("a/record", RECORD)
+	        .add("a/record/location/**/coordinates/latitude", LATITUDE)
+	        .add("a/record/*/id", ID)
+	        .compile();
+	
+	/**
+	 * Test literal and any depth matches.
+	 * 
+	 */
+	@Test
+	public void testMatch()
+	{
+		PathCursor cursor = matcher.newCursor();
+		
+		Assert.assertEquals(PathMatcher.NO_MATCH, cursor.push("a"));
+		Assert.assertEquals(RECORD, cursor.push("record"));
+		
+		// '**' matching nothing.
+		cursor.push("location");
+		cursor.push("coordinates");
+		Assert.assertEquals(LATITUDE, cursor.match("latitude"));
+		Assert.assertEquals(PathMatcher.NO_MATCH, cursor.match("longitude"));
+		cursor.pop();
+		
+		// '**' matching several levels, array elements are transparent.
+		cursor.push("group");
+		cursor.push(null);
+		cursor.push("point");
+		cursor.push("coordinates");
+		Assert.assertEquals(LATITUDE, cursor.match(new String("latitude")));
+		cursor.pop();
+		cursor.pop();
+		cursor.pop();
+		cursor.pop();
+		cursor.pop();
+		
+		// '*' matches exactly one level.
+		Assert.assertEquals(PathMatcher.NO_MATCH, cursor.match("id"));
+		cursor.push("attributes");
+		Assert.assertEquals(ID, cursor.match("id"));
+		cursor.pop();
+		
+		Assert.assertEquals(RECORD, cursor.pop());
+		Assert.assertEquals(1, cursor.getDepth());
+	}
+	
+	/**
+	 * Test branches which can never match are dead.
+	 * 
+	 */
+	@Test
+	public void testDead()
+	{
+		PathCursor cursor = matcher.newCursor();
+		
+		Assert.assertTrue(cursor.isDead("header"));
+		Assert.assertFalse(cursor.isDead("a"));
+		
+		cursor.push("header");
+		Assert.assertEquals(PathMatcher.NO_MATCH, cursor.match("a"));
+		Assert.assertTrue(cursor.isDead("a"));
+		cursor.pop();
+		
+		cursor.push("a");
+		cursor.push("record");
+		Assert.assertFalse(cursor.isDead("location"));
+		cursor.push("attributes");
+		Assert.assertTrue(cursor.isDead("other"));
+		Assert.assertFalse(cursor.isDead("id"));
+	}
+	
+}
@@ -0,0 +1,160 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.ListRecordSink;
+import com.netthreads.transportation.parser.PushStreamParser;
+import com.netthreads.transportation.parser.StreamParser;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * Push parser tests.
+ * 
+ */
+public class TestPushParser
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	
+	/**
+	 * Test records match a blocking fetch whatever size of chunk is pushed.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testChunks() throws Exception
+	{
+		byte[] data = read(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE));
+		
+		List<TrafficData> expected = new ArrayList<TrafficData>();
+		
+		new StreamParserImpl<TrafficData>().fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), expected, new TrafficDataFactory(), new TrafficDataParser());
+		
+		int[] sizes = { 1, 13, 4096, data.length };
+		
+		for (int size : sizes)
+		{
+			for (int direct = 0; direct < 2; direct++)
+			{
+				List<TrafficData> list = new ArrayList<TrafficData>();
+				
+				PushStreamParser<TrafficData> parser = new PushStreamParser<TrafficData>(new TrafficDataFactory(), new TrafficDataParser(), new ListRecordSink<TrafficData>(list));
+				
+				for (int offset = 0; offset < data.length; offset += size)
+				{
+					int length = Math.min(size, data.length - offset);
+					
+					ByteBuffer buffer = direct == 0 ? ByteBuffer.wrap(data, offset, length) : ByteBuffer.allocateDirect(length);
+					
+					if (direct == 1)
+					{
+						buffer.put(data, offset, length);
+						buffer.flip();
+					}
+					
+					Assert.assertTrue(parser.feed(buffer));
+					Assert.assertFalse(buffer.hasRemaining());
+				}
+				
+				Assert.assertEquals(StreamParser.DONE, parser.end());
+				Assert.assertEquals(expected.size(), list.size());
+				
+				for (int i = 0; i < expected.size(); i++)
+				{
+					Assert.assertEquals(expected.get(i).getId(), list.get(i).getId());
+					Assert.assertEquals(expected.get(i).getDescription(), list.get(i).getDescription());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test input ending inside a situation is an error, records before it
+	 * are kept.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTruncated() throws Exception
+	{
+		byte[] data = read(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE));
+		
+		List<TrafficData> list = new ArrayList<TrafficData>();
+		
+		PushStreamParser<TrafficData> parser = new PushStreamParser<TrafficData>(new TrafficDataFactory(), new TrafficDataParser(), new ListRecordSink<TrafficData>(list));
+		
+		parser.feed(ByteBuffer.wrap(data, 0, data.length / 2));
+		
+		Assert.assertEquals(StreamParser.ERROR, parser.end());
+		Assert.assertTrue(list.size() > 0);
+	}
+	
+	/**
+	 * Test a feed holding one situation as an object.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSingleSituation() throws Exception
+	{
+		String text = "{\"payloadPublication\":{\"situation\":{\"situationRecord\":{\"@attributes\":{\"id\":\"one\"},\"networkManagementType\":\"roadClosed\"}}}}";
+		
+		List<TrafficData> list = new ArrayList<TrafficData>();
+		
+		PushStreamParser<TrafficData> parser = new PushStreamParser<TrafficData>(new TrafficDataFactory(), new TrafficDataParser(), new ListRecordSink<TrafficData>(list));
+		
+		parser.feed(ByteBuffer.wrap(text.getBytes("UTF-8")));
+		
+		Assert.assertEquals(StreamParser.DONE, parser.end());
+		Assert.assertEquals(1, list.size());
+		Assert.assertEquals("one", list.get(0).getId());
+		Assert.assertEquals("roadClosed", list.get(0).getType());
+	}
+	
+	private static byte[] read(InputStream stream) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		byte[] buffer = new byte[4096];
+		
+		int count;
+		
+		while ((count = stream.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, count);
+		}
+		
+		stream.close();
+		
+		return output.toByteArray();
+	}
+	
+}
@@ -0,0 +1,358 @@
+/**
+ * -----------------------------------------------------------------------
+ * Copyright 2014 - Alistair Rutherford - www.netthreads.co.uk
+ * -----------------------------------------------------------------------
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.netthreads.transportation.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netthreads.transportation.codec.CarParkDataCodec;
+import com.netthreads.transportation.codec.CodecInput;
+import com.netthreads.transportation.codec.CodecOutput;
+import com.netthreads.transportation.codec.SnapshotCodec;
+import com.netthreads.transportation.codec.TrafficDataCodec;
+import com.netthreads.transportation.data.CarParkData;
+import com.netthreads.transportation.data.TrafficData;
+import com.netthreads.transportation.parser.StreamParserImpl;
+import com.netthreads.transportation.parser.data.CarParkDataFactory;
+import com.netthreads.transportation.parser.data.CarParkDataParser;
+import com.netthreads.transportation.parser.data.TrafficDataFactory;
+import com.netthreads.transportation.parser.data.TrafficDataParser;
+
+/**
+ * Binary codec tests.
+ * 
+ */
+public class TestRecordCodec
+{
+	private static final String JSON_TRAFFIC_FILE = "/trafficEvents.json";
+	private static final String JSON_CARPARK_FILE = "/carParkData.json";
+	
+	/**
+	 * Test feed records survive a round trip and encode smaller than Java
+	 * serialization.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		List<TrafficData> traffic = new ArrayList<TrafficData>();
+		
+		new StreamParserImpl<TrafficData>().fetch(ClassLoader.class.getResourceAsStream(JSON_TRAFFIC_FILE), traffic, new TrafficDataFactory(), new TrafficDataParser());
+		
+		SnapshotCodec<TrafficData> trafficCodec = new SnapshotCodec<TrafficData>(new TrafficDataCodec(), new TrafficDataFactory());
+		
+		byte[] data = trafficCodec.encode(traffic);
+		
+		List<TrafficData> decoded = trafficCodec.decode(data);
+		
+		Assert.assertEquals(traffic.size(), decoded.size());
+		
+		for (int i = 0; i < traffic.size(); i++)
+		{
+			assertTrafficEquals(traffic.get(i), decoded.get(i));
+		}
+		
+		// Mostly free text descriptions.
+		Assert.assertTrue(data.length < serializedSize(traffic) * 3 / 4);
+		
+		List<CarParkData> carParks = new ArrayList<CarParkData>();
+		
+		new StreamParserImpl<CarParkData>().fetch(ClassLoader.class.getResourceAsStream(JSON_CARPARK_FILE), carParks, new CarParkDataFactory(), new CarParkDataParser());
+		
+		SnapshotCodec<CarParkData> carParkCodec = new SnapshotCodec<CarParkData>(new CarParkDataCodec(), new CarParkDataFactory());
+		
+		data = carParkCodec.encode(carParks);
+		
+		List<CarParkData> decodedCarParks = carParkCodec.decode(data);
+		
+		Assert.assertEquals(carParks.size(), decodedCarParks.size());
+		
+		for (int i = 0; i < carParks.size(); i++)
+		{
+			assertCarParkEquals(carParks.get(i), decodedCarParks.get(i));
+		}
+		
+		Assert.assertTrue(data.length < serializedSize(carParks) / 2);
+		
+		// Wrong kind.
+		try
+		{
+			trafficCodec.decode(data);
+			
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			// Expected.
+		}
+	}
+	
+	/**
+	 * Test missing values, awkward text and coordinates which cannot be
+	 * scaled.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testEdgeCases() throws Exception
+	{
+		TrafficData empty = new TrafficData();
+		
+		TrafficData awkward = new TrafficData();
+		awkward.setId("");
+		awkward.setVersion(-5);
+		awkward.setDescription("café € 🚗 \ud800 end");
+		awkward.setTownName("Glasgow");
+		awkward.setLinkName("Glasgow");
+		awkward.setType("somethingNew");
+		awkward.setLatitudeDouble(Math.PI);
+		awkward.setLongitudeDouble(-0.0);
+		
+		TrafficData repeat = new TrafficData();
+		repeat.setTownName("Glasgow");
+		repeat.setLatitudeDouble(-4.2587123);
+		repeat.setLongitudeDouble(Double.MAX_VALUE);
+		
+		SnapshotCodec<TrafficData> codec = new SnapshotCodec<TrafficData>(new TrafficDataCodec(), new TrafficDataFactory());
+		
+		byte[] data = codec.encode(Arrays.asList(empty, awkward, repeat));
+		
+		List<TrafficData> decoded = codec.decode(data);
+		
+		assertTrafficEquals(empty, decoded.get(0));
+		assertTrafficEquals(awkward, decoded.get(1));
+		assertTrafficEquals(repeat, decoded.get(2));
+		
+		Assert.assertEquals("somethingNew", decoded.get(1).getType());
+		
+		// Dictionary shares the decoded instance.
+		Assert.assertSame(decoded.get(1).getTownName(), decoded.get(2).getTownName());
+		
+		CarParkData carPark = new CarParkData();
+		carPark.setOccupiedSpacesInt(0);
+		carPark.setTotalCapacityInt(Integer.MAX_VALUE);
+		carPark.setCarParkOccupancyInt(-1);
+		
+		SnapshotCodec<CarParkData> carParkCodec = new SnapshotCodec<CarParkData>(new CarParkDataCodec(), new CarParkDataFactory());
+		
+		assertCarParkEquals(carPark, carParkCodec.decode(carParkCodec.encode(Arrays.asList(carPark))).get(0));
+		
+		// Truncated.
+		try
+		{
+			codec.decode(Arrays.copyOf(data, data.length - 3));
+			
+			Assert.fail();
+		}
+		catch (EOFException e)
+		{
+			// Expected.
+		}
+		
+		// Newer version.
+		data[4] = (byte) (SnapshotCodec.FORMAT_VERSION + 1);
+		
+		try
+		{
+			codec.decode(data);
+			
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			Assert.assertTrue(e.getMessage().contains("version"));
+		}
+	}
+	
+	/**
+	 * Test numbers keep the feed text they were read from.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFeedText() throws Exception
+	{
+		CarParkData carPark = new CarParkData();
+		carPark.setCarParkOccupancy("05");
+		carPark.setOccupiedSpaces("n/a");
+		carPark.setTotalCapacity("500");
+		carPark.setLatitude("55.8600");
+		carPark.setLongitude("-4.250");
+		
+		SnapshotCodec<CarParkData> carParkCodec = new SnapshotCodec<CarParkData>(new CarParkDataCodec(), new CarParkDataFactory());
+		
+		CarParkData decodedCarPark = carParkCodec.decode(carParkCodec.encode(Arrays.asList(carPark))).get(0);
+		
+		assertCarParkEquals(carPark, decodedCarPark);
+		
+		Assert.assertEquals("05", decodedCarPark.getCarParkOccupancy());
+		Assert.assertEquals(5, decodedCarPark.getCarParkOccupancyInt());
+		Assert.assertEquals("n/a", decodedCarPark.getOccupiedSpaces());
+		Assert.assertEquals(CarParkData.NO_VALUE, decodedCarPark.getOccupiedSpacesInt());
+		Assert.assertEquals("500", decodedCarPark.getTotalCapacity());
+		Assert.assertEquals("55.8600", decodedCarPark.getLatitude());
+		Assert.assertEquals(55.86, decodedCarPark.getLatitudeDouble(), 0);
+		Assert.assertEquals("-4.250", decodedCarPark.getLongitude());
+		
+		// Primitive setters drop the text.
+		carPark.setCarParkOccupancyInt(5);
+		carPark.setLatitudeDouble(55.86);
+		
+		decodedCarPark = carParkCodec.decode(carParkCodec.encode(Arrays.asList(carPark))).get(0);
+		
+		Assert.assertNull(decodedCarPark.getCarParkOccupancyText());
+		Assert.assertNull(decodedCarPark.getLatitudeText());
+		Assert.assertEquals("5", decodedCarPark.getCarParkOccupancy());
+		Assert.assertEquals("55.86", decodedCarPark.getLatitude());
+		
+		TrafficData traffic = new TrafficData();
+		traffic.setLatitude("55.8600");
+		traffic.setLongitude("-4.250");
+		
+		SnapshotCodec<TrafficData> trafficCodec = new SnapshotCodec<TrafficData>(new TrafficDataCodec(), new TrafficDataFactory());
+		
+		TrafficData decodedTraffic = trafficCodec.decode(trafficCodec.encode(Arrays.asList(traffic))).get(0);
+		
+		assertTrafficEquals(traffic, decodedTraffic);
+		
+		Assert.assertEquals("55.8600", decodedTraffic.getLatitude());
+		Assert.assertEquals("-4.250", decodedTraffic.getLongitude());
+	}
+	
+	/**
+	 * Test the primitive encodings at their limits.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPrimitives() throws Exception
+	{
+		long[] values = { 0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+		
+		CodecOutput output = new CodecOutput(16);
+		
+		for (long value : values)
+		{
+			output.writeSignedVarLong(value);
+			output.writeVarLong(value);
+			output.writeOptionalInt((int) value, Integer.MIN_VALUE);
+		}
+		
+		output.writeSignedVarLong(-1);
+		
+		CodecInput input = new CodecInput();
+		input.reset(output.getBuffer(), 0, output.size());
+		
+		for (long value : values)
+		{
+			Assert.assertEquals(value, input.readSignedVarLong());
+			Assert.assertEquals(value, input.readVarLong());
+			Assert.assertEquals((int) value, input.readOptionalInt(Integer.MIN_VALUE));
+		}
+		
+		Assert.assertEquals(-1, input.readSignedVarLong());
+		Assert.assertEquals(0, input.remaining());
+		
+		// Small values are short.
+		output.reset();
+		output.writeSignedVarLong(-64);
+		output.writeOptionalInt(Integer.MIN_VALUE, Integer.MIN_VALUE);
+		output.writeCoordinate(55.8613);
+		
+		Assert.assertEquals(1 + 1 + 5, output.size());
+		
+		// Lengths and indexes past Long.MAX_VALUE are malformed.
+		output.reset();
+		output.writeVarLong(-1);
+		
+		input.reset(output.getBuffer(), 0, output.size());
+		
+		try
+		{
+			input.readString();
+			
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			Assert.assertFalse(e instanceof EOFException);
+		}
+		
+		input.reset(output.getBuffer(), 0, output.size());
+		
+		try
+		{
+			input.readShared();
+			
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			Assert.assertTrue(e.getMessage().contains("index"));
+		}
+	}
+	
+	private static void assertTrafficEquals(TrafficData expected, TrafficData actual)
+	{
+		Assert.assertEquals(expected.toString(), actual.toString());
+		Assert.assertEquals(expected.getVersion(), actual.getVersion());
+		Assert.assertEquals(expected.getVersionTime(), actual.getVersionTime());
+		Assert.assertEquals(expected.getTypeCode(), actual.getTypeCode());
+		Assert.assertEquals(Double.doubleToRawLongBits(expected.getLatitudeDouble()), Double.doubleToRawLongBits(actual.getLatitudeDouble()));
+		Assert.assertEquals(Double.doubleToRawLongBits(expected.getLongitudeDouble()), Double.doubleToRawLongBits(actual.getLongitudeDouble()));
+		Assert.assertEquals(expected.getLatitude(), actual.getLatitude());
+		Assert.assertEquals(expected.getLongitude(), actual.getLongitude());
+	}
+	
+	private static void assertCarParkEquals(CarParkData expected, CarParkData actual)
+	{
+		Assert.assertEquals(expected.toString(), actual.toString());
+		Assert.assertEquals(expected.getVersion(), actual.getVersion());
+		Assert.assertEquals(expected.getVersionTime(), actual.getVersionTime());
+		Assert.assertEquals(expected.getCarParkStatusCode(), actual.getCarParkStatusCode());
+		Assert.assertEquals(expected.getFreeSpaces(), actual.getFreeSpaces());
+		Assert.assertEquals(expected.getCarParkOccupancy(), actual.getCarParkOccupancy());
+		Assert.assertEquals(expected.getOccupiedSpaces(), actual.getOccupiedSpaces());
+		Assert.assertEquals(expected.getTotalCapacity(), actual.getTotalCapacity());
+		Assert.assertEquals(expected.getLatitude(), actual.getLatitude());
+		Assert.assertEquals(expected.getLongitude(), actual.getLongitude());
+	}
+	
+	private static int serializedSize(List<? extends Serializable> records) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		ObjectOutputStream stream = new ObjectOutputStream(bytes);
+		stream.writeObject(new ArrayList<Serializable>(records));
+		stream.close();
+		
+		return bytes.size();
+	}
+	
+}